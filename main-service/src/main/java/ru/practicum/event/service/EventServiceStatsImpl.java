@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.ResourceAccessException;
+import ru.practicum.BatchingHitRecorder;
 import ru.practicum.StatClient;
 import ru.practicum.common.component.CommonComponent;
 import ru.practicum.event.dto.*;
@@ -22,6 +23,8 @@ import java.util.*;
 
 /**
  * Расширения поведения - ведение статистики за счет применения паттерна <b>декоратор</b>.
+ * <p>Хиты передаются в {@link BatchingHitRecorder} и отправляются пачками в фоновом потоке, так что время ответа
+ * <i>/events</i> не зависит от StatsService, а его недоступность не теряет хиты.</p>
  */
 @Slf4j
 @Service
@@ -30,19 +33,19 @@ public class EventServiceStatsImpl implements EventService {
 
     private final EventService eventService;
     private final StatClient statsHttpClient;
+    private final BatchingHitRecorder hitRecorder;
     private final EventRepository eventRepository;
     private final CommonComponent commonComponent;
-    private final Queue<StatRequestDto> requestAccumulator;
 
     @Autowired
     public EventServiceStatsImpl(@Qualifier("eventServiceImpl") EventService eventService,
-                                 StatClient statsHttpClient, EventRepository eventRepository,
-                                 CommonComponent commonComponent) {
+                                 StatClient statsHttpClient, BatchingHitRecorder hitRecorder,
+                                 EventRepository eventRepository, CommonComponent commonComponent) {
         this.eventService = eventService;
         this.statsHttpClient = statsHttpClient;
+        this.hitRecorder = hitRecorder;
         this.eventRepository = eventRepository;
         this.commonComponent = commonComponent;
-        this.requestAccumulator = new ArrayDeque<>();
     }
 
     @Override
@@ -70,53 +73,54 @@ public class EventServiceStatsImpl implements EventService {
         return eventService.fetchAdminEvents(users, states, categories, rangeStart, rangeEnd, from, size);
     }
 
+    /**
+     * Страница выбирается по сохраненным просмотрам, а просмотры в ответе обновляются из StatsService. При
+     * {@link EventSort#VIEWS} страница после обновления сортируется заново, чтобы порядок совпадал с показанными
+     * просмотрами.
+     */
     @Override
     public List<EventShortDto> fetchPublicEvents(String text, List<Long> categories, Boolean paid, LocalDateTime rangeStart, LocalDateTime rangeEnd, Boolean onlyAvailable, EventSort sort, int from, int size, HttpServletRequest servletRequest) {
-        List<EventShortDto> events = eventService.fetchPublicEvents(text, categories, paid,
-                rangeStart, rangeEnd, onlyAvailable, sort, from, size, servletRequest);
+        List<EventShortDto> events = new ArrayList<>(eventService.fetchPublicEvents(text, categories, paid,
+                rangeStart, rangeEnd, onlyAvailable, sort, from, size, servletRequest));
+        performHit(servletRequest);
 
-        // Механизм аккумуляции запросов, позволяет работать с отключенный StatsService
         try {
-            processAccumulator(servletRequest);
-            performHit(servletRequest);
-            requestAccumulator.clear();
-            return events;
+            refreshViews(events);
+
+            if (sort == EventSort.VIEWS) {
+                events.sort(Comparator.comparingLong(EventShortDto::getViews).reversed());
+            }
         } catch (ResourceAccessException ignore) {
-            log.warn("Connection to Stats server is refused when performHit(/events)");
-            requestAccumulator.add(prepareRequest(servletRequest));
-            return events;
+            log.warn("Connection to Stats server is refused when refreshViews(/events)");
         }
+
+        return events;
     }
 
     @Override
     public EventFullDto fetchPublicEventById(long eventId, HttpServletRequest servletRequest) throws EventNotFoundException {
         EventFullDto processedEvent = eventService.fetchPublicEventById(eventId, servletRequest);
+        performHit(servletRequest);
 
-        // Механизм аккумуляции запросов, позволяет работать с отключенный StatsService
         try {
-            processAccumulator(servletRequest);
-
             Event publishedEvent = commonComponent.getPublishedEventById(eventId);
             publishedEvent.setViews(statsHttpClient.getUniqueEventViews(eventId));
-
-            performHit(servletRequest);
-            requestAccumulator.clear();
             return EventMapper.mapToEventFullDto(eventRepository.saveAndFlush(publishedEvent));
         } catch (ResourceAccessException exception) {
-            log.warn("Connection to Stats server is refused performHit(/events/{})", eventId);
-            requestAccumulator.add(prepareRequest(servletRequest));
+            log.warn("Connection to Stats server is refused getUniqueEventViews(/events/{})", eventId);
             return processedEvent;
         }
     }
 
-    private void processAccumulator(HttpServletRequest servletRequest) throws ResourceAccessException {
-        Iterator<StatRequestDto> iterator = requestAccumulator.iterator();
+    /**
+     * Просмотры всей страницы событий запрашиваются у StatsService одним запросом.
+     */
+    private void refreshViews(List<EventShortDto> events) throws ResourceAccessException {
+        Set<Long> eventIds = new HashSet<>();
+        events.forEach(event -> eventIds.add(event.getId()));
 
-        iterator.forEachRemaining(((request) -> {
-            StatRequestDto first = requestAccumulator.peek();
-            performHit(first);
-            requestAccumulator.remove();
-        }));
+        Map<Long, Long> views = statsHttpClient.getUniqueEventViews(eventIds);
+        events.forEach(event -> event.setViews(views.getOrDefault(event.getId(), event.getViews())));
     }
 
     @Override
@@ -149,11 +153,10 @@ public class EventServiceStatsImpl implements EventService {
         eventService.incrementConfirmedRequestsValue(eventId);
     }
 
-    private void performHit(HttpServletRequest servletRequest) {
-        log.debug("EventServiceImpl - service.performHit()");
-        statsHttpClient.toHit(prepareRequest(servletRequest));
-    }
-
+    /**
+     * Хит получает идентификатор, с которым он и повторяется при отправке пачки: если хит был сохранен,
+     * а ответ StatsService потерян, повтор не будет учтен второй раз.
+     */
     private StatRequestDto prepareRequest(HttpServletRequest servletRequest) {
         log.debug("EventServiceImpl - service.prepareRequest()");
         String application = "ewm-main-service";
@@ -162,11 +165,13 @@ public class EventServiceStatsImpl implements EventService {
                 .uri(servletRequest.getRequestURI())
                 .timestamp(LocalDateTime.now())
                 .ip(servletRequest.getRemoteAddr())
+                .hitId(UUID.randomUUID().toString())
                 .build();
     }
 
-    private void performHit(StatRequestDto statRequestDto) {
+    private void performHit(HttpServletRequest servletRequest) {
+        StatRequestDto statRequestDto = prepareRequest(servletRequest);
         log.debug("EventServiceImpl - service.performHit({})", statRequestDto);
-        statsHttpClient.toHit(statRequestDto);
+        hitRecorder.record(statRequestDto);
     }
 }
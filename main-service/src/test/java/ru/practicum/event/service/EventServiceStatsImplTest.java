@@ -0,0 +1,84 @@
+package ru.practicum.event.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.client.ResourceAccessException;
+import ru.practicum.BatchingHitRecorder;
+import ru.practicum.StatClient;
+import ru.practicum.event.dto.EventShortDto;
+import ru.practicum.event.model.EventSort;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+
+@ExtendWith(MockitoExtension.class)
+class EventServiceStatsImplTest {
+    @InjectMocks
+    private EventServiceStatsImpl eventServiceStats;
+    @Mock
+    private EventService eventService;
+    @Mock
+    private StatClient statClient;
+    @Mock
+    private BatchingHitRecorder hitRecorder;
+
+    private final MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/events");
+
+    @Test
+    public void test_T0010_PS01_fetchPublicEvents_sortByViewsAfterRefresh() {
+        mockPage(EventSort.VIEWS);
+        Mockito.when(statClient.getUniqueEventViews(anyCollection())).thenReturn(Map.of(1L, 5L, 2L, 30L, 3L, 10L));
+
+        List<EventShortDto> events = eventServiceStats.fetchPublicEvents(null, null, null, null, null,
+                false, EventSort.VIEWS, 0, 10, servletRequest);
+
+        assertEquals(List.of(2L, 3L, 1L), ids(events));
+        assertEquals(List.of(30L, 10L, 5L), events.stream().map(EventShortDto::getViews).collect(Collectors.toList()));
+        Mockito.verify(hitRecorder).record(any());
+    }
+
+    @Test
+    public void test_T0010_PS02_fetchPublicEvents_otherSortKeepsOrder() {
+        mockPage(EventSort.EVENT_DATE);
+        Mockito.when(statClient.getUniqueEventViews(anyCollection())).thenReturn(Map.of(1L, 5L, 2L, 30L, 3L, 10L));
+
+        List<EventShortDto> events = eventServiceStats.fetchPublicEvents(null, null, null, null, null,
+                false, EventSort.EVENT_DATE, 0, 10, servletRequest);
+
+        assertEquals(List.of(1L, 2L, 3L), ids(events));
+    }
+
+    @Test
+    public void test_T0010_NS01_fetchPublicEvents_statsUnavailableKeepsStoredOrder() {
+        mockPage(EventSort.VIEWS);
+        Mockito.when(statClient.getUniqueEventViews(anyCollection()))
+                .thenThrow(new ResourceAccessException("Connection refused"));
+
+        List<EventShortDto> events = eventServiceStats.fetchPublicEvents(null, null, null, null, null,
+                false, EventSort.VIEWS, 0, 10, servletRequest);
+
+        assertEquals(List.of(1L, 2L, 3L), ids(events));
+        assertEquals(List.of(3L, 2L, 1L), events.stream().map(EventShortDto::getViews).collect(Collectors.toList()));
+    }
+
+    private void mockPage(EventSort sort) {
+        Mockito.when(eventService.fetchPublicEvents(any(), any(), any(), any(), any(), any(), eq(sort), anyInt(),
+                anyInt(), any())).thenReturn(List.of(
+                EventShortDto.builder().id(1).views(3).build(),
+                EventShortDto.builder().id(2).views(2).build(),
+                EventShortDto.builder().id(3).views(1).build()));
+    }
+
+    private static List<Long> ids(List<EventShortDto> events) {
+        return events.stream().map(EventShortDto::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,100 @@
+-- ==============================================================================
+-- Бенчмарк индексов stat (stat_requested_uri_app_idx, stat_uri_ip_idx из schema.sql).
+-- Схема - та же, что у сервиса: словари app, uri и ip и stat с дневными секциями stat_pYYYYMMDD, как их создает
+-- StatPartitionManager при stats.partition.interval=DAY. schema.sql удаляет таблицы сервиса, поэтому запуск -
+-- только на отдельной базе:
+--   createdb -h localhost -U root ewm-stats-bench
+--   psql -h localhost -U root -d ewm-stats-bench -f stats-service/http-service/src/main/resources/schema.sql
+--   psql -h localhost -U root -d ewm-stats-bench -f stats-service/benchmark/stat-indexes.sql
+-- Запросы - те же, что в StatRepository, с подставленными параметрами. Каждый запрос выполняется через
+-- EXPLAIN (ANALYZE, BUFFERS) сначала без индексов, затем с ними. Вывод прогона - в stat-indexes.out.
+-- ==============================================================================
+-- Словари: 3 приложения, 1000 uri событий, 100 тыс. ip
+INSERT INTO app (app) VALUES ('ewm-main-service'), ('ewm-admin-service'), ('ewm-bench-service');
+INSERT INTO uri (uri) SELECT '/events/' || g FROM generate_series(1, 1000) AS g;
+INSERT INTO ip (ip) SELECT int4send(167772160 + g) FROM generate_series(1, 100000) AS g;
+-- Дневные секции за 30 дней
+DO $$
+DECLARE
+    day timestamp;
+BEGIN
+    FOR day IN SELECT generate_series(TIMESTAMP '2026-01-01', TIMESTAMP '2026-01-30', INTERVAL '1 day') LOOP
+        EXECUTE format('CREATE TABLE stat_p%s (LIKE stat INCLUDING DEFAULTS INCLUDING CONSTRAINTS)',
+                to_char(day, 'YYYYMMDD'));
+        EXECUTE format('ALTER TABLE stat ATTACH PARTITION stat_p%s FOR VALUES FROM (%L) TO (%L)',
+                to_char(day, 'YYYYMMDD'), day, day + INTERVAL '1 day');
+    END LOOP;
+END
+$$;
+-- Без индексов: индексы удаляются до загрузки, как в первом прогоне
+DROP INDEX stat_requested_uri_app_idx;
+DROP INDEX stat_uri_ip_idx;
+-- 10 млн хитов за 30 дней в порядке поступления, uri - с перекосом популярности
+INSERT INTO stat (app_id, uri_id, ip_id, requested)
+SELECT 1 + g % 3,
+       1 + floor(power(random(), 3) * 1000)::integer,
+       1 + floor(random() * 100000)::integer,
+       TIMESTAMP '2026-01-01 00:00:00' + (g * 0.2592) * INTERVAL '1 second'
+FROM generate_series(1, 10000000) AS g;
+VACUUM ANALYZE app, uri, ip, stat;
+-- ==============================================================================
+-- countHitsByRequestedRange: неуникальные хиты за час (неполные минуты на краях и короткие интервалы)
+PREPARE hits_hour AS
+SELECT a.app, u.uri, s.hits
+FROM (SELECT app_id, uri_id, count(*) AS hits FROM stat
+      WHERE requested >= '2026-01-15 10:00:00' AND requested < '2026-01-15 11:00:00'
+      GROUP BY uri_id, app_id) AS s
+LEFT JOIN app AS a ON s.app_id = a.id
+JOIN uri AS u ON s.uri_id = u.id;
+-- findAllUniqueByRequestedBetween: уникальные хиты за сутки
+PREPARE unique_day AS
+SELECT a.app, u.uri, s.hits
+FROM (SELECT app_id, uri_id, count(DISTINCT ip_id) AS hits FROM stat
+      WHERE requested BETWEEN '2026-01-15 00:00:00' AND '2026-01-15 23:59:59'
+      GROUP BY uri_id, app_id) AS s
+LEFT JOIN app AS a ON s.app_id = a.id
+JOIN uri AS u ON s.uri_id = u.id
+ORDER BY s.hits DESC;
+-- findAllUniqueByRequestedBetweenAndUriIn: уникальные хиты за сутки по списку uri
+PREPARE unique_day_uris AS
+SELECT a.app, u.uri, s.hits
+FROM (SELECT app_id, uri_id, count(DISTINCT ip_id) AS hits FROM stat
+      WHERE (requested BETWEEN '2026-01-15 00:00:00' AND '2026-01-15 23:59:59')
+        AND (uri_id IN (SELECT id FROM uri
+                        WHERE uri IN ('/events/1', '/events/2', '/events/3', '/events/500', '/events/900')))
+      GROUP BY uri_id, app_id) AS s
+LEFT JOIN app AS a ON s.app_id = a.id
+JOIN uri AS u ON s.uri_id = u.id
+ORDER BY s.hits DESC;
+-- getUniqueEventViewsByUri: уникальные просмотры события за все время
+PREPARE event_views AS
+SELECT count(DISTINCT s.ip_id) FROM stat AS s
+WHERE s.uri_id = (SELECT id FROM uri WHERE uri = '/events/500');
+-- getUniqueViewsByUriIn: уникальные просмотры списка событий за все время
+PREPARE event_views_bulk AS
+SELECT u.uri, s.hits
+FROM (SELECT uri_id, count(DISTINCT ip_id) AS hits FROM stat
+      WHERE uri_id IN (SELECT id FROM uri
+                       WHERE uri IN ('/events/100', '/events/200', '/events/300', '/events/400', '/events/500',
+                                     '/events/600', '/events/700', '/events/800', '/events/900', '/events/1000'))
+      GROUP BY uri_id) AS s
+JOIN uri AS u ON s.uri_id = u.id;
+-- ==============================================================================
+-- Без индексов
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE hits_hour;
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE unique_day;
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE unique_day_uris;
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE event_views;
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE event_views_bulk;
+-- ==============================================================================
+-- С индексами из schema.sql
+CREATE INDEX stat_requested_uri_app_idx ON stat (requested, uri_id, app_id) INCLUDE (ip_id);
+CREATE INDEX stat_uri_ip_idx ON stat (uri_id, ip_id);
+VACUUM ANALYZE stat;
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE hits_hour;
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE unique_day;
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE unique_day_uris;
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE event_views;
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE event_views_bulk;
+-- ==============================================================================
+DEALLOCATE ALL;
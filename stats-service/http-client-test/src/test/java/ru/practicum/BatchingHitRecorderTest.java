@@ -0,0 +1,228 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+import ru.practicum.model.stat.dto.StatRequestDto;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+
+@ExtendWith(MockitoExtension.class)
+class BatchingHitRecorderTest {
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2025, 5, 5, 0, 0, 0);
+
+    @Mock
+    private StatClient statClient;
+    @Mock
+    private StatAsyncClient asyncClient;
+    @Captor
+    private ArgumentCaptor<List<StatRequestDto>> batchCaptor;
+    @TempDir
+    Path spoolDirectory;
+    private BatchingHitRecorder recorder;
+
+    @AfterEach
+    public void cleanup() throws InterruptedException {
+        recorder.stop();
+    }
+
+    @Test
+    public void test_T0010_PS01_record_flushBySize() {
+        Mockito.when(statClient.toHitBatch(anyList())).thenReturn(ResponseEntity.status(HttpStatus.CREATED).build());
+        recorder = new BatchingHitRecorder(statClient, null, null, 100, 3, 60_000, 10, 10);
+        recorder.start();
+
+        recorder.record(hit("/events/1"));
+        recorder.record(hit("/events/2"));
+        recorder.record(hit("/events/3"));
+
+        Mockito.verify(statClient, Mockito.timeout(2000)).toHitBatch(batchCaptor.capture());
+        assertEquals(List.of(hit("/events/1"), hit("/events/2"), hit("/events/3")), batchCaptor.getValue());
+    }
+
+    @Test
+    public void test_T0020_PS01_record_flushByAge() {
+        Mockito.when(statClient.toHitBatch(anyList())).thenReturn(ResponseEntity.status(HttpStatus.CREATED).build());
+        recorder = new BatchingHitRecorder(statClient, null, null, 100, 100, 50, 10, 10);
+        recorder.start();
+
+        recorder.record(hit("/events/1"));
+        recorder.record(hit("/events/2"));
+
+        Mockito.verify(statClient, Mockito.timeout(2000)).toHitBatch(batchCaptor.capture());
+        assertEquals(List.of(hit("/events/1"), hit("/events/2")), batchCaptor.getValue());
+    }
+
+    @Test
+    public void test_T0030_PS01_record_retriesSameBatch() {
+        Mockito.when(statClient.toHitBatch(anyList()))
+                .thenThrow(new ResourceAccessException("Connection refused"))
+                .thenReturn(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build())
+                .thenReturn(ResponseEntity.status(HttpStatus.CREATED).build());
+        recorder = new BatchingHitRecorder(statClient, null, null, 100, 1, 60_000, 10, 20);
+        recorder.start();
+
+        recorder.record(hit("/events/1"));
+
+        Mockito.verify(statClient, Mockito.timeout(2000).times(3)).toHitBatch(batchCaptor.capture());
+        batchCaptor.getAllValues().forEach(batch -> assertEquals(List.of(hit("/events/1")), batch));
+        assertEquals(0, recorder.getDroppedHits());
+    }
+
+    @Test
+    public void test_T0030_PS02_record_retriesThrottledBatch() {
+        Mockito.when(statClient.toHitBatch(anyList()))
+                .thenReturn(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build())
+                .thenReturn(ResponseEntity.status(HttpStatus.REQUEST_TIMEOUT).build())
+                .thenReturn(ResponseEntity.status(HttpStatus.CREATED).build());
+        recorder = new BatchingHitRecorder(statClient, null, null, 100, 1, 60_000, 10, 20);
+        recorder.start();
+
+        recorder.record(hit("/events/1"));
+
+        Mockito.verify(statClient, Mockito.timeout(2000).times(3)).toHitBatch(batchCaptor.capture());
+        batchCaptor.getAllValues().forEach(batch -> assertEquals(List.of(hit("/events/1")), batch));
+        assertEquals(0, recorder.getDroppedHits());
+    }
+
+    @Test
+    public void test_T0030_NS01_record_rejectedBatchDropped() {
+        Mockito.when(statClient.toHitBatch(anyList())).thenReturn(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+        recorder = new BatchingHitRecorder(statClient, null, null, 100, 1, 60_000, 10, 20);
+        recorder.start();
+
+        recorder.record(hit("/events/1"));
+
+        Mockito.verify(statClient, Mockito.timeout(2000)).toHitBatch(anyList());
+        Mockito.verify(statClient, Mockito.after(200).times(1)).toHitBatch(anyList());
+        assertEquals(1, recorder.getDroppedHits());
+    }
+
+    @Test
+    public void test_T0030_PS03_record_sendsThroughAsyncClient() {
+        Mockito.when(asyncClient.toHitBatch(anyList()))
+                .thenReturn(CompletableFuture.failedFuture(new ResourceAccessException("Connection refused")))
+                .thenReturn(CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.CREATED).build()));
+        recorder = new BatchingHitRecorder(statClient, asyncClient, null, 100, 1, 60_000, 10, 20);
+        recorder.start();
+
+        recorder.record(hit("/events/1"));
+
+        Mockito.verify(asyncClient, Mockito.timeout(2000).times(2)).toHitBatch(batchCaptor.capture());
+        batchCaptor.getAllValues().forEach(batch -> assertEquals(List.of(hit("/events/1")), batch));
+        Mockito.verifyNoInteractions(statClient);
+        assertEquals(0, recorder.getDroppedHits());
+    }
+
+    @Test
+    public void test_T0040_NS01_record_fullQueueDropsHit() {
+        recorder = new BatchingHitRecorder(statClient, null, null, 1, 10, 60_000, 10, 10);
+
+        assertTrue(recorder.record(hit("/events/1")));
+        assertFalse(recorder.record(hit("/events/2")));
+        assertEquals(1, recorder.getDroppedHits());
+    }
+
+    @Test
+    public void test_T0040_NS02_record_invalidHitRejectedAlone() {
+        Mockito.when(statClient.toHitBatch(anyList())).thenReturn(ResponseEntity.status(HttpStatus.CREATED).build());
+        recorder = new BatchingHitRecorder(statClient, null, null, 100, 2, 60_000, 10, 10);
+        recorder.start();
+
+        assertTrue(recorder.record(hit("/events/1")));
+        assertFalse(recorder.record(StatRequestDto.of("ewm-main-service", "/events/2", "10.10.10.256", TIMESTAMP)));
+        assertFalse(recorder.record(StatRequestDto.of("ab", "/events/3", "10.10.10.15", TIMESTAMP)));
+        assertTrue(recorder.record(hit("/events/4")));
+
+        Mockito.verify(statClient, Mockito.timeout(2000)).toHitBatch(batchCaptor.capture());
+        assertEquals(List.of(hit("/events/1"), hit("/events/4")), batchCaptor.getValue());
+        assertEquals(2, recorder.getRejectedHits());
+        assertEquals(0, recorder.getDroppedHits());
+    }
+
+    @Test
+    public void test_T0050_PS01_record_spoolsAndReplaysInOrder() throws IOException, InterruptedException {
+        Mockito.when(statClient.toHitBatch(anyList()))
+                .thenThrow(new ResourceAccessException("Connection refused"))
+                .thenThrow(new ResourceAccessException("Connection refused"))
+                .thenReturn(ResponseEntity.status(HttpStatus.CREATED).build());
+        HitSpool spool = new HitSpool(spoolDirectory.toString(), 1024 * 1024, 1024 * 1024,
+                HitSpool.FsyncPolicy.NEVER, 0);
+        spool.open();
+        recorder = new BatchingHitRecorder(statClient, null, spool, 100, 2, 50, 10, 20);
+        recorder.start();
+
+        recorder.record(hit("/events/1"));
+        recorder.record(hit("/events/2"));
+        Mockito.verify(statClient, Mockito.timeout(2000).atLeastOnce()).toHitBatch(anyList());
+        recorder.record(hit("/events/3"));
+        recorder.record(hit("/events/4"));
+        recorder.record(hit("/events/5"));
+
+        Mockito.verify(statClient, Mockito.timeout(2000).atLeast(5)).toHitBatch(batchCaptor.capture());
+        recorder.stop();
+        spool.close();
+
+        List<StatRequestDto> sent = batchCaptor.getAllValues().stream()
+                .skip(2)
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+        assertEquals(List.of(hit("/events/1"), hit("/events/2"), hit("/events/3"), hit("/events/4"),
+                hit("/events/5")), sent);
+        assertEquals(0, recorder.getDroppedHits());
+    }
+
+    @Test
+    public void test_T0050_PS02_stop_spoolsQueueWhileSendInFlight() throws IOException, InterruptedException {
+        CountDownLatch sending = new CountDownLatch(1);
+        Mockito.when(statClient.toHitBatch(anyList())).thenAnswer(invocation -> {
+            sending.countDown();
+            // Блокирующий HTTP-вызов не сбрасывает флаг прерывания
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+
+            while (System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+
+            throw new ResourceAccessException("Read timed out");
+        });
+        HitSpool spool = new HitSpool(spoolDirectory.toString(), 1024 * 1024, 1024 * 1024,
+                HitSpool.FsyncPolicy.NEVER, 0);
+        spool.open();
+        recorder = new BatchingHitRecorder(statClient, null, spool, 100, 1, 60_000, 10, 20);
+        recorder.start();
+
+        recorder.record(hit("/events/1"));
+        assertTrue(sending.await(2, TimeUnit.SECONDS));
+        recorder.record(hit("/events/2"));
+        recorder.record(hit("/events/3"));
+        recorder.stop();
+
+        assertEquals(List.of(hit("/events/1"), hit("/events/2"), hit("/events/3")), spool.peek(10));
+        assertEquals(0, recorder.getDroppedHits());
+        spool.close();
+    }
+
+    private StatRequestDto hit(String uri) {
+        return StatRequestDto.of("ewm-main-service", uri, "10.10.10.15", TIMESTAMP, "hit" + uri);
+    }
+}
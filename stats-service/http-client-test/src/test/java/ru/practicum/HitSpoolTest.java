@@ -0,0 +1,144 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.model.stat.dto.StatRequestDto;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HitSpoolTest {
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2025, 5, 5, 0, 0, 0);
+
+    @TempDir
+    Path directory;
+    private HitSpool spool;
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        spool.close();
+    }
+
+    @Test
+    public void test_T0010_PS01_peekCommit_keepsOrder() throws IOException {
+        spool = open(1024 * 1024, 1024 * 1024);
+
+        assertTrue(spool.isEmpty());
+        assertEquals(3, spool.append(hits(1, 3)));
+        assertEquals(2, spool.append(hits(4, 5)));
+        assertFalse(spool.isEmpty());
+
+        assertEquals(hits(1, 2), spool.peek(2));
+        assertEquals(hits(1, 2), spool.peek(2));
+        spool.commit();
+        assertEquals(hits(3, 5), spool.peek(10));
+        spool.commit();
+
+        assertTrue(spool.isEmpty());
+        assertEquals(List.of(), spool.peek(10));
+    }
+
+    @Test
+    public void test_T0020_PS01_open_resumesFromCursor() throws IOException {
+        spool = open(1024 * 1024, 1024 * 1024);
+        spool.append(hits(1, 5));
+        spool.peek(2);
+        spool.commit();
+        spool.close();
+
+        spool = open(1024 * 1024, 1024 * 1024);
+        spool.append(hits(6, 6));
+
+        assertEquals(hits(3, 6), spool.peek(10));
+    }
+
+    @Test
+    public void test_T0030_PS01_append_rollsAndDeletesSegments() throws IOException {
+        spool = open(200, 1024 * 1024);
+        spool.append(hits(1, 20));
+
+        assertTrue(segments().size() > 2);
+        assertEquals(hits(1, 20), spool.peek(100));
+
+        spool.commit();
+
+        assertTrue(spool.isEmpty());
+        assertEquals(1, segments().size());
+        assertEquals(0, spool.getBytes());
+    }
+
+    @Test
+    public void test_T0040_NS01_append_capRejectsNewHits() throws IOException {
+        spool = open(1024 * 1024, 300);
+
+        int written = spool.append(hits(1, 20));
+
+        assertTrue(written > 0 && written < 20);
+        assertTrue(spool.getBytes() <= 300);
+        assertEquals(0, spool.append(hits(21, 21)));
+        assertEquals(hits(1, written), spool.peek(100));
+    }
+
+    @Test
+    public void test_T0050_NS01_open_skipsTornTail() throws IOException {
+        spool = open(1024 * 1024, 1024 * 1024);
+        spool.append(hits(1, 3));
+        spool.close();
+
+        Path segment = segments().get(0);
+        long size = Files.size(segment);
+
+        try (var channel = Files.newByteChannel(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 5);
+        }
+
+        spool = open(1024 * 1024, 1024 * 1024);
+        spool.append(hits(4, 4));
+
+        assertEquals(List.of(hit(1), hit(2), hit(4)), spool.peek(10));
+    }
+
+    @Test
+    public void test_T0040_NS02_append_skipsUndecodableHit() throws IOException {
+        spool = open(1024 * 1024, 1024 * 1024);
+
+        assertEquals(2, spool.append(List.of(hit(1), StatRequestDto.of("ab", "/events/2", "10.10.10.15", TIMESTAMP),
+                hit(3))));
+        spool.close();
+
+        spool = open(1024 * 1024, 1024 * 1024);
+
+        assertEquals(List.of(hit(1), hit(3)), spool.peek(10));
+    }
+
+    private HitSpool open(long segmentBytes, long maxBytes) throws IOException {
+        HitSpool hitSpool = new HitSpool(directory.toString(), segmentBytes, maxBytes,
+                HitSpool.FsyncPolicy.ALWAYS, 0);
+        hitSpool.open();
+        return hitSpool;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".spool")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private List<StatRequestDto> hits(int from, int to) {
+        return IntStream.rangeClosed(from, to).mapToObj(this::hit).collect(Collectors.toList());
+    }
+
+    private StatRequestDto hit(int id) {
+        return StatRequestDto.of("ewm-main-service", "/events/" + id, "10.10.10.15", TIMESTAMP, "hit-" + id);
+    }
+}
@@ -0,0 +1,148 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+import ru.practicum.model.stat.dto.StatRequestDto;
+import ru.practicum.model.stat.dto.StatResponseDto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatAsyncClientTest {
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private StatAsyncClientImpl statClient;
+
+    @BeforeEach
+    public void initialize() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/hit", exchange -> respond(exchange, 201, ""));
+        server.createContext("/stats/views", exchange -> respond(exchange, 200, "{\"1\":5,\"2\":0,\"3\":17}"));
+        server.createContext("/stats/7", exchange -> respond(exchange, 200, "42"));
+        server.createContext("/stats/8", exchange -> respond(exchange, 500, "{\"reason\":\"down\"}"));
+        server.createContext("/stats", exchange -> {
+            if (exchange.getRequestURI().getQuery().contains("unique=true")) {
+                respond(exchange, 200, "[{\"app\":\"ewm-main-service\",\"uri\":\"/events/11\",\"hits\":3}]");
+            } else {
+                respond(exchange, 400, "{\"reason\":\"bad\"}");
+            }
+        });
+        server.start();
+
+        statClient = client("http://localhost:" + server.getAddress().getPort());
+    }
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        statClient.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void test_T0010_PS01_toHit() throws Exception {
+        StatRequestDto statRequestDto = StatRequestDto.of("app", "/events/10", "10.10.10.15",
+                LocalDateTime.of(2025, 5, 5, 0, 0, 0));
+
+        ResponseEntity<Object> response = statClient.toHit(statRequestDto).get(5, TimeUnit.SECONDS);
+
+        assertEquals(201, response.getStatusCodeValue());
+        assertFalse(response.hasBody());
+        assertEquals(List.of("POST /hit " + mapper.writeValueAsString(statRequestDto)), requests);
+    }
+
+    @Test
+    public void test_T0020_PS01_getUniqueEventViews_bulk() throws Exception {
+        assertEquals(Map.of(1L, 5L, 2L, 0L, 3L, 17L),
+                statClient.getUniqueEventViews(List.of(1L, 2L, 3L)).get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("POST /stats/views [1,2,3]"), requests);
+    }
+
+    @Test
+    public void test_T0020_PS02_getUniqueEventViews_single() throws Exception {
+        assertEquals(42L, statClient.getUniqueEventViews(7).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_T0020_NS01_getUniqueEventViews_errorStatusZeroViews() throws Exception {
+        assertEquals(0L, statClient.getUniqueEventViews(8).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_T0030_PS01_getStats_typedBody() throws Exception {
+        ResponseEntity<Object> response = statClient.getStats("2020-05-05 00:00:00", "2035-05-05 00:00:00",
+                new String[]{"/events/11"}, true).get(5, TimeUnit.SECONDS);
+
+        assertEquals(200, response.getStatusCodeValue());
+        assertEquals(List.of(StatResponseDto.of("ewm-main-service", "/events/11", 3L)), response.getBody());
+    }
+
+    @Test
+    public void test_T0030_NS01_getStats_errorStatusKeepsBody() throws Exception {
+        ResponseEntity<Object> response = statClient.getStats("2020-05-05 00:00:00", "2035-05-05 00:00:00",
+                new String[]{"/events", "/events/11"}, false).get(5, TimeUnit.SECONDS);
+
+        assertEquals(400, response.getStatusCodeValue());
+        assertEquals("{\"reason\":\"bad\"}", new String((byte[]) response.getBody(), StandardCharsets.UTF_8));
+        assertEquals(List.of("GET /stats?start=2020-05-05%2000%3A00%3A00&end=2035-05-05%2000%3A00%3A00"
+                + "&uris=%2Fevents%2C%2Fevents%2F11&unique=false "), requests);
+    }
+
+    @Test
+    public void test_T0040_NS01_toHit_serverDown() throws Exception {
+        int port;
+
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        StatAsyncClientImpl downClient = client("http://localhost:" + port);
+
+        try {
+            CompletableFuture<ResponseEntity<Object>> future = downClient.toHit(StatRequestDto.of("app",
+                    "/events/10", "10.10.10.15", LocalDateTime.of(2025, 5, 5, 0, 0, 0)));
+
+            ExecutionException exception = assertThrows(ExecutionException.class,
+                    () -> future.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(ResourceAccessException.class, exception.getCause());
+        } finally {
+            downClient.close();
+        }
+    }
+
+    private StatAsyncClientImpl client(String url) {
+        return new StatAsyncClientImpl(url, mapper, 4, 1, 1000, 3000, 1000);
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI() + " "
+                + new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatCircuitBreakerTest {
+    private final AtomicLong clock = new AtomicLong();
+    private final StatCircuitBreaker circuitBreaker = new StatCircuitBreaker(3, 1000, clock::get);
+
+    @Test
+    public void test_T0010_PS01_opensAfterConsecutiveFailures() {
+        fail(2);
+        circuitBreaker.acquire();
+        circuitBreaker.release(true);
+        fail(2);
+
+        assertEquals(StatCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        fail(1);
+
+        assertEquals(StatCircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertThrows(StatServiceUnavailableException.class, circuitBreaker::acquire);
+    }
+
+    @Test
+    public void test_T0020_PS01_halfOpenProbeCloses() {
+        fail(3);
+        advance(1000);
+
+        circuitBreaker.acquire();
+
+        assertEquals(StatCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertThrows(StatServiceUnavailableException.class, circuitBreaker::acquire);
+
+        circuitBreaker.release(true);
+
+        assertEquals(StatCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertDoesNotThrow(circuitBreaker::acquire);
+    }
+
+    @Test
+    public void test_T0030_NS01_halfOpenProbeFailureReopens() {
+        fail(3);
+        advance(1000);
+        fail(1);
+
+        assertEquals(StatCircuitBreaker.State.OPEN, circuitBreaker.getState());
+        advance(999);
+        assertThrows(StatServiceUnavailableException.class, circuitBreaker::acquire);
+        advance(1);
+        assertDoesNotThrow(circuitBreaker::acquire);
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            circuitBreaker.acquire();
+            circuitBreaker.release(false);
+        }
+    }
+
+    private void advance(long ms) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(ms));
+    }
+}
@@ -12,13 +12,19 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.client.ExpectedCount;
 import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.ResponseCreator;
+import org.springframework.web.client.HttpClientErrorException;
 import ru.practicum.model.stat.dto.StatMapper;
 import ru.practicum.model.stat.dto.StatRequestDto;
 import ru.practicum.model.stat.dto.StatResponseDto;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
@@ -197,6 +203,198 @@ class StatClientTestTest {
             mockServer.verify();
         }
 
+        @Test
+        public void test_T2015_PS01_toHitBatch() throws JsonProcessingException {
+            LocalDateTime ldt = LocalDateTime.of(2025, 5, 5, 0, 0, 0);
+            List<StatRequestDto> statRequestDtos = List.of(
+                    StatRequestDto.of("app", "/events/10", "10.10.10.15", ldt),
+                    StatRequestDto.of("app", "/events/11", "10.10.10.16", ldt));
+
+            mockServer.expect(requestTo(mockServerUrl + "/hit/batch"))
+                    .andExpect(content().json(mapper.writeValueAsString(statRequestDtos)))
+                    .andRespond(withStatus(HttpStatus.CREATED)
+                            .headers(headers)
+                            .body(""));
+
+            ResponseEntity<Object> response = statClient.toHitBatch(statRequestDtos);
+            assertTrue(response.getStatusCode().is2xxSuccessful());
+            assertFalse(response.hasBody());
+
+            mockServer.verify();
+        }
+
+        @Test
+        public void test_T2050_PS01_getUniqueEventViews_bulk() throws JsonProcessingException {
+            List<Long> eventIds = List.of(1L, 2L, 3L);
+
+            mockServer.expect(requestTo(mockServerUrl + "/stats/views"))
+                    .andExpect(content().json(mapper.writeValueAsString(eventIds)))
+                    .andRespond(withStatus(HttpStatus.OK)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body("{\"1\":5,\"2\":0,\"3\":17}"));
+
+            assertEquals(Map.of(1L, 5L, 2L, 0L, 3L, 17L), statClient.getUniqueEventViews(eventIds));
+
+            mockServer.verify();
+        }
+
+        @Test
+        public void test_T2050_NS01_getUniqueEventViews_bulkServerError() {
+            mockServer.expect(requestTo(mockServerUrl + "/stats/views"))
+                    .andRespond(withStatus(HttpStatus.INTERNAL_SERVER_ERROR));
+
+            assertEquals(Map.of(1L, 0L), statClient.getUniqueEventViews(List.of(1L)));
+
+            mockServer.verify();
+        }
+
+        @Test
+        public void test_T2060_NS01_circuitBreaker_failsFastWhenOpen() {
+            statClient = new StatClientImpl(properties(1000, 0, 2), builder);
+            mockServer = MockRestServiceServer.createServer(statClient.getRest());
+            mockServer.expect(ExpectedCount.times(2), requestTo(mockServerUrl + "/stats/views"))
+                    .andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+
+            assertEquals(Map.of(1L, 0L), statClient.getUniqueEventViews(List.of(1L)));
+            assertEquals(Map.of(1L, 0L), statClient.getUniqueEventViews(List.of(1L)));
+            assertThrows(StatServiceUnavailableException.class, () -> statClient.getUniqueEventViews(List.of(1L)));
+            assertThrows(StatServiceUnavailableException.class, () -> statClient.toHit(StatRequestDto.of("app",
+                    "/events/10", "10.10.10.15", LocalDateTime.of(2025, 5, 5, 0, 0, 0))));
+
+            mockServer.verify();
+        }
+
+        @Test
+        public void test_T2070_PS01_getUniqueEventViews_hedgedRequestWins() {
+            statClient = new StatClientImpl(properties(3000, 50, 5), builder);
+            mockServer = MockRestServiceServer.createServer(statClient.getRest());
+            mockServer.expect(requestTo(mockServerUrl + "/stats/views"))
+                    .andRespond(delayed(1000, "{\"1\":1}"));
+            mockServer.expect(requestTo(mockServerUrl + "/stats/views"))
+                    .andRespond(delayed(0, "{\"1\":2}"));
+
+            assertEquals(Map.of(1L, 2L), statClient.getUniqueEventViews(List.of(1L)));
+
+            mockServer.verify();
+        }
+
+        @Test
+        public void test_T2080_NS01_getUniqueEventViews_deadlineExceeded() {
+            statClient = new StatClientImpl(properties(100, 0, 5), builder);
+            mockServer = MockRestServiceServer.createServer(statClient.getRest());
+            mockServer.expect(requestTo(mockServerUrl + "/stats/5"))
+                    .andRespond(delayed(1000, "7"));
+
+            assertThrows(StatDeadlineExceededException.class, () -> statClient.getUniqueEventViews(5L));
+        }
+
+        @Test
+        public void test_T2080_NS02_getUniqueEventViews_readPoolFullFailsFast() {
+            StatClientProperties properties = properties(100, 0, 5);
+            properties.getSync().setReadThreads(1);
+            properties.getSync().setReadQueueSize(0);
+            statClient = new StatClientImpl(properties, builder);
+            mockServer = MockRestServiceServer.createServer(statClient.getRest());
+            mockServer.expect(ExpectedCount.once(), requestTo(mockServerUrl + "/stats/5"))
+                    .andRespond(request -> {
+                        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1000);
+
+                        while (System.nanoTime() < until) {
+                            Thread.onSpinWait();
+                        }
+
+                        return withStatus(HttpStatus.OK).contentType(MediaType.APPLICATION_JSON).body("7")
+                                .createResponse(request);
+                    });
+
+            assertThrows(StatDeadlineExceededException.class, () -> statClient.getUniqueEventViews(5L));
+            assertThrows(StatServiceUnavailableException.class, () -> statClient.getUniqueEventViews(5L));
+        }
+
+        @Test
+        public void test_T2090_PS01_getStatList_typed() {
+            mockServer.expect(requestTo(mockServerUrl + "/stats?start=2020-05-05%2000%3A00%3A00&end=2035-05-05%2000%3A00%3A00&uris=%2Fevents%2F11&unique=true"))
+                    .andRespond(withStatus(HttpStatus.OK)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body("[{\"app\":\"app\",\"uri\":\"/events/11\",\"hits\":13,\"extra\":{\"a\":[1]}},"
+                                    + "{\"uri\":\"/events/12\",\"hits\":2,\"app\":\"app\"}]"));
+
+            assertEquals(List.of(StatResponseDto.of("app", "/events/11", 13), StatResponseDto.of("app", "/events/12", 2)),
+                    statClient.getStatList("2020-05-05 00:00:00", "2035-05-05 00:00:00",
+                            new String[]{"/events/11"}, true));
+
+            mockServer.verify();
+        }
+
+        @Test
+        public void test_T2090_PS02_getStatList_slowBodyNotHedged() {
+            statClient = new StatClientImpl(properties(100, 50, 5), builder);
+            mockServer = MockRestServiceServer.createServer(statClient.getRest());
+            mockServer.expect(ExpectedCount.once(), requestTo(mockServerUrl + "/stats?start=2020-05-05%2000%3A00%3A00&end=2035-05-05%2000%3A00%3A00&uris=&unique=false"))
+                    .andRespond(delayed(300, "[{\"app\":\"app\",\"uri\":\"/events/11\",\"hits\":13},"
+                            + "{\"app\":\"app\",\"uri\":\"/events/12\",\"hits\":2}]"));
+
+            assertEquals(List.of(StatResponseDto.of("app", "/events/11", 13), StatResponseDto.of("app", "/events/12", 2)),
+                    statClient.getStatList("2020-05-05 00:00:00", "2035-05-05 00:00:00", new String[0], false));
+
+            mockServer.verify();
+        }
+
+        @Test
+        public void test_T2091_NS01_forEachStat_errorStatus() {
+            mockServer.expect(requestTo(mockServerUrl + "/stats?start=2035-05-05%2000%3A00%3A00&end=2020-05-05%2000%3A00%3A00&uris=&unique=false"))
+                    .andRespond(withStatus(HttpStatus.BAD_REQUEST)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body("{\"reason\":\"bad\"}"));
+            List<StatResponseDto> stats = new ArrayList<>();
+
+            assertThrows(HttpClientErrorException.class, () -> statClient.forEachStat("2035-05-05 00:00:00",
+                    "2020-05-05 00:00:00", new String[0], false, stats::add));
+            assertTrue(stats.isEmpty());
+            assertEquals(StatCircuitBreaker.State.CLOSED, statClient.getCircuitBreaker().getState());
+
+            mockServer.verify();
+        }
+
+        @Test
+        public void test_T2092_PS01_getUniqueEventViews() {
+            mockServer.expect(requestTo(mockServerUrl + "/stats/5"))
+                    .andRespond(withStatus(HttpStatus.OK)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body("7"));
+
+            assertEquals(7, statClient.getUniqueEventViews(5L));
+
+            mockServer.verify();
+        }
+
+        private StatClientProperties properties(long readDeadlineMs, long hedgeDelayMs, int failureThreshold) {
+            StatClientProperties properties = new StatClientProperties();
+            properties.setUrl(mockServerUrl);
+            properties.getSync().setMaxConnections(4);
+            properties.getSync().setReadDeadlineMs(readDeadlineMs);
+            properties.getSync().setHedgeDelayMs(hedgeDelayMs);
+            properties.getSync().setReadThreads(2);
+            properties.getBreaker().setFailureThreshold(failureThreshold);
+            properties.getBreaker().setOpenMs(60_000);
+            return properties;
+        }
+
+        private ResponseCreator delayed(long delayMs, String body) {
+            return request -> {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                return withStatus(HttpStatus.OK)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(body)
+                        .createResponse(request);
+            };
+        }
+
         @Test
         public void test_T2020_PS01_getStats_fullArguments() throws JsonProcessingException {
             LocalDateTime startLDT = LocalDateTime.of(2020, 5, 5, 0, 0, 0);
@@ -0,0 +1,366 @@
+package ru.practicum;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import ru.practicum.model.stat.dto.HitFrameCodec;
+import ru.practicum.model.stat.dto.StatRequestDto;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Отправка хитов пачками в фоновом потоке: {@link #record} только кладет хит в ограниченную очередь и не ждет
+ * StatsService.
+ * <p>Пачка уходит через {@link StatClient#toHitBatch}, как только в ней набралось {@code batch-size} хитов или
+ * первый хит пролежал {@code max-age-ms}. Если StatsService недоступен или ответил 5xx, 429 или 408, та же пачка
+ * повторяется с удвоением паузы от {@code retry-initial-ms} до {@code retry-max-ms}; повтор безопасен, так как
+ * хиты с идентификатором StatsService учитывает один раз. Пачка, отклоненная с другим кодом 4xx, не
+ * повторяется.</p>
+ * <p>Хит, который StatsService не примет (некорректный ip, app или uri вне ограничений {@link HitFrameCodec}),
+ * отклоняется уже в {@link #record} и учитывается в метрике <i>stats.client.hits.rejected</i>: иначе StatsService
+ * отклонил бы с кодом 400 всю пачку вместе с корректными хитами.</p>
+ * <p>Пока пачка повторяется, новые хиты копятся в очереди; хиты сверх {@code capacity} отбрасываются и
+ * учитываются в метрике <i>stats.client.hits.dropped</i>.</p>
+ * <p>С параметром <i>stats-server.client=async</i> пачки уходят через {@link StatAsyncClient}: у него свой пул
+ * соединений HttpAsyncClient и свои таймауты, а предохранитель синхронного клиента не участвует - паузы между
+ * повторами выдерживает сам recorder.</p>
+ * <p>Если включен {@link HitSpool}, неотправленная пачка вместо повторов записывается на диск, и, пока спул
+ * не пуст, туда же уходят новые хиты: они отправляются из спула в порядке записи, как только StatsService
+ * снова отвечает. При остановке приложения очередь тоже записывается в спул.</p>
+ */
+@Slf4j
+@Component
+public class BatchingHitRecorder {
+    private static final long IDLE_POLL_MS = 100;
+
+    private final StatClient statClient;
+    private final StatAsyncClient asyncClient;
+    private final HitSpool spool;
+    private final BlockingQueue<StatRequestDto> queue;
+    private final int batchSize;
+    private final long maxAgeMs;
+    private final long retryInitialMs;
+    private final long retryMaxMs;
+    private final AtomicLong sentHits = new AtomicLong();
+    private final AtomicLong droppedHits = new AtomicLong();
+    private final AtomicLong rejectedHits = new AtomicLong();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    @Autowired
+    public BatchingHitRecorder(StatClient statClient,
+                               @Nullable StatAsyncClient asyncClient,
+                               @Nullable HitSpool spool,
+                               @Value("${stats-server.batch.capacity:10000}") int capacity,
+                               @Value("${stats-server.batch.batch-size:500}") int batchSize,
+                               @Value("${stats-server.batch.max-age-ms:1000}") long maxAgeMs,
+                               @Value("${stats-server.batch.retry-initial-ms:500}") long retryInitialMs,
+                               @Value("${stats-server.batch.retry-max-ms:30000}") long retryMaxMs) {
+        this.statClient = statClient;
+        this.asyncClient = asyncClient;
+        this.spool = spool;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.maxAgeMs = maxAgeMs;
+        this.retryInitialMs = retryInitialMs;
+        this.retryMaxMs = retryMaxMs;
+        this.flusher = new Thread(this::flushLoop, "stats-hit-flusher");
+        this.flusher.setDaemon(true);
+
+        log.debug("BatchingHitRecorder(async={}, capacity={}, batchSize={}, maxAgeMs={}, retryInitialMs={}, "
+                + "retryMaxMs={})", asyncClient != null, capacity, batchSize, maxAgeMs, retryInitialMs, retryMaxMs);
+    }
+
+    @Autowired(required = false)
+    public void registerMetrics(MeterRegistry meterRegistry) {
+        Gauge.builder("stats.client.hits.queued", queue, BlockingQueue::size).register(meterRegistry);
+        Gauge.builder("stats.client.hits.sent", sentHits, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("stats.client.hits.dropped", droppedHits, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("stats.client.hits.rejected", rejectedHits, AtomicLong::get).register(meterRegistry);
+
+        if (spool != null) {
+            Gauge.builder("stats.client.spool.bytes", spool, HitSpool::getBytes).register(meterRegistry);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher.start();
+    }
+
+    /**
+     * Останавливает фоновый поток; оставшиеся в очереди хиты записываются в спул, а без него отправляются
+     * одной попыткой без повторов.
+     * <p>Поток не прерывается: прерывание во время отправки осталось бы выставленным и закрыло бы
+     * {@link java.nio.channels.FileChannel} спула при записи очереди. Поток сам замечает остановку - все его
+     * ожидания ограничены {@link #IDLE_POLL_MS}.</p>
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    /**
+     * @return false, если хит некорректен или очередь заполнена и хит отброшен
+     */
+    public boolean record(StatRequestDto hit) {
+        try {
+            HitFrameCodec.validate(hit);
+        } catch (IllegalArgumentException e) {
+            rejectedHits.incrementAndGet();
+            log.warn("Хит отклонен: {}", e.getMessage());
+            return false;
+        }
+
+        if (queue.offer(hit)) {
+            return true;
+        }
+
+        droppedHits.incrementAndGet();
+        log.warn("Очередь хитов заполнена, хит отброшен: {}", hit.getUri());
+        return false;
+    }
+
+    public long getDroppedHits() {
+        return droppedHits.get();
+    }
+
+    public long getRejectedHits() {
+        return rejectedHits.get();
+    }
+
+    private void flushLoop() {
+        List<StatRequestDto> batch = new ArrayList<>(batchSize);
+        long pause = retryInitialMs;
+
+        try {
+            while (running) {
+                if (spool != null && !spool.isEmpty()) {
+                    if (replay()) {
+                        pause = retryInitialMs;
+                    } else {
+                        awaitSpooling(pause);
+                        pause = Math.min(retryMaxMs, pause * 2);
+                    }
+
+                    continue;
+                }
+
+                collect(batch);
+
+                if (batch.isEmpty() && spool != null) {
+                    spool.sync();
+                } else if (!batch.isEmpty() && !deliver(batch) && spool != null) {
+                    spool(batch);
+                }
+
+                while (running && !batch.isEmpty() && !deliver(batch)) {
+                    sleepWhileRunning(pause);
+                    pause = Math.min(retryMaxMs, pause * 2);
+                }
+
+                pause = retryInitialMs;
+            }
+        } catch (InterruptedException e) {
+            log.debug("Фоновая отправка хитов прервана");
+        }
+
+        // Прерывание извне не должно закрыть канал спула при записи очереди
+        Thread.interrupted();
+        queue.drainTo(batch);
+
+        if (spool != null) {
+            spool(batch);
+            return;
+        }
+
+        for (int from = 0; from < batch.size(); from += batchSize) {
+            List<StatRequestDto> rest = new ArrayList<>(batch.subList(from, Math.min(batch.size(), from + batchSize)));
+            int size = rest.size();
+
+            if (!deliver(rest)) {
+                droppedHits.addAndGet(size);
+            }
+        }
+    }
+
+    /**
+     * Отправляет очередную пачку из спула; перед этим записывает в спул очередь, чтобы сохранить порядок хитов.
+     *
+     * @return false, если пачку нужно повторить
+     */
+    private boolean replay() {
+        spoolQueued();
+        List<StatRequestDto> spooled = spool.peek(batchSize);
+
+        if (!spooled.isEmpty() && !deliver(spooled)) {
+            return false;
+        }
+
+        spool.commit();
+
+        if (spool.isEmpty()) {
+            log.info("Хиты из спула отправлены в StatsService");
+        }
+
+        return true;
+    }
+
+    /**
+     * Пауза перед повтором, во время которой очередь продолжает записываться в спул.
+     */
+    private void awaitSpooling(long pauseMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pauseMs);
+        long remaining;
+
+        while (running && (remaining = deadline - System.nanoTime()) > 0) {
+            Thread.sleep(Math.min(IDLE_POLL_MS, TimeUnit.NANOSECONDS.toMillis(remaining) + 1));
+            spoolQueued();
+        }
+    }
+
+    /**
+     * Пауза перед повтором, которая прерывается остановкой recorder.
+     */
+    private void sleepWhileRunning(long pauseMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pauseMs);
+        long remaining;
+
+        while (running && (remaining = deadline - System.nanoTime()) > 0) {
+            Thread.sleep(Math.min(IDLE_POLL_MS, TimeUnit.NANOSECONDS.toMillis(remaining) + 1));
+        }
+    }
+
+    private void spoolQueued() {
+        List<StatRequestDto> queued = new ArrayList<>();
+        queue.drainTo(queued);
+        spool(queued);
+    }
+
+    /**
+     * Записывает хиты в спул и очищает список; хиты, которые не поместились в спул, отбрасываются.
+     */
+    private void spool(List<StatRequestDto> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+
+        int written;
+
+        try {
+            written = spool.append(hits);
+        } catch (UncheckedIOException e) {
+            log.warn("Не удалось записать {} хитов в спул: {}", hits.size(), e.getMessage());
+            written = 0;
+        }
+
+        if (written < hits.size()) {
+            droppedHits.addAndGet(hits.size() - written);
+            log.warn("Спул хитов заполнен, отброшено хитов: {}", hits.size() - written);
+        }
+
+        hits.clear();
+    }
+
+    /**
+     * Ждет первый хит не дольше {@link #IDLE_POLL_MS}, затем добирает пачку до {@code batch-size}, пока первый хит
+     * не пролежит {@code max-age-ms}.
+     */
+    private void collect(List<StatRequestDto> batch) throws InterruptedException {
+        StatRequestDto first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+
+        if (first == null) {
+            return;
+        }
+
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxAgeMs);
+
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+
+            if (batch.size() >= batchSize || remaining <= 0) {
+                return;
+            }
+
+            StatRequestDto next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+
+            if (next == null) {
+                return;
+            }
+
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Отправляет пачку и очищает ее, если повторять не нужно.
+     *
+     * @return false, если пачку нужно повторить
+     */
+    private boolean deliver(List<StatRequestDto> batch) {
+        try {
+            ResponseEntity<Object> response = send(List.copyOf(batch));
+
+            if (response.getStatusCode().is2xxSuccessful()) {
+                sentHits.addAndGet(batch.size());
+            } else if (response.getStatusCode().is4xxClientError() && !isRetryable(response.getStatusCode())) {
+                droppedHits.addAndGet(batch.size());
+                log.warn("StatsService отклонил пачку из {} хитов: {}", batch.size(), response.getStatusCode());
+            } else {
+                log.warn("StatsService ответил {} на пачку из {} хитов", response.getStatusCode(), batch.size());
+                return false;
+            }
+        } catch (RestClientException e) {
+            log.warn("Пачка из {} хитов не отправлена: {}", batch.size(), e.getMessage());
+            return false;
+        }
+
+        batch.clear();
+        return true;
+    }
+
+    private ResponseEntity<Object> send(List<StatRequestDto> batch) {
+        if (asyncClient == null) {
+            return statClient.toHitBatch(batch);
+        }
+
+        try {
+            return asyncClient.toHitBatch(batch).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RestClientException) {
+                throw (RestClientException) e.getCause();
+            }
+
+            throw new RestClientException("Ошибка отправки пачки хитов", e.getCause());
+        } catch (CancellationException e) {
+            throw new RestClientException("Отправка пачки хитов отменена", e);
+        }
+    }
+
+    /**
+     * 429 (буфер приема StatsService переполнен) и 408 говорят о временной перегрузке, а не об ошибке в пачке.
+     */
+    private static boolean isRetryable(HttpStatus status) {
+        return status == HttpStatus.TOO_MANY_REQUESTS || status == HttpStatus.REQUEST_TIMEOUT;
+    }
+}
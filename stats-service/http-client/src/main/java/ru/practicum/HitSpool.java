@@ -0,0 +1,392 @@
+package ru.practicum;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.stat.dto.HitFrameCodec;
+import ru.practicum.model.stat.dto.StatRequestDto;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Дисковый спул хитов, которые не удалось отправить в StatsService. Хиты дописываются в конец набора
+ * сегментов <i>hits-&lt;номер&gt;.spool</i> каталога {@code dir} и читаются в порядке записи; позиция чтения
+ * хранится в файле <i>cursor</i>, поэтому после перезапуска чтение продолжается с первого неотправленного хита.
+ * <p>Запись в сегменте - CRC32 кадра и кадр {@link HitFrameCodec}. Сегмент, дописанный до {@code segment-bytes},
+ * закрывается, а полностью прочитанные сегменты удаляются. Запись, оборванная при аварийной остановке,
+ * не проходит проверку CRC, и остаток ее сегмента пропускается.</p>
+ * <p>Сегменты вместе занимают не больше {@code max-bytes}: хиты сверх этого не записываются. Политика
+ * {@code fsync}: ALWAYS - сброс на диск после каждой записи, INTERVAL - не чаще раза в {@code fsync-interval-ms},
+ * NEVER - сброс остается операционной системе.</p>
+ * <p>Включается параметром <i>stats-server.spool.enabled=true</i>.</p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats-server.spool.enabled", havingValue = "true")
+public class HitSpool {
+    public enum FsyncPolicy {
+        ALWAYS,
+        INTERVAL,
+        NEVER
+    }
+
+    private static final String SEGMENT_PREFIX = "hits-";
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String CURSOR_FILE = "cursor";
+    private static final int CRC_SIZE = Integer.BYTES;
+    private static final int READ_CHUNK_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMs;
+    private final NavigableMap<Long, Path> segments = new TreeMap<>();
+    private FileChannel writeChannel;
+    private FileChannel cursorChannel;
+    private long writeSeq;
+    private long writeSize;
+    private long readSeq;
+    private long readPosition;
+    private long peekSeq;
+    private long peekPosition;
+    private long totalBytes;
+    private boolean dirty;
+    private long lastFsync;
+
+    @Autowired
+    public HitSpool(@Value("${stats-server.spool.dir:spool/stats-hits}") String directory,
+                    @Value("${stats-server.spool.segment-bytes:16777216}") long segmentBytes,
+                    @Value("${stats-server.spool.max-bytes:1073741824}") long maxBytes,
+                    @Value("${stats-server.spool.fsync:INTERVAL}") FsyncPolicy fsyncPolicy,
+                    @Value("${stats-server.spool.fsync-interval-ms:1000}") long fsyncIntervalMs) {
+        this.directory = Paths.get(directory);
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+
+        log.debug("HitSpool(dir={}, segmentBytes={}, maxBytes={}, fsync={}, fsyncIntervalMs={})",
+                directory, segmentBytes, maxBytes, fsyncPolicy, fsyncIntervalMs);
+    }
+
+    /**
+     * Находит сегменты прошлых запусков и открывает новый сегмент для записи.
+     */
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())), file);
+                totalBytes += Files.size(file);
+            }
+        }
+
+        cursorChannel = FileChannel.open(directory.resolve(CURSOR_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer cursor = ByteBuffer.allocate(2 * Long.BYTES);
+
+        if (cursorChannel.read(cursor, 0) == cursor.capacity()) {
+            cursor.flip();
+            readSeq = cursor.getLong();
+            readPosition = cursor.getLong();
+        }
+
+        deleteSegmentsBefore(readSeq);
+        openWriteSegment(segments.isEmpty() ? 1 : segments.lastKey() + 1);
+
+        if (!segments.containsKey(readSeq)) {
+            readSeq = segments.firstKey();
+            readPosition = 0;
+        }
+
+        peekSeq = readSeq;
+        peekPosition = readPosition;
+
+        log.info("Спул хитов {}: сегментов {}, байт {}", directory.toAbsolutePath(), segments.size(), totalBytes);
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        fsync();
+        writeChannel.close();
+        cursorChannel.close();
+    }
+
+    public synchronized boolean isEmpty() {
+        return readSeq == writeSeq && readPosition >= writeSize;
+    }
+
+    public synchronized long getBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Дописывает хиты в спул.
+     *
+     * @return число записанных хитов: хиты сверх {@code max-bytes} и хиты, которые не кодируются в кадр,
+     * не записываются
+     */
+    public synchronized int append(List<StatRequestDto> hits) {
+        List<ByteBuffer> records = new ArrayList<>(hits.size());
+        long recordsSize = 0;
+        int written = 0;
+
+        try {
+            for (StatRequestDto hit : hits) {
+                byte[] frame;
+
+                try {
+                    frame = HitFrameCodec.encode(hit);
+                } catch (IllegalArgumentException e) {
+                    log.warn("Хит не записан в спул: {}", e.getMessage());
+                    continue;
+                }
+
+                int size = CRC_SIZE + frame.length;
+
+                if (totalBytes + recordsSize + size > maxBytes) {
+                    break;
+                }
+
+                if (writeSize + recordsSize > 0 && writeSize + recordsSize + size > segmentBytes) {
+                    write(records);
+                    totalBytes += recordsSize;
+                    recordsSize = 0;
+                    openWriteSegment(writeSeq + 1);
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(frame);
+                records.add(ByteBuffer.allocate(size).putInt((int) crc.getValue()).put(frame).flip());
+                recordsSize += size;
+                written++;
+            }
+
+            write(records);
+            totalBytes += recordsSize;
+            fsyncIfDue();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return written;
+    }
+
+    /**
+     * Читает до max хитов от позиции чтения, не сдвигая ее: позиция сдвигается {@link #commit()}, когда хиты
+     * отправлены.
+     */
+    public synchronized List<StatRequestDto> peek(int max) {
+        List<StatRequestDto> hits = new ArrayList<>();
+        long seq = readSeq;
+        long position = readPosition;
+
+        try {
+            while (hits.size() < max) {
+                Path segment = segments.get(seq);
+
+                if (segment == null) {
+                    break;
+                }
+
+                long size = seq == writeSeq ? writeSize : Files.size(segment);
+                long consumed = position < size ? read(segment, position, size, max, hits) : 0;
+                position += consumed;
+
+                if (consumed > 0) {
+                    continue;
+                }
+
+                if (seq == writeSeq) {
+                    if (position < size) {
+                        // Поврежденная запись в сегменте записи: следующие хиты пишутся в новый сегмент
+                        openWriteSegment(writeSeq + 1);
+                    } else {
+                        break;
+                    }
+                }
+
+                if (position < size) {
+                    log.warn("Спул хитов: поврежденная запись в {} на позиции {}, остаток сегмента пропущен",
+                            segment, position);
+                }
+
+                seq = segments.higherKey(seq);
+                position = 0;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        peekSeq = seq;
+        peekPosition = position;
+        return hits;
+    }
+
+    /**
+     * Сдвигает позицию чтения за хиты последнего {@link #peek} и удаляет прочитанные сегменты.
+     */
+    public synchronized void commit() {
+        readSeq = peekSeq;
+        readPosition = peekPosition;
+
+        try {
+            if (isEmpty() && writeSize > 0) {
+                openWriteSegment(writeSeq + 1);
+                readSeq = writeSeq;
+                readPosition = 0;
+            }
+
+            deleteSegmentsBefore(readSeq);
+            cursorChannel.write(ByteBuffer.allocate(2 * Long.BYTES).putLong(readSeq).putLong(readPosition).flip(), 0);
+            dirty = true;
+            fsyncIfDue();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Сбрасывает записанное на диск, если по политике {@code fsync} пора.
+     */
+    public synchronized void sync() {
+        try {
+            fsyncIfDue();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Разбирает записи сегмента от position до size.
+     *
+     * @return число разобранных байт; 0, если с position не начинается целая исправная запись
+     */
+    private long read(Path segment, long position, long size, int max, List<StatRequestDto> hits) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_CHUNK_SIZE, size - position));
+
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+                // читаем до заполнения буфера
+            }
+        }
+
+        buffer.flip();
+
+        while (hits.size() < max && buffer.remaining() > CRC_SIZE) {
+            int start = buffer.position();
+            int crc = buffer.getInt();
+            ByteBuffer frame = buffer.slice();
+            StatRequestDto hit;
+
+            try {
+                hit = HitFrameCodec.decode(frame);
+            } catch (IllegalArgumentException e) {
+                buffer.position(start);
+                break;
+            }
+
+            if (hit == null) {
+                buffer.position(start);
+                break;
+            }
+
+            CRC32 actual = new CRC32();
+            actual.update(buffer.duplicate().limit(buffer.position() + frame.position()));
+
+            if ((int) actual.getValue() != crc) {
+                buffer.position(start);
+                break;
+            }
+
+            buffer.position(buffer.position() + frame.position());
+            hits.add(hit);
+        }
+
+        return buffer.position();
+    }
+
+    private void write(List<ByteBuffer> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        ByteBuffer[] buffers = records.toArray(ByteBuffer[]::new);
+        long size = 0;
+
+        for (ByteBuffer buffer : buffers) {
+            size += buffer.remaining();
+        }
+
+        long written = 0;
+
+        while (written < size) {
+            written += writeChannel.write(buffers);
+        }
+
+        writeSize += size;
+        dirty = true;
+        records.clear();
+    }
+
+    private void openWriteSegment(long seq) throws IOException {
+        if (writeChannel != null) {
+            fsync();
+            writeChannel.close();
+        }
+
+        Path segment = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, seq, SEGMENT_SUFFIX));
+        writeChannel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        writeSeq = seq;
+        writeSize = 0;
+        segments.put(seq, segment);
+    }
+
+    private void deleteSegmentsBefore(long seq) throws IOException {
+        Iterator<Map.Entry<Long, Path>> consumed = segments.headMap(seq, false).entrySet().iterator();
+
+        while (consumed.hasNext()) {
+            Path segment = consumed.next().getValue();
+            totalBytes -= Files.size(segment);
+            Files.delete(segment);
+            consumed.remove();
+        }
+    }
+
+    private void fsyncIfDue() throws IOException {
+        if (fsyncPolicy == FsyncPolicy.ALWAYS
+                || (fsyncPolicy == FsyncPolicy.INTERVAL && System.currentTimeMillis() - lastFsync >= fsyncIntervalMs)) {
+            fsync();
+        }
+    }
+
+    private void fsync() throws IOException {
+        if (!dirty || fsyncPolicy == FsyncPolicy.NEVER) {
+            return;
+        }
+
+        writeChannel.force(false);
+        cursorChannel.force(false);
+        dirty = false;
+        lastFsync = System.currentTimeMillis();
+    }
+}
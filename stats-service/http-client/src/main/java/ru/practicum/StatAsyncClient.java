@@ -0,0 +1,27 @@
+package ru.practicum;
+
+import org.springframework.http.ResponseEntity;
+import ru.practicum.model.stat.dto.StatRequestDto;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Неблокирующий вариант {@link StatClient}: запрос отправляется без ожидания ответа, результат приходит
+ * в {@link CompletableFuture}. Если StatsService недоступен, future завершается
+ * {@link org.springframework.web.client.ResourceAccessException} - как и вызов {@link StatClient}.
+ */
+public interface StatAsyncClient {
+
+    CompletableFuture<ResponseEntity<Object>> toHit(StatRequestDto statRequestDto);
+
+    CompletableFuture<ResponseEntity<Object>> toHitBatch(List<StatRequestDto> statRequestDtos);
+
+    CompletableFuture<ResponseEntity<Object>> getStats(String start, String end, String[] uris, boolean unique);
+
+    CompletableFuture<Long> getUniqueEventViews(long eventId);
+
+    CompletableFuture<Map<Long, Long>> getUniqueEventViews(Collection<Long> eventIds);
+}
@@ -0,0 +1,230 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.util.DefaultUriBuilderFactory;
+import ru.practicum.model.stat.dto.StatRequestDto;
+import ru.practicum.model.stat.dto.StatResponseDto;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * {@link StatAsyncClient} на неблокирующем Apache HttpAsyncClient. Соединения со StatsService берутся из пула
+ * не больше {@code max-connections} и переиспользуются (keep-alive), а ответы читают {@code io-threads} потоков
+ * ввода-вывода - поток, отправивший запрос, не ждет ответа.
+ * <p>Запрос, который не уложился в {@code connect-timeout-ms}, {@code response-timeout-ms} или не получил
+ * соединение из пула за {@code pool-timeout-ms}, завершается {@link ResourceAccessException}. Ответ с кодом
+ * ошибки возвращается как есть, так же как в {@link StatClientImpl}. Тело успешного ответа разбирается
+ * {@link StatJsonReader} - теми же типизированными читателями, что и в синхронном клиенте.</p>
+ * <p>Включается параметром <i>stats-server.client=async</i>.</p>
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "stats-server.client", havingValue = "async")
+public class StatAsyncClientImpl implements StatAsyncClient {
+    private final CloseableHttpAsyncClient client;
+    private final DefaultUriBuilderFactory uriFactory;
+    private final ObjectMapper mapper;
+
+    @Autowired
+    public StatAsyncClientImpl(@Value("${stats-server.url}") String serverUrl,
+                               ObjectMapper mapper,
+                               @Value("${stats-server.async.max-connections:64}") int maxConnections,
+                               @Value("${stats-server.async.io-threads:2}") int ioThreads,
+                               @Value("${stats-server.async.connect-timeout-ms:1000}") int connectTimeoutMs,
+                               @Value("${stats-server.async.response-timeout-ms:3000}") int responseTimeoutMs,
+                               @Value("${stats-server.async.pool-timeout-ms:1000}") int poolTimeoutMs) {
+        this.uriFactory = new DefaultUriBuilderFactory(serverUrl);
+        this.mapper = mapper;
+        this.client = HttpAsyncClients.custom()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .setDefaultIOReactorConfig(IOReactorConfig.custom()
+                        .setIoThreadCount(ioThreads)
+                        .setConnectTimeout(connectTimeoutMs)
+                        .setSoTimeout(responseTimeoutMs)
+                        .build())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(connectTimeoutMs)
+                        .setSocketTimeout(responseTimeoutMs)
+                        .setConnectionRequestTimeout(poolTimeoutMs)
+                        .build())
+                .build();
+        this.client.start();
+
+        log.debug("StatAsyncClient(URL={}, maxConnections={}, ioThreads={}, connectTimeoutMs={}, "
+                        + "responseTimeoutMs={}, poolTimeoutMs={})", serverUrl, maxConnections, ioThreads,
+                connectTimeoutMs, responseTimeoutMs, poolTimeoutMs);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        client.close();
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<Object>> toHit(StatRequestDto statRequestDto) {
+        log.debug("StatAsyncClientImpl - statClient.toHit({})", statRequestDto);
+        return post("/hit", statRequestDto, body -> null);
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<Object>> toHitBatch(List<StatRequestDto> statRequestDtos) {
+        log.debug("StatAsyncClientImpl - statClient.toHitBatch(size={})", statRequestDtos.size());
+        return post("/hit/batch", statRequestDtos, body -> null);
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<Object>> getStats(String start, String end, String[] uris,
+                                                              boolean unique) {
+        log.debug("StatAsyncClientImpl - statClient.getStats({}, {}, {}, {})", start, end, uris, unique);
+        Map<String, Object> parameters = Map.of("start", start, "end", end, "uris", uris, "unique", unique);
+        return send(new HttpGet(uriFactory.expand("/stats?start={start}&end={end}&uris={uris}&unique={unique}",
+                parameters)), body -> {
+                    List<StatResponseDto> stats = new ArrayList<>();
+                    StatJsonReader.readStats(body, stats::add);
+                    return stats;
+                });
+    }
+
+    @Override
+    public CompletableFuture<Long> getUniqueEventViews(long eventId) {
+        log.debug("StatAsyncClientImpl - statClient.getUniqueEventViews(eventId={})", eventId);
+        return views(send(new HttpGet(uriFactory.expand("/stats/" + eventId)), StatJsonReader::readViews),
+                () -> 0L);
+    }
+
+    /**
+     * Просмотры списка событий одним запросом, как в {@link StatClientImpl#getUniqueEventViews(Collection)}.
+     */
+    @Override
+    public CompletableFuture<Map<Long, Long>> getUniqueEventViews(Collection<Long> eventIds) {
+        log.debug("StatAsyncClientImpl - statClient.getUniqueEventViews(size={})", eventIds.size());
+
+        if (eventIds.isEmpty()) {
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }
+
+        return views(post("/stats/views", eventIds, body -> StatJsonReader.readViews(eventIds, body)), () -> {
+            Map<Long, Long> views = new HashMap<>();
+            eventIds.forEach(eventId -> views.put(eventId, 0L));
+            return views;
+        });
+    }
+
+    /**
+     * Просмотры из разобранного ответа; при ответе с кодом ошибки просмотры считаются нулевыми, как и в
+     * {@link StatClientImpl}.
+     */
+    private <T> CompletableFuture<T> views(CompletableFuture<ResponseEntity<Object>> future, Supplier<T> noViews) {
+        return future.thenApply(response -> {
+            if (!response.getStatusCode().is2xxSuccessful()) {
+                log.warn("Проблемы с возвращаемым телом от StatsService: {}", response.getStatusCode());
+                return noViews.get();
+            }
+
+            @SuppressWarnings("unchecked")
+            T views = (T) response.getBody();
+            return views;
+        });
+    }
+
+    private <T> CompletableFuture<ResponseEntity<Object>> post(String path, T body, BodyReader reader) {
+        HttpPost request = new HttpPost(uriFactory.expand(path));
+
+        try {
+            request.setEntity(new ByteArrayEntity(mapper.writeValueAsBytes(body), ContentType.APPLICATION_JSON));
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(new RestClientException("Не удалось сериализовать запрос", e));
+        }
+
+        return send(request, reader);
+    }
+
+    private CompletableFuture<ResponseEntity<Object>> send(HttpUriRequest request, BodyReader reader) {
+        request.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+        CompletableFuture<ResponseEntity<Object>> future = new CompletableFuture<>();
+        URI uri = request.getURI();
+
+        client.execute(request, new FutureCallback<>() {
+            @Override
+            public void completed(HttpResponse response) {
+                try {
+                    future.complete(toResponseEntity(response, reader));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(new RestClientException("Не удалось прочитать ответ на "
+                            + request.getMethod() + " " + uri, e));
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                future.completeExceptionally(new ResourceAccessException("I/O error on " + request.getMethod()
+                        + " request for \"" + uri + "\": " + e.getMessage(),
+                        e instanceof IOException ? (IOException) e : new IOException(e)));
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Тело успешного ответа разбирается читателем запроса, тело ответа с кодом ошибки возвращается байтами.
+     */
+    private ResponseEntity<Object> toResponseEntity(HttpResponse response, BodyReader reader) throws IOException {
+        int status = response.getStatusLine().getStatusCode();
+        HttpEntity entity = response.getEntity();
+
+        if (status < 200 || status >= 300) {
+            return ResponseEntity.status(status).body(entity == null ? new byte[0] : EntityUtils.toByteArray(entity));
+        }
+
+        try (InputStream body = entity == null ? InputStream.nullInputStream() : entity.getContent()) {
+            return ResponseEntity.status(status).body(reader.read(body));
+        }
+    }
+
+    @FunctionalInterface
+    private interface BodyReader {
+        Object read(InputStream body) throws IOException;
+    }
+}
@@ -0,0 +1,95 @@
+package ru.practicum;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Предохранитель запросов к StatsService.
+ * <p>После {@code failureThreshold} неудач подряд (ошибка ввода-вывода, истекший срок или ответ 5xx) предохранитель
+ * размыкается, и на {@code openMs} все запросы отклоняются {@link StatServiceUnavailableException} без обращения
+ * к сети. Затем пропускается один пробный запрос: при успехе предохранитель замыкается, при неудаче снова
+ * размыкается.</p>
+ */
+@Slf4j
+public class StatCircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier nanoClock;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean probing;
+
+    public StatCircuitBreaker(int failureThreshold, long openMs) {
+        this(failureThreshold, openMs, System::nanoTime);
+    }
+
+    StatCircuitBreaker(int failureThreshold, long openMs, LongSupplier nanoClock) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+        this.nanoClock = nanoClock;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Разрешение на запрос; каждое разрешение должно завершаться вызовом {@link #release(boolean)}.
+     *
+     * @throws StatServiceUnavailableException если предохранитель разомкнут или пробный запрос уже выполняется
+     */
+    public synchronized void acquire() throws StatServiceUnavailableException {
+        if (state == State.OPEN) {
+            long waited = nanoClock.getAsLong() - openedAt;
+
+            if (waited < openNanos) {
+                throw new StatServiceUnavailableException("StatsService недоступен, повторная попытка через "
+                        + TimeUnit.NANOSECONDS.toMillis(openNanos - waited) + " мс");
+            }
+
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (probing) {
+                throw new StatServiceUnavailableException("StatsService недоступен, выполняется пробный запрос");
+            }
+
+            probing = true;
+        }
+    }
+
+    public synchronized void release(boolean success) {
+        if (success) {
+            if (state != State.CLOSED) {
+                log.info("StatsService снова доступен, предохранитель замкнут");
+            }
+
+            state = State.CLOSED;
+            failures = 0;
+            probing = false;
+            return;
+        }
+
+        failures++;
+
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            if (state != State.OPEN) {
+                log.warn("StatsService недоступен после {} неудачных запросов подряд, предохранитель разомкнут",
+                        failures);
+            }
+
+            state = State.OPEN;
+            openedAt = nanoClock.getAsLong();
+            probing = false;
+        }
+    }
+}
@@ -2,11 +2,19 @@ package ru.practicum;
 
 import org.springframework.http.ResponseEntity;
 import ru.practicum.model.stat.dto.StatRequestDto;
+import ru.practicum.model.stat.dto.StatResponseDto;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface StatClient {
 
     ResponseEntity<Object> toHit(StatRequestDto statRequestDto);
 
+    ResponseEntity<Object> toHitBatch(List<StatRequestDto> statRequestDtos);
+
     ResponseEntity<Object> getStats(String start, String end);
 
     ResponseEntity<Object> getStats(String start, String end, String[] uris);
@@ -15,5 +23,11 @@ public interface StatClient {
 
     ResponseEntity<Object> getStats(String start, String end, String[] uris, boolean unique);
 
+    List<StatResponseDto> getStatList(String start, String end, String[] uris, boolean unique);
+
+    void forEachStat(String start, String end, String[] uris, boolean unique, Consumer<StatResponseDto> consumer);
+
     long getUniqueEventViews(long eventId);
+
+    Map<Long, Long> getUniqueEventViews(Collection<Long> eventIds);
 }
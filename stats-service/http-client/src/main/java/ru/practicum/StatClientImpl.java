@@ -2,42 +2,152 @@ package ru.practicum;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.HttpClients;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.*;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.DefaultUriBuilderFactory;
 import ru.practicum.model.stat.dto.StatRequestDto;
+import ru.practicum.model.stat.dto.StatResponseDto;
 
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+/**
+ * Синхронный клиент StatsService.
+ * <p>Все запросы проходят через {@link StatCircuitBreaker}: пока он разомкнут, методы сразу бросают
+ * {@link StatServiceUnavailableException} без обращения к сети. Соединение ограничено {@code connect-timeout-ms},
+ * ожидание соединения из пула - {@code pool-timeout-ms}, ожидание данных - {@code socket-timeout-ms}.</p>
+ * <p>Чтения статистики и просмотров выполняются в пуле {@code read-threads} потоков и целиком укладываются в
+ * {@code read-deadline-ms}, иначе завершаются {@link StatDeadlineExceededException}. Если задан
+ * {@code hedge-delay-ms}, чтение, не получившее ответ за это время, дублируется вторым запросом, и берется
+ * первый полученный ответ.</p>
+ * <p>Брошенная попытка чтения (истек срок или первым ответил дубль) прерывается, а ее HTTP-запрос отменяется,
+ * чтобы поток чтения не ждал ответа до {@code socket-timeout-ms}. Очередь пула ограничена
+ * {@code read-queue-size}: если заняты все потоки и очередь, чтение сразу завершается
+ * {@link StatServiceUnavailableException} и считается неудачей предохранителя, а не ждет в очереди до срока.
+ * Дубль, для которого нет места, просто не отправляется.</p>
+ * <p>Потоковое чтение {@link #forEachStat} выполняется в потоке вызывающего без дублирования и без общего срока:
+ * consumer получает записи по мере чтения, поэтому второй запрос передавал бы их повторно, а брошенная попытка
+ * продолжала бы вызывать consumer после срока. Его ограничивают только {@code socket-timeout-ms} и
+ * предохранитель.</p>
+ */
 @Slf4j
 @Getter
 @Service
 public class StatClientImpl implements StatClient {
     private final RestTemplate rest;
+    private final StatCircuitBreaker circuitBreaker;
+    private final ExecutorService readExecutor;
+    private final long readDeadlineMs;
+    private final long hedgeDelayMs;
+    private final ThreadLocal<ReadAttempt> currentAttempt = new ThreadLocal<>();
     private static final String API_PREFIX = "";
+    private static final String STATS_PATH = "/stats?start={start}&end={end}&uris={uris}&unique={unique}";
+
+    public StatClientImpl(String serverUrl, RestTemplateBuilder builder) {
+        this(properties(serverUrl), builder);
+    }
 
     @Autowired
-    public StatClientImpl(@Value("${stats-server.url}") String serverUrl, RestTemplateBuilder builder) {
+    public StatClientImpl(StatClientProperties properties, RestTemplateBuilder builder) {
+        StatClientProperties.Sync sync = properties.getSync();
+        StatClientProperties.Breaker breaker = properties.getBreaker();
+
         rest = builder
-                .uriTemplateHandler(new DefaultUriBuilderFactory(serverUrl + API_PREFIX))
-                .requestFactory(HttpComponentsClientHttpRequestFactory::new)
+                .uriTemplateHandler(new DefaultUriBuilderFactory(properties.getUrl() + API_PREFIX))
+                .requestFactory(() -> {
+                    HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(
+                            HttpClients.custom()
+                                    .setMaxConnTotal(sync.getMaxConnections())
+                                    .setMaxConnPerRoute(sync.getMaxConnections())
+                                    .build()) {
+                        @Override
+                        protected void postProcessHttpRequest(HttpUriRequest request) {
+                            ReadAttempt attempt = currentAttempt.get();
+
+                            if (attempt != null) {
+                                attempt.sending(request);
+                            }
+                        }
+                    };
+                    factory.setConnectTimeout(sync.getConnectTimeoutMs());
+                    factory.setConnectionRequestTimeout(sync.getPoolTimeoutMs());
+                    factory.setReadTimeout(sync.getSocketTimeoutMs());
+                    return factory;
+                })
                 .build();
+        this.circuitBreaker = new StatCircuitBreaker(breaker.getFailureThreshold(), breaker.getOpenMs());
+        this.readDeadlineMs = sync.getReadDeadlineMs();
+        this.hedgeDelayMs = sync.getHedgeDelayMs();
+
+        AtomicInteger threads = new AtomicInteger();
+        BlockingQueue<Runnable> queue = sync.getReadQueueSize() > 0
+                ? new ArrayBlockingQueue<>(sync.getReadQueueSize())
+                : new SynchronousQueue<>();
+        this.readExecutor = new ThreadPoolExecutor(sync.getReadThreads(), sync.getReadThreads(), 0,
+                TimeUnit.MILLISECONDS, queue, runnable -> {
+                    Thread thread = new Thread(runnable, "stats-client-read-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        log.debug("StatClient(URL={}{}, connectTimeoutMs={}, poolTimeoutMs={}, socketTimeoutMs={}, maxConnections={}, "
+                        + "readDeadlineMs={}, hedgeDelayMs={}, readThreads={}, readQueueSize={}, failureThreshold={}, "
+                        + "openMs={})", properties.getUrl(), API_PREFIX, sync.getConnectTimeoutMs(),
+                sync.getPoolTimeoutMs(), sync.getSocketTimeoutMs(), sync.getMaxConnections(), readDeadlineMs,
+                hedgeDelayMs, sync.getReadThreads(), sync.getReadQueueSize(), breaker.getFailureThreshold(),
+                breaker.getOpenMs());
+    }
+
+    private static StatClientProperties properties(String serverUrl) {
+        StatClientProperties properties = new StatClientProperties();
+        properties.setUrl(serverUrl);
+        return properties;
+    }
 
-        log.debug("StatClient(URL={}{})", serverUrl, API_PREFIX);
+    @PreDestroy
+    public void close() {
+        readExecutor.shutdownNow();
     }
 
     public ResponseEntity<Object> toHit(StatRequestDto statRequestDto) {
         log.debug("StatClientImpl - statClient.createItem({})", statRequestDto);
-        return post("/hit", statRequestDto);
+        return guarded(() -> post("/hit", statRequestDto));
+    }
+
+    public ResponseEntity<Object> toHitBatch(List<StatRequestDto> statRequestDtos) {
+        log.debug("StatClientImpl - statClient.toHitBatch(size={})", statRequestDtos.size());
+        return guarded(() -> post("/hit/batch", statRequestDtos));
     }
 
     private <T> ResponseEntity<Object> post(String path, T body) {
@@ -69,8 +179,33 @@ public class StatClientImpl implements StatClient {
                                            String[] uris,
                                            boolean unique) {
         log.debug("StatClientImpl - statClient.getStats({}, {}, {}, {})", start, end, uris, unique);
-        Map<String, Object> parameters = Map.of("start", start, "end", end, "uris", uris, "unique", unique);
-        return get("/stats" + "?start={start}&end={end}&uris={uris}&unique={unique}", parameters);
+        return read(() -> get(STATS_PATH, statsParameters(start, end, uris, unique)));
+    }
+
+    @Override
+    public List<StatResponseDto> getStatList(String start, String end, String[] uris, boolean unique) {
+        List<StatResponseDto> stats = new ArrayList<>();
+        forEachStat(start, end, uris, unique, stats::add);
+        return stats;
+    }
+
+    /**
+     * Записи статистики передаются consumer по мере чтения тела ответа, без промежуточного дерева JSON. Ответ
+     * с кодом ошибки завершается {@link org.springframework.web.client.HttpStatusCodeException}.
+     */
+    @Override
+    public void forEachStat(String start, String end, String[] uris, boolean unique,
+                            Consumer<StatResponseDto> consumer) {
+        log.debug("StatClientImpl - statClient.forEachStat({}, {}, {}, {})", start, end, uris, unique);
+        guarded(() -> extract(HttpMethod.GET, STATS_PATH, statsParameters(start, end, uris, unique), null,
+                response -> {
+                    StatJsonReader.readStats(response.getBody(), consumer);
+                    return null;
+                }));
+    }
+
+    private Map<String, Object> statsParameters(String start, String end, String[] uris, boolean unique) {
+        return Map.of("start", start, "end", end, "uris", uris, "unique", unique);
     }
 
     private ResponseEntity<Object> get(String path, @Nullable Map<String, Object> parameters) {
@@ -81,17 +216,202 @@ public class StatClientImpl implements StatClient {
     @Override
     public long getUniqueEventViews(long eventId) {
         log.debug("StatClientImpl - statClient.getUniqueEventViews(eventId={})", eventId);
-        Object responseBody = get("/stats/" + eventId, null).getBody();
-        System.out.println(responseBody);
 
         try {
-            return Long.parseLong(responseBody.toString());
-        } catch (RuntimeException ignore) {
-            log.warn("Проблемы с возвращаемым телом от StatsService");
+            return read(() -> extract(HttpMethod.GET, "/stats/" + eventId, null, null,
+                    response -> StatJsonReader.readViews(response.getBody())));
+        } catch (HttpStatusCodeException e) {
+            log.warn("Проблемы с возвращаемым телом от StatsService: {}", e.getStatusCode());
             return 0;
         }
     }
 
+    /**
+     * Просмотры списка событий одним запросом. При проблемах с ответом StatsService просмотры считаются нулевыми,
+     * как и в {@link #getUniqueEventViews(long)}.
+     */
+    @Override
+    public Map<Long, Long> getUniqueEventViews(Collection<Long> eventIds) {
+        log.debug("StatClientImpl - statClient.getUniqueEventViews(size={})", eventIds.size());
+
+        if (eventIds.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        try {
+            return read(() -> extract(HttpMethod.POST, "/stats/views", null, eventIds,
+                    response -> StatJsonReader.readViews(eventIds, response.getBody())));
+        } catch (HttpStatusCodeException e) {
+            log.warn("Проблемы с возвращаемым телом от StatsService: {}", e.getStatusCode());
+            Map<Long, Long> views = new HashMap<>();
+            eventIds.forEach(eventId -> views.put(eventId, 0L));
+            return views;
+        }
+    }
+
+    /**
+     * Запрос через предохранитель: неудачей считается исключение или ответ 5xx, ответ 4xx неудачей не считается.
+     */
+    private <R> R guarded(Supplier<R> request) {
+        circuitBreaker.acquire();
+        boolean success = false;
+
+        try {
+            R response = request.get();
+            success = !(response instanceof ResponseEntity
+                    && ((ResponseEntity<?>) response).getStatusCode().is5xxServerError());
+            return response;
+        } catch (HttpClientErrorException e) {
+            success = true;
+            throw e;
+        } finally {
+            circuitBreaker.release(success);
+        }
+    }
+
+    /**
+     * Идемпотентное чтение со сроком {@code read-deadline-ms} и, если задан {@code hedge-delay-ms}, с повторным
+     * запросом, отправленным не дожидаясь ответа на первый.
+     */
+    private <R> R read(Supplier<R> request) {
+        return guarded(() -> {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(readDeadlineMs);
+            CompletableFuture<R> result = new CompletableFuture<>();
+            AtomicInteger pending = new AtomicInteger();
+            List<ReadAttempt> attempts = new ArrayList<>(2);
+
+            try {
+                attempts.add(attempt(request, result, pending));
+
+                if (hedgeDelayMs > 0 && hedgeDelayMs < readDeadlineMs) {
+                    try {
+                        return result.get(hedgeDelayMs, TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException e) {
+                        hedge(request, result, pending, attempts);
+                    }
+                }
+
+                return result.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                throw new StatServiceUnavailableException("Заняты все потоки чтения StatsService");
+            } catch (TimeoutException e) {
+                throw new StatDeadlineExceededException("StatsService не ответил за " + readDeadlineMs + " мс");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+
+                throw new ResourceAccessException("Ошибка запроса к StatsService: " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ResourceAccessException("Запрос к StatsService прерван");
+            } finally {
+                attempts.forEach(ReadAttempt::cancel);
+            }
+        });
+    }
+
+    private <R> void hedge(Supplier<R> request,
+                           CompletableFuture<R> result,
+                           AtomicInteger pending,
+                           List<ReadAttempt> attempts) {
+        try {
+            attempts.add(attempt(request, result, pending));
+            log.debug("StatsService не ответил за {} мс, запрос продублирован", hedgeDelayMs);
+        } catch (RejectedExecutionException e) {
+            log.debug("StatsService не ответил за {} мс, но потоки чтения заняты: запрос не продублирован",
+                    hedgeDelayMs);
+        }
+    }
+
+    /**
+     * Запускает попытку чтения; результат завершается первым ответом или ошибкой последней из попыток.
+     *
+     * @throws RejectedExecutionException если заняты все потоки и очередь чтения
+     */
+    private <R> ReadAttempt attempt(Supplier<R> request,
+                                    CompletableFuture<R> result,
+                                    AtomicInteger pending) {
+        ReadAttempt attempt = new ReadAttempt();
+        pending.incrementAndGet();
+
+        try {
+            attempt.future = readExecutor.submit(() -> {
+                currentAttempt.set(attempt);
+
+                try {
+                    result.complete(request.get());
+                } catch (RuntimeException e) {
+                    if (pending.decrementAndGet() == 0) {
+                        result.completeExceptionally(e);
+                    }
+                } finally {
+                    currentAttempt.remove();
+                    attempt.finished();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+
+        return attempt;
+    }
+
+    /**
+     * Попытка чтения в пуле и ее HTTP-запрос. Прерывание потока не останавливает блокирующее чтение сокета,
+     * поэтому отмена попытки отменяет и запрос - сразу или, если он еще не создан, в момент создания.
+     */
+    private static class ReadAttempt {
+        private volatile Future<?> future;
+        private HttpUriRequest request;
+        private boolean cancelled;
+        private boolean finished;
+
+        synchronized void sending(HttpUriRequest request) {
+            this.request = request;
+
+            if (cancelled) {
+                request.abort();
+            }
+        }
+
+        synchronized void finished() {
+            finished = true;
+        }
+
+        void cancel() {
+            future.cancel(true);
+
+            synchronized (this) {
+                cancelled = true;
+
+                if (request != null && !finished) {
+                    request.abort();
+                }
+            }
+        }
+    }
+
+    /**
+     * Запрос, тело ответа которого разбирает extractor прямо из потока. Ответ с кодом ошибки завершается
+     * {@link HttpStatusCodeException}.
+     */
+    @Nullable
+    private <T, R> R extract(@NonNull HttpMethod method,
+                             @NonNull String path,
+                             @Nullable Map<String, Object> requestParameters,
+                             @Nullable T body,
+                             ResponseExtractor<R> extractor) {
+        RequestCallback requestCallback = rest.httpEntityCallback(new HttpEntity<>(body, defaultHeaders()));
+
+        if (requestParameters != null) {
+            return rest.execute(path, method, requestCallback, extractor, requestParameters);
+        }
+
+        return rest.execute(path, method, requestCallback, extractor);
+    }
+
     private <T> ResponseEntity<Object> makeAndSendRequest(@NonNull HttpMethod method,
                                                           @NonNull String path,
                                                           @Nullable Map<String, Object> requestParameters,
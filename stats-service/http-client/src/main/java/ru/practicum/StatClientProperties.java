@@ -0,0 +1,46 @@
+package ru.practicum;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Параметры синхронного клиента StatsService {@link StatClientImpl}: <i>stats-server.url</i>,
+ * <i>stats-server.sync.*</i> и <i>stats-server.breaker.*</i>.
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "stats-server")
+public class StatClientProperties {
+    private String url;
+    private Sync sync = new Sync();
+    private Breaker breaker = new Breaker();
+
+    @Getter
+    @Setter
+    public static class Sync {
+        private int connectTimeoutMs = 500;
+        private int poolTimeoutMs = 500;
+        private int socketTimeoutMs = 3000;
+        private int maxConnections = 32;
+        private long readDeadlineMs = 1000;
+        /**
+         * Задержка дублирующего запроса чтения, 0 - не дублировать.
+         */
+        private long hedgeDelayMs;
+        private int readThreads = 16;
+        /**
+         * Сколько чтений может ждать свободного потока; чтение сверх этого сразу отклоняется.
+         */
+        private int readQueueSize = 32;
+    }
+
+    @Getter
+    @Setter
+    public static class Breaker {
+        private int failureThreshold = 5;
+        private long openMs = 10_000;
+    }
+}
@@ -0,0 +1,12 @@
+package ru.practicum;
+
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * StatsService не ответил до истечения срока операции.
+ */
+public class StatDeadlineExceededException extends ResourceAccessException {
+    public StatDeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,136 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import ru.practicum.model.stat.dto.StatResponseDto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Потоковый разбор ответов StatsService: значения читаются из тела ответа по одному, без промежуточного
+ * дерева {@code Map}/{@code List}.
+ */
+@Slf4j
+final class StatJsonReader {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private StatJsonReader() {
+    }
+
+    /**
+     * Разбирает ответ <i>GET /stats</i> и передает записи consumer по мере чтения.
+     */
+    static void readStats(InputStream body, Consumer<StatResponseDto> consumer) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            JsonToken token = parser.nextToken();
+
+            if (token == null) {
+                return;
+            }
+
+            if (token != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Ожидался массив статистики, получено " + token);
+            }
+
+            while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                consumer.accept(readStat(parser));
+            }
+
+            if (token != JsonToken.END_ARRAY) {
+                throw new JsonParseException(parser, "Ожидалась запись статистики, получено " + token);
+            }
+        }
+    }
+
+    private static StatResponseDto readStat(JsonParser parser) throws IOException {
+        StatResponseDto stat = StatResponseDto.of();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+
+            switch (field) {
+                case "app":
+                    stat.setApp(parser.getValueAsString());
+                    break;
+                case "uri":
+                    stat.setUri(parser.getValueAsString());
+                    break;
+                case "hits":
+                    stat.setHits(parser.getValueAsLong());
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        return stat;
+    }
+
+    /**
+     * Разбирает ответ <i>GET /stats/{eventId}</i>; при проблемах с телом просмотры считаются нулевыми.
+     */
+    static long readViews(InputStream body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            JsonToken token = parser.nextToken();
+
+            if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_STRING) {
+                Long views = toLong(parser.getText());
+
+                if (views != null) {
+                    return views;
+                }
+            }
+
+            log.warn("Проблемы с возвращаемым телом от StatsService");
+            return 0;
+        }
+    }
+
+    /**
+     * Разбирает ответ <i>POST /stats/views</i>; события без просмотров в ответе получают ноль.
+     */
+    static Map<Long, Long> readViews(Collection<Long> eventIds, InputStream body) throws IOException {
+        Map<Long, Long> views = new HashMap<>();
+        eventIds.forEach(eventId -> views.put(eventId, 0L));
+
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                log.warn("Проблемы с возвращаемым телом от StatsService");
+                return views;
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String eventId = parser.getCurrentName();
+                Long id = toLong(eventId);
+
+                if (parser.nextToken() == JsonToken.VALUE_NUMBER_INT && id != null) {
+                    views.put(id, parser.getLongValue());
+                } else {
+                    log.warn("Проблемы с возвращаемым телом от StatsService: {}={}", eventId, parser.getText());
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        return views;
+    }
+
+    @Nullable
+    private static Long toLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ignore) {
+            return null;
+        }
+    }
+}
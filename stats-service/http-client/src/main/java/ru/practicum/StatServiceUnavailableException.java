@@ -0,0 +1,14 @@
+package ru.practicum;
+
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Запрос к StatsService не отправлен, так как {@link StatCircuitBreaker} разомкнут или заняты все потоки и место
+ * в очереди чтения {@link StatClientImpl}. Наследует
+ * {@link ResourceAccessException}, поэтому вызывающий код обрабатывает его так же, как недоступный сервер.
+ */
+public class StatServiceUnavailableException extends ResourceAccessException {
+    public StatServiceUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,100 @@
+package ru.practicum.app;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.model.app.App;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Приложения по имени. Все приложения хранятся в памяти процесса - их немного, - и при приеме хитов
+ * к таблице <i>app</i> обращаются только за новыми именами.
+ * <p>Новые имена добавляются пакетным <i>insert ... on conflict do nothing</i> и дочитываются одним <i>select</i>,
+ * так что одновременные первые хиты одного приложения не приводят к ошибке уникальности. В память они попадают
+ * только после фиксации транзакции: id строки, вставленной откаченной транзакцией, не существует.</p>
+ */
+@Slf4j
+@Component
+public class AppRegistry {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Map<String, App> apps = new ConcurrentHashMap<>();
+
+    @Autowired
+    public AppRegistry(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Загружает все приложения. Если БД недоступна, приложения будут загружаться по мере приема хитов.
+     */
+    @PostConstruct
+    public void warmUp() {
+        try {
+            jdbcTemplate.query("select id, app from app", rs -> {
+                App app = App.builder().id(rs.getLong("id")).app(rs.getString("app")).build();
+                apps.put(app.getApp(), app);
+            });
+            log.info("Загружено приложений: {}", apps.size());
+        } catch (RuntimeException e) {
+            log.warn("Не удалось загрузить приложения: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Приложения по именам; отсутствующие в таблице <i>app</i> создаются.
+     */
+    public Map<String, App> resolve(Collection<String> appNames) {
+        Map<String, App> resolved = new HashMap<>();
+        SortedSet<String> missing = new TreeSet<>();
+
+        for (String appName : appNames) {
+            App app = apps.get(appName);
+
+            if (app != null) {
+                resolved.put(appName, app);
+            } else {
+                missing.add(appName);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return resolved;
+        }
+
+        log.debug("AppRegistry - resolve(known={}, missing={})", resolved.size(), missing);
+
+        jdbcTemplate.batchUpdate("insert into app (app) values (:app) on conflict (app) do nothing",
+                missing.stream()
+                        .map(appName -> new MapSqlParameterSource("app", appName))
+                        .toArray(MapSqlParameterSource[]::new));
+
+        Map<String, App> created = new HashMap<>();
+        jdbcTemplate.query("select id, app from app where app in (:apps)",
+                new MapSqlParameterSource("apps", missing),
+                rs -> {
+                    App app = App.builder().id(rs.getLong("id")).app(rs.getString("app")).build();
+                    created.put(app.getApp(), app);
+                });
+        resolved.putAll(created);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apps.putAll(created);
+                }
+            });
+        } else {
+            apps.putAll(created);
+        }
+
+        return resolved;
+    }
+}
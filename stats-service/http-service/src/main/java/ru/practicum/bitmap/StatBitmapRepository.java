@@ -0,0 +1,324 @@
+package ru.practicum.bitmap;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.stat.Stat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Сжатые битовые карты (Roaring) идентификаторов ip по ключу (app, uri, день) для точного подсчета
+ * уникальных посетителей без <i>count(distinct)</i> по сырым строкам.
+ * <p>Прием хитов не переписывает карту дня: каждая пачка добавляет свои карты строками-дельтами
+ * в <i>stat_bitmap_day_delta</i> без блокировок, а {@link #fold} в фоне объединяет дельты с картами
+ * <i>stat_bitmap_day</i> и удаляет их. Читатели объединяют обе таблицы; объединение карт идемпотентно, поэтому
+ * дельта, уже вошедшая в карту дня, результат не меняет.</p>
+ */
+@Slf4j
+@Repository
+public class StatBitmapRepository {
+    private static final int KEYS_PER_QUERY = 1000;
+    private static final String BITMAPS = "select app_id, uri_id, bucket, bitmap from stat_bitmap_day " +
+            "union all select app_id, uri_id, bucket, bitmap from stat_bitmap_day_delta";
+    private static final Comparator<BitmapKey> KEY_ORDER = Comparator.comparing(BitmapKey::getBucket)
+            .thenComparingInt(BitmapKey::getUriId)
+            .thenComparingLong(BitmapKey::getAppId);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+
+    @Autowired
+    public StatBitmapRepository(NamedParameterJdbcTemplate jdbcTemplate,
+                                @Value("${stats.bitmap.enabled:true}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+
+        log.debug("StatBitmapRepository(enabled={})", enabled);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static LocalDateTime floorDay(LocalDateTime dateTime) {
+        return dateTime.truncatedTo(ChronoUnit.DAYS);
+    }
+
+    public static LocalDateTime ceilDay(LocalDateTime dateTime) {
+        LocalDateTime floor = floorDay(dateTime);
+        return floor.equals(dateTime) ? floor : floor.plusDays(1);
+    }
+
+    /**
+     * Добавляет ip пачки хитов дельтами - по строке на ключ (app, uri, день) пачки, одним пакетом вставок
+     * без чтения и блокировки карт дня.
+     */
+    public void merge(List<Stat> stats) {
+        if (!enabled) {
+            return;
+        }
+
+        log.debug("StatBitmapRepository - repository.merge(size={})", stats.size());
+
+        Map<BitmapKey, RoaringBitmap> bitmaps = new TreeMap<>(KEY_ORDER);
+
+        for (Stat stat : stats) {
+            BitmapKey key = new BitmapKey(stat.getApp().getId(), stat.getUri().getId(), floorDay(stat.getRequested()));
+            bitmaps.computeIfAbsent(key, ignore -> new RoaringBitmap()).add(stat.getIp().getId());
+        }
+
+        jdbcTemplate.batchUpdate("insert into stat_bitmap_day_delta (app_id, uri_id, bucket, bitmap) " +
+                        "values (:appId, :uriId, :bucket, :bitmap)",
+                bitmaps.entrySet().stream()
+                        .map(entry -> keyParameters(entry.getKey()).addValue("bitmap", toBytes(entry.getValue())))
+                        .toArray(MapSqlParameterSource[]::new));
+    }
+
+    /**
+     * Объединяет до limit самых старых дельт с картами дня и удаляет их. Затронутые карты блокируются
+     * <i>for update</i> в едином порядке ключей - от параллельного {@link #rebuild} и другого экземпляра сервиса;
+     * прием хитов эти строки не трогает. Удаляются ровно прочитанные дельты: дельта транзакции, которая
+     * зафиксируется позже, останется до следующего запуска.
+     *
+     * @return число объединенных дельт
+     */
+    public int fold(int limit) {
+        Map<BitmapKey, RoaringBitmap> bitmaps = new TreeMap<>(KEY_ORDER);
+        List<Long> ids = new ArrayList<>();
+
+        jdbcTemplate.query("select id, app_id, uri_id, bucket, bitmap from stat_bitmap_day_delta order by id limit :limit",
+                new MapSqlParameterSource("limit", limit),
+                rs -> {
+                    BitmapKey key = new BitmapKey(rs.getLong("app_id"), rs.getInt("uri_id"),
+                            rs.getTimestamp("bucket").toLocalDateTime());
+                    bitmaps.computeIfAbsent(key, ignore -> new RoaringBitmap()).or(fromBytes(rs.getBytes("bitmap")));
+                    ids.add(rs.getLong("id"));
+                });
+
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        log.debug("StatBitmapRepository - repository.fold(deltas={}, bitmaps={})", ids.size(), bitmaps.size());
+
+        List<BitmapKey> keys = new ArrayList<>(bitmaps.keySet());
+        byte[] emptyBitmap = toBytes(new RoaringBitmap());
+
+        jdbcTemplate.batchUpdate("insert into stat_bitmap_day (app_id, uri_id, bucket, bitmap) " +
+                        "values (:appId, :uriId, :bucket, :bitmap) on conflict (bucket, uri_id, app_id) do nothing",
+                keys.stream().map(key -> keyParameters(key).addValue("bitmap", emptyBitmap))
+                        .toArray(MapSqlParameterSource[]::new));
+
+        for (int from = 0; from < keys.size(); from += KEYS_PER_QUERY) {
+            List<BitmapKey> chunk = keys.subList(from, Math.min(keys.size(), from + KEYS_PER_QUERY));
+            List<Object[]> tuples = chunk.stream()
+                    .map(key -> new Object[]{Timestamp.valueOf(key.getBucket()), key.getUriId(), key.getAppId()})
+                    .collect(Collectors.toList());
+
+            jdbcTemplate.query("select app_id, uri_id, bucket, bitmap from stat_bitmap_day " +
+                            "where (bucket, uri_id, app_id) in (:keys) order by bucket, uri_id, app_id for update",
+                    new MapSqlParameterSource("keys", tuples),
+                    rs -> {
+                        BitmapKey key = new BitmapKey(rs.getLong("app_id"), rs.getInt("uri_id"),
+                                rs.getTimestamp("bucket").toLocalDateTime());
+                        RoaringBitmap stored = fromBytes(rs.getBytes("bitmap"));
+                        bitmaps.computeIfPresent(key, (ignore, bitmap) -> RoaringBitmap.or(bitmap, stored));
+                    });
+        }
+
+        upsert(bitmaps);
+
+        for (int from = 0; from < ids.size(); from += KEYS_PER_QUERY) {
+            jdbcTemplate.update("delete from stat_bitmap_day_delta where id in (:ids)",
+                    new MapSqlParameterSource("ids", ids.subList(from, Math.min(ids.size(), from + KEYS_PER_QUERY))));
+        }
+
+        return ids.size();
+    }
+
+    /**
+     * Пересчитывает карты дней полуинтервала [from, to), границы которого выровнены по дню, из сырых строк
+     * <i>stat</i>. Дни без сырых строк пропускаются: их строки могли быть удалены по сроку хранения, а карты -
+     * единственная оставшаяся история. Запись перезаписывает карту при конфликте со строкой, которую
+     * параллельный {@link #fold} создал после удаления. Дельты дня не удаляются: дельта транзакции, которая
+     * зафиксируется после чтения сырых строк, может не войти в пересчитанную карту.
+     *
+     * @return число пересчитанных карт
+     */
+    public int rebuild(LocalDateTime from, LocalDateTime to) {
+        log.debug("StatBitmapRepository - repository.rebuild({}, {})", from, to);
+
+        int rebuilt = 0;
+
+        for (LocalDateTime day = from; day.isBefore(to); day = day.plusDays(1)) {
+            Map<BitmapKey, RoaringBitmap> bitmaps = new TreeMap<>(KEY_ORDER);
+            LocalDateTime bucket = day;
+
+            jdbcTemplate.query("select app_id, uri_id, ip_id from stat where requested >= :from and requested < :to",
+                    rangeParameters(day, day.plusDays(1)),
+                    rs -> {
+                        BitmapKey key = new BitmapKey(rs.getLong("app_id"), rs.getInt("uri_id"), bucket);
+                        bitmaps.computeIfAbsent(key, ignore -> new RoaringBitmap()).add(rs.getInt("ip_id"));
+                    });
+
+            if (bitmaps.isEmpty()) {
+                continue;
+            }
+
+            jdbcTemplate.update("delete from stat_bitmap_day where bucket = :bucket",
+                    new MapSqlParameterSource("bucket", Timestamp.valueOf(day)));
+            upsert(bitmaps);
+            rebuilt += bitmaps.size();
+        }
+
+        return rebuilt;
+    }
+
+    /**
+     * Обходит карты и дельты дней полуинтервала [from, to), границы которого выровнены по дню. Один ключ
+     * (app, uri) может встретиться несколько раз - потребитель объединяет карты.
+     *
+     * @param uris фильтр по uri, null - без фильтра
+     */
+    public void forEachBitmap(LocalDateTime from, LocalDateTime to, String[] uris,
+                              BiConsumer<List<String>, RoaringBitmap> consumer) {
+        log.debug("StatBitmapRepository - repository.forEachBitmap({}, {}, {})", from, to, uris);
+
+        MapSqlParameterSource parameters = rangeParameters(from, to);
+        String sql = "select a.app, u.uri, b.bitmap " +
+                "from (" + BITMAPS + ") as b " +
+                "left join app as a on b.app_id = a.id " +
+                "join uri as u on b.uri_id = u.id " +
+                "where b.bucket >= :from and b.bucket < :to " + uriFilter(uris, parameters);
+
+        jdbcTemplate.query(sql, parameters, rs -> {
+            consumer.accept(Arrays.asList(rs.getString("app"), rs.getString("uri")), fromBytes(rs.getBytes("bitmap")));
+        });
+    }
+
+    /**
+     * Обходит уникальные (app, uri, ip_id) сырых хитов полуинтервала [from, to) - для неполных дней на краях.
+     */
+    public void forEachRawIpId(LocalDateTime from, LocalDateTime to, String[] uris,
+                               BiConsumer<List<String>, Integer> consumer) {
+        log.debug("StatBitmapRepository - repository.forEachRawIpId({}, {}, {})", from, to, uris);
+
+        MapSqlParameterSource parameters = rangeParameters(from, to);
+        String sql = "select a.app, u.uri, s.ip_id " +
+                "from (select distinct s.app_id, s.uri_id, s.ip_id from stat as s " +
+                "where s.requested >= :from and s.requested < :to) as s " +
+                "left join app as a on s.app_id = a.id " +
+                "join uri as u on s.uri_id = u.id " +
+                "where true " + uriFilter(uris, parameters);
+
+        jdbcTemplate.query(sql, parameters, rs -> {
+            consumer.accept(Arrays.asList(rs.getString("app"), rs.getString("uri")), rs.getInt("ip_id"));
+        });
+    }
+
+    /**
+     * Объединение всех дневных карт uri за всю историю.
+     */
+    public RoaringBitmap findUriBitmap(String uri) {
+        return findUriBitmaps(List.of(uri)).getOrDefault(uri, new RoaringBitmap());
+    }
+
+    /**
+     * Объединения всех дневных карт и дельт каждого uri из списка за всю историю - одним запросом. Uri без хитов
+     * в результат не попадают.
+     */
+    public Map<String, RoaringBitmap> findUriBitmaps(Collection<String> uris) {
+        log.debug("StatBitmapRepository - repository.findUriBitmaps(size={})", uris.size());
+
+        Map<String, RoaringBitmap> result = new HashMap<>();
+
+        if (uris.isEmpty()) {
+            return result;
+        }
+
+        jdbcTemplate.query("select u.uri, b.bitmap from (" + BITMAPS + ") as b join uri as u on b.uri_id = u.id " +
+                        "where u.uri in (:uris)",
+                new MapSqlParameterSource("uris", uris),
+                rs -> {
+                    result.computeIfAbsent(rs.getString("uri"), ignore -> new RoaringBitmap())
+                            .or(fromBytes(rs.getBytes("bitmap")));
+                });
+
+        return result;
+    }
+
+    private void upsert(Map<BitmapKey, RoaringBitmap> bitmaps) {
+        jdbcTemplate.batchUpdate("insert into stat_bitmap_day (app_id, uri_id, bucket, bitmap) " +
+                        "values (:appId, :uriId, :bucket, :bitmap) " +
+                        "on conflict (bucket, uri_id, app_id) do update set bitmap = excluded.bitmap",
+                bitmaps.entrySet().stream()
+                        .map(entry -> keyParameters(entry.getKey()).addValue("bitmap", toBytes(entry.getValue())))
+                        .toArray(MapSqlParameterSource[]::new));
+    }
+
+    static byte[] toBytes(RoaringBitmap bitmap) {
+        bitmap.runOptimize();
+        ByteBuffer buffer = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+        bitmap.serialize(buffer);
+        return buffer.array();
+    }
+
+    static RoaringBitmap fromBytes(byte[] bytes) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+
+        try {
+            bitmap.deserialize(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return bitmap;
+    }
+
+    private MapSqlParameterSource keyParameters(BitmapKey key) {
+        return new MapSqlParameterSource()
+                .addValue("appId", key.getAppId())
+                .addValue("uriId", key.getUriId())
+                .addValue("bucket", Timestamp.valueOf(key.getBucket()));
+    }
+
+    private MapSqlParameterSource rangeParameters(LocalDateTime from, LocalDateTime to) {
+        return new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+    }
+
+    private String uriFilter(String[] uris, MapSqlParameterSource parameters) {
+        if (uris == null) {
+            return "";
+        }
+
+        if (uris.length == 0) {
+            return "and false";
+        }
+
+        parameters.addValue("uris", Arrays.asList(uris));
+        return "and u.uri in (:uris)";
+    }
+
+    @Data
+    private static class BitmapKey {
+        private final long appId;
+        private final int uriId;
+        private final LocalDateTime bucket;
+    }
+}
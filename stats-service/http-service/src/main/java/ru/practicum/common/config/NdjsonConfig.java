@@ -0,0 +1,29 @@
+package ru.practicum.common.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.practicum.stat.StatsController;
+
+import java.util.List;
+
+/**
+ * Позволяет записать одиночный объект как NDJSON - строку из одного JSON-объекта. Нужно для ответов
+ * обработчиков ошибок на запросы с <i>Accept: application/x-ndjson</i>.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class NdjsonConfig implements WebMvcConfigurer {
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        MappingJackson2HttpMessageConverter converter = new MappingJackson2HttpMessageConverter(objectMapper);
+        converter.setSupportedMediaTypes(List.of(MediaType.parseMediaType(StatsController.APPLICATION_NDJSON_VALUE)));
+        converters.add(converter);
+    }
+}
@@ -0,0 +1,7 @@
+package ru.practicum.common.exception;
+
+public class IngestBufferOverflowException extends RuntimeException {
+    public IngestBufferOverflowException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,16 @@
+package ru.practicum.common.exception;
+
+import ru.practicum.importer.StatImportResult;
+
+public class StatImportException extends RuntimeException {
+    private final StatImportResult result;
+
+    public StatImportException(String message, StatImportResult result, Throwable cause) {
+        super(message, cause);
+        this.result = result;
+    }
+
+    public StatImportResult getResult() {
+        return result;
+    }
+}
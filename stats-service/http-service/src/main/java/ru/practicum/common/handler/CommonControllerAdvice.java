@@ -6,8 +6,12 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import ru.practicum.common.error.ErrorResponse;
+import ru.practicum.common.exception.IngestBufferOverflowException;
 import ru.practicum.common.exception.InvalidDurationException;
+import ru.practicum.common.exception.InvalidIpAddressException;
 import ru.practicum.common.exception.MethodNotImplemented;
+import ru.practicum.common.exception.StatImportException;
+import ru.practicum.importer.StatImportResult;
 
 import java.time.format.DateTimeParseException;
 
@@ -32,6 +36,14 @@ public class CommonControllerAdvice {
                 "Некорректные значение для промежутка выборки, ", exception.getMessage());
     }
 
+    @ExceptionHandler(InvalidIpAddressException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ErrorResponse handleInvalidIpAddressException(final InvalidIpAddressException exception) {
+        log.debug("{}- handleInvalidIpAddressException", className);
+        return new ErrorResponse("Ошибка параметров запроса",
+                "Некорректный ip-адрес, ", exception.getMessage());
+    }
+
     @ExceptionHandler(DateTimeParseException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ErrorResponse handleDateTimeParseException(final DateTimeParseException exception) {
@@ -39,4 +51,19 @@ public class CommonControllerAdvice {
         return new ErrorResponse("Ошибка конвертации строки в LocalDateTime",
                 "Некорректные значение строки, ", exception.getMessage());
     }
+
+    @ExceptionHandler(IngestBufferOverflowException.class)
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    public ErrorResponse handleIngestBufferOverflowException(final IngestBufferOverflowException exception) {
+        log.debug("{}- handleIngestBufferOverflowException", className);
+        return new ErrorResponse("Сервис перегружен",
+                "Буфер приема хитов заполнен, ", exception.getMessage());
+    }
+
+    @ExceptionHandler(StatImportException.class)
+    @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
+    public StatImportResult handleStatImportException(final StatImportException exception) {
+        log.debug("{}- handleStatImportException", className);
+        return exception.getResult();
+    }
 }
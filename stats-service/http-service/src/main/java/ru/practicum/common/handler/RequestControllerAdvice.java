@@ -13,6 +13,8 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 import ru.practicum.common.error.ErrorResponse;
 
+import javax.validation.ConstraintViolationException;
+
 @Slf4j
 @RestControllerAdvice(basePackages = "ru.practicum")
 public class RequestControllerAdvice {
@@ -79,4 +81,14 @@ public class RequestControllerAdvice {
                 "Метод не поддерживается для такого пути запроса",
                 exception.getMessage());
     }
+
+    @ExceptionHandler(ConstraintViolationException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ErrorResponse handleConstraintViolationException(final ConstraintViolationException exception) {
+        log.debug("{}- - handleConstraintViolationException()", className);
+
+        return new ErrorResponse("Ошибка валидации передаваемой сущности в теле запроса.",
+                "Поле/поля или значение поля/полей не соответствуют указанным ограничениям",
+                exception.getMessage());
+    }
 }
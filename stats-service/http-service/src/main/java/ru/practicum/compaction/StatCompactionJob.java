@@ -0,0 +1,143 @@
+package ru.practicum.compaction;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.bitmap.StatBitmapRepository;
+import ru.practicum.rollup.StatRollupRepository;
+import ru.practicum.sketch.StatSketchRepository;
+import ru.practicum.views.StatUniqueViewsRepository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Уплотнение сырых хитов: строки <i>stat</i> старше {@code age-days} удаляются, а за их период хиты остаются
+ * в часовых и минутных предагрегатах, часовых скетчах и дневных битовых картах.
+ * <p>Эти агрегаты пополняются в той же транзакции, что и сырые строки, поэтому перед удалением дня
+ * достаточно сверить число хитов. Если оно разошлось (например, строки попали в <i>stat</i> в обход
+ * сервиса), агрегаты дня пересчитываются из сырых строк, а их пары (uri, ip) добавляются к уникальным
+ * просмотрам. Затем граница уплотнения сдвигается за этот день, и строки удаляются порциями
+ * по {@code chunk-size} в отдельных транзакциях, чтобы автоочистка успевала за удалением.</p>
+ * <p>Дни, уже оказавшиеся за границей, не сверяются: их сырые строки - лишь опоздавшие хиты, а агрегаты
+ * содержат всю историю дня. Дни без сырых строк (удаленных по сроку хранения секций) тоже не пересчитываются.</p>
+ * <p>Удаление сырых строк необратимо и меняет точность /stats за уплотненный период, поэтому уплотнение
+ * включается явно параметром <i>stats.compaction.enabled=true</i>.</p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.compaction.enabled", havingValue = "true")
+public class StatCompactionJob {
+    private final StatCompactionRepository compactionRepository;
+    private final StatRollupRepository rollupRepository;
+    private final StatSketchRepository sketchRepository;
+    private final StatBitmapRepository bitmapRepository;
+    private final StatUniqueViewsRepository uniqueViewsRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int ageDays;
+    private final int chunkSize;
+    private final long chunkPauseMs;
+
+    @Autowired
+    public StatCompactionJob(StatCompactionRepository compactionRepository,
+                             StatRollupRepository rollupRepository,
+                             StatSketchRepository sketchRepository,
+                             StatBitmapRepository bitmapRepository,
+                             StatUniqueViewsRepository uniqueViewsRepository,
+                             TransactionTemplate transactionTemplate,
+                             @Value("${stats.compaction.age-days:90}") int ageDays,
+                             @Value("${stats.compaction.chunk-size:10000}") int chunkSize,
+                             @Value("${stats.compaction.chunk-pause-ms:50}") long chunkPauseMs) {
+        if (!bitmapRepository.isEnabled()) {
+            throw new IllegalStateException("Уплотнение stat требует stats.bitmap.enabled=true: без сырых строк "
+                    + "точные уникальные хиты считаются только по битовым картам");
+        }
+
+        this.compactionRepository = compactionRepository;
+        this.rollupRepository = rollupRepository;
+        this.sketchRepository = sketchRepository;
+        this.bitmapRepository = bitmapRepository;
+        this.uniqueViewsRepository = uniqueViewsRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.ageDays = ageDays;
+        this.chunkSize = chunkSize;
+        this.chunkPauseMs = chunkPauseMs;
+
+        log.debug("StatCompactionJob(ageDays={}, chunkSize={}, chunkPauseMs={})", ageDays, chunkSize, chunkPauseMs);
+    }
+
+    @Scheduled(fixedDelayString = "${stats.compaction.check-interval-ms:3600000}")
+    public void compact() {
+        compact(LocalDateTime.now());
+    }
+
+    public void compact(LocalDateTime now) {
+        LocalDateTime target = StatBitmapRepository.floorDay(now.minusDays(ageDays));
+        Optional<LocalDateTime> oldest = compactionRepository.findOldestRawHit(target);
+
+        try {
+            if (oldest.isPresent()) {
+                for (LocalDateTime day = StatBitmapRepository.floorDay(oldest.get()); day.isBefore(target);
+                     day = day.plusDays(1)) {
+                    compactDay(day);
+                }
+            }
+
+            transactionTemplate.executeWithoutResult(status -> advanceWatermark(target));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Уплотнение stat прервано, продолжится при следующем запуске: {}", e.getMessage());
+        }
+    }
+
+    private void compactDay(LocalDateTime day) throws InterruptedException {
+        LocalDateTime next = day.plusDays(1);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (day.isBefore(compactionRepository.getWatermark())) {
+                return;
+            }
+
+            long rawHits = compactionRepository.countRawHits(day, next);
+            long rollupHits = compactionRepository.countRollupHits(day, next);
+
+            if (rawHits > 0 && rawHits != rollupHits) {
+                log.warn("Хиты {} в stat ({}) и в предагрегатах ({}) расходятся, агрегаты дня пересчитываются",
+                        day.toLocalDate(), rawHits, rollupHits);
+                rollupRepository.rebuild(day, next);
+                sketchRepository.rebuild(day, next);
+                bitmapRepository.rebuild(day, next);
+                uniqueViewsRepository.rebuild(day, next);
+            }
+
+            advanceWatermark(next);
+        });
+
+        long deleted = 0;
+
+        while (true) {
+            Integer chunk = transactionTemplate.execute(status ->
+                    compactionRepository.deleteRawHits(day, next, chunkSize));
+            deleted += chunk;
+
+            if (chunk < chunkSize) {
+                break;
+            }
+
+            Thread.sleep(chunkPauseMs);
+        }
+
+        log.info("Уплотнен день {}: удалено сырых хитов {}", day.toLocalDate(), deleted);
+    }
+
+    private void advanceWatermark(LocalDateTime watermark) {
+        if (compactionRepository.getWatermark().isBefore(watermark)) {
+            compactionRepository.setWatermark(watermark);
+        }
+    }
+}
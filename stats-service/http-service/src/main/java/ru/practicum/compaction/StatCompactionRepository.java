@@ -0,0 +1,83 @@
+package ru.practicum.compaction;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.rollup.RollupGranularity;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Граница уплотнения и сырые строки <i>stat</i>, которые уплотняются.
+ * <p>Сырые строки старше границы удалены: за этот период хиты есть только в предагрегатах, скетчах
+ * и битовых картах.</p>
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class StatCompactionRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public LocalDateTime getWatermark() {
+        return jdbcTemplate.queryForObject("select watermark from stat_compaction where id = 1",
+                new MapSqlParameterSource(), Timestamp.class).toLocalDateTime();
+    }
+
+    public void setWatermark(LocalDateTime watermark) {
+        log.debug("StatCompactionRepository - repository.setWatermark({})", watermark);
+
+        jdbcTemplate.update("update stat_compaction set watermark = :watermark where id = 1",
+                new MapSqlParameterSource("watermark", Timestamp.valueOf(watermark)));
+    }
+
+    /**
+     * Сдвигает границу до watermark, если она еще не дальше: граница не возвращается назад.
+     */
+    public void advanceWatermark(LocalDateTime watermark) {
+        log.debug("StatCompactionRepository - repository.advanceWatermark({})", watermark);
+
+        jdbcTemplate.update("update stat_compaction set watermark = greatest(watermark, :watermark) where id = 1",
+                new MapSqlParameterSource("watermark", Timestamp.valueOf(watermark)));
+    }
+
+    /**
+     * Время самого старого сырого хита раньше before.
+     */
+    public Optional<LocalDateTime> findOldestRawHit(LocalDateTime before) {
+        Timestamp oldest = jdbcTemplate.queryForObject("select min(requested) from stat where requested < :before",
+                new MapSqlParameterSource("before", Timestamp.valueOf(before)), Timestamp.class);
+        return Optional.ofNullable(oldest).map(Timestamp::toLocalDateTime);
+    }
+
+    public long countRawHits(LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.queryForObject("select count(*) from stat where requested >= :from and requested < :to",
+                rangeParameters(from, to), Long.class);
+    }
+
+    public long countRollupHits(LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.queryForObject("select coalesce(sum(hits), 0) " +
+                "from " + RollupGranularity.HOUR.getSource() + " as r " +
+                "where bucket >= :from and bucket < :to", rangeParameters(from, to), Long.class);
+    }
+
+    /**
+     * Удаляет не больше limit сырых строк полуинтервала [from, to).
+     *
+     * @return число удаленных строк
+     */
+    public int deleteRawHits(LocalDateTime from, LocalDateTime to, int limit) {
+        return jdbcTemplate.update("delete from stat where (id, requested) in (select id, requested from stat " +
+                        "where requested >= :from and requested < :to limit :limit)",
+                rangeParameters(from, to).addValue("limit", limit));
+    }
+
+    private MapSqlParameterSource rangeParameters(LocalDateTime from, LocalDateTime to) {
+        return new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+    }
+}
@@ -0,0 +1,82 @@
+package ru.practicum.compaction;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.bitmap.StatBitmapRepository;
+import ru.practicum.rollup.StatRollupRepository;
+import ru.practicum.sketch.StatSketchRepository;
+import ru.practicum.views.StatUniqueViewsRepository;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Объединение дельт, которые прием хитов пишет вместо перезаписи агрегатов, с самими агрегатами: дельты
+ * счетчиков - с минутными и часовыми предагрегатами, дельты битовых карт - с картами дня, дельты скетчей -
+ * со скетчами часа и скетчами uri за всю историю, дельты уникальных просмотров - со счетчиками uri.
+ * Дельты объединяются порциями по {@code batch-size}, каждая - в отдельной транзакции, пока очередная порция
+ * не окажется неполной.
+ * <p>Читатели агрегатов учитывают и необъединенные дельты, поэтому задержка объединения влияет только на объем
+ * таблиц дельт, а не на результаты /stats.</p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.fold.enabled", havingValue = "true", matchIfMissing = true)
+public class StatDeltaFoldJob {
+    private final StatRollupRepository rollupRepository;
+    private final StatBitmapRepository bitmapRepository;
+    private final StatSketchRepository sketchRepository;
+    private final StatUniqueViewsRepository uniqueViewsRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    @Autowired
+    public StatDeltaFoldJob(StatRollupRepository rollupRepository,
+                            StatBitmapRepository bitmapRepository,
+                            StatSketchRepository sketchRepository,
+                            StatUniqueViewsRepository uniqueViewsRepository,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${stats.fold.batch-size:10000}") int batchSize) {
+        this.rollupRepository = rollupRepository;
+        this.bitmapRepository = bitmapRepository;
+        this.sketchRepository = sketchRepository;
+        this.uniqueViewsRepository = uniqueViewsRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+
+        log.debug("StatDeltaFoldJob(batchSize={})", batchSize);
+    }
+
+    @Scheduled(fixedDelayString = "${stats.fold.interval-ms:5000}")
+    public void fold() {
+        try {
+            long counters = foldAll(rollupRepository::fold);
+            long bitmaps = foldAll(bitmapRepository::fold);
+            long sketches = foldAll(sketchRepository::fold);
+            long views = foldAll(uniqueViewsRepository::fold);
+
+            if (counters > 0 || bitmaps > 0 || sketches > 0 || views > 0) {
+                log.debug("Объединены дельты: счетчиков {}, битовых карт {}, скетчей {}, уникальных просмотров {}",
+                        counters, bitmaps, sketches, views);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Объединение дельт прервано, продолжится при следующем запуске: {}", e.getMessage());
+        }
+    }
+
+    private long foldAll(IntUnaryOperator fold) {
+        long total = 0;
+        int folded;
+
+        do {
+            folded = transactionTemplate.execute(status -> fold.applyAsInt(batchSize));
+            total += folded;
+        } while (folded >= batchSize);
+
+        return total;
+    }
+}
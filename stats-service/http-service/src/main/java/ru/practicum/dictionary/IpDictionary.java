@@ -0,0 +1,21 @@
+package ru.practicum.dictionary;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Словарь ip-адресов в двоичной форме. Ключ кеша - {@link ByteBuffer}, так как у массивов нет
+ * сравнения по содержимому.
+ */
+@Component
+public class IpDictionary extends JdbcDictionary<ByteBuffer> {
+    @Autowired
+    public IpDictionary(NamedParameterJdbcTemplate jdbcTemplate,
+                        @Value("${stats.dictionary.ip-cache-size:1000000}") long cacheSize) {
+        super(jdbcTemplate, "ip", cacheSize, ByteBuffer::array, column -> ByteBuffer.wrap((byte[]) column));
+    }
+}
@@ -0,0 +1,99 @@
+package ru.practicum.dictionary;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Словарь значение - целочисленный суррогатный id в таблице (id, value) с уникальным value.
+ * <p>Перед обращением к БД значения ищутся в ограниченном кеше процесса. Отсутствующие значения
+ * добавляются одним пакетным <i>insert ... on conflict do nothing</i> и дочитываются одним <i>select</i>,
+ * так что параллельные вставки одного значения не приводят к ошибке. В кеш они попадают только после фиксации
+ * транзакции: id строки, вставленной откаченной транзакцией, не существует.</p>
+ */
+@Slf4j
+public class JdbcDictionary<K extends Comparable<K>> {
+    private static final int VALUES_PER_QUERY = 1000;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final String table;
+    private final Function<K, Object> toColumn;
+    private final Function<Object, K> fromColumn;
+    private final Cache<K, Integer> cache;
+
+    public JdbcDictionary(NamedParameterJdbcTemplate jdbcTemplate, String table, long cacheSize,
+                          Function<K, Object> toColumn, Function<Object, K> fromColumn) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.table = table;
+        this.toColumn = toColumn;
+        this.fromColumn = fromColumn;
+        this.cache = Caffeine.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    public Map<K, Integer> resolve(Collection<K> values) {
+        Map<K, Integer> ids = new HashMap<>();
+        SortedSet<K> missing = new TreeSet<>();
+
+        for (K value : values) {
+            Integer id = cache.getIfPresent(value);
+
+            if (id != null) {
+                ids.put(value, id);
+            } else {
+                missing.add(value);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return ids;
+        }
+
+        log.debug("JdbcDictionary({}) - resolve(cached={}, missing={})", table, ids.size(), missing.size());
+
+        jdbcTemplate.batchUpdate("insert into " + table + " (" + table + ") values (:value) " +
+                        "on conflict (" + table + ") do nothing",
+                missing.stream()
+                        .map(value -> new MapSqlParameterSource("value", toColumn.apply(value)))
+                        .toArray(MapSqlParameterSource[]::new));
+
+        Map<K, Integer> created = new HashMap<>();
+        List<Object> columns = new ArrayList<>(missing.size());
+        missing.forEach(value -> columns.add(toColumn.apply(value)));
+
+        for (int from = 0; from < columns.size(); from += VALUES_PER_QUERY) {
+            List<Object> chunk = columns.subList(from, Math.min(columns.size(), from + VALUES_PER_QUERY));
+
+            jdbcTemplate.query("select id, " + table + " as value from " + table + " where " + table + " in (:values)",
+                    new MapSqlParameterSource("values", chunk),
+                    rs -> {
+                        created.put(fromColumn.apply(rs.getObject("value")), rs.getInt("id"));
+                    });
+        }
+
+        ids.putAll(created);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.putAll(created);
+                }
+            });
+        } else {
+            cache.putAll(created);
+        }
+
+        return ids;
+    }
+
+    public Integer resolve(K value) {
+        return resolve(List.of(value)).get(value);
+    }
+}
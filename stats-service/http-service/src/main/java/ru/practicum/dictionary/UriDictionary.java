@@ -0,0 +1,15 @@
+package ru.practicum.dictionary;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+@Component
+public class UriDictionary extends JdbcDictionary<String> {
+    @Autowired
+    public UriDictionary(NamedParameterJdbcTemplate jdbcTemplate,
+                         @Value("${stats.dictionary.uri-cache-size:100000}") long cacheSize) {
+        super(jdbcTemplate, "uri", cacheSize, value -> value, String.class::cast);
+    }
+}
@@ -0,0 +1,15 @@
+package ru.practicum.importer;
+
+/**
+ * Формат строк импорта хитов: одна строка - один хит.
+ */
+public enum ImportFormat {
+    /**
+     * <i>app,uri,ip,timestamp</i> без заголовка, поля с запятыми или кавычками берутся в двойные кавычки.
+     */
+    CSV,
+    /**
+     * Объект EndpointHit в JSON на каждой строке.
+     */
+    NDJSON
+}
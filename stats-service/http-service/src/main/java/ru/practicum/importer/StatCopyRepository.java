@@ -0,0 +1,62 @@
+package ru.practicum.importer;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.stat.Stat;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Загрузка сырых хитов в <i>stat</i> командой COPY драйвера PostgreSQL: строки передаются одним потоком CSV
+ * без разбора отдельных insert. Соединение берется из текущей транзакции.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class StatCopyRepository {
+    private static final String COPY_STAT = "copy stat (app_id, uri_id, ip_id, requested) from stdin (format csv)";
+
+    private final DataSource dataSource;
+
+    /**
+     * @param stats хиты с идентификаторами app, uri и ip
+     * @return число загруженных строк
+     */
+    public long copyIn(List<Stat> stats) {
+        log.debug("StatCopyRepository - repository.copyIn(size={})", stats.size());
+
+        StringBuilder csv = new StringBuilder(stats.size() * 48);
+
+        for (Stat stat : stats) {
+            csv.append(stat.getApp().getId()).append(',')
+                    .append(stat.getUri().getId()).append(',')
+                    .append(stat.getIp().getId()).append(',')
+                    .append(Timestamp.valueOf(stat.getRequested())).append('\n');
+        }
+
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+
+        try {
+            return connection.unwrap(PGConnection.class).getCopyAPI()
+                    .copyIn(COPY_STAT, new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (SQLException e) {
+            throw new UncategorizedSQLException("StatCopyRepository.copyIn", COPY_STAT, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ru.practicum.importer;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+import javax.validation.constraints.PositiveOrZero;
+import java.io.InputStream;
+
+@Slf4j
+@Validated
+@RestController
+@RequestMapping
+@RequiredArgsConstructor
+public class StatImportController {
+    private final StatImporter importer;
+
+    /**
+     * Импорт исторических хитов из тела запроса, которое читается потоком.
+     *
+     * @param offset число первых строк тела, пропускаемых при повторе прерванного импорта
+     */
+    @PostMapping(path = "/hit/import")
+    @ResponseStatus(HttpStatus.OK)
+    public StatImportResult importHits(InputStream body,
+                                       @RequestParam(defaultValue = "CSV") ImportFormat format,
+                                       @RequestParam(defaultValue = "0") @PositiveOrZero long offset) {
+        log.debug("/hit/import - POST: importHits({}, {})", format, offset);
+        return importer.importHits(body, format, offset);
+    }
+}
@@ -0,0 +1,26 @@
+package ru.practicum.importer;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Итог импорта хитов.
+ */
+@Data
+@AllArgsConstructor(staticName = "of")
+public class StatImportResult {
+    /**
+     * Число строк тела запроса, которые уже сохранены или отброшены: при повторе импорта их нужно пропустить.
+     */
+    private long offset;
+    private long imported;
+    private long rejected;
+    private long elapsedMs;
+    private long rowsPerSecond;
+    /**
+     * Причина прерывания импорта, null - импорт завершен.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String error;
+}
@@ -0,0 +1,347 @@
+package ru.practicum.importer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.app.AppRegistry;
+import ru.practicum.bitmap.StatBitmapRepository;
+import ru.practicum.common.exception.StatImportException;
+import ru.practicum.compaction.StatCompactionRepository;
+import ru.practicum.dictionary.IpDictionary;
+import ru.practicum.dictionary.UriDictionary;
+import ru.practicum.ingest.HitDeduplicator;
+import ru.practicum.model.app.App;
+import ru.practicum.model.ip.IpCodec;
+import ru.practicum.model.stat.Stat;
+import ru.practicum.model.stat.dto.StatMapper;
+import ru.practicum.model.stat.dto.StatRequestDto;
+import ru.practicum.rollup.StatRollupRepository;
+import ru.practicum.sketch.StatSketchRepository;
+import ru.practicum.stat.StatsResultCache;
+import ru.practicum.top.TopUriTracker;
+import ru.practicum.views.UniqueViewsCounter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Импорт исторических хитов: строки CSV или NDJSON читаются потоком и сохраняются порциями
+ * по {@code chunk-size}, каждая - в отдельной транзакции. Сырые строки дней после водяного знака уплотнения
+ * загружаются в <i>stat</i> командой COPY.
+ * <p>Предагрегаты, скетчи и битовые карты этих дней не пополняются построчно: после загрузки всех порций они
+ * пересчитываются из сырых строк, каждый затронутый день - один раз в своей транзакции. Уже уплотненные дни
+ * хранят только агрегаты, поэтому их хиты в <i>stat</i> не попадают, а пополняют агрегаты так же, как при приеме
+ * через {@code StatsServiceImpl.toHitBatch}: иначе читатели сырых строк посчитали бы их дважды. Уникальные
+ * просмотры пополняются для всех хитов.</p>
+ * <p>Пересчитывать можно и дни, в которые идет прием хитов, включая текущий: прием не обновляет строки агрегатов,
+ * а пишет дельты, и пересчет предагрегатов удаляет дельты дня в том же снимке, в котором читает сырые строки.
+ * Хит, зафиксированный после этого снимка, остается дельтой и прибавляется при ее объединении.</p>
+ * <p>Строки, которые не удалось разобрать, пропускаются и учитываются в {@link StatImportResult#getRejected()}.
+ * Если импорт прерван, {@link StatImportResult#getOffset()} указывает, сколько строк нужно пропустить при повторе;
+ * агрегаты дней уже сохраненных порций все равно пересчитываются, а если и это не удалось - их сверит
+ * и пересчитает уплотнение.</p>
+ */
+@Slf4j
+@Component
+public class StatImporter {
+    private static final int MIN_APP_LENGTH = 3;
+    private static final int MAX_APP_LENGTH = 128;
+    private static final int MAX_URI_LENGTH = 256;
+    private static final int MAX_HIT_ID_LENGTH = 64;
+
+    private final AppRegistry appRegistry;
+    private final UriDictionary uriDictionary;
+    private final IpDictionary ipDictionary;
+    private final StatCopyRepository copyRepository;
+    private final StatRollupRepository rollupRepository;
+    private final StatSketchRepository sketchRepository;
+    private final StatBitmapRepository bitmapRepository;
+    private final StatCompactionRepository compactionRepository;
+    private final TopUriTracker topTracker;
+    private final UniqueViewsCounter uniqueViewsCounter;
+    private final StatsResultCache resultCache;
+    private final HitDeduplicator hitDeduplicator;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+
+    @Autowired
+    public StatImporter(AppRegistry appRegistry,
+                        UriDictionary uriDictionary,
+                        IpDictionary ipDictionary,
+                        StatCopyRepository copyRepository,
+                        StatRollupRepository rollupRepository,
+                        StatSketchRepository sketchRepository,
+                        StatBitmapRepository bitmapRepository,
+                        StatCompactionRepository compactionRepository,
+                        TopUriTracker topTracker,
+                        UniqueViewsCounter uniqueViewsCounter,
+                        StatsResultCache resultCache,
+                        HitDeduplicator hitDeduplicator,
+                        TransactionTemplate transactionTemplate,
+                        ObjectMapper objectMapper,
+                        @Value("${stats.import.chunk-size:50000}") int chunkSize) {
+        this.appRegistry = appRegistry;
+        this.uriDictionary = uriDictionary;
+        this.ipDictionary = ipDictionary;
+        this.copyRepository = copyRepository;
+        this.rollupRepository = rollupRepository;
+        this.sketchRepository = sketchRepository;
+        this.bitmapRepository = bitmapRepository;
+        this.compactionRepository = compactionRepository;
+        this.topTracker = topTracker;
+        this.uniqueViewsCounter = uniqueViewsCounter;
+        this.resultCache = resultCache;
+        this.hitDeduplicator = hitDeduplicator;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+
+        log.debug("StatImporter(chunkSize={})", chunkSize);
+    }
+
+    /**
+     * @param offset число первых строк, которые уже были импортированы и пропускаются
+     * @throws StatImportException если импорт прерван; исключение содержит итог по сохраненным порциям
+     */
+    public StatImportResult importHits(InputStream body, ImportFormat format, long offset) {
+        long started = System.nanoTime();
+        long line = 0;
+        long committed = offset;
+        long imported = 0;
+        long rejected = 0;
+        List<StatRequestDto> chunk = new ArrayList<>(chunkSize);
+        SortedSet<LocalDateTime> days = new TreeSet<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String text;
+
+            while ((text = reader.readLine()) != null) {
+                line++;
+
+                if (line <= offset || text.isBlank()) {
+                    continue;
+                }
+
+                StatRequestDto hit = parse(text, format);
+
+                if (hit == null) {
+                    rejected++;
+                    log.debug("Строка импорта {} отброшена: {}", line, text);
+                } else {
+                    chunk.add(hit);
+                }
+
+                if (chunk.size() >= chunkSize) {
+                    imported += store(chunk, days);
+                    chunk.clear();
+                    committed = line;
+                    log.info("Импорт хитов: сохранено {}, строк/с {}", imported, rowsPerSecond(imported, started));
+                }
+            }
+
+            imported += store(chunk, days);
+            committed = Math.max(offset, line);
+            rebuild(days);
+        } catch (IOException | RuntimeException e) {
+            String error = "Импорт хитов прерван, повторите с offset=" + committed + ": " + e.getMessage();
+            log.warn(error);
+
+            try {
+                rebuild(days);
+            } catch (RuntimeException rebuildError) {
+                log.warn("Агрегаты дней {} не пересчитаны, их пересчитает уплотнение: {}", days,
+                        rebuildError.getMessage());
+            }
+
+            throw new StatImportException(error, result(committed, imported, rejected, started, error), e);
+        }
+
+        StatImportResult result = result(committed, imported, rejected, started, null);
+        log.info("Импорт хитов завершен: {}", result);
+        return result;
+    }
+
+    /**
+     * Сохраняет порцию и добавляет в days дни ее хитов после водяного знака уплотнения.
+     */
+    private long store(List<StatRequestDto> chunk, SortedSet<LocalDateTime> days) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+
+        Long copied = transactionTemplate.execute(status -> {
+            List<StatRequestDto> freshDtos = hitDeduplicator.filterNew(chunk);
+
+            if (freshDtos.isEmpty()) {
+                return 0L;
+            }
+
+            Map<String, App> apps = appRegistry.resolve(freshDtos.stream()
+                    .map(StatRequestDto::getApp)
+                    .collect(Collectors.toSet()));
+            List<Stat> stats = freshDtos.stream()
+                    .map(StatMapper::mapToStat)
+                    .collect(Collectors.toList());
+            Map<String, Integer> uriIds = uriDictionary.resolve(stats.stream()
+                    .map(stat -> stat.getUri().getUri())
+                    .collect(Collectors.toSet()));
+            Map<ByteBuffer, Integer> ipIds = ipDictionary.resolve(stats.stream()
+                    .map(stat -> ByteBuffer.wrap(stat.getIp().getIp()))
+                    .collect(Collectors.toSet()));
+
+            for (int i = 0; i < stats.size(); i++) {
+                Stat stat = stats.get(i);
+                stat.setApp(apps.get(freshDtos.get(i).getApp()));
+                stat.getUri().setId(uriIds.get(stat.getUri().getUri()));
+                stat.getIp().setId(ipIds.get(ByteBuffer.wrap(stat.getIp().getIp())));
+            }
+
+            LocalDateTime watermark = compactionRepository.getWatermark();
+            List<Stat> hot = new ArrayList<>();
+            List<Stat> compacted = new ArrayList<>();
+            Set<LocalDateTime> chunkDays = new HashSet<>();
+
+            for (Stat stat : stats) {
+                if (stat.getRequested().isBefore(watermark)) {
+                    compacted.add(stat);
+                } else {
+                    hot.add(stat);
+                    chunkDays.add(StatBitmapRepository.floorDay(stat.getRequested()));
+                }
+            }
+
+            long rows = hot.isEmpty() ? 0 : copyRepository.copyIn(hot);
+
+            if (!compacted.isEmpty()) {
+                rollupRepository.increment(compacted);
+                sketchRepository.merge(compacted);
+                bitmapRepository.merge(compacted);
+                resultCache.onHits(compacted);
+            }
+
+            topTracker.offer(stats);
+            uniqueViewsCounter.offer(stats);
+            days.addAll(chunkDays);
+            return rows + compacted.size();
+        });
+        return copied == null ? 0 : copied;
+    }
+
+    /**
+     * Пересчитывает агрегаты дней из сырых строк и убирает пересчитанные дни из days. День, который успело
+     * уплотнить {@code StatCompactionJob}, пропускается: уплотнение само сверяет и пересчитывает агрегаты дня
+     * перед удалением сырых строк.
+     */
+    private void rebuild(SortedSet<LocalDateTime> days) {
+        Iterator<LocalDateTime> iterator = days.iterator();
+
+        while (iterator.hasNext()) {
+            LocalDateTime day = iterator.next();
+            LocalDateTime next = day.plusDays(1);
+
+            transactionTemplate.executeWithoutResult(status -> {
+                if (day.isBefore(compactionRepository.getWatermark())) {
+                    return;
+                }
+
+                rollupRepository.rebuild(day, next);
+                sketchRepository.rebuild(day, next);
+                bitmapRepository.rebuild(day, next);
+                resultCache.onRebuild(day, next);
+            });
+
+            iterator.remove();
+            log.debug("Импорт хитов: пересчитаны агрегаты дня {}", day.toLocalDate());
+        }
+    }
+
+    private StatRequestDto parse(String text, ImportFormat format) {
+        StatRequestDto hit;
+
+        try {
+            if (format == ImportFormat.NDJSON) {
+                hit = objectMapper.readValue(text, StatRequestDto.class);
+            } else {
+                List<String> fields = parseCsv(text);
+
+                if (fields.size() != 4) {
+                    return null;
+                }
+
+                hit = StatRequestDto.of(fields.get(0), fields.get(1), fields.get(2),
+                        LocalDateTime.parse(fields.get(3), StatMapper.dateTimeFormatter));
+            }
+
+            IpCodec.encode(hit.getIp());
+        } catch (JsonProcessingException | DateTimeParseException | IllegalArgumentException e) {
+            return null;
+        }
+
+        if (hit.getApp() == null || hit.getApp().length() < MIN_APP_LENGTH || hit.getApp().length() > MAX_APP_LENGTH
+                || hit.getUri() == null || hit.getUri().isEmpty() || hit.getUri().length() > MAX_URI_LENGTH
+                || hit.getTimestamp() == null
+                || (hit.getHitId() != null && hit.getHitId().length() > MAX_HIT_ID_LENGTH)) {
+            return null;
+        }
+
+        return hit;
+    }
+
+    /**
+     * Поля строки CSV: поле в двойных кавычках может содержать запятые, а кавычка внутри него удваивается.
+     */
+    static List<String> parseCsv(String text) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private StatImportResult result(long offset, long imported, long rejected, long started, String error) {
+        return StatImportResult.of(offset, imported, rejected,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), rowsPerSecond(imported, started), error);
+    }
+
+    private static long rowsPerSecond(long rows, long started) {
+        long elapsedMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return rows * 1000 / elapsedMs;
+    }
+}
@@ -0,0 +1,152 @@
+package ru.practicum.ingest;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.model.stat.dto.StatRequestDto;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Отбрасывает повторно отправленные хиты по идентификатору {@link StatRequestDto#getHitId()}: клиент может
+ * повторять отправку после сбоя, не завышая неуникальные хиты. Хиты без идентификатора принимаются всегда.
+ * <p>Идентификаторы, сохраненные зафиксированными транзакциями за последние {@code recent-ttl-ms}, хранятся
+ * в памяти, и повтор хита отбрасывается без обращения к БД. Остальные идентификаторы вставляются
+ * в <i>stat_hit_key</i> в транзакции приема, и хит сохраняется, только если его идентификатор вставлен впервые.
+ * Идентификаторы хранятся {@code key-ttl-hours}: повтор, отправленный позже, будет учтен снова.</p>
+ */
+@Slf4j
+@Component
+public class HitDeduplicator {
+    private final StatHitKeyRepository hitKeyRepository;
+    private final boolean enabled;
+    private final Duration keyTtl;
+    private final int purgeChunkSize;
+    private final Cache<String, Boolean> recentKeys;
+    private final AtomicLong duplicateHits = new AtomicLong();
+
+    @Autowired
+    public HitDeduplicator(StatHitKeyRepository hitKeyRepository,
+                           @Value("${stats.dedup.enabled:true}") boolean enabled,
+                           @Value("${stats.dedup.recent-cache-size:100000}") long recentCacheSize,
+                           @Value("${stats.dedup.recent-ttl-ms:3600000}") long recentTtlMs,
+                           @Value("${stats.dedup.key-ttl-hours:168}") long keyTtlHours,
+                           @Value("${stats.dedup.purge-chunk-size:10000}") int purgeChunkSize) {
+        this.hitKeyRepository = hitKeyRepository;
+        this.enabled = enabled;
+        this.keyTtl = Duration.ofHours(keyTtlHours);
+        this.purgeChunkSize = purgeChunkSize;
+        this.recentKeys = Caffeine.newBuilder()
+                .maximumSize(recentCacheSize)
+                .expireAfterWrite(Duration.ofMillis(recentTtlMs))
+                .recordStats()
+                .build();
+
+        log.debug("HitDeduplicator(enabled={}, recentCacheSize={}, recentTtlMs={}, keyTtlHours={}, purgeChunkSize={})",
+                enabled, recentCacheSize, recentTtlMs, keyTtlHours, purgeChunkSize);
+    }
+
+    @Autowired(required = false)
+    public void registerMetrics(MeterRegistry meterRegistry) {
+        CaffeineCacheMetrics.monitor(meterRegistry, recentKeys, "stats.dedup.recent");
+        Gauge.builder("stats.ingest.duplicates", duplicateHits, AtomicLong::get).register(meterRegistry);
+    }
+
+    /**
+     * Хиты пачки, которые еще не были приняты, в исходном порядке. Из повторов внутри пачки остается первый.
+     * Идентификаторы попадают в память только после фиксации транзакции: откаченная пачка не сохранена,
+     * и ее повтор должен быть принят.
+     */
+    public List<StatRequestDto> filterNew(List<StatRequestDto> requestDtos) {
+        if (!enabled) {
+            return requestDtos;
+        }
+
+        Set<String> candidates = new HashSet<>();
+
+        for (StatRequestDto requestDto : requestDtos) {
+            String hitId = requestDto.getHitId();
+
+            if (hitId != null && recentKeys.getIfPresent(hitId) == null) {
+                candidates.add(hitId);
+            }
+        }
+
+        Set<String> accepted = candidates.isEmpty()
+                ? Set.of()
+                : hitKeyRepository.insertKeys(candidates.stream().sorted().collect(Collectors.toList()),
+                LocalDateTime.now());
+        Set<String> taken = new HashSet<>();
+        List<StatRequestDto> fresh = requestDtos.stream()
+                .filter(requestDto -> requestDto.getHitId() == null
+                        || (accepted.contains(requestDto.getHitId()) && taken.add(requestDto.getHitId())))
+                .collect(Collectors.toList());
+
+        if (!candidates.isEmpty()) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        remember(candidates);
+                    }
+                });
+            } else {
+                remember(candidates);
+            }
+        }
+
+        int duplicates = requestDtos.size() - fresh.size();
+
+        if (duplicates > 0) {
+            duplicateHits.addAndGet(duplicates);
+            log.info("Отброшено повторно отправленных хитов: {}", duplicates);
+        }
+
+        return fresh;
+    }
+
+    private void remember(Set<String> hitIds) {
+        hitIds.forEach(hitId -> recentKeys.put(hitId, Boolean.TRUE));
+    }
+
+    /**
+     * Удаляет идентификаторы старше {@code key-ttl-hours} порциями по {@code purge-chunk-size}.
+     */
+    @Scheduled(fixedDelayString = "${stats.dedup.purge-interval-ms:3600000}")
+    public void purge() {
+        if (!enabled) {
+            return;
+        }
+
+        LocalDateTime before = LocalDateTime.now().minus(keyTtl);
+        long deleted = 0;
+
+        try {
+            int chunk;
+
+            do {
+                chunk = hitKeyRepository.deleteKeys(before, purgeChunkSize);
+                deleted += chunk;
+            } while (chunk == purgeChunkSize);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось удалить устаревшие идентификаторы хитов: {}", e.getMessage());
+        }
+
+        if (deleted > 0) {
+            log.info("Удалено устаревших идентификаторов хитов: {}", deleted);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package ru.practicum.ingest;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.common.exception.IngestBufferOverflowException;
+import ru.practicum.model.stat.dto.HitFrameCodec;
+import ru.practicum.model.stat.dto.StatRequestDto;
+import ru.practicum.stat.StatsService;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Прием хитов двоичными кадрами {@link HitFrameCodec} по UDP и TCP без ответа клиенту.
+ * <p>Один поток обслуживает оба канала через {@link Selector} и передает прочитанные хиты
+ * в {@link StatsService#toHitBatch} пачками до <i>stats.listener.batch-size</i> - тот же путь, что и у
+ * <i>POST /hit/batch</i>.</p>
+ * <p>Слушатель работает только с <i>stats.ingest.mode=async</i>: тогда {@code toHitBatch} лишь кладет пачку в
+ * буфер приема. При синхронном приеме поток слушателя ждал бы транзакцию БД на каждую пачку, и все сокеты
+ * стояли бы на время записи.</p>
+ * <p>Если буфер асинхронного приема заполнен, сокеты не читаются, пока не будет принята уже прочитанная пачка:
+ * TCP-клиент упирается в окно приема, а датаграммы копятся в буфере UDP-сокета и сверх него теряются.</p>
+ * <p>Поврежденный кадр отбрасывается. Если по нему нельзя найти начало следующего кадра, отбрасывается
+ * остаток датаграммы, а TCP-соединение закрывается.</p>
+ * <p>Включается параметром <i>stats.listener.enabled=true</i>.</p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.listener.enabled", havingValue = "true")
+public class HitListener {
+    private static final int DATAGRAM_SIZE = 65536;
+    private static final int DATAGRAMS_PER_SELECT = 1024;
+
+    private final StatsService statsService;
+    private final String host;
+    private final int udpPort;
+    private final int tcpPort;
+    private final int receiveBufferSize;
+    private final int maxConnections;
+    private final int batchSize;
+    private final long retryPauseMs;
+    private final AtomicLong acceptedHits = new AtomicLong();
+    private final AtomicLong rejectedFrames = new AtomicLong();
+    private final AtomicLong droppedHits = new AtomicLong();
+    private final ByteBuffer datagram = ByteBuffer.allocateDirect(DATAGRAM_SIZE);
+    private final Queue<StatRequestDto> pending = new ArrayDeque<>();
+    private final Thread loop;
+    private Selector selector;
+    private DatagramChannel udpChannel;
+    private ServerSocketChannel tcpChannel;
+    private int connections;
+    private volatile boolean running = true;
+
+    @Autowired
+    public HitListener(StatsService statsService,
+                       @Value("${stats.ingest.mode:sync}") String ingestMode,
+                       @Value("${stats.listener.host:0.0.0.0}") String host,
+                       @Value("${stats.listener.udp-port:9191}") int udpPort,
+                       @Value("${stats.listener.tcp-port:9191}") int tcpPort,
+                       @Value("${stats.listener.receive-buffer-size:4194304}") int receiveBufferSize,
+                       @Value("${stats.listener.max-connections:1024}") int maxConnections,
+                       @Value("${stats.listener.batch-size:1000}") int batchSize,
+                       @Value("${stats.listener.retry-pause-ms:50}") long retryPauseMs) {
+        if (!"async".equals(ingestMode)) {
+            throw new IllegalStateException("Прием хитов кадрами требует stats.ingest.mode=async: при синхронном "
+                    + "приеме поток слушателя ждал бы запись каждой пачки в БД");
+        }
+
+        this.statsService = statsService;
+        this.host = host;
+        this.udpPort = udpPort;
+        this.tcpPort = tcpPort;
+        this.receiveBufferSize = receiveBufferSize;
+        this.maxConnections = maxConnections;
+        this.batchSize = batchSize;
+        this.retryPauseMs = retryPauseMs;
+        this.loop = new Thread(this::selectLoop, "stats-hit-listener");
+        this.loop.setDaemon(true);
+
+        log.debug("HitListener(host={}, udpPort={}, tcpPort={}, receiveBufferSize={}, maxConnections={}, "
+                        + "batchSize={}, retryPauseMs={})", host, udpPort, tcpPort, receiveBufferSize, maxConnections,
+                batchSize, retryPauseMs);
+    }
+
+    @Autowired(required = false)
+    public void registerMetrics(MeterRegistry meterRegistry) {
+        Gauge.builder("stats.listener.hits", acceptedHits, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("stats.listener.rejected", rejectedFrames, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("stats.listener.dropped", droppedHits, AtomicLong::get).register(meterRegistry);
+    }
+
+    /**
+     * Открывает каналы; отрицательный порт отключает свой транспорт, нулевой - выбирает свободный.
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        selector = Selector.open();
+
+        if (udpPort >= 0) {
+            udpChannel = DatagramChannel.open();
+            udpChannel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+            udpChannel.bind(new InetSocketAddress(host, udpPort));
+            udpChannel.configureBlocking(false);
+            udpChannel.register(selector, SelectionKey.OP_READ);
+        }
+
+        if (tcpPort >= 0) {
+            tcpChannel = ServerSocketChannel.open();
+            tcpChannel.bind(new InetSocketAddress(host, tcpPort));
+            tcpChannel.configureBlocking(false);
+            tcpChannel.register(selector, SelectionKey.OP_ACCEPT);
+        }
+
+        loop.start();
+        log.info("Прием хитов кадрами: udp={}, tcp={}", getUdpPort(), getTcpPort());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        selector.wakeup();
+        loop.join(TimeUnit.SECONDS.toMillis(30));
+
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+
+        selector.close();
+    }
+
+    /**
+     * @return порт UDP или -1, если прием по UDP отключен
+     */
+    public int getUdpPort() throws IOException {
+        return udpChannel == null ? -1 : ((InetSocketAddress) udpChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * @return порт TCP или -1, если прием по TCP отключен
+     */
+    public int getTcpPort() throws IOException {
+        return tcpChannel == null ? -1 : ((InetSocketAddress) tcpChannel.getLocalAddress()).getPort();
+    }
+
+    private void selectLoop() {
+        while (running) {
+            if (!ingest()) {
+                try {
+                    Thread.sleep(retryPauseMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                continue;
+            }
+
+            try {
+                selector.select(TimeUnit.SECONDS.toMillis(1));
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.channel() == udpChannel) {
+                        receive();
+                    } else {
+                        read(key);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Ошибка приема хитов кадрами: {}", e.getMessage());
+            }
+        }
+
+        ingest();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = tcpChannel.accept();
+
+        if (channel == null) {
+            return;
+        }
+
+        if (connections >= maxConnections) {
+            log.warn("Соединение {} отклонено: открыто {} соединений", channel.getRemoteAddress(), connections);
+            channel.close();
+            return;
+        }
+
+        connections++;
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(HitFrameCodec.MAX_FRAME_SIZE * 8));
+    }
+
+    private void receive() throws IOException {
+        for (int i = 0; i < DATAGRAMS_PER_SELECT; i++) {
+            datagram.clear();
+
+            if (udpChannel.receive(datagram) == null) {
+                return;
+            }
+
+            datagram.flip();
+
+            // Кадр не может продолжаться в следующей датаграмме
+            if (decode(datagram) && datagram.hasRemaining()) {
+                rejectedFrames.incrementAndGet();
+            }
+        }
+    }
+
+    private void read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+        boolean open;
+
+        try {
+            open = channel.read(buffer) >= 0;
+        } catch (IOException e) {
+            open = false;
+        }
+
+        buffer.flip();
+        open &= decode(buffer);
+        buffer.compact();
+
+        if (!open) {
+            close(key);
+        }
+    }
+
+    private void close(SelectionKey key) {
+        connections--;
+        key.cancel();
+
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            log.debug("Соединение закрыто с ошибкой: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Читает целые кадры из буфера; неполный последний кадр остается в буфере.
+     *
+     * @return false, если начало следующего кадра потеряно
+     */
+    private boolean decode(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            int position = buffer.position();
+
+            try {
+                StatRequestDto hit = HitFrameCodec.decode(buffer);
+
+                if (hit == null) {
+                    return true;
+                }
+
+                pending.add(hit);
+            } catch (IllegalArgumentException e) {
+                rejectedFrames.incrementAndGet();
+                log.debug("Отброшен кадр хита: {}", e.getMessage());
+
+                if (buffer.position() == position) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Передает прочитанные хиты в прием пачками. Пачка, отклоненная из-за заполненного буфера, остается в начале
+     * очереди: буфер резервирует место под пачку целиком, поэтому повтор не учтет ее хиты дважды. Кадры уже
+     * проверены {@link HitFrameCodec#decode}, так что другая ошибка приема относится ко всей пачке, и пачка
+     * теряется.
+     *
+     * @return false, если приняты не все хиты
+     */
+    private boolean ingest() {
+        while (!pending.isEmpty()) {
+            List<StatRequestDto> batch = new ArrayList<>(Math.min(pending.size(), batchSize));
+            Iterator<StatRequestDto> hits = pending.iterator();
+
+            while (hits.hasNext() && batch.size() < batchSize) {
+                batch.add(hits.next());
+            }
+
+            try {
+                statsService.toHitBatch(batch);
+                acceptedHits.addAndGet(batch.size());
+            } catch (IngestBufferOverflowException e) {
+                return false;
+            } catch (RuntimeException e) {
+                droppedHits.addAndGet(batch.size());
+                log.warn("Потеряна пачка из {} хитов, принятых кадрами: {}", batch.size(), e.getMessage());
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                pending.remove();
+            }
+        }
+
+        return true;
+    }
+}
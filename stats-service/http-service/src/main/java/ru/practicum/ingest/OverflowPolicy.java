@@ -0,0 +1,20 @@
+package ru.practicum.ingest;
+
+/**
+ * Поведение асинхронного приема хитов при заполненном буфере.
+ */
+public enum OverflowPolicy {
+    /**
+     * Ожидать освобождения места не дольше <i>block-timeout-ms</i>, затем отклонить хит, как {@link #REJECT}.
+     * Это короткое ожидание перед отказом, а не блокировка клиента до освобождения места.
+     */
+    BLOCK,
+    /**
+     * Молча отбросить хит, увеличив счетчик потерь.
+     */
+    DROP,
+    /**
+     * Сразу отклонить хит - клиент получает 429 Too Many Requests.
+     */
+    REJECT
+}
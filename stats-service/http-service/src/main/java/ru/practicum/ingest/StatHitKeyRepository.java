@@ -0,0 +1,62 @@
+package ru.practicum.ingest;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Идентификаторы принятых хитов <i>stat_hit_key</i>: первичный ключ гарантирует, что хит с одним
+ * идентификатором будет сохранен только одной транзакцией.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class StatHitKeyRepository {
+    private static final int KEYS_PER_QUERY = 1000;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Сохраняет идентификаторы и возвращает те из них, которых еще не было. Если тот же идентификатор
+     * вставляет параллельная транзакция, вставка дожидается ее завершения: после фиксации идентификатор
+     * считается занятым, после отката - достается этой транзакции. Идентификаторы должны быть отсортированы,
+     * чтобы параллельные транзакции не блокировали друг друга намертво.
+     */
+    public Set<String> insertKeys(List<String> hitIds, LocalDateTime received) {
+        log.debug("StatHitKeyRepository - repository.insertKeys(size={})", hitIds.size());
+
+        Set<String> inserted = new HashSet<>();
+
+        for (int from = 0; from < hitIds.size(); from += KEYS_PER_QUERY) {
+            List<Object[]> tuples = hitIds.subList(from, Math.min(hitIds.size(), from + KEYS_PER_QUERY)).stream()
+                    .map(hitId -> new Object[]{hitId, Timestamp.valueOf(received)})
+                    .collect(Collectors.toList());
+
+            inserted.addAll(jdbcTemplate.queryForList("insert into stat_hit_key (hit_id, received) values :keys " +
+                            "on conflict (hit_id) do nothing returning hit_id",
+                    new MapSqlParameterSource("keys", tuples), String.class));
+        }
+
+        return inserted;
+    }
+
+    /**
+     * Удаляет не больше {@code limit} идентификаторов, полученных раньше {@code before}.
+     */
+    public int deleteKeys(LocalDateTime before, int limit) {
+        return jdbcTemplate.update("delete from stat_hit_key where hit_id in (select hit_id from stat_hit_key " +
+                        "where received < :before limit :limit)",
+                new MapSqlParameterSource()
+                        .addValue("before", Timestamp.valueOf(before))
+                        .addValue("limit", limit));
+    }
+}
@@ -0,0 +1,68 @@
+package ru.practicum.partition;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+
+/**
+ * Ширина секции таблицы <i>stat</i>. Имя секции - <i>stat_p</i> и начало ее диапазона, например stat_p20240131.
+ */
+public enum PartitionInterval {
+    DAY("yyyyMMdd", ChronoUnit.DAYS, "day"),
+    MONTH("yyyyMM", ChronoUnit.MONTHS, "month");
+
+    private static final String PREFIX = "stat_p";
+
+    private final DateTimeFormatter formatter;
+    private final ChronoUnit unit;
+    private final String dateTruncField;
+
+    PartitionInterval(String pattern, ChronoUnit unit, String dateTruncField) {
+        this.formatter = new DateTimeFormatterBuilder()
+                .appendPattern(pattern)
+                .parseDefaulting(ChronoField.DAY_OF_MONTH, 1)
+                .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
+                .toFormatter();
+        this.unit = unit;
+        this.dateTruncField = dateTruncField;
+    }
+
+    /**
+     * @return единица <i>date_trunc</i>, соответствующая {@link #floor}
+     */
+    public String getDateTruncField() {
+        return dateTruncField;
+    }
+
+    public LocalDateTime floor(LocalDateTime dateTime) {
+        LocalDateTime day = dateTime.truncatedTo(ChronoUnit.DAYS);
+        return unit == ChronoUnit.MONTHS ? day.withDayOfMonth(1) : day;
+    }
+
+    public LocalDateTime next(LocalDateTime from) {
+        return from.plus(1, unit);
+    }
+
+    public String tableName(LocalDateTime from) {
+        return PREFIX + formatter.format(from);
+    }
+
+    /**
+     * @return начало диапазона секции или пусто, если таблица не является секцией этой ширины
+     */
+    public Optional<LocalDateTime> parseTableName(String table) {
+        if (!table.startsWith(PREFIX)) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(LocalDateTime.parse(table.substring(PREFIX.length()), formatter));
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+}
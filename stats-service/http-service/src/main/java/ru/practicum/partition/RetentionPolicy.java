@@ -0,0 +1,15 @@
+package ru.practicum.partition;
+
+/**
+ * Что делать с секцией <i>stat</i>, вышедшей за срок хранения.
+ */
+public enum RetentionPolicy {
+    /**
+     * Удалить секцию вместе с данными.
+     */
+    DROP,
+    /**
+     * Отсоединить секцию: данные остаются в отдельной таблице для архивации и больше не попадают в выборки.
+     */
+    DETACH
+}
@@ -0,0 +1,182 @@
+package ru.practicum.partition;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.bitmap.StatBitmapRepository;
+import ru.practicum.compaction.StatCompactionRepository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Обслуживание секций таблицы <i>stat</i>, секционированной по диапазонам <i>requested</i>.
+ * <p>Секции создаются заранее на {@code premake} интервалов вперед. Хиты, попавшие в секцию по умолчанию
+ * (время вне созданных секций), переносятся в собственную секцию при следующем обслуживании. Секции,
+ * диапазон которых целиком старше срока хранения, удаляются или отсоединяются.</p>
+ * <p>Вместе с секцией в той же транзакции граница уплотнения сдвигается до конца ее диапазона: без сырых строк
+ * хиты этого периода есть только в предагрегатах, скетчах и битовых картах, и /stats должен читать их, а не
+ * <i>stat</i>. Поэтому срок хранения, как и уплотнение, требует <i>stats.bitmap.enabled=true</i> и включается
+ * явно параметром <i>stats.partition.retention-days</i>.</p>
+ * <p>Если для хитов из секции по умолчанию уже есть отсоединенная таблица секции (опоздавший хит дня,
+ * отсоединенного по сроку хранения), хиты переносятся в нее и она присоединяется снова, а затем снова
+ * отсоединяется как устаревшая. Ошибка обслуживания одной секции записывается в журнал и не мешает
+ * обслуживанию остальных.</p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.partition.enabled", havingValue = "true")
+public class StatPartitionManager {
+    private static final String DEFAULT_PARTITION = "stat_default";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final StatCompactionRepository compactionRepository;
+    private final PartitionInterval interval;
+    private final int premake;
+    private final int retentionDays;
+    private final RetentionPolicy retentionPolicy;
+
+    @Autowired
+    public StatPartitionManager(JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                StatCompactionRepository compactionRepository,
+                                StatBitmapRepository bitmapRepository,
+                                @Value("${stats.partition.interval:DAY}") PartitionInterval interval,
+                                @Value("${stats.partition.premake:7}") int premake,
+                                @Value("${stats.partition.retention-days:0}") int retentionDays,
+                                @Value("${stats.partition.retention-policy:DROP}") RetentionPolicy retentionPolicy) {
+        if (retentionDays > 0 && !bitmapRepository.isEnabled()) {
+            throw new IllegalStateException("Срок хранения секций stat требует stats.bitmap.enabled=true: без сырых "
+                    + "строк точные уникальные хиты считаются только по битовым картам");
+        }
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.compactionRepository = compactionRepository;
+        this.interval = interval;
+        this.premake = premake;
+        this.retentionDays = retentionDays;
+        this.retentionPolicy = retentionPolicy;
+
+        log.debug("StatPartitionManager(interval={}, premake={}, retentionDays={}, retentionPolicy={})",
+                interval, premake, retentionDays, retentionPolicy);
+    }
+
+    @Scheduled(fixedDelayString = "${stats.partition.check-interval-ms:3600000}")
+    public void maintain() {
+        maintain(LocalDateTime.now());
+    }
+
+    public void maintain(LocalDateTime now) {
+        SortedSet<LocalDateTime> starts = new TreeSet<>();
+        LocalDateTime from = interval.floor(now);
+
+        for (int i = 0; i <= premake; i++) {
+            starts.add(from);
+            from = interval.next(from);
+        }
+
+        jdbcTemplate.queryForList("select distinct date_trunc('" + interval.getDateTruncField() + "', requested) " +
+                        "from " + DEFAULT_PARTITION, Timestamp.class)
+                .forEach(requested -> starts.add(requested.toLocalDateTime()));
+
+        Set<String> existing = new HashSet<>(findPartitions());
+        Set<String> tables = new HashSet<>(findTables());
+
+        for (LocalDateTime start : starts) {
+            String table = interval.tableName(start);
+
+            if (existing.contains(table)) {
+                continue;
+            }
+
+            try {
+                attachPartition(start, !tables.contains(table));
+            } catch (RuntimeException e) {
+                log.warn("Секция {} не создана: {}", table, e.getMessage());
+            }
+        }
+
+        if (retentionDays > 0) {
+            expirePartitions(now.minusDays(retentionDays));
+        }
+    }
+
+    /**
+     * Присоединяет секцию [from, next(from)), создав ее таблицу, если create. Хиты этого диапазона из секции
+     * по умолчанию переносятся в нее в той же транзакции, иначе присоединение секции завершится ошибкой.
+     */
+    private void attachPartition(LocalDateTime from, boolean create) {
+        String table = interval.tableName(from);
+        Timestamp start = Timestamp.valueOf(from);
+        Timestamp end = Timestamp.valueOf(interval.next(from));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("lock table " + DEFAULT_PARTITION + " in exclusive mode");
+
+            if (create) {
+                jdbcTemplate.execute("create table " + table + " (like stat including defaults including constraints)");
+            }
+
+            int moved = jdbcTemplate.update("with moved as (delete from " + DEFAULT_PARTITION + " " +
+                    "where requested >= ? and requested < ? returning *) " +
+                    "insert into " + table + " select * from moved", start, end);
+
+            jdbcTemplate.execute("alter table stat attach partition " + table + " " +
+                    "for values from ('" + start + "') to ('" + end + "')");
+
+            log.info("{} секция {} [{}, {}), перенесено хитов из секции по умолчанию: {}",
+                    create ? "Создана" : "Присоединена отсоединенная", table, start, end, moved);
+        });
+    }
+
+    private void expirePartitions(LocalDateTime cutoff) {
+        for (String table : findPartitions()) {
+            Optional<LocalDateTime> from = interval.parseTableName(table);
+
+            if (from.isEmpty() || interval.next(from.get()).isAfter(cutoff)) {
+                continue;
+            }
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    if (retentionPolicy == RetentionPolicy.DETACH) {
+                        jdbcTemplate.execute("alter table stat detach partition " + table);
+                    } else {
+                        jdbcTemplate.execute("drop table " + table);
+                    }
+
+                    compactionRepository.advanceWatermark(interval.next(from.get()));
+                });
+
+                log.info("Секция {} старше {} {}", table, cutoff,
+                        retentionPolicy == RetentionPolicy.DETACH ? "отсоединена" : "удалена");
+            } catch (RuntimeException e) {
+                log.warn("Устаревшая секция {} не {}: {}", table,
+                        retentionPolicy == RetentionPolicy.DETACH ? "отсоединена" : "удалена", e.getMessage());
+            }
+        }
+    }
+
+    private List<String> findPartitions() {
+        return jdbcTemplate.queryForList("select c.relname from pg_inherits as i " +
+                "join pg_class as c on i.inhrelid = c.oid " +
+                "where i.inhparent = 'stat'::regclass " +
+                "order by c.relname", String.class);
+    }
+
+    /**
+     * Таблицы секций по имени, включая отсоединенные.
+     */
+    private List<String> findTables() {
+        return jdbcTemplate.queryForList("select tablename from pg_tables " +
+                "where schemaname = current_schema() and tablename like 'stat\\_p%'", String.class);
+    }
+}
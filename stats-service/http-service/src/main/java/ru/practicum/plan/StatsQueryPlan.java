@@ -0,0 +1,57 @@
+package ru.practicum.plan;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import ru.practicum.rollup.RollupSegment;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * План выборки /stats: способ подсчета и, для неуникальных хитов, сегменты с источником каждого из них
+ * и оценкой стоимости в прочитанных строках.
+ */
+@Data
+@AllArgsConstructor(staticName = "of")
+public class StatsQueryPlan {
+    private Strategy strategy;
+    private List<RollupSegment> segments;
+    private long cost;
+
+    public static StatsQueryPlan of(Strategy strategy) {
+        return of(strategy, List.of(), 0);
+    }
+
+    /**
+     * Однострочное описание плана для заголовка ответа и журнала,
+     * например <i>ROLLUP cost=1234: RAW[2024-01-01T10:15:30, 2024-01-01T10:16) HOUR[...)</i>.
+     */
+    public String describe() {
+        if (segments.isEmpty()) {
+            return strategy.name();
+        }
+
+        return strategy + " cost=" + cost + ": " + segments.stream()
+                .map(segment -> segment.getGranularity() + "[" + segment.getFrom() + ", " + segment.getTo() + ")")
+                .collect(Collectors.joining(" "));
+    }
+
+    public enum Strategy {
+        /**
+         * Неуникальные хиты по сегментам предагрегатов и сырых строк.
+         */
+        ROLLUP,
+        /**
+         * Точные уникальные хиты по дневным битовым картам и ip неполных дней на краях.
+         */
+        BITMAP,
+        /**
+         * Точные уникальные хиты - <i>count(distinct)</i> по сырым строкам.
+         */
+        RAW_DISTINCT,
+        /**
+         * Приблизительные уникальные хиты по часовым HyperLogLog-скетчам.
+         */
+        SKETCH
+    }
+}
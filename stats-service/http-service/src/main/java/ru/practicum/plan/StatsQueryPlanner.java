@@ -0,0 +1,136 @@
+package ru.practicum.plan;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.rollup.RollupGranularity;
+import ru.practicum.rollup.RollupRange;
+import ru.practicum.rollup.RollupSegment;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Выбор источников для подсчета неуникальных хитов.
+ * <p>Интервал разбивается {@link RollupRange} на выровненные сегменты, после чего каждый сегмент может быть
+ * прочитан из своего источника или из более мелкого: часовой - из минутных предагрегатов или сырых строк,
+ * минутный - из сырых строк. Соседние сегменты одного источника объединяются в один запрос. Из вариантов
+ * выбирается самый дешевый по оценке: число прочитанных строк плюс {@code query-cost} за каждый запрос.
+ * Так короткий интервал считается одним запросом к <i>stat</i>, а длинный - по часовым предагрегатам.</p>
+ * <p>Сырые строки до границы уплотнения удалены, поэтому такие сегменты из <i>stat</i> не читаются.</p>
+ */
+@Slf4j
+@Component
+public class StatsQueryPlanner {
+    private final long rawRowsPerMinute;
+    private final long minuteRowsPerMinute;
+    private final long hourRowsPerHour;
+    private final long queryCost;
+
+    @Autowired
+    public StatsQueryPlanner(@Value("${stats.planner.raw-rows-per-minute:100}") long rawRowsPerMinute,
+                             @Value("${stats.planner.minute-rows-per-minute:20}") long minuteRowsPerMinute,
+                             @Value("${stats.planner.hour-rows-per-hour:200}") long hourRowsPerHour,
+                             @Value("${stats.planner.query-cost:500}") long queryCost) {
+        this.rawRowsPerMinute = rawRowsPerMinute;
+        this.minuteRowsPerMinute = minuteRowsPerMinute;
+        this.hourRowsPerHour = hourRowsPerHour;
+        this.queryCost = queryCost;
+
+        log.debug("StatsQueryPlanner(rawRowsPerMinute={}, minuteRowsPerMinute={}, hourRowsPerHour={}, queryCost={})",
+                rawRowsPerMinute, minuteRowsPerMinute, hourRowsPerHour, queryCost);
+    }
+
+    /**
+     * @param start        начало интервала (включительно)
+     * @param endExclusive конец интервала (не включительно)
+     * @param watermark    граница уплотнения
+     */
+    public StatsQueryPlan plan(LocalDateTime start, LocalDateTime endExclusive, LocalDateTime watermark) {
+        List<RollupSegment> segments = RollupRange.split(start, endExclusive, watermark);
+        List<List<RollupGranularity>> options = new ArrayList<>(segments.size());
+
+        for (RollupSegment segment : segments) {
+            options.add(options(segment, watermark));
+        }
+
+        StatsQueryPlan[] best = {null};
+        choose(segments, options, new RollupGranularity[segments.size()], 0, best);
+        return best[0];
+    }
+
+    /**
+     * Источники, из которых можно прочитать сегмент: его собственный первым, затем более мелкие.
+     */
+    private List<RollupGranularity> options(RollupSegment segment, LocalDateTime watermark) {
+        List<RollupGranularity> options = new ArrayList<>(3);
+        options.add(segment.getGranularity());
+
+        if (segment.getGranularity() == RollupGranularity.HOUR) {
+            options.add(RollupGranularity.MINUTE);
+        }
+
+        if (segment.getGranularity() != RollupGranularity.RAW && !segment.getFrom().isBefore(watermark)) {
+            options.add(RollupGranularity.RAW);
+        }
+
+        return options;
+    }
+
+    private void choose(List<RollupSegment> segments, List<List<RollupGranularity>> options,
+                        RollupGranularity[] chosen, int index, StatsQueryPlan[] best) {
+        if (index == segments.size()) {
+            StatsQueryPlan plan = build(segments, chosen);
+
+            if (best[0] == null || plan.getCost() < best[0].getCost()) {
+                best[0] = plan;
+            }
+
+            return;
+        }
+
+        for (RollupGranularity granularity : options.get(index)) {
+            chosen[index] = granularity;
+            choose(segments, options, chosen, index + 1, best);
+        }
+    }
+
+    private StatsQueryPlan build(List<RollupSegment> segments, RollupGranularity[] chosen) {
+        List<RollupSegment> merged = new ArrayList<>(segments.size());
+
+        for (int i = 0; i < segments.size(); i++) {
+            RollupSegment segment = segments.get(i);
+            RollupSegment last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+
+            if (last != null && last.getGranularity() == chosen[i] && last.getTo().equals(segment.getFrom())) {
+                merged.set(merged.size() - 1, RollupSegment.of(chosen[i], last.getFrom(), segment.getTo()));
+            } else {
+                merged.add(RollupSegment.of(chosen[i], segment.getFrom(), segment.getTo()));
+            }
+        }
+
+        long cost = 0;
+
+        for (RollupSegment segment : merged) {
+            cost += queryCost + rows(segment);
+        }
+
+        return StatsQueryPlan.of(StatsQueryPlan.Strategy.ROLLUP, merged, cost);
+    }
+
+    private long rows(RollupSegment segment) {
+        Duration duration = Duration.between(segment.getFrom(), segment.getTo());
+
+        switch (segment.getGranularity()) {
+            case HOUR:
+                return duration.toHours() * hourRowsPerHour;
+            case MINUTE:
+                return duration.toMinutes() * minuteRowsPerMinute;
+            default:
+                return (duration.getSeconds() * rawRowsPerMinute + 59) / 60;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ru.practicum.rollup;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Гранулярность источника данных для подсчета хитов: сырые строки <i>stat</i> или таблицы предагрегатов.
+ */
+public enum RollupGranularity {
+    RAW(null, ChronoUnit.SECONDS, "second"),
+    MINUTE("stat_rollup_minute", ChronoUnit.MINUTES, "minute"),
+    HOUR("stat_rollup_hour", ChronoUnit.HOURS, "hour");
+
+    /**
+     * Минутные счетчики, которые прием хитов пишет вместо обновления предагрегатов.
+     */
+    public static final String DELTA_TABLE = "stat_rollup_delta";
+
+    private final String table;
+    private final ChronoUnit unit;
+    private final String dateTruncField;
+
+    RollupGranularity(String table, ChronoUnit unit, String dateTruncField) {
+        this.table = table;
+        this.unit = unit;
+        this.dateTruncField = dateTruncField;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * Подзапрос строк (app_id, uri_id, bucket, hits) предагрегата вместе с необъединенными дельтами
+     * {@link #DELTA_TABLE}, приведенными к его гранулярности; используется с псевдонимом.
+     */
+    public String getSource() {
+        String deltaBucket = this == MINUTE ? "bucket" : "date_trunc('" + dateTruncField + "', bucket)";
+        return "(select app_id, uri_id, bucket, hits from " + table + " " +
+                "union all select app_id, uri_id, " + deltaBucket + " as bucket, hits from " + DELTA_TABLE + ")";
+    }
+
+    public ChronoUnit getUnit() {
+        return unit;
+    }
+
+    public String getDateTruncField() {
+        return dateTruncField;
+    }
+
+    public LocalDateTime floor(LocalDateTime dateTime) {
+        return dateTime.truncatedTo(unit);
+    }
+
+    public LocalDateTime ceil(LocalDateTime dateTime) {
+        LocalDateTime floor = floor(dateTime);
+        return floor.equals(dateTime) ? floor : floor.plus(1, unit);
+    }
+}
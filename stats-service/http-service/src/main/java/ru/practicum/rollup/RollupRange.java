@@ -0,0 +1,78 @@
+package ru.practicum.rollup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Разбиение интервала выборки на сегменты: целые часы берутся из часовых предагрегатов, целые минуты
+ * на краях - из минутных, а сырые строки <i>stat</i> читаются только для неполных минут.
+ */
+public class RollupRange {
+    private RollupRange() {
+    }
+
+    /**
+     * @param start        начало интервала (включительно)
+     * @param endExclusive конец интервала (не включительно)
+     */
+    public static List<RollupSegment> split(LocalDateTime start, LocalDateTime endExclusive) {
+        List<RollupSegment> segments = new ArrayList<>();
+        LocalDateTime minuteFrom = RollupGranularity.MINUTE.ceil(start);
+        LocalDateTime minuteTo = RollupGranularity.MINUTE.floor(endExclusive);
+
+        if (!minuteFrom.isBefore(minuteTo)) {
+            addSegment(segments, RollupGranularity.RAW, start, endExclusive);
+            return segments;
+        }
+
+        LocalDateTime hourFrom = RollupGranularity.HOUR.ceil(minuteFrom);
+        LocalDateTime hourTo = RollupGranularity.HOUR.floor(minuteTo);
+
+        addSegment(segments, RollupGranularity.RAW, start, minuteFrom);
+
+        if (hourFrom.isBefore(hourTo)) {
+            addSegment(segments, RollupGranularity.MINUTE, minuteFrom, hourFrom);
+            addSegment(segments, RollupGranularity.HOUR, hourFrom, hourTo);
+            addSegment(segments, RollupGranularity.MINUTE, hourTo, minuteTo);
+        } else {
+            addSegment(segments, RollupGranularity.MINUTE, minuteFrom, minuteTo);
+        }
+
+        addSegment(segments, RollupGranularity.RAW, minuteTo, endExclusive);
+        return segments;
+    }
+
+    /**
+     * То же разбиение для интервала, часть которого уплотнена: сырые строки старше watermark удалены, поэтому
+     * неполные минуты до watermark читаются из минутных предагрегатов целиком. Сырой сегмент, который
+     * пересекает watermark (интервал короче минуты), делится по ней.
+     *
+     * @param watermark граница уплотнения, выровненная по минуте
+     */
+    public static List<RollupSegment> split(LocalDateTime start, LocalDateTime endExclusive, LocalDateTime watermark) {
+        List<RollupSegment> segments = new ArrayList<>();
+
+        for (RollupSegment segment : split(start, endExclusive)) {
+            if (segment.getGranularity() != RollupGranularity.RAW || !segment.getFrom().isBefore(watermark)) {
+                segments.add(segment);
+            } else if (!segment.getTo().isAfter(watermark)) {
+                segments.add(RollupSegment.of(RollupGranularity.MINUTE,
+                        RollupGranularity.MINUTE.floor(segment.getFrom()), RollupGranularity.MINUTE.ceil(segment.getTo())));
+            } else {
+                segments.add(RollupSegment.of(RollupGranularity.MINUTE,
+                        RollupGranularity.MINUTE.floor(segment.getFrom()), watermark));
+                segments.add(RollupSegment.of(RollupGranularity.RAW, watermark, segment.getTo()));
+            }
+        }
+
+        return segments;
+    }
+
+    private static void addSegment(List<RollupSegment> segments, RollupGranularity granularity,
+                                   LocalDateTime from, LocalDateTime to) {
+        if (from.isBefore(to)) {
+            segments.add(RollupSegment.of(granularity, from, to));
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package ru.practicum.rollup;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Полуинтервал [from, to), который считается из одного источника.
+ */
+@Data
+@AllArgsConstructor(staticName = "of")
+public class RollupSegment {
+    private RollupGranularity granularity;
+    private LocalDateTime from;
+    private LocalDateTime to;
+}
@@ -0,0 +1,201 @@
+package ru.practicum.rollup;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.stat.Stat;
+import ru.practicum.model.stat.dto.StatResponseDto;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Минутные и часовые предагрегаты хитов по ключу (app, uri, bucket).
+ * <p>Прием хитов не обновляет строки предагрегатов, иначе параллельные хиты популярного uri ждали бы блокировку
+ * одной строки до конца транзакции: каждая пачка вставляет минутные счетчики строками-дельтами
+ * в <i>stat_rollup_delta</i>, а {@link #fold} в фоне прибавляет их к минутным и часовым строкам и удаляет.
+ * Читатели складывают предагрегаты с еще не объединенными дельтами
+ * ({@link RollupGranularity#getSource()}).</p>
+ * <p>В отличие от объединения битовых карт, прибавление счетчика не идемпотентно, поэтому {@link #fold}
+ * и {@link #rebuild} исключают друг друга и другие экземпляры сервиса транзакционной advisory-блокировкой.</p>
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class StatRollupRepository {
+    private static final int KEYS_PER_QUERY = 1000;
+    private static final long LOCK_KEY = RollupGranularity.DELTA_TABLE.hashCode();
+    private static final Comparator<RollupKey> KEY_ORDER = Comparator.comparing(RollupKey::getBucket)
+            .thenComparingInt(RollupKey::getUriId)
+            .thenComparingLong(RollupKey::getAppId);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Добавляет пачку новых хитов дельтами - по строке на ключ (app, uri, минута) пачки, одним пакетом вставок
+     * без чтения и блокировки строк предагрегатов.
+     */
+    public void increment(List<Stat> stats) {
+        log.debug("StatRollupRepository - repository.increment(size={})", stats.size());
+
+        Map<RollupKey, Long> counters = new TreeMap<>(KEY_ORDER);
+
+        for (Stat stat : stats) {
+            RollupKey key = new RollupKey(stat.getApp().getId(), stat.getUri().getId(),
+                    RollupGranularity.MINUTE.floor(stat.getRequested()));
+            counters.merge(key, 1L, Long::sum);
+        }
+
+        jdbcTemplate.batchUpdate("insert into " + RollupGranularity.DELTA_TABLE + " (app_id, uri_id, bucket, hits) " +
+                "values (:appId, :uriId, :bucket, :hits)", counterParameters(counters));
+    }
+
+    /**
+     * Прибавляет до limit самых старых дельт к минутным и часовым предагрегатам и удаляет их. Строки
+     * предагрегатов обновляются в едином порядке ключей.
+     *
+     * @return число объединенных дельт
+     */
+    public int fold(int limit) {
+        lock();
+
+        Map<RollupKey, Long> minutes = new TreeMap<>(KEY_ORDER);
+        Map<RollupKey, Long> hours = new TreeMap<>(KEY_ORDER);
+        List<Long> ids = new ArrayList<>();
+
+        jdbcTemplate.query("select id, app_id, uri_id, bucket, hits from " + RollupGranularity.DELTA_TABLE + " " +
+                        "order by id limit :limit",
+                new MapSqlParameterSource("limit", limit),
+                rs -> {
+                    RollupKey key = new RollupKey(rs.getLong("app_id"), rs.getInt("uri_id"),
+                            rs.getTimestamp("bucket").toLocalDateTime());
+                    long hits = rs.getLong("hits");
+                    minutes.merge(key, hits, Long::sum);
+                    hours.merge(new RollupKey(key.getAppId(), key.getUriId(), RollupGranularity.HOUR.floor(key.getBucket())),
+                            hits, Long::sum);
+                    ids.add(rs.getLong("id"));
+                });
+
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        log.debug("StatRollupRepository - repository.fold(deltas={}, minutes={}, hours={})", ids.size(),
+                minutes.size(), hours.size());
+
+        add(RollupGranularity.MINUTE, minutes);
+        add(RollupGranularity.HOUR, hours);
+
+        for (int from = 0; from < ids.size(); from += KEYS_PER_QUERY) {
+            jdbcTemplate.update("delete from " + RollupGranularity.DELTA_TABLE + " where id in (:ids)",
+                    new MapSqlParameterSource("ids", ids.subList(from, Math.min(ids.size(), from + KEYS_PER_QUERY))));
+        }
+
+        return ids.size();
+    }
+
+    /**
+     * Сумма хитов по (app, uri) за полуинтервал [from, to), границы которого выровнены по гранулярности.
+     *
+     * @param uris фильтр по uri, null - без фильтра
+     */
+    public List<StatResponseDto> findHits(RollupGranularity granularity, LocalDateTime from, LocalDateTime to,
+                                          String[] uris) {
+        log.debug("StatRollupRepository - repository.findHits({}, {}, {}, {})", granularity, from, to, uris);
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+
+        String sql = "select a.app, u.uri, sum(r.hits) as hits " +
+                "from " + granularity.getSource() + " as r " +
+                "left join app as a on r.app_id = a.id " +
+                "join uri as u on r.uri_id = u.id " +
+                "where r.bucket >= :from and r.bucket < :to ";
+
+        if (uris != null) {
+            if (uris.length == 0) {
+                return List.of();
+            }
+
+            sql += "and u.uri in (:uris) ";
+            parameters.addValue("uris", Arrays.asList(uris));
+        }
+
+        sql += "group by u.uri, a.app";
+
+        return jdbcTemplate.query(sql, parameters, (rs, rowNum) ->
+                StatResponseDto.of(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+    }
+
+    /**
+     * Пересчитывает минутные и часовые предагрегаты полуинтервала [from, to), границы которого выровнены
+     * по часу, из сырых строк <i>stat</i>. Дельты интервала удаляются тем же запросом, что и вставляет
+     * пересчитанные строки: в одном снимке хит с его дельтой либо виден целиком и входит в пересчет, либо
+     * еще не зафиксирован, и его дельта остается до {@link #fold}.
+     */
+    public void rebuild(LocalDateTime from, LocalDateTime to) {
+        log.debug("StatRollupRepository - repository.rebuild({}, {})", from, to);
+
+        lock();
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+
+        for (RollupGranularity granularity : List.of(RollupGranularity.MINUTE, RollupGranularity.HOUR)) {
+            jdbcTemplate.update("delete from " + granularity.getTable() + " where bucket >= :from and bucket < :to",
+                    parameters);
+        }
+
+        jdbcTemplate.update("with deltas as (delete from " + RollupGranularity.DELTA_TABLE + " " +
+                "where bucket >= :from and bucket < :to), " +
+                "minutes as (" + rebuildSql(RollupGranularity.MINUTE) + ") " +
+                rebuildSql(RollupGranularity.HOUR), parameters);
+    }
+
+    private String rebuildSql(RollupGranularity granularity) {
+        return "insert into " + granularity.getTable() + " (app_id, uri_id, bucket, hits) " +
+                "select app_id, uri_id, date_trunc('" + granularity.getDateTruncField() + "', requested), count(*) " +
+                "from stat " +
+                "where requested >= :from and requested < :to " +
+                "group by 1, 2, 3";
+    }
+
+    private void add(RollupGranularity granularity, Map<RollupKey, Long> counters) {
+        jdbcTemplate.batchUpdate("insert into " + granularity.getTable() + " (app_id, uri_id, bucket, hits) " +
+                "values (:appId, :uriId, :bucket, :hits) " +
+                "on conflict (bucket, uri_id, app_id) do update set hits = " + granularity.getTable() + ".hits + excluded.hits",
+                counterParameters(counters));
+    }
+
+    private MapSqlParameterSource[] counterParameters(Map<RollupKey, Long> counters) {
+        return counters.entrySet().stream()
+                .map(entry -> new MapSqlParameterSource()
+                        .addValue("appId", entry.getKey().getAppId())
+                        .addValue("uriId", entry.getKey().getUriId())
+                        .addValue("bucket", Timestamp.valueOf(entry.getKey().getBucket()))
+                        .addValue("hits", entry.getValue()))
+                .toArray(MapSqlParameterSource[]::new);
+    }
+
+    /**
+     * Блокировка до конца транзакции, которая исключает параллельные {@link #fold} и {@link #rebuild}.
+     */
+    private void lock() {
+        jdbcTemplate.query("select pg_advisory_xact_lock(:key)", new MapSqlParameterSource("key", LOCK_KEY),
+                rs -> {
+                });
+    }
+
+    @Value
+    private static class RollupKey {
+        long appId;
+        int uriId;
+        LocalDateTime bucket;
+    }
+}
@@ -0,0 +1,205 @@
+package ru.practicum.sketch;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HyperLogLog - вероятностная оценка числа уникальных значений с относительной ошибкой около 1.04 / sqrt(2^p).
+ * <p>Скетчи объединяются без потери точности ({@link #merge(HyperLogLog)}), поэтому скетчи отдельных
+ * часов и uri можно хранить раздельно и складывать при чтении. Сериализованная форма разреженная, пока
+ * ненулевых регистров мало, и плотная - когда так компактнее.</p>
+ */
+public class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+    private static final byte DENSE = 0;
+    private static final byte SPARSE = 1;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("HyperLogLog precision должна быть в пределах ["
+                    + MIN_PRECISION + ", " + MAX_PRECISION + "], получено " + precision);
+        }
+
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Минимальная точность, при которой стандартная ошибка не превышает errorBound.
+     */
+    public static int precisionFor(double errorBound) {
+        int precision = (int) Math.ceil(Math.log(Math.pow(1.04 / errorBound, 2)) / Math.log(2));
+        return Math.max(MIN_PRECISION, Math.min(MAX_PRECISION, precision));
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void add(String value) {
+        add(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void add(byte[] value) {
+        addHash(hash64(value));
+    }
+
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        long rest = hash << precision;
+        int rank = rest == 0 ? 64 - precision + 1 : Long.numberOfLeadingZeros(rest) + 1;
+
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Объединяет другой скетч с текущим. Скетч большей точности предварительно сворачивается до текущей.
+     */
+    public HyperLogLog merge(HyperLogLog other) {
+        if (other.precision < precision) {
+            throw new IllegalArgumentException("Нельзя объединить скетч меньшей точности " + other.precision
+                    + " в скетч точности " + precision + " - объединяйте в обратном порядке");
+        }
+
+        int shift = other.precision - precision;
+        int mask = (1 << shift) - 1;
+
+        for (int i = 0; i < other.registers.length; i++) {
+            int value = other.registers[i];
+
+            if (value == 0) {
+                continue;
+            }
+
+            int index = i >>> shift;
+            int droppedBits = i & mask;
+            int rank = droppedBits == 0 ? value + shift : shift - (32 - Integer.numberOfLeadingZeros(droppedBits)) + 1;
+
+            if (rank > registers[index]) {
+                registers[index] = (byte) rank;
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Объединение двух скетчей, возможно разной точности: результат получает меньшую из точностей.
+     */
+    public static HyperLogLog union(HyperLogLog first, HyperLogLog second) {
+        return first.precision <= second.precision ? first.merge(second) : second.merge(first);
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+
+        for (byte register : registers) {
+            sum += Math.scalb(1.0, -register);
+
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        double estimate = alpha(m) * m * m / sum;
+
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+
+        return Math.round(estimate);
+    }
+
+    public byte[] toBytes() {
+        int nonZero = 0;
+
+        for (byte register : registers) {
+            if (register != 0) {
+                nonZero++;
+            }
+        }
+
+        int sparseSize = 2 + Integer.BYTES + nonZero * 3;
+        int denseSize = 2 + registers.length;
+
+        if (sparseSize >= denseSize) {
+            return ByteBuffer.allocate(denseSize)
+                    .put((byte) precision)
+                    .put(DENSE)
+                    .put(registers)
+                    .array();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(sparseSize)
+                .put((byte) precision)
+                .put(SPARSE)
+                .putInt(nonZero);
+
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] != 0) {
+                buffer.putShort((short) i).put(registers[i]);
+            }
+        }
+
+        return buffer.array();
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        HyperLogLog sketch = new HyperLogLog(buffer.get());
+        byte format = buffer.get();
+
+        if (format == DENSE) {
+            buffer.get(sketch.registers);
+        } else {
+            int nonZero = buffer.getInt();
+
+            for (int i = 0; i < nonZero; i++) {
+                sketch.registers[Short.toUnsignedInt(buffer.getShort())] = buffer.get();
+            }
+        }
+
+        return sketch;
+    }
+
+    /**
+     * 64-битный FNV-1a с финальным перемешиванием MurmurHash3 - старшие биты, по которым выбирается
+     * регистр, должны быть распределены равномерно.
+     */
+    public static long hash64(byte[] value) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (byte b : value) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package ru.practicum.sketch;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.stat.Stat;
+import ru.practicum.rollup.RollupGranularity;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Часовые HyperLogLog-скетчи уникальных ip по ключу (app, uri, bucket) и скетчи uri за всю историю.
+ * <p>Как и битовые карты, скетчи не переписываются при приеме хитов: пачка пишет дельты
+ * в <i>stat_sketch_hour_delta</i>, а {@link #fold} в фоне объединяет их со скетчами часа и скетчами uri.</p>
+ */
+@Slf4j
+@Repository
+public class StatSketchRepository {
+    private static final int KEYS_PER_QUERY = 1000;
+    private static final Comparator<SketchKey> KEY_ORDER = Comparator.comparing(SketchKey::getBucket)
+            .thenComparingInt(SketchKey::getUriId)
+            .thenComparingLong(SketchKey::getAppId);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final int precision;
+
+    @Autowired
+    public StatSketchRepository(NamedParameterJdbcTemplate jdbcTemplate,
+                                @Value("${stats.sketch.error-bound:0.02}") double errorBound) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.precision = HyperLogLog.precisionFor(errorBound);
+
+        log.debug("StatSketchRepository(errorBound={}, precision={})", errorBound, precision);
+    }
+
+    public HyperLogLog newSketch() {
+        return new HyperLogLog(precision);
+    }
+
+    /**
+     * Добавляет ip пачки хитов дельтами - по строке на ключ (app, uri, час) пачки, одним пакетом вставок
+     * без чтения и блокировки скетчей часа.
+     */
+    public void merge(List<Stat> stats) {
+        log.debug("StatSketchRepository - repository.merge(size={})", stats.size());
+
+        Map<SketchKey, HyperLogLog> sketches = new TreeMap<>(KEY_ORDER);
+
+        for (Stat stat : stats) {
+            SketchKey key = new SketchKey(stat.getApp().getId(), stat.getUri().getId(),
+                    RollupGranularity.HOUR.floor(stat.getRequested()));
+            sketches.computeIfAbsent(key, ignore -> newSketch()).add(stat.getIp().getIp());
+        }
+
+        jdbcTemplate.batchUpdate("insert into stat_sketch_hour_delta (app_id, uri_id, bucket, sketch) " +
+                        "values (:appId, :uriId, :bucket, :sketch)",
+                sketches.entrySet().stream()
+                        .map(entry -> keyParameters(entry.getKey()).addValue("sketch", entry.getValue().toBytes()))
+                        .toArray(MapSqlParameterSource[]::new));
+    }
+
+    /**
+     * Объединяет до limit самых старых дельт со скетчами часа и со скетчами uri за всю историю и удаляет их -
+     * так же, как {@code StatBitmapRepository.fold}.
+     *
+     * @return число объединенных дельт
+     */
+    public int fold(int limit) {
+        Map<SketchKey, HyperLogLog> sketches = new TreeMap<>(KEY_ORDER);
+        Map<Integer, HyperLogLog> uriSketches = new TreeMap<>();
+        List<Long> ids = new ArrayList<>();
+
+        jdbcTemplate.query("select id, app_id, uri_id, bucket, sketch from stat_sketch_hour_delta order by id limit :limit",
+                new MapSqlParameterSource("limit", limit),
+                rs -> {
+                    SketchKey key = new SketchKey(rs.getLong("app_id"), rs.getInt("uri_id"),
+                            rs.getTimestamp("bucket").toLocalDateTime());
+                    byte[] sketch = rs.getBytes("sketch");
+                    // union дописывает в свой аргумент, поэтому у каждой карты своя копия скетча
+                    sketches.merge(key, HyperLogLog.fromBytes(sketch), HyperLogLog::union);
+                    uriSketches.merge(key.getUriId(), HyperLogLog.fromBytes(sketch), HyperLogLog::union);
+                    ids.add(rs.getLong("id"));
+                });
+
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        log.debug("StatSketchRepository - repository.fold(deltas={}, sketches={})", ids.size(), sketches.size());
+
+        List<SketchKey> keys = new ArrayList<>(sketches.keySet());
+        byte[] emptySketch = newSketch().toBytes();
+
+        jdbcTemplate.batchUpdate("insert into stat_sketch_hour (app_id, uri_id, bucket, sketch) " +
+                        "values (:appId, :uriId, :bucket, :sketch) on conflict (bucket, uri_id, app_id) do nothing",
+                keys.stream().map(key -> keyParameters(key).addValue("sketch", emptySketch))
+                        .toArray(MapSqlParameterSource[]::new));
+
+        for (int from = 0; from < keys.size(); from += KEYS_PER_QUERY) {
+            List<SketchKey> chunk = keys.subList(from, Math.min(keys.size(), from + KEYS_PER_QUERY));
+            List<Object[]> tuples = chunk.stream()
+                    .map(key -> new Object[]{Timestamp.valueOf(key.getBucket()), key.getUriId(), key.getAppId()})
+                    .collect(Collectors.toList());
+
+            jdbcTemplate.query("select app_id, uri_id, bucket, sketch from stat_sketch_hour " +
+                            "where (bucket, uri_id, app_id) in (:keys) order by bucket, uri_id, app_id for update",
+                    new MapSqlParameterSource("keys", tuples),
+                    rs -> {
+                        SketchKey key = new SketchKey(rs.getLong("app_id"), rs.getInt("uri_id"),
+                                rs.getTimestamp("bucket").toLocalDateTime());
+                        HyperLogLog stored = HyperLogLog.fromBytes(rs.getBytes("sketch"));
+                        sketches.computeIfPresent(key, (ignore, sketch) -> HyperLogLog.union(sketch, stored));
+                    });
+        }
+
+        jdbcTemplate.batchUpdate("update stat_sketch_hour set sketch = :sketch " +
+                        "where bucket = :bucket and uri_id = :uriId and app_id = :appId",
+                sketches.entrySet().stream()
+                        .map(entry -> keyParameters(entry.getKey()).addValue("sketch", entry.getValue().toBytes()))
+                        .toArray(MapSqlParameterSource[]::new));
+        unionUriSketches(uriSketches);
+
+        for (int from = 0; from < ids.size(); from += KEYS_PER_QUERY) {
+            jdbcTemplate.update("delete from stat_sketch_hour_delta where id in (:ids)",
+                    new MapSqlParameterSource("ids", ids.subList(from, Math.min(ids.size(), from + KEYS_PER_QUERY))));
+        }
+
+        return ids.size();
+    }
+
+    /**
+     * Пересчитывает скетчи часов полуинтервала [from, to), границы которого выровнены по часу, из сырых строк
+     * <i>stat</i>. Часы без сырых строк пропускаются. Вставка перезаписывает скетч при конфликте со строкой,
+     * которую параллельный {@link #fold} создал после удаления. Пересчитанные скетчи добавляются и к скетчам uri
+     * за всю историю: в них могут не хватать ip строк, попавших в <i>stat</i> в обход сервиса.
+     */
+    public void rebuild(LocalDateTime from, LocalDateTime to) {
+        log.debug("StatSketchRepository - repository.rebuild({}, {})", from, to);
+
+        for (LocalDateTime hour = from; hour.isBefore(to); hour = hour.plusHours(1)) {
+            Map<SketchKey, HyperLogLog> sketches = new TreeMap<>(KEY_ORDER);
+            LocalDateTime bucket = hour;
+
+            jdbcTemplate.query("select s.app_id, s.uri_id, i.ip " +
+                            "from (select distinct app_id, uri_id, ip_id from stat " +
+                            "where requested >= :from and requested < :to) as s " +
+                            "join ip as i on s.ip_id = i.id",
+                    rangeParameters(hour, hour.plusHours(1)),
+                    rs -> {
+                        SketchKey key = new SketchKey(rs.getLong("app_id"), rs.getInt("uri_id"), bucket);
+                        sketches.computeIfAbsent(key, ignore -> newSketch()).add(rs.getBytes("ip"));
+                    });
+
+            if (sketches.isEmpty()) {
+                continue;
+            }
+
+            jdbcTemplate.update("delete from stat_sketch_hour where bucket = :bucket",
+                    new MapSqlParameterSource("bucket", Timestamp.valueOf(hour)));
+            jdbcTemplate.batchUpdate("insert into stat_sketch_hour (app_id, uri_id, bucket, sketch) " +
+                            "values (:appId, :uriId, :bucket, :sketch) " +
+                            "on conflict (bucket, uri_id, app_id) do update set sketch = excluded.sketch",
+                    sketches.entrySet().stream()
+                            .map(entry -> keyParameters(entry.getKey()).addValue("sketch", entry.getValue().toBytes()))
+                            .toArray(MapSqlParameterSource[]::new));
+
+            Map<Integer, HyperLogLog> uriSketches = new TreeMap<>();
+            sketches.forEach((key, sketch) -> uriSketches.merge(key.getUriId(), sketch, HyperLogLog::union));
+            unionUriSketches(uriSketches);
+        }
+    }
+
+    /**
+     * Обходит скетчи и дельты часов полуинтервала [from, to), границы которого выровнены по часу. Один ключ
+     * (app, uri) может встретиться несколько раз - потребитель объединяет скетчи.
+     *
+     * @param uris фильтр по uri, null - без фильтра
+     */
+    public void forEachSketch(LocalDateTime from, LocalDateTime to, String[] uris,
+                              BiConsumer<List<String>, HyperLogLog> consumer) {
+        log.debug("StatSketchRepository - repository.forEachSketch({}, {}, {})", from, to, uris);
+
+        MapSqlParameterSource parameters = rangeParameters(from, to);
+        String sql = "select a.app, u.uri, h.sketch " +
+                "from (select app_id, uri_id, bucket, sketch from stat_sketch_hour " +
+                "union all select app_id, uri_id, bucket, sketch from stat_sketch_hour_delta) as h " +
+                "left join app as a on h.app_id = a.id " +
+                "join uri as u on h.uri_id = u.id " +
+                "where h.bucket >= :from and h.bucket < :to " + uriFilter(uris, parameters);
+
+        jdbcTemplate.query(sql, parameters, rs -> {
+            consumer.accept(Arrays.asList(rs.getString("app"), rs.getString("uri")),
+                    HyperLogLog.fromBytes(rs.getBytes("sketch")));
+        });
+    }
+
+    /**
+     * Обходит уникальные (app, uri, ip) сырых хитов полуинтервала [from, to) - для неполных часов на краях.
+     */
+    public void forEachRawIp(LocalDateTime from, LocalDateTime to, String[] uris,
+                             BiConsumer<List<String>, byte[]> consumer) {
+        log.debug("StatSketchRepository - repository.forEachRawIp({}, {}, {})", from, to, uris);
+
+        MapSqlParameterSource parameters = rangeParameters(from, to);
+        String sql = "select a.app, u.uri, i.ip " +
+                "from (select distinct s.app_id, s.uri_id, s.ip_id from stat as s " +
+                "where s.requested >= :from and s.requested < :to) as s " +
+                "left join app as a on s.app_id = a.id " +
+                "join uri as u on s.uri_id = u.id " +
+                "join ip as i on s.ip_id = i.id " +
+                "where true " + uriFilter(uris, parameters);
+
+        jdbcTemplate.query(sql, parameters, rs -> {
+            consumer.accept(Arrays.asList(rs.getString("app"), rs.getString("uri")), rs.getBytes("ip"));
+        });
+    }
+
+    /**
+     * Скетч uri за всю историю: строка <i>stat_sketch_uri</i>, объединенная с еще не объединенными дельтами uri.
+     */
+    public HyperLogLog findUriSketch(String uri) {
+        log.debug("StatSketchRepository - repository.findUriSketch({})", uri);
+
+        HyperLogLog[] result = {newSketch()};
+        jdbcTemplate.query("select s.sketch from stat_sketch_uri as s join uri as u on s.uri_id = u.id " +
+                        "where u.uri = :uri " +
+                        "union all select d.sketch from stat_sketch_hour_delta as d join uri as u on d.uri_id = u.id " +
+                        "where u.uri = :uri",
+                new MapSqlParameterSource("uri", uri),
+                rs -> {
+                    result[0] = HyperLogLog.union(result[0], HyperLogLog.fromBytes(rs.getBytes("sketch")));
+                });
+
+        return result[0];
+    }
+
+    /**
+     * Объединяет скетчи со скетчами uri за всю историю; строки блокируются <i>for update</i> в порядке uri_id.
+     */
+    private void unionUriSketches(Map<Integer, HyperLogLog> uriSketches) {
+        List<Integer> uriIds = new ArrayList<>(uriSketches.keySet());
+        byte[] emptySketch = newSketch().toBytes();
+
+        jdbcTemplate.batchUpdate("insert into stat_sketch_uri (uri_id, sketch) values (:uriId, :sketch) " +
+                        "on conflict (uri_id) do nothing",
+                uriIds.stream()
+                        .map(uriId -> new MapSqlParameterSource("uriId", uriId).addValue("sketch", emptySketch))
+                        .toArray(MapSqlParameterSource[]::new));
+
+        for (int from = 0; from < uriIds.size(); from += KEYS_PER_QUERY) {
+            jdbcTemplate.query("select uri_id, sketch from stat_sketch_uri where uri_id in (:uriIds) " +
+                            "order by uri_id for update",
+                    new MapSqlParameterSource("uriIds", uriIds.subList(from, Math.min(uriIds.size(), from + KEYS_PER_QUERY))),
+                    rs -> {
+                        HyperLogLog stored = HyperLogLog.fromBytes(rs.getBytes("sketch"));
+                        uriSketches.computeIfPresent(rs.getInt("uri_id"),
+                                (ignore, sketch) -> HyperLogLog.union(sketch, stored));
+                    });
+        }
+
+        jdbcTemplate.batchUpdate("update stat_sketch_uri set sketch = :sketch where uri_id = :uriId",
+                uriSketches.entrySet().stream()
+                        .map(entry -> new MapSqlParameterSource("uriId", entry.getKey())
+                                .addValue("sketch", entry.getValue().toBytes()))
+                        .toArray(MapSqlParameterSource[]::new));
+    }
+
+    private MapSqlParameterSource keyParameters(SketchKey key) {
+        return new MapSqlParameterSource()
+                .addValue("appId", key.getAppId())
+                .addValue("uriId", key.getUriId())
+                .addValue("bucket", Timestamp.valueOf(key.getBucket()));
+    }
+
+    private MapSqlParameterSource rangeParameters(LocalDateTime from, LocalDateTime to) {
+        return new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+    }
+
+    private String uriFilter(String[] uris, MapSqlParameterSource parameters) {
+        if (uris == null) {
+            return "";
+        }
+
+        if (uris.length == 0) {
+            return "and false";
+        }
+
+        parameters.addValue("uris", Arrays.asList(uris));
+        return "and u.uri in (:uris)";
+    }
+
+    @Data
+    private static class SketchKey {
+        private final long appId;
+        private final int uriId;
+        private final LocalDateTime bucket;
+    }
+}
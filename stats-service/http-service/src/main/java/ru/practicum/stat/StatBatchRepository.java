@@ -0,0 +1,9 @@
+package ru.practicum.stat;
+
+import ru.practicum.model.stat.Stat;
+
+import java.util.List;
+
+public interface StatBatchRepository {
+    void insertAll(List<Stat> stats);
+}
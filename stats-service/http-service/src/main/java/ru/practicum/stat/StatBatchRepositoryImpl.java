@@ -0,0 +1,45 @@
+package ru.practicum.stat;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.model.stat.Stat;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Пакетная вставка хитов через JDBC batch. Вместе с параметром драйвера <i>reWriteBatchedInserts=true</i>
+ * PostgreSQL получает многострочный <i>insert</i> вместо отдельного запроса на каждый хит.
+ */
+@Slf4j
+public class StatBatchRepositoryImpl implements StatBatchRepository {
+    private static final String INSERT_STAT = "insert into stat (app_id, uri_id, ip_id, requested) values (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    @Autowired
+    public StatBatchRepositoryImpl(JdbcTemplate jdbcTemplate,
+                                   @Value("${stats.ingest.jdbc-batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void insertAll(List<Stat> stats) {
+        log.debug("StatBatchRepositoryImpl - repository.insertAll(size={})", stats.size());
+
+        if (stats.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_STAT, stats, batchSize, (ps, stat) -> {
+            ps.setLong(1, stat.getApp().getId());
+            ps.setInt(2, stat.getUri().getId());
+            ps.setInt(3, stat.getIp().getId());
+            ps.setTimestamp(4, Timestamp.valueOf(stat.getRequested()));
+        });
+    }
+}
@@ -9,50 +9,60 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
-public interface StatRepository extends JpaRepository<Stat, Long> {
+public interface StatRepository extends JpaRepository<Stat, Long>, StatBatchRepository {
 
     // uris - пустой и ip - уникальные
-    @Query(value = "select a.app, s.uri, count(distinct s.ip) as hits " +
-            "from stat as s " +
+    @Query(value = "select a.app, u.uri, s.hits " +
+            "from (select app_id, uri_id, count(distinct ip_id) as hits from stat " +
+            "where requested between ?1 and ?2 " +
+            "group by uri_id, app_id) as s " +
             "left join app as a on s.app_id = a.id " +
-            "where s.requested between ?1 and ?2 " +
-            "group by s.uri, a.app " +
-            "order by hits desc ",
+            "join uri as u on s.uri_id = u.id " +
+            "order by s.hits desc ",
             nativeQuery = true)
     List<StatResponseViewDto> findAllUniqueByRequestedBetween(LocalDateTime start, LocalDateTime end);
 
-    // uris - пустой и ip - неуникальные
-    @Query(value = "select a.app, s.uri, count(s.ip) as hits " +
-            "from stat as s " +
+    // uris - не пустой и ip - уникальные
+    @Query(value = "select a.app, u.uri, s.hits " +
+            "from (select app_id, uri_id, count(distinct ip_id) as hits from stat " +
+            "where (requested between ?1 and ?2) and (uri_id in (select id from uri where uri in (?3))) " +
+            "group by uri_id, app_id) as s " +
             "left join app as a on s.app_id = a.id " +
-            "where s.requested between ?1 and ?2 " +
-            "group by s.uri, a.app " +
-            "order by hits desc ",
+            "join uri as u on s.uri_id = u.id " +
+            "order by s.hits desc ",
             nativeQuery = true)
-    List<StatResponseViewDto> findAllByRequestedBetweenOrderByRequestedDesc(LocalDateTime start, LocalDateTime end);
+    List<StatResponseViewDto> findAllUniqueByRequestedBetweenAndUriIn(LocalDateTime start, LocalDateTime end, String[] uris);
 
-    // uris - не пустой и ip - уникальные
-    @Query(value = "select a.app, s.uri, count(distinct s.ip) as hits " +
-            "from stat as s " +
+    // ip - неуникальные, полуинтервал [from, to) - неполные минуты на краях выборки
+    @Query(value = "select a.app, u.uri, s.hits " +
+            "from (select app_id, uri_id, count(*) as hits from stat " +
+            "where requested >= ?1 and requested < ?2 " +
+            "group by uri_id, app_id) as s " +
             "left join app as a on s.app_id = a.id " +
-            "where (s.requested between ?1 and ?2) and (s.uri in (?3)) " +
-            "group by s.uri, a.app " +
-            "order by hits desc ",
+            "join uri as u on s.uri_id = u.id ",
             nativeQuery = true)
-    List<StatResponseViewDto> findAllUniqueByRequestedBetweenAndUriIn(LocalDateTime start, LocalDateTime end, String[] uris);
+    List<StatResponseViewDto> countHitsByRequestedRange(LocalDateTime from, LocalDateTime to);
 
-    // uris - не пустой и ip - неуникальные
-    @Query(value = "select a.app, s.uri, count(s.ip) as hits " +
-            "from stat as s " +
+    // uris - не пустой и ip - неуникальные, полуинтервал [from, to) - неполные минуты на краях выборки
+    @Query(value = "select a.app, u.uri, s.hits " +
+            "from (select app_id, uri_id, count(*) as hits from stat " +
+            "where (requested >= ?1 and requested < ?2) and (uri_id in (select id from uri where uri in (?3))) " +
+            "group by uri_id, app_id) as s " +
             "left join app as a on s.app_id = a.id " +
-            "where (s.requested between ?1 and ?2) and (s.uri in (?3)) " +
-            "group by s.uri, a.app " +
-            "order by hits desc ",
+            "join uri as u on s.uri_id = u.id ",
+            nativeQuery = true)
+    List<StatResponseViewDto> countHitsByRequestedRangeAndUriIn(LocalDateTime from, LocalDateTime to, String[] uris);
+
+    // ip - уникальные, все хиты каждого uri из списка - одним запросом для списка событий
+    @Query(value = "select u.uri, s.hits " +
+            "from (select uri_id, count(distinct ip_id) as hits from stat " +
+            "where uri_id in (select id from uri where uri in (?1)) " +
+            "group by uri_id) as s " +
+            "join uri as u on s.uri_id = u.id ",
             nativeQuery = true)
-    List<StatResponseViewDto> findAllByRequestedBetweenAndUriInOrderByRequestedDesc(LocalDateTime start, LocalDateTime end, String[] uris);
+    List<StatResponseViewDto> getUniqueViewsByUriIn(String[] uris);
 
-    @Query(value = "select count(distinct s.ip) from stat as s " +
-            "where s.uri = ?1 " +
-            "group by s.ip ", nativeQuery = true)
+    @Query(value = "select count(distinct s.ip_id) from stat as s " +
+            "where s.uri_id = (select id from uri where uri = ?1) ", nativeQuery = true)
     Optional<Long> getUniqueEventViewsByUri(String eventUri);
 }
@@ -0,0 +1,121 @@
+package ru.practicum.stat;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.stat.dto.StatResponseDto;
+import ru.practicum.rollup.RollupGranularity;
+import ru.practicum.rollup.RollupSegment;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Выборки /stats, которые отдаются потребителю построчно с серверного курсора, не накапливаясь в памяти.
+ * <p>Агрегация целиком выполняется в БД. Курсор PostgreSQL работает только внутри транзакции, поэтому методы
+ * должны вызываться из транзакционного сервиса.</p>
+ */
+@Slf4j
+@Repository
+public class StatStreamRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public StatStreamRepository(DataSource dataSource,
+                                @Value("${stats.stream.fetch-size:1000}") int fetchSize) {
+        JdbcTemplate cursorTemplate = new JdbcTemplate(dataSource);
+        cursorTemplate.setFetchSize(fetchSize);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(cursorTemplate);
+
+        log.debug("StatStreamRepository(fetchSize={})", fetchSize);
+    }
+
+    /**
+     * Неуникальные хиты одним запросом: сегменты предагрегатов и сырых строк объединяются через
+     * <i>union all</i> и суммируются в БД.
+     */
+    public void streamHits(List<RollupSegment> segments, String[] uris, Consumer<StatResponseDto> consumer) {
+        log.debug("StatStreamRepository - repository.streamHits({}, {})", segments, uris);
+
+        if (segments.isEmpty() || (uris != null && uris.length == 0)) {
+            return;
+        }
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        String uriFilter = uriFilter(uris, parameters);
+        List<String> subqueries = new ArrayList<>(segments.size());
+
+        for (int i = 0; i < segments.size(); i++) {
+            RollupSegment segment = segments.get(i);
+            parameters.addValue("from" + i, Timestamp.valueOf(segment.getFrom()));
+            parameters.addValue("to" + i, Timestamp.valueOf(segment.getTo()));
+
+            if (segment.getGranularity() == RollupGranularity.RAW) {
+                subqueries.add("select app_id, uri_id, count(*) as hits from stat " +
+                        "where requested >= :from" + i + " and requested < :to" + i + uriFilter +
+                        " group by uri_id, app_id");
+            } else {
+                subqueries.add("select app_id, uri_id, hits from " + segment.getGranularity().getSource() +
+                        " as r where bucket >= :from" + i + " and bucket < :to" + i + uriFilter);
+            }
+        }
+
+        String sql = "select a.app, u.uri, h.hits " +
+                "from (select app_id, uri_id, sum(hits) as hits from (" + String.join(" union all ", subqueries) + ") as s " +
+                "group by uri_id, app_id) as h " +
+                "left join app as a on h.app_id = a.id " +
+                "join uri as u on h.uri_id = u.id " +
+                "order by h.hits desc";
+
+        stream(sql, parameters, consumer);
+    }
+
+    /**
+     * Уникальные хиты одним запросом <i>count(distinct ip_id)</i> по сырым строкам интервала [start, end].
+     */
+    public void streamUniqueHits(LocalDateTime start, LocalDateTime end, String[] uris,
+                                 Consumer<StatResponseDto> consumer) {
+        log.debug("StatStreamRepository - repository.streamUniqueHits({}, {}, {})", start, end, uris);
+
+        if (uris != null && uris.length == 0) {
+            return;
+        }
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+        String sql = "select a.app, u.uri, h.hits " +
+                "from (select app_id, uri_id, count(distinct ip_id) as hits from stat " +
+                "where requested between :start and :end" + uriFilter(uris, parameters) +
+                " group by uri_id, app_id) as h " +
+                "left join app as a on h.app_id = a.id " +
+                "join uri as u on h.uri_id = u.id " +
+                "order by h.hits desc";
+
+        stream(sql, parameters, consumer);
+    }
+
+    private void stream(String sql, MapSqlParameterSource parameters, Consumer<StatResponseDto> consumer) {
+        jdbcTemplate.query(sql, parameters, rs -> {
+            consumer.accept(StatResponseDto.of(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+        });
+    }
+
+    private String uriFilter(String[] uris, MapSqlParameterSource parameters) {
+        if (uris == null) {
+            return "";
+        }
+
+        parameters.addValue("uris", Arrays.asList(uris));
+        return " and uri_id in (select id from uri where uri in (:uris))";
+    }
+}
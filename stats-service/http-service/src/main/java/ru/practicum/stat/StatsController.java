@@ -1,23 +1,45 @@
 package ru.practicum.stat;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import ru.practicum.model.stat.dto.StatRequestDto;
 import ru.practicum.model.stat.dto.StatResponseDto;
+import ru.practicum.model.stat.dto.StatTimeSeriesDto;
+import ru.practicum.timeseries.TimeSeriesBucket;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.Size;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
+@Validated
 @RestController
 @RequestMapping
 @RequiredArgsConstructor
 public class StatsController {
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final String STATS_PLAN_HEADER = "X-Stats-Plan";
+    /**
+     * Список событий для <i>POST /stats/views</i> ограничен, чтобы выборка укладывалась в один запрос к БД.
+     */
+    public static final int MAX_VIEWS_EVENT_IDS = 10_000;
+
     private final StatsService statsService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping(path = "/hit")
     @ResponseStatus(HttpStatus.CREATED)
@@ -26,25 +48,162 @@ public class StatsController {
         statsService.toHit(requestDto);
     }
 
+    @PostMapping(path = "/hit/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public void toHitBatch(@RequestBody @NotEmpty List<@Valid StatRequestDto> requestDtos) {
+        log.debug("/hit/batch - POST: toHitBatch(size={})", requestDtos.size());
+        statsService.toHitBatch(requestDtos);
+    }
+
+    /**
+     * @param explain добавить в ответ заголовок {@value #STATS_PLAN_HEADER} с планом, по которому посчитана выборка
+     */
     @GetMapping(path = "/stats")
     @ResponseStatus(HttpStatus.OK)
     public List<StatResponseDto> getStats(@RequestParam String start,
                                           @RequestParam String end,
                                           @RequestParam(required = false) String[] uris,
-                                          @RequestParam(required = false, defaultValue = "false") boolean unique) {
-        log.debug("/stats - GET: getStats({}, {}, {}, {})", start, end, uris, unique);
+                                          @RequestParam(required = false, defaultValue = "false") boolean unique,
+                                          @RequestParam(required = false, defaultValue = "false") boolean approximate,
+                                          @RequestParam(required = false, defaultValue = "false") boolean explain,
+                                          HttpServletResponse response) {
+        log.debug("/stats - GET: getStats({}, {}, {}, {}, approximate={}, explain={})", start, end, uris, unique,
+                approximate, explain);
 
         start = URLDecoder.decode(start, StandardCharsets.UTF_8);
         end = URLDecoder.decode(end, StandardCharsets.UTF_8);
 
+        if (explain) {
+            StatsResult result = statsService.explainStats(start, end, uris, unique, approximate);
+            String plan = result.getPlan().describe();
+            log.info("План выборки /stats: {}", plan);
+            response.setHeader(STATS_PLAN_HEADER, plan);
+            return result.getStats();
+        }
+
+        if (unique && approximate) {
+            return statsService.getApproximateStats(start, end, uris);
+        }
+
         return statsService.getStats(start, end, uris, unique);
     }
 
+    /**
+     * /stats в формате NDJSON - по объекту на строку. Строки пишутся в ответ по мере чтения из БД, поэтому
+     * память не зависит от числа групп (app, uri).
+     */
+    @GetMapping(path = "/stats", produces = APPLICATION_NDJSON_VALUE)
+    public void streamStats(@RequestParam String start,
+                            @RequestParam String end,
+                            @RequestParam(required = false) String[] uris,
+                            @RequestParam(required = false, defaultValue = "false") boolean unique,
+                            @RequestParam(required = false, defaultValue = "false") boolean approximate,
+                            HttpServletResponse response) {
+        log.debug("/stats - GET (ndjson): streamStats({}, {}, {}, {}, approximate={})", start, end, uris, unique, approximate);
+
+        start = URLDecoder.decode(start, StandardCharsets.UTF_8);
+        end = URLDecoder.decode(end, StandardCharsets.UTF_8);
+
+        if (unique && approximate) {
+            List<StatResponseDto> stats = statsService.getApproximateStats(start, end, uris);
+            OutputStream out = startNdjson(response);
+            stats.forEach(dto -> writeNdjsonLine(out, dto));
+            return;
+        }
+
+        OutputStream[] out = {null};
+        statsService.streamStats(start, end, uris, unique, dto -> {
+            if (out[0] == null) {
+                out[0] = startNdjson(response);
+            }
+            writeNdjsonLine(out[0], dto);
+        });
+
+        if (out[0] == null) {
+            startNdjson(response);
+        }
+    }
+
+    private OutputStream startNdjson(HttpServletResponse response) {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        try {
+            return response.getOutputStream();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeNdjsonLine(OutputStream out, StatResponseDto dto) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(dto));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @GetMapping(path = "/stats/top")
+    @ResponseStatus(HttpStatus.OK)
+    public List<StatResponseDto> getTopStats(@RequestParam String start,
+                                             @RequestParam String end,
+                                             @RequestParam(required = false) String app,
+                                             @RequestParam(required = false, defaultValue = "20")
+                                             @Positive @Max(1000) int limit) {
+        log.debug("/stats/top - GET: getTopStats({}, {}, {}, {})", start, end, app, limit);
+
+        start = URLDecoder.decode(start, StandardCharsets.UTF_8);
+        end = URLDecoder.decode(end, StandardCharsets.UTF_8);
+
+        return statsService.getTopStats(start, end, app, limit);
+    }
+
+    @GetMapping(path = "/stats/timeseries")
+    @ResponseStatus(HttpStatus.OK)
+    public List<StatTimeSeriesDto> getTimeSeries(@RequestParam(name = "uri") @NotEmpty String[] uris,
+                                                 @RequestParam String start,
+                                                 @RequestParam String end,
+                                                 @RequestParam(required = false, defaultValue = "HOUR") TimeSeriesBucket bucket,
+                                                 @RequestParam(required = false, defaultValue = "false") boolean unique) {
+        log.debug("/stats/timeseries - GET: getTimeSeries({}, {}, {}, {}, {})", uris, start, end, bucket, unique);
+
+        start = URLDecoder.decode(start, StandardCharsets.UTF_8);
+        end = URLDecoder.decode(end, StandardCharsets.UTF_8);
+
+        return statsService.getTimeSeries(start, end, uris, bucket, unique);
+    }
 
     @GetMapping(path = "/stats/{eventId}")
     @ResponseStatus(HttpStatus.OK)
-    public long getUniqueEventViews(@PathVariable long eventId) {
-        log.debug("/stats/{} - GET: getUniqueEventViews({})", eventId, eventId);
+    public long getUniqueEventViews(@PathVariable long eventId,
+                                    @RequestParam(required = false, defaultValue = "false") boolean approximate) {
+        log.debug("/stats/{} - GET: getUniqueEventViews({}, approximate={})", eventId, eventId, approximate);
+
+        if (approximate) {
+            return statsService.getApproximateUniqueEventViews(eventId);
+        }
+
         return statsService.getUniqueEventViews(eventId);
     }
+
+    @PostMapping(path = "/stats/views")
+    @ResponseStatus(HttpStatus.OK)
+    public Map<Long, Long> getUniqueEventViews(@RequestBody @Size(max = MAX_VIEWS_EVENT_IDS) List<Long> eventIds) {
+        log.debug("/stats/views - POST: getUniqueEventViews(size={})", eventIds.size());
+        return statsService.getUniqueEventViews(eventIds);
+    }
+
+    @PostMapping(path = "/stats/bitmaps/rebuild")
+    @ResponseStatus(HttpStatus.OK)
+    public int rebuildBitmaps(@RequestParam String start,
+                              @RequestParam String end) {
+        log.debug("/stats/bitmaps/rebuild - POST: rebuildBitmaps({}, {})", start, end);
+
+        start = URLDecoder.decode(start, StandardCharsets.UTF_8);
+        end = URLDecoder.decode(end, StandardCharsets.UTF_8);
+
+        return statsService.rebuildBitmaps(start, end);
+    }
 }
@@ -0,0 +1,19 @@
+package ru.practicum.stat;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import ru.practicum.model.stat.dto.StatResponseDto;
+import ru.practicum.plan.StatsQueryPlan;
+
+import java.util.List;
+
+/**
+ * Выборка /stats вместе с планом, по которому она посчитана. В кеше результатов план хранится рядом с выборкой,
+ * поэтому заголовок {@link StatsController#STATS_PLAN_HEADER} описывает тот план, что дал тело ответа.
+ */
+@Data
+@AllArgsConstructor(staticName = "of")
+public class StatsResult {
+    private final List<StatResponseDto> stats;
+    private final StatsQueryPlan plan;
+}
@@ -0,0 +1,207 @@
+package ru.practicum.stat;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.model.stat.Stat;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Кеш результатов /stats. Выборка хранится вместе с планом, по которому она посчитана.
+ * <p>Окно, закрытое раньше водяного знака (сейчас минус допустимое опоздание хитов), больше не меняется и
+ * хранится без срока - до вытеснения по размеру. Окно, захватывающее последние минуты, живет короткий TTL.
+ * Хит, пришедший позже водяного знака, сбрасывает закешированные окна, в которые он попадает.</p>
+ * <p>Каждый сброс увеличивает поколение кеша. Результат, загрузка которого пересеклась со сбросом, в кеше не
+ * остается: он мог быть прочитан из БД до фиксации опоздавших хитов.</p>
+ */
+@Slf4j
+@Component
+public class StatsResultCache {
+    private final Clock clock;
+    private final boolean enabled;
+    private final long watermarkLagMs;
+    private final long liveTtlNanos;
+    private final Cache<StatsQuery, StatsResult> cache;
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired
+    public StatsResultCache(@Value("${stats.cache.enabled:true}") boolean enabled,
+                            @Value("${stats.cache.max-size:10000}") long maxSize,
+                            @Value("${stats.cache.watermark-lag-ms:600000}") long watermarkLagMs,
+                            @Value("${stats.cache.live-ttl-ms:5000}") long liveTtlMs) {
+        this(Clock.systemDefaultZone(), enabled, maxSize, watermarkLagMs, liveTtlMs);
+    }
+
+    StatsResultCache(Clock clock, boolean enabled, long maxSize, long watermarkLagMs, long liveTtlMs) {
+        this.clock = clock;
+        this.enabled = enabled;
+        this.watermarkLagMs = watermarkLagMs;
+        this.liveTtlNanos = TimeUnit.MILLISECONDS.toNanos(liveTtlMs);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new WindowExpiry())
+                .recordStats()
+                .build();
+
+        log.debug("StatsResultCache(enabled={}, maxSize={}, watermarkLagMs={}, liveTtlMs={})",
+                enabled, maxSize, watermarkLagMs, liveTtlMs);
+    }
+
+    @Autowired(required = false)
+    public void registerMetrics(MeterRegistry meterRegistry) {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "stats.result");
+    }
+
+    public StatsResult get(StatsQuery query, Supplier<StatsResult> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        StatsResult cached = cache.getIfPresent(query);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        long loadGeneration = generation.get();
+        StatsResult loaded = loader.get();
+        StatsResult result = StatsResult.of(List.copyOf(loaded.getStats()), loaded.getPlan());
+        cache.put(query, result);
+
+        // Сброс увеличивает поколение до удаления окон, поэтому сброс после этой проверки удалит результат сам
+        if (generation.get() != loadGeneration) {
+            cache.asMap().remove(query, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Сбрасывает закрытые окна, в которые попали опоздавшие хиты пачки. Внутри транзакции сброс откладывается
+     * до фиксации, иначе параллельный запрос успел бы закешировать окно без этих хитов.
+     */
+    public void onHits(List<Stat> stats) {
+        if (!enabled) {
+            return;
+        }
+
+        afterCommit(() -> invalidate(stats));
+    }
+
+    /**
+     * Сбрасывает окна, пересекающие полуинтервал [from, to), агрегаты которого пересчитаны из сырых строк.
+     * Сброс, как и в {@link #onHits}, откладывается до фиксации транзакции.
+     */
+    public void onRebuild(LocalDateTime from, LocalDateTime to) {
+        if (!enabled) {
+            return;
+        }
+
+        afterCommit(() -> invalidate(from, to));
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Сбрасывает за один проход окна, пересекающие промежуток от самого раннего до самого позднего опоздавшего
+     * хита пачки.
+     */
+    private void invalidate(List<Stat> stats) {
+        LocalDateTime watermark = watermark();
+        LocalDateTime first = null;
+        LocalDateTime last = null;
+
+        for (Stat stat : stats) {
+            LocalDateTime requested = stat.getRequested();
+
+            if (requested.isBefore(watermark)) {
+                first = first == null || requested.isBefore(first) ? requested : first;
+                last = last == null || requested.isAfter(last) ? requested : last;
+            }
+        }
+
+        if (first == null) {
+            return;
+        }
+
+        invalidate(first, last);
+    }
+
+    private void invalidate(LocalDateTime from, LocalDateTime to) {
+        generation.incrementAndGet();
+        cache.asMap().keySet().removeIf(query -> query.overlaps(from, to));
+    }
+
+    private LocalDateTime watermark() {
+        return LocalDateTime.now(clock).minus(watermarkLagMs, ChronoUnit.MILLIS);
+    }
+
+    private class WindowExpiry implements Expiry<StatsQuery, StatsResult> {
+        @Override
+        public long expireAfterCreate(StatsQuery query, StatsResult result, long currentTime) {
+            return query.getEnd().isBefore(watermark()) ? Long.MAX_VALUE : liveTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(StatsQuery query, StatsResult result, long currentTime,
+                                      long currentDuration) {
+            return expireAfterCreate(query, result, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(StatsQuery query, StatsResult result, long currentTime,
+                                    long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * Ключ кеша: границы окна, отсортированный список uri (null - без фильтра) и признак уникальности.
+     */
+    @Data
+    public static class StatsQuery {
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+        private final List<String> uris;
+        private final boolean unique;
+
+        public static StatsQuery of(LocalDateTime start, LocalDateTime end, String[] uris, boolean unique) {
+            List<String> sortedUris = uris == null ? null : Arrays.stream(uris).sorted().distinct()
+                    .collect(Collectors.toUnmodifiableList());
+            return new StatsQuery(start, end, sortedUris, unique);
+        }
+
+        boolean overlaps(LocalDateTime from, LocalDateTime to) {
+            return !to.isBefore(start) && !from.isAfter(end);
+        }
+    }
+}
@@ -3,16 +3,56 @@ package ru.practicum.stat;
 
 import ru.practicum.model.stat.dto.StatRequestDto;
 import ru.practicum.model.stat.dto.StatResponseDto;
+import ru.practicum.model.stat.dto.StatTimeSeriesDto;
+import ru.practicum.timeseries.TimeSeriesBucket;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface StatsService {
     void toHit(StatRequestDto requestDto);
 
+    void toHitBatch(List<StatRequestDto> requestDtos);
+
     List<StatResponseDto> getStats(String start,
                                    String end,
                                    String[] uris,
                                    boolean unique);
 
+    StatsResult explainStats(String start,
+                             String end,
+                             String[] uris,
+                             boolean unique,
+                             boolean approximate);
+
+    void streamStats(String start,
+                     String end,
+                     String[] uris,
+                     boolean unique,
+                     Consumer<StatResponseDto> consumer);
+
+    List<StatResponseDto> getApproximateStats(String start,
+                                              String end,
+                                              String[] uris);
+
+    List<StatResponseDto> getTopStats(String start,
+                                      String end,
+                                      String app,
+                                      int limit);
+
+    List<StatTimeSeriesDto> getTimeSeries(String start,
+                                          String end,
+                                          String[] uris,
+                                          TimeSeriesBucket bucket,
+                                          boolean unique);
+
     long getUniqueEventViews(long eventId);
+
+    Map<Long, Long> getUniqueEventViews(Collection<Long> eventIds);
+
+    long getApproximateUniqueEventViews(long eventId);
+
+    int rebuildBitmaps(String start, String end);
 }
@@ -0,0 +1,374 @@
+package ru.practicum.stat;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.stereotype.Service;
+import ru.practicum.common.exception.IngestBufferOverflowException;
+import ru.practicum.ingest.OverflowPolicy;
+import ru.practicum.model.stat.dto.StatRequestDto;
+import ru.practicum.model.stat.dto.StatResponseDto;
+import ru.practicum.model.stat.dto.StatTimeSeriesDto;
+import ru.practicum.timeseries.TimeSeriesBucket;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Асинхронный прием хитов за счет применения паттерна <b>декоратор</b>.
+ * <p>Хит попадает в ограниченный буфер, а ответ 201 отдается сразу. Единственный фоновый поток-писатель
+ * вычитывает буфер пачками и сохраняет их через {@link StatsService#toHitBatch(List)} одной транзакцией.</p>
+ * <p>Место в буфере под пачку хитов резервируется целиком: при политиках REJECT и BLOCK пачка либо попадает
+ * в буфер вся, либо не попадает совсем, поэтому повтор отклоненной пачки не учитывает хиты дважды. BLOCK не
+ * задерживает клиента до освобождения места: поток запроса ждет не дольше <i>block-timeout-ms</i>, а затем
+ * пачка отклоняется так же, как при REJECT.</p>
+ * <p>Неудачная запись пачки повторяется до <i>retry-attempts</i> раз с экспоненциальной паузой. Пока пачка
+ * повторяется, ее хиты занимают место в буфере, и при недоступной БД новые хиты встречает политика переполнения,
+ * а не растущая очередь. Пачка, не сохраненная ни одной попыткой, теряется и учитывается в метриках
+ * <i>stats.ingest.dropped</i> и <i>stats.ingest.write.failed</i>. Пачка, которую БД отклонила из-за данных
+ * (например, нарушение ограничения), не повторяется целиком, а делится пополам, пока не останутся отдельные
+ * отклоненные хиты: теряются только они.</p>
+ * <p>Прерывание потока-писателя считается сигналом остановки: остаток буфера дописывается, и флаг прерывания
+ * восстанавливается при выходе.</p>
+ * <p>Включается параметром <i>stats.ingest.mode=async</i>.</p>
+ */
+@Slf4j
+@Service
+@Primary
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "async")
+public class StatsServiceAsyncImpl implements StatsService {
+    private final StatsService statsService;
+    private final BlockingQueue<StatRequestDto> buffer;
+    private final Semaphore capacity;
+    private final long flushIntervalMs;
+    private final int maxBatchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMs;
+    private final int retryAttempts;
+    private final long retryInitialMs;
+    private final long retryMaxMs;
+    private final AtomicLong droppedHits = new AtomicLong();
+    private final AtomicLong failedHits = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    @Autowired
+    public StatsServiceAsyncImpl(@Qualifier("statsServiceImpl") StatsService statsService,
+                                 @Value("${stats.ingest.async.buffer-size:65536}") int bufferSize,
+                                 @Value("${stats.ingest.async.flush-interval-ms:200}") long flushIntervalMs,
+                                 @Value("${stats.ingest.async.max-batch-size:5000}") int maxBatchSize,
+                                 @Value("${stats.ingest.async.overflow-policy:REJECT}") OverflowPolicy overflowPolicy,
+                                 @Value("${stats.ingest.async.block-timeout-ms:100}") long blockTimeoutMs,
+                                 @Value("${stats.ingest.async.retry-attempts:5}") int retryAttempts,
+                                 @Value("${stats.ingest.async.retry-initial-ms:200}") long retryInitialMs,
+                                 @Value("${stats.ingest.async.retry-max-ms:5000}") long retryMaxMs) {
+        this.statsService = statsService;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.capacity = new Semaphore(bufferSize);
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxBatchSize = maxBatchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMs = blockTimeoutMs;
+        this.retryAttempts = retryAttempts;
+        this.retryInitialMs = retryInitialMs;
+        this.retryMaxMs = retryMaxMs;
+        this.writer = new Thread(this::drainLoop, "stats-ingest-writer");
+        this.writer.setDaemon(true);
+
+        log.debug("StatsServiceAsyncImpl(bufferSize={}, flushIntervalMs={}, maxBatchSize={}, overflowPolicy={}, "
+                        + "retryAttempts={}, retryInitialMs={}, retryMaxMs={})", bufferSize, flushIntervalMs, maxBatchSize,
+                overflowPolicy, retryAttempts, retryInitialMs, retryMaxMs);
+    }
+
+    @Autowired(required = false)
+    public void registerMetrics(MeterRegistry meterRegistry) {
+        Gauge.builder("stats.ingest.buffer.size", buffer, BlockingQueue::size).register(meterRegistry);
+        Gauge.builder("stats.ingest.dropped", droppedHits, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("stats.ingest.write.failed", failedHits, AtomicLong::get).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    @Override
+    public void toHit(StatRequestDto requestDto) {
+        log.debug("StatsServiceAsyncImpl - service.toHit({})", requestDto);
+        StatsServiceImpl.checkIp(requestDto.getIp());
+        enqueue(List.of(requestDto));
+    }
+
+    @Override
+    public void toHitBatch(List<StatRequestDto> requestDtos) {
+        log.debug("StatsServiceAsyncImpl - service.toHitBatch(size={})", requestDtos.size());
+        requestDtos.forEach(requestDto -> StatsServiceImpl.checkIp(requestDto.getIp()));
+        enqueue(requestDtos);
+    }
+
+    @Override
+    public List<StatResponseDto> getStats(String start, String end, String[] uris, boolean unique) {
+        return statsService.getStats(start, end, uris, unique);
+    }
+
+    @Override
+    public StatsResult explainStats(String start, String end, String[] uris, boolean unique, boolean approximate) {
+        return statsService.explainStats(start, end, uris, unique, approximate);
+    }
+
+    @Override
+    public void streamStats(String start, String end, String[] uris, boolean unique,
+                            Consumer<StatResponseDto> consumer) {
+        statsService.streamStats(start, end, uris, unique, consumer);
+    }
+
+    @Override
+    public List<StatResponseDto> getApproximateStats(String start, String end, String[] uris) {
+        return statsService.getApproximateStats(start, end, uris);
+    }
+
+    @Override
+    public long getUniqueEventViews(long eventId) {
+        return statsService.getUniqueEventViews(eventId);
+    }
+
+    @Override
+    public Map<Long, Long> getUniqueEventViews(Collection<Long> eventIds) {
+        return statsService.getUniqueEventViews(eventIds);
+    }
+
+    @Override
+    public long getApproximateUniqueEventViews(long eventId) {
+        return statsService.getApproximateUniqueEventViews(eventId);
+    }
+
+    @Override
+    public List<StatResponseDto> getTopStats(String start, String end, String app, int limit) {
+        return statsService.getTopStats(start, end, app, limit);
+    }
+
+    @Override
+    public List<StatTimeSeriesDto> getTimeSeries(String start, String end, String[] uris, TimeSeriesBucket bucket,
+                                                 boolean unique) {
+        return statsService.getTimeSeries(start, end, uris, bucket, unique);
+    }
+
+    @Override
+    public int rebuildBitmaps(String start, String end) {
+        return statsService.rebuildBitmaps(start, end);
+    }
+
+    public long getDroppedHits() {
+        return droppedHits.get();
+    }
+
+    public long getFailedHits() {
+        return failedHits.get();
+    }
+
+    /**
+     * Кладет хиты в буфер, заранее заняв место под них в {@link #capacity}; место освобождает поток-писатель,
+     * когда вычитывает хиты из буфера.
+     */
+    private void enqueue(List<StatRequestDto> requestDtos) {
+        switch (overflowPolicy) {
+            case BLOCK:
+                boolean accepted;
+                try {
+                    accepted = capacity.tryAcquire(requestDtos.size(), blockTimeoutMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    accepted = false;
+                }
+
+                if (!accepted) {
+                    throw overflow(requestDtos.size());
+                }
+
+                buffer.addAll(requestDtos);
+                break;
+            case DROP:
+                for (StatRequestDto requestDto : requestDtos) {
+                    if (capacity.tryAcquire()) {
+                        buffer.add(requestDto);
+                    } else {
+                        droppedHits.incrementAndGet();
+                        log.warn("Буфер приема хитов заполнен, хит отброшен: {}", requestDto);
+                    }
+                }
+                break;
+            case REJECT:
+            default:
+                if (!capacity.tryAcquire(requestDtos.size())) {
+                    throw overflow(requestDtos.size());
+                }
+
+                buffer.addAll(requestDtos);
+        }
+    }
+
+    private IngestBufferOverflowException overflow(int rejected) {
+        droppedHits.addAndGet(rejected);
+        String message = "Буфер приема хитов заполнен (" + buffer.size() + "), повторите запрос позже";
+        log.warn(message);
+        return new IngestBufferOverflowException(message);
+    }
+
+    private void drainLoop() {
+        List<StatRequestDto> batch = new ArrayList<>(maxBatchSize);
+        boolean interrupted = false;
+
+        while (running || !buffer.isEmpty()) {
+            try {
+                collectBatch(batch);
+                flush(batch);
+            } catch (InterruptedException e) {
+                // Флаг сброшен исключением: остаток буфера дописывается без него, иначе poll бросал бы снова
+                interrupted = true;
+                running = false;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        log.debug("StatsServiceAsyncImpl - writer stopped, dropped={}", droppedHits.get());
+    }
+
+    /**
+     * Набирает пачку, пока она не заполнится или не истечет интервал сброса с момента прихода первого хита.
+     */
+    private void collectBatch(List<StatRequestDto> batch) throws InterruptedException {
+        StatRequestDto first = buffer.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+
+        if (first == null) {
+            return;
+        }
+
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+
+        while (batch.size() < maxBatchSize) {
+            buffer.drainTo(batch, maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+
+            if (batch.size() >= maxBatchSize || remaining <= 0 || !running) {
+                return;
+            }
+
+            StatRequestDto next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+
+            if (next != null) {
+                batch.add(next);
+            }
+        }
+    }
+
+    /**
+     * Сохраняет пачку и освобождает ее место в буфере.
+     */
+    private void flush(List<StatRequestDto> batch) throws InterruptedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            write(batch);
+        } finally {
+            capacity.release(batch.size());
+            batch.clear();
+        }
+    }
+
+    /**
+     * Сохраняет хиты, повторяя запись, неудачную из-за БД, и деля пополам пачку, отклоненную из-за данных.
+     *
+     * @throws InterruptedException если поток прерван во время паузы; хиты этого вызова при этом теряются
+     */
+    private void write(List<StatRequestDto> hits) throws InterruptedException {
+        long pauseMs = retryInitialMs;
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                statsService.toHitBatch(hits);
+                return;
+            } catch (RuntimeException e) {
+                if (isRejectedData(e)) {
+                    split(hits, e);
+                    return;
+                }
+
+                if (attempt >= retryAttempts) {
+                    lose(hits.size());
+                    log.error("Не удалось сохранить пачку из {} хитов за {} попыток", hits.size(), attempt, e);
+                    return;
+                }
+
+                log.warn("Не удалось сохранить пачку из {} хитов, повтор через {} мс: {}", hits.size(), pauseMs,
+                        e.getMessage());
+            }
+
+            try {
+                Thread.sleep(pauseMs);
+            } catch (InterruptedException e) {
+                lose(hits.size());
+                log.error("Пачка из {} хитов не сохранена: поток записи прерван", hits.size());
+                throw e;
+            }
+
+            pauseMs = Math.min(retryMaxMs, pauseMs * 2);
+        }
+    }
+
+    private void split(List<StatRequestDto> hits, RuntimeException e) throws InterruptedException {
+        if (hits.size() == 1) {
+            lose(1);
+            log.error("Хит отклонен БД и не сохранен: {}", hits.get(0), e);
+            return;
+        }
+
+        log.warn("Пачка из {} хитов отклонена БД, сохраняется по частям: {}", hits.size(), e.getMessage());
+        int half = hits.size() / 2;
+        write(hits.subList(0, half));
+        write(hits.subList(half, hits.size()));
+    }
+
+    /**
+     * Ошибка, которую не исправит повтор той же пачки: ее вызвали данные хитов, а не недоступность БД.
+     */
+    private static boolean isRejectedData(RuntimeException e) {
+        return e instanceof NonTransientDataAccessException
+                && !(e instanceof DataAccessResourceFailureException)
+                && !(e instanceof NonTransientDataAccessResourceException);
+    }
+
+    private void lose(int hits) {
+        droppedHits.addAndGet(hits);
+        failedHits.addAndGet(hits);
+    }
+}
@@ -2,88 +2,508 @@ package ru.practicum.stat;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import ru.practicum.app.AppRepository;
+import ru.practicum.app.AppRegistry;
+import ru.practicum.bitmap.StatBitmapRepository;
 import ru.practicum.common.exception.InvalidDurationException;
+import ru.practicum.compaction.StatCompactionRepository;
+import ru.practicum.common.exception.InvalidIpAddressException;
+import ru.practicum.dictionary.IpDictionary;
+import ru.practicum.dictionary.UriDictionary;
+import ru.practicum.ingest.HitDeduplicator;
 import ru.practicum.model.app.App;
+import ru.practicum.model.ip.IpCodec;
 import ru.practicum.model.stat.Stat;
 import ru.practicum.model.stat.dto.StatMapper;
 import ru.practicum.model.stat.dto.StatRequestDto;
 import ru.practicum.model.stat.dto.StatResponseDto;
+import ru.practicum.model.stat.dto.StatResponseViewDto;
+import ru.practicum.model.stat.dto.StatTimeSeriesDto;
+import ru.practicum.plan.StatsQueryPlan;
+import ru.practicum.plan.StatsQueryPlanner;
+import ru.practicum.rollup.RollupGranularity;
+import ru.practicum.rollup.RollupRange;
+import ru.practicum.rollup.RollupSegment;
+import ru.practicum.rollup.StatRollupRepository;
+import ru.practicum.sketch.HyperLogLog;
+import ru.practicum.sketch.StatSketchRepository;
+import ru.practicum.timeseries.StatTimeSeriesRepository;
+import ru.practicum.timeseries.TimeSeriesBucket;
+import ru.practicum.top.TopUriTracker;
+import ru.practicum.views.UniqueViewsCounter;
 
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 @Transactional(readOnly = true)
 public class StatsServiceImpl implements StatsService {
+    private static final long MAX_TIME_SERIES_BUCKETS = 100_000;
+
     private final StatRepository statRepository;
-    private final AppRepository appRepository;
+    private final AppRegistry appRegistry;
+    private final StatRollupRepository rollupRepository;
+    private final StatSketchRepository sketchRepository;
+    private final StatBitmapRepository bitmapRepository;
+    private final StatStreamRepository streamRepository;
+    private final StatTimeSeriesRepository timeSeriesRepository;
+    private final StatCompactionRepository compactionRepository;
+    private final StatsResultCache resultCache;
+    private final StatsQueryPlanner queryPlanner;
+    private final TopUriTracker topTracker;
+    private final UniqueViewsCounter uniqueViewsCounter;
+    private final HitDeduplicator hitDeduplicator;
+    private final UriDictionary uriDictionary;
+    private final IpDictionary ipDictionary;
 
     @Override
     @Transactional
     public void toHit(StatRequestDto requestDto) {
         log.debug("StatsServiceImpl - service.toHit({})", requestDto);
+        toHitBatch(List.of(requestDto));
+    }
 
-        String appName = requestDto.getApp();
-        Optional<App> foundedApp = appRepository.findByApp(appName);
-        App app = App.builder().app(appName).build();
+    @Override
+    @Transactional
+    public void toHitBatch(List<StatRequestDto> requestDtos) {
+        log.debug("StatsServiceImpl - service.toHitBatch(size={})", requestDtos.size());
 
-        if (foundedApp.isEmpty()) {
-            app = appRepository.save(app);
-        } else {
-            app = foundedApp.get();
+        requestDtos.forEach(requestDto -> checkIp(requestDto.getIp()));
+
+        List<StatRequestDto> freshDtos = hitDeduplicator.filterNew(requestDtos);
+
+        if (freshDtos.isEmpty()) {
+            return;
+        }
+
+        List<Stat> stats = freshDtos.stream()
+                .map(StatMapper::mapToStat)
+                .collect(Collectors.toList());
+
+        Map<String, App> apps = appRegistry.resolve(freshDtos.stream()
+                .map(StatRequestDto::getApp)
+                .collect(Collectors.toSet()));
+        Map<String, Integer> uriIds = uriDictionary.resolve(stats.stream()
+                .map(stat -> stat.getUri().getUri())
+                .collect(Collectors.toSet()));
+        Map<ByteBuffer, Integer> ipIds = ipDictionary.resolve(stats.stream()
+                .map(stat -> ByteBuffer.wrap(stat.getIp().getIp()))
+                .collect(Collectors.toSet()));
+
+        for (int i = 0; i < stats.size(); i++) {
+            Stat stat = stats.get(i);
+            stat.setApp(apps.get(freshDtos.get(i).getApp()));
+            stat.getUri().setId(uriIds.get(stat.getUri().getUri()));
+            stat.getIp().setId(ipIds.get(ByteBuffer.wrap(stat.getIp().getIp())));
         }
 
-        Stat stat = StatMapper.mapToStat(requestDto);
-        stat.setApp(app);
-        statRepository.save(stat);
+        statRepository.insertAll(stats);
+        rollupRepository.increment(stats);
+        sketchRepository.merge(stats);
+        bitmapRepository.merge(stats);
+        topTracker.offer(stats);
+        uniqueViewsCounter.offer(stats);
+        resultCache.onHits(stats);
     }
 
     @Override
     public List<StatResponseDto> getStats(String start, String end, String[] uris, boolean unique) {
         log.debug("StatsServiceImpl - service.getStats({}, {}, {}, {})", start, end, uris, unique);
 
-        LocalDateTime startTime = LocalDateTime.parse(start, StatMapper.dateTimeFormatter);
-        LocalDateTime endTime = LocalDateTime.parse(end, StatMapper.dateTimeFormatter);
+        LocalDateTime startTime = parseDateTime(start);
+        LocalDateTime endTime = parseDateTime(end);
+        checkDuration(startTime, endTime);
 
-        if (endTime.isBefore(startTime)) {
-            String message = "endTime " + endTime + " должен быть после startTime " + startTime;
-            log.warn(message);
-            throw new InvalidDurationException(message);
+        return getStats(startTime, endTime, uris, unique).getStats();
+    }
+
+    /**
+     * Выборка {@link #getStats} (или {@link #getApproximateStats} при approximate) вместе с планом, по которому
+     * она посчитана. Результат из кеша возвращается с планом, сохраненным при его загрузке.
+     */
+    @Override
+    public StatsResult explainStats(String start, String end, String[] uris, boolean unique, boolean approximate) {
+        log.debug("StatsServiceImpl - service.explainStats({}, {}, {}, {}, {})", start, end, uris, unique,
+                approximate);
+
+        if (unique && approximate) {
+            return StatsResult.of(getApproximateStats(start, end, uris),
+                    StatsQueryPlan.of(StatsQueryPlan.Strategy.SKETCH));
+        }
+
+        LocalDateTime startTime = parseDateTime(start);
+        LocalDateTime endTime = parseDateTime(end);
+        checkDuration(startTime, endTime);
+
+        return getStats(startTime, endTime, uris, unique);
+    }
+
+    private StatsResult getStats(LocalDateTime startTime, LocalDateTime endTime, String[] uris, boolean unique) {
+        return resultCache.get(StatsResultCache.StatsQuery.of(startTime, endTime, uris, unique),
+                () -> findStats(startTime, endTime, uris, unique));
+    }
+
+    private StatsResult findStats(LocalDateTime startTime, LocalDateTime endTime, String[] uris, boolean unique) {
+        if (unique && bitmapRepository.isEnabled()) {
+            log.info("Запрос на выборку где ip - уникальные: дневные битовые карты и неполные дни на краях");
+            return StatsResult.of(getUniqueHits(startTime, endTime, uris),
+                    StatsQueryPlan.of(StatsQueryPlan.Strategy.BITMAP));
         }
 
         if (uris == null && unique) {
             log.info("Запрос на выборку где uris - пустой и ip - уникальные");
-            return StatMapper.mapToStatResponseViewDto(statRepository
-                    .findAllUniqueByRequestedBetween(startTime, endTime));
+            return StatsResult.of(StatMapper.mapToStatResponseViewDto(statRepository
+                    .findAllUniqueByRequestedBetween(startTime, endTime)),
+                    StatsQueryPlan.of(StatsQueryPlan.Strategy.RAW_DISTINCT));
         }
 
-        if (uris == null) {
-            log.info("Запрос на выборку где uris - пустой и ip - неуникальные");
-            return StatMapper.mapToStatResponseViewDto(statRepository
-                    .findAllByRequestedBetweenOrderByRequestedDesc(startTime, endTime));
+        if (unique) {
+            log.info("Запрос на выборку где uris - не пустой и ip - уникальные");
+            return StatsResult.of(StatMapper.mapToStatResponseViewDto(statRepository
+                    .findAllUniqueByRequestedBetweenAndUriIn(startTime, endTime, uris)),
+                    StatsQueryPlan.of(StatsQueryPlan.Strategy.RAW_DISTINCT));
+        }
+
+        log.info("Запрос на выборку где ip - неуникальные: источники сегментов выбирает планировщик");
+        StatsQueryPlan plan = queryPlanner.plan(startTime, endTime.plusSeconds(1), compactionRepository.getWatermark());
+        return StatsResult.of(getHits(plan, uris), plan);
+    }
+
+    /**
+     * Та же выборка, что и {@link #getStats}, но строки передаются потребителю по мере чтения с курсора БД.
+     * Агрегация выполняется одним запросом: неуникальные хиты - по предагрегатам и неполным минутам на краях,
+     * уникальные - <i>count(distinct)</i> по сырым строкам.
+     */
+    @Override
+    public void streamStats(String start, String end, String[] uris, boolean unique,
+                            Consumer<StatResponseDto> consumer) {
+        log.debug("StatsServiceImpl - service.streamStats({}, {}, {}, {})", start, end, uris, unique);
+
+        LocalDateTime startTime = parseDateTime(start);
+        LocalDateTime endTime = parseDateTime(end);
+        checkDuration(startTime, endTime);
+
+        LocalDateTime watermark = compactionRepository.getWatermark();
+
+        if (unique && startTime.isBefore(watermark)) {
+            log.info("Интервал захватывает уплотненные дни до {}: уникальные хиты считаются без курсора", watermark);
+            findStats(startTime, endTime, uris, true).getStats().forEach(consumer);
+        } else if (unique) {
+            streamRepository.streamUniqueHits(startTime, endTime, uris, consumer);
+        } else {
+            streamRepository.streamHits(queryPlanner.plan(startTime, endTime.plusSeconds(1), watermark).getSegments(),
+                    uris, consumer);
+        }
+    }
+
+    /**
+     * Неуникальные хиты по сегментам, источники которых выбирает {@link StatsQueryPlanner}: целые часы и минуты -
+     * из предагрегатов, неполные минуты и короткие интервалы - из сырых строк. Время хитов хранится с точностью
+     * до секунды, поэтому план строится для полуинтервала [start, end + 1 сек).
+     */
+    private List<StatResponseDto> getHits(StatsQueryPlan plan, String[] uris) {
+        Map<List<String>, Long> hits = new HashMap<>();
+        log.debug("План выборки: {}", plan.describe());
+
+        for (RollupSegment segment : plan.getSegments()) {
+            if (segment.getGranularity() == RollupGranularity.RAW) {
+                List<StatResponseViewDto> rawHits = uris == null
+                        ? statRepository.countHitsByRequestedRange(segment.getFrom(), segment.getTo())
+                        : statRepository.countHitsByRequestedRangeAndUriIn(segment.getFrom(), segment.getTo(), uris);
+                StatMapper.mapToStatResponseViewDto(rawHits).forEach(dto -> mergeHits(hits, dto));
+            } else {
+                rollupRepository.findHits(segment.getGranularity(), segment.getFrom(), segment.getTo(), uris)
+                        .forEach(dto -> mergeHits(hits, dto));
+            }
+        }
+
+        return hits.entrySet().stream()
+                .map(entry -> StatResponseDto.of(entry.getKey().get(0), entry.getKey().get(1), entry.getValue()))
+                .sorted(Comparator.comparingLong(StatResponseDto::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Точное число уникальных ip: битовые карты целых дней объединяются при чтении, а ip неполных дней на краях
+     * интервала добавляются из сырых строк.
+     */
+    private List<StatResponseDto> getUniqueHits(LocalDateTime startTime, LocalDateTime endTime, String[] uris) {
+        LocalDateTime endExclusive = endTime.plusSeconds(1);
+        LocalDateTime dayFrom = StatBitmapRepository.ceilDay(startTime);
+        LocalDateTime dayTo = StatBitmapRepository.floorDay(endExclusive);
+        LocalDateTime watermark = compactionRepository.getWatermark();
+        Map<List<String>, RoaringBitmap> bitmaps = new HashMap<>();
+
+        if (dayFrom.isBefore(dayTo)) {
+            bitmapRepository.forEachBitmap(dayFrom, dayTo, uris, (key, bitmap) -> mergeBitmap(bitmaps, key, bitmap));
+        }
+
+        addEdgeIpIds(startTime, dayFrom.isBefore(endExclusive) ? dayFrom : endExclusive, uris, watermark, bitmaps);
+        addEdgeIpIds(dayFrom.isAfter(dayTo) ? dayFrom : dayTo, endExclusive, uris, watermark, bitmaps);
+
+        return bitmaps.entrySet().stream()
+                .map(entry -> StatResponseDto.of(entry.getKey().get(0), entry.getKey().get(1),
+                        entry.getValue().getLongCardinality()))
+                .sorted(Comparator.comparingLong(StatResponseDto::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Ip неполного дня [from, to) на краю интервала. Сырые строки уплотненного дня удалены, поэтому для него
+     * берется битовая карта всего дня.
+     */
+    private void addEdgeIpIds(LocalDateTime from, LocalDateTime to, String[] uris, LocalDateTime watermark,
+                              Map<List<String>, RoaringBitmap> bitmaps) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+
+        if (to.isAfter(watermark)) {
+            bitmapRepository.forEachRawIpId(from, to, uris, (key, ipId) ->
+                    bitmaps.computeIfAbsent(key, ignore -> new RoaringBitmap()).add(ipId));
+        } else {
+            LocalDateTime day = StatBitmapRepository.floorDay(from);
+            bitmapRepository.forEachBitmap(day, day.plusDays(1), uris, (key, bitmap) -> mergeBitmap(bitmaps, key, bitmap));
+        }
+    }
+
+    private void mergeBitmap(Map<List<String>, RoaringBitmap> bitmaps, List<String> key, RoaringBitmap bitmap) {
+        bitmaps.merge(key, bitmap, (stored, added) -> RoaringBitmap.or(stored, added));
+    }
+
+    private void mergeHits(Map<List<String>, Long> hits, StatResponseDto dto) {
+        hits.merge(Arrays.asList(dto.getApp(), dto.getUri()), dto.getHits(), Long::sum);
+    }
+
+    /**
+     * Приблизительное число уникальных ip: часовые HyperLogLog-скетчи целых часов объединяются при чтении,
+     * а ip неполных часов на краях интервала добавляются в скетч из сырых строк.
+     */
+    @Override
+    public List<StatResponseDto> getApproximateStats(String start, String end, String[] uris) {
+        log.debug("StatsServiceImpl - service.getApproximateStats({}, {}, {})", start, end, uris);
+
+        LocalDateTime startTime = parseDateTime(start);
+        LocalDateTime endTime = parseDateTime(end);
+        checkDuration(startTime, endTime);
+
+        LocalDateTime endExclusive = endTime.plusSeconds(1);
+        LocalDateTime hourFrom = RollupGranularity.HOUR.ceil(startTime);
+        LocalDateTime hourTo = RollupGranularity.HOUR.floor(endExclusive);
+        LocalDateTime watermark = compactionRepository.getWatermark();
+        Map<List<String>, HyperLogLog> sketches = new HashMap<>();
+
+        if (hourFrom.isBefore(hourTo)) {
+            sketchRepository.forEachSketch(hourFrom, hourTo, uris, (key, sketch) ->
+                    sketches.merge(key, sketch, HyperLogLog::union));
+            addEdgeIps(startTime, hourFrom, uris, watermark, sketches);
+            addEdgeIps(hourTo, endExclusive, uris, watermark, sketches);
+        } else {
+            addEdgeIps(startTime, endExclusive, uris, watermark, sketches);
+        }
+
+        return sketches.entrySet().stream()
+                .map(entry -> StatResponseDto.of(entry.getKey().get(0), entry.getKey().get(1),
+                        entry.getValue().estimate()))
+                .sorted(Comparator.comparingLong(StatResponseDto::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Ip неполных часов [from, to) на краю интервала. Сырые строки до водяного знака уплотнения удалены, поэтому
+     * для этой части берутся скетчи целых часов - оценка может оказаться завышенной на ip остальной части часа.
+     */
+    private void addEdgeIps(LocalDateTime from, LocalDateTime to, String[] uris, LocalDateTime watermark,
+                            Map<List<String>, HyperLogLog> sketches) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+
+        LocalDateTime rawFrom = from.isBefore(watermark) ? watermark : from;
+
+        if (from.isBefore(rawFrom)) {
+            LocalDateTime compactedTo = to.isBefore(rawFrom) ? to : rawFrom;
+            sketchRepository.forEachSketch(RollupGranularity.HOUR.floor(from), RollupGranularity.HOUR.ceil(compactedTo),
+                    uris, (key, sketch) -> sketches.merge(key, sketch, HyperLogLog::union));
+        }
+
+        if (rawFrom.isBefore(to)) {
+            sketchRepository.forEachRawIp(rawFrom, to, uris, (key, ip) ->
+                    sketches.computeIfAbsent(key, ignore -> sketchRepository.newSketch()).add(ip));
+        }
+    }
+
+    /**
+     * Самые частые uri интервала: кандидаты берутся из часовых сводок Space-Saving, а их хиты считаются точно
+     * по предагрегатам - вместо группировки и сортировки всех uri интервала.
+     *
+     * @param app фильтр по приложению, null - без фильтра
+     */
+    @Override
+    public List<StatResponseDto> getTopStats(String start, String end, String app, int limit) {
+        log.debug("StatsServiceImpl - service.getTopStats({}, {}, {}, {})", start, end, app, limit);
+
+        LocalDateTime startTime = parseDateTime(start);
+        LocalDateTime endTime = parseDateTime(end);
+        checkDuration(startTime, endTime);
+
+        String[] uris = null;
+
+        if (topTracker.isEnabled()) {
+            uris = topTracker.findCandidates(startTime, endTime, app, limit).toArray(String[]::new);
+
+            if (uris.length == 0) {
+                return List.of();
+            }
+        }
+
+        StatsQueryPlan plan = queryPlanner.plan(startTime, endTime.plusSeconds(1), compactionRepository.getWatermark());
+        return getHits(plan, uris).stream()
+                .filter(dto -> app == null || app.equals(dto.getApp()))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Хиты каждого шага [start, end] для списка uri одним запросом. Неуникальные хиты считаются по предагрегатам
+     * и неполным минутам на краях, уникальные - по сырым строкам. Шаги без хитов в ответ не попадают.
+     */
+    @Override
+    public List<StatTimeSeriesDto> getTimeSeries(String start, String end, String[] uris, TimeSeriesBucket bucket,
+                                                 boolean unique) {
+        log.debug("StatsServiceImpl - service.getTimeSeries({}, {}, {}, {}, {})", start, end, uris, bucket, unique);
+
+        LocalDateTime startTime = parseDateTime(start);
+        LocalDateTime endTime = parseDateTime(end);
+        checkDuration(startTime, endTime);
+
+        if (bucket.count(startTime, endTime) > MAX_TIME_SERIES_BUCKETS) {
+            String message = "Интервал [" + startTime + ", " + endTime + "] содержит больше " + MAX_TIME_SERIES_BUCKETS
+                    + " шагов " + bucket;
+            log.warn(message);
+            throw new InvalidDurationException(message);
+        }
+
+        LocalDateTime watermark = compactionRepository.getWatermark();
+
+        if (unique && startTime.isBefore(watermark)) {
+            String message = "Уникальные хиты по шагам доступны только после " + watermark
+                    + ": более ранние сырые хиты уплотнены";
+            log.warn(message);
+            throw new InvalidDurationException(message);
         }
 
         if (unique) {
-            log.info("Запрос на выборку где uris - не пустой и ip - уникальные");
-            return StatMapper.mapToStatResponseViewDto(statRepository
-                    .findAllUniqueByRequestedBetweenAndUriIn(startTime, endTime, uris));
+            return timeSeriesRepository.findUniqueHits(startTime, endTime, bucket, uris);
         }
 
-        log.info("Запрос на выборку где uris - не пустой и ip - неуникальные");
-        return StatMapper.mapToStatResponseViewDto(statRepository
-                .findAllByRequestedBetweenAndUriInOrderByRequestedDesc(startTime, endTime, uris));
+        return timeSeriesRepository.findHits(RollupRange.split(startTime, endTime.plusSeconds(1), watermark), bucket,
+                uris);
     }
 
     @Override
     public long getUniqueEventViews(long eventId) {
         log.debug("getUniqueEventViews - service.eventId({})", eventId);
         String eventUri = String.format("/events/%d", eventId);
+
+        if (uniqueViewsCounter.isEnabled()) {
+            return uniqueViewsCounter.getViews(List.of(eventUri)).get(eventUri);
+        }
+
+        if (bitmapRepository.isEnabled()) {
+            return bitmapRepository.findUriBitmap(eventUri).getLongCardinality();
+        }
+
         return statRepository.getUniqueEventViewsByUri(eventUri).orElse(0L);
     }
+
+    /**
+     * Уникальные просмотры списка событий одним запросом вместо запроса на каждое событие. События без
+     * просмотров возвращаются с нулем.
+     */
+    @Override
+    public Map<Long, Long> getUniqueEventViews(Collection<Long> eventIds) {
+        log.debug("getUniqueEventViews - service.eventIds(size={})", eventIds.size());
+
+        Map<String, Long> eventIdsByUri = new HashMap<>();
+        Map<Long, Long> views = new HashMap<>();
+
+        for (Long eventId : eventIds) {
+            eventIdsByUri.put(String.format("/events/%d", eventId), eventId);
+            views.put(eventId, 0L);
+        }
+
+        if (eventIds.isEmpty()) {
+            return views;
+        }
+
+        if (uniqueViewsCounter.isEnabled()) {
+            uniqueViewsCounter.getViews(eventIdsByUri.keySet()).forEach((uri, count) ->
+                    views.put(eventIdsByUri.get(uri), count));
+        } else if (bitmapRepository.isEnabled()) {
+            bitmapRepository.findUriBitmaps(eventIdsByUri.keySet()).forEach((uri, bitmap) ->
+                    views.put(eventIdsByUri.get(uri), bitmap.getLongCardinality()));
+        } else {
+            statRepository.getUniqueViewsByUriIn(eventIdsByUri.keySet().toArray(String[]::new)).forEach(dto ->
+                    views.put(eventIdsByUri.get(dto.getUri()), dto.getHits()));
+        }
+
+        return views;
+    }
+
+    @Override
+    public long getApproximateUniqueEventViews(long eventId) {
+        log.debug("getApproximateUniqueEventViews - service.eventId({})", eventId);
+        String eventUri = String.format("/events/%d", eventId);
+        return sketchRepository.findUriSketch(eventUri).estimate();
+    }
+
+    /**
+     * Пересчитывает дневные битовые карты из сырых строк для дней, пересекающихся с [start, end].
+     */
+    @Override
+    @Transactional
+    public int rebuildBitmaps(String start, String end) {
+        log.debug("StatsServiceImpl - service.rebuildBitmaps({}, {})", start, end);
+
+        LocalDateTime startTime = parseDateTime(start);
+        LocalDateTime endTime = parseDateTime(end);
+        checkDuration(startTime, endTime);
+
+        int rebuilt = bitmapRepository.rebuild(StatBitmapRepository.floorDay(startTime),
+                StatBitmapRepository.ceilDay(endTime.plusSeconds(1)));
+        log.info("Пересчитано битовых карт: {}", rebuilt);
+        return rebuilt;
+    }
+
+    /**
+     * Проверяет, что ip является литералом IPv4 или IPv6 - в словаре он хранится в двоичном виде.
+     */
+    static void checkIp(String ip) {
+        try {
+            IpCodec.encode(ip);
+        } catch (IllegalArgumentException e) {
+            log.warn(e.getMessage());
+            throw new InvalidIpAddressException(e.getMessage());
+        }
+    }
+
+    private LocalDateTime parseDateTime(String dateTime) {
+        return LocalDateTime.parse(dateTime, StatMapper.dateTimeFormatter);
+    }
+
+    private void checkDuration(LocalDateTime startTime, LocalDateTime endTime) {
+        if (endTime.isBefore(startTime)) {
+            String message = "endTime " + endTime + " должен быть после startTime " + startTime;
+            log.warn(message);
+            throw new InvalidDurationException(message);
+        }
+    }
 }
@@ -0,0 +1,103 @@
+package ru.practicum.timeseries;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.stat.dto.StatTimeSeriesDto;
+import ru.practicum.rollup.RollupGranularity;
+import ru.practicum.rollup.RollupSegment;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Временные ряды хитов по (app, uri): все шаги ряда считаются одним запросом с группировкой
+ * по <i>date_trunc</i>, а не отдельным запросом на каждый шаг.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class StatTimeSeriesRepository {
+    private static final String URI_FILTER = " and uri_id in (select id from uri where uri in (:uris))";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Неуникальные хиты по сегментам предагрегатов и сырых строк. Часовой предагрегат не делится на минуты,
+     * поэтому для минутного шага его сегмент читается из минутных предагрегатов.
+     */
+    public List<StatTimeSeriesDto> findHits(List<RollupSegment> segments, TimeSeriesBucket bucket, String[] uris) {
+        log.debug("StatTimeSeriesRepository - repository.findHits({}, {}, {})", segments, bucket, uris);
+
+        if (segments.isEmpty()) {
+            return List.of();
+        }
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource("uris", Arrays.asList(uris));
+        String truncField = "'" + bucket.getDateTruncField() + "'";
+        List<String> subqueries = new ArrayList<>(segments.size());
+
+        for (int i = 0; i < segments.size(); i++) {
+            RollupSegment segment = segments.get(i);
+            parameters.addValue("from" + i, Timestamp.valueOf(segment.getFrom()));
+            parameters.addValue("to" + i, Timestamp.valueOf(segment.getTo()));
+
+            if (segment.getGranularity() == RollupGranularity.RAW) {
+                subqueries.add("select app_id, uri_id, date_trunc(" + truncField + ", requested) as bucket, " +
+                        "count(*) as hits from stat " +
+                        "where requested >= :from" + i + " and requested < :to" + i + URI_FILTER +
+                        " group by 1, 2, 3");
+            } else {
+                RollupGranularity granularity = bucket == TimeSeriesBucket.MINUTE
+                        ? RollupGranularity.MINUTE
+                        : segment.getGranularity();
+                subqueries.add("select app_id, uri_id, date_trunc(" + truncField + ", bucket) as bucket, hits " +
+                        "from " + granularity.getSource() + " as r" +
+                        " where bucket >= :from" + i + " and bucket < :to" + i + URI_FILTER);
+            }
+        }
+
+        String sql = "select a.app, u.uri, h.bucket, h.hits " +
+                "from (select app_id, uri_id, bucket, sum(hits) as hits " +
+                "from (" + String.join(" union all ", subqueries) + ") as s " +
+                "group by uri_id, app_id, bucket) as h " +
+                "left join app as a on h.app_id = a.id " +
+                "join uri as u on h.uri_id = u.id " +
+                "order by u.uri, a.app, h.bucket";
+
+        return query(sql, parameters);
+    }
+
+    /**
+     * Уникальные ip каждого шага по сырым строкам интервала [start, end].
+     */
+    public List<StatTimeSeriesDto> findUniqueHits(LocalDateTime start, LocalDateTime end, TimeSeriesBucket bucket,
+                                                  String[] uris) {
+        log.debug("StatTimeSeriesRepository - repository.findUniqueHits({}, {}, {}, {})", start, end, bucket, uris);
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("uris", Arrays.asList(uris));
+        String sql = "select a.app, u.uri, h.bucket, h.hits " +
+                "from (select app_id, uri_id, date_trunc('" + bucket.getDateTruncField() + "', requested) as bucket, " +
+                "count(distinct ip_id) as hits from stat " +
+                "where requested between :start and :end" + URI_FILTER +
+                " group by 1, 2, 3) as h " +
+                "left join app as a on h.app_id = a.id " +
+                "join uri as u on h.uri_id = u.id " +
+                "order by u.uri, a.app, h.bucket";
+
+        return query(sql, parameters);
+    }
+
+    private List<StatTimeSeriesDto> query(String sql, MapSqlParameterSource parameters) {
+        return jdbcTemplate.query(sql, parameters, (rs, rowNum) -> StatTimeSeriesDto.of(rs.getString("app"),
+                rs.getString("uri"), rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits")));
+    }
+}
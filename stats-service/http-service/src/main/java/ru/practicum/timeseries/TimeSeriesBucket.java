@@ -0,0 +1,36 @@
+package ru.practicum.timeseries;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Шаг временного ряда /stats/timeseries.
+ */
+public enum TimeSeriesBucket {
+    MINUTE("minute", ChronoUnit.MINUTES),
+    HOUR("hour", ChronoUnit.HOURS),
+    DAY("day", ChronoUnit.DAYS);
+
+    private final String dateTruncField;
+    private final ChronoUnit unit;
+
+    TimeSeriesBucket(String dateTruncField, ChronoUnit unit) {
+        this.dateTruncField = dateTruncField;
+        this.unit = unit;
+    }
+
+    public String getDateTruncField() {
+        return dateTruncField;
+    }
+
+    public LocalDateTime floor(LocalDateTime dateTime) {
+        return dateTime.truncatedTo(unit);
+    }
+
+    /**
+     * Число шагов, пересекающихся с [start, end].
+     */
+    public long count(LocalDateTime start, LocalDateTime end) {
+        return unit.between(floor(start), floor(end)) + 1;
+    }
+}
@@ -0,0 +1,17 @@
+package ru.practicum.timeseries;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Параметр bucket=minute|hour|day в любом регистре.
+ */
+@Component
+public class TimeSeriesBucketConverter implements Converter<String, TimeSeriesBucket> {
+    @Override
+    public TimeSeriesBucket convert(String source) {
+        return TimeSeriesBucket.valueOf(source.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,180 @@
+package ru.practicum.top;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Space-Saving - сводка самых частых элементов потока в фиксированном объеме памяти.
+ * <p>Хранится не более {@code capacity} счетчиков. Новый элемент при заполненной сводке вытесняет элемент
+ * с минимальным счетчиком и наследует его значение как погрешность, поэтому счетчик завышает истинную частоту
+ * не больше, чем на {@code error}. Любой элемент с частотой выше N / capacity гарантированно присутствует
+ * в сводке. Сводки объединяются ({@link #merge(SpaceSaving)}), поэтому их можно хранить по часам и складывать
+ * при чтении.</p>
+ */
+public class SpaceSaving {
+    private static final Comparator<Counter> COUNTER_ORDER = Comparator.comparingLong(Counter::getCount)
+            .thenComparingLong(Counter::getItem);
+
+    private final int capacity;
+    private final Map<Long, Counter> counters = new HashMap<>();
+    private final TreeSet<Counter> order = new TreeSet<>(COUNTER_ORDER);
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("SpaceSaving capacity должна быть положительной, получено " + capacity);
+        }
+
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    public boolean isEmpty() {
+        return counters.isEmpty();
+    }
+
+    public void offer(long item) {
+        offer(item, 1);
+    }
+
+    public void offer(long item, long increment) {
+        Counter counter = counters.get(item);
+
+        if (counter != null) {
+            order.remove(counter);
+            counter.count += increment;
+            order.add(counter);
+            return;
+        }
+
+        if (counters.size() < capacity) {
+            put(new Counter(item, increment, 0));
+            return;
+        }
+
+        Counter min = order.pollFirst();
+        counters.remove(min.item);
+        put(new Counter(item, min.count + increment, min.count));
+    }
+
+    /**
+     * Добавляет в сводку счетчики другой сводки. Элемент, отсутствующий в заполненной сводке, мог иметь в ней
+     * частоту вплоть до ее минимального счетчика - это значение добавляется и к счетчику, и к погрешности.
+     * Из объединения остаются {@code capacity} наибольших счетчиков.
+     */
+    public void merge(SpaceSaving other) {
+        long thisMin = minCount();
+        long otherMin = other.minCount();
+        Map<Long, Counter> merged = new HashMap<>();
+
+        for (Counter counter : counters.values()) {
+            Counter otherCounter = other.counters.get(counter.item);
+            merged.put(counter.item, otherCounter == null
+                    ? new Counter(counter.item, counter.count + otherMin, counter.error + otherMin)
+                    : new Counter(counter.item, counter.count + otherCounter.count, counter.error + otherCounter.error));
+        }
+
+        for (Counter otherCounter : other.counters.values()) {
+            merged.computeIfAbsent(otherCounter.item, item ->
+                    new Counter(item, otherCounter.count + thisMin, otherCounter.error + thisMin));
+        }
+
+        counters.clear();
+        order.clear();
+        merged.values().stream()
+                .sorted(COUNTER_ORDER.reversed())
+                .limit(capacity)
+                .forEach(this::put);
+    }
+
+    /**
+     * Минимальный счетчик заполненной сводки - верхняя граница частоты любого неотслеживаемого элемента;
+     * для незаполненной сводки 0.
+     */
+    public long minCount() {
+        return counters.size() < capacity ? 0 : order.first().count;
+    }
+
+    /**
+     * Не более n счетчиков в порядке убывания.
+     */
+    public List<Counter> top(int n) {
+        return order.descendingSet().stream()
+                .limit(n)
+                .map(counter -> new Counter(counter.item, counter.count, counter.error))
+                .collect(Collectors.toList());
+    }
+
+    public SpaceSaving copy() {
+        SpaceSaving copy = new SpaceSaving(capacity);
+        counters.values().forEach(counter -> copy.put(new Counter(counter.item, counter.count, counter.error)));
+        return copy;
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 2 + counters.size() * Long.BYTES * 3);
+        buffer.putInt(capacity);
+        buffer.putInt(counters.size());
+
+        for (Counter counter : order) {
+            buffer.putLong(counter.item);
+            buffer.putLong(counter.count);
+            buffer.putLong(counter.error);
+        }
+
+        return buffer.array();
+    }
+
+    public static SpaceSaving fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        SpaceSaving summary = new SpaceSaving(buffer.getInt());
+        int size = buffer.getInt();
+
+        for (int i = 0; i < size; i++) {
+            summary.put(new Counter(buffer.getLong(), buffer.getLong(), buffer.getLong()));
+        }
+
+        return summary;
+    }
+
+    private void put(Counter counter) {
+        counters.put(counter.item, counter);
+        order.add(counter);
+    }
+
+    public static class Counter {
+        private final long item;
+        private long count;
+        private final long error;
+
+        private Counter(long item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        public long getItem() {
+            return item;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return "Counter(item=" + item + ", count=" + count + ", error=" + error + ")";
+        }
+    }
+}
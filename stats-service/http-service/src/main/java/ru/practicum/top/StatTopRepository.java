@@ -0,0 +1,135 @@
+package ru.practicum.top;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Часовые сводки Space-Saving самых частых uri по ключу (app, bucket).
+ */
+@Slf4j
+@Repository
+public class StatTopRepository {
+    private static final Comparator<TopKey> KEY_ORDER = Comparator.comparing(TopKey::getBucket)
+            .thenComparingLong(TopKey::getAppId);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public StatTopRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Добавляет накопленные в памяти сводки к сохраненным - так же, как {@code StatSketchRepository.merge}:
+     * пустые строки создаются заранее, затронутые строки блокируются <i>for update</i> в едином порядке ключей.
+     */
+    public void merge(Map<TopKey, SpaceSaving> summaries) {
+        log.debug("StatTopRepository - repository.merge(size={})", summaries.size());
+
+        if (summaries.isEmpty()) {
+            return;
+        }
+
+        Map<TopKey, SpaceSaving> merged = new TreeMap<>(KEY_ORDER);
+        summaries.forEach((key, summary) -> merged.put(key, summary.copy()));
+        List<TopKey> keys = new ArrayList<>(merged.keySet());
+        byte[] emptySummary = new SpaceSaving(1).toBytes();
+
+        jdbcTemplate.batchUpdate("insert into stat_top_hour (app_id, bucket, summary) " +
+                        "values (:appId, :bucket, :summary) on conflict (bucket, app_id) do nothing",
+                keys.stream().map(key -> keyParameters(key).addValue("summary", emptySummary))
+                        .toArray(MapSqlParameterSource[]::new));
+
+        List<Object[]> tuples = keys.stream()
+                .map(key -> new Object[]{Timestamp.valueOf(key.getBucket()), key.getAppId()})
+                .collect(Collectors.toList());
+
+        jdbcTemplate.query("select app_id, bucket, summary from stat_top_hour " +
+                        "where (bucket, app_id) in (:keys) order by bucket, app_id for update",
+                new MapSqlParameterSource("keys", tuples),
+                rs -> {
+                    TopKey key = new TopKey(rs.getLong("app_id"), rs.getTimestamp("bucket").toLocalDateTime());
+                    SpaceSaving stored = SpaceSaving.fromBytes(rs.getBytes("summary"));
+
+                    if (!stored.isEmpty()) {
+                        merged.computeIfPresent(key, (ignore, summary) -> {
+                            summary.merge(stored);
+                            return summary;
+                        });
+                    }
+                });
+
+        jdbcTemplate.batchUpdate("update stat_top_hour set summary = :summary " +
+                        "where bucket = :bucket and app_id = :appId",
+                merged.entrySet().stream()
+                        .map(entry -> keyParameters(entry.getKey()).addValue("summary", entry.getValue().toBytes()))
+                        .toArray(MapSqlParameterSource[]::new));
+    }
+
+    /**
+     * Обходит сводки часов полуинтервала [from, to), границы которого выровнены по часу.
+     *
+     * @param app фильтр по приложению, null - без фильтра
+     */
+    public void forEachSummary(LocalDateTime from, LocalDateTime to, String app, Consumer<SpaceSaving> consumer) {
+        log.debug("StatTopRepository - repository.forEachSummary({}, {}, {})", from, to, app);
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String appFilter = "";
+
+        if (app != null) {
+            parameters.addValue("app", app);
+            appFilter = " and t.app_id in (select id from app where app = :app)";
+        }
+
+        jdbcTemplate.query("select t.summary from stat_top_hour as t " +
+                        "where t.bucket >= :from and t.bucket < :to" + appFilter,
+                parameters,
+                rs -> {
+                    consumer.accept(SpaceSaving.fromBytes(rs.getBytes("summary")));
+                });
+    }
+
+    /**
+     * Uri по идентификаторам словаря.
+     */
+    public Map<Integer, String> findUris(Collection<Integer> uriIds) {
+        Map<Integer, String> uris = new HashMap<>();
+
+        if (uriIds.isEmpty()) {
+            return uris;
+        }
+
+        jdbcTemplate.query("select id, uri from uri where id in (:ids)",
+                new MapSqlParameterSource("ids", uriIds),
+                rs -> {
+                    uris.put(rs.getInt("id"), rs.getString("uri"));
+                });
+
+        return uris;
+    }
+
+    private MapSqlParameterSource keyParameters(TopKey key) {
+        return new MapSqlParameterSource()
+                .addValue("appId", key.getAppId())
+                .addValue("bucket", Timestamp.valueOf(key.getBucket()));
+    }
+
+    @Data
+    public static class TopKey {
+        private final long appId;
+        private final LocalDateTime bucket;
+    }
+}
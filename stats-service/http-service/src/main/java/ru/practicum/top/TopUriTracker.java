@@ -0,0 +1,160 @@
+package ru.practicum.top;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.model.stat.Stat;
+import ru.practicum.rollup.RollupGranularity;
+import ru.practicum.top.StatTopRepository.TopKey;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Самые частые uri по часам: хиты учитываются в сводках Space-Saving в памяти и периодически добавляются
+ * к сводкам, сохраненным в <i>stat_top_hour</i>. При чтении сохраненные сводки объединяются с еще
+ * не сохраненными.
+ */
+@Slf4j
+@Component
+public class TopUriTracker {
+    private final StatTopRepository topRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int capacity;
+    private final int candidateFactor;
+    private final Map<Long, String> appNames = new ConcurrentHashMap<>();
+    private Map<TopKey, SpaceSaving> pending = new HashMap<>();
+    private Map<TopKey, SpaceSaving> flushing = Map.of();
+
+    @Autowired
+    public TopUriTracker(StatTopRepository topRepository,
+                         TransactionTemplate transactionTemplate,
+                         @Value("${stats.top.enabled:true}") boolean enabled,
+                         @Value("${stats.top.capacity:1000}") int capacity,
+                         @Value("${stats.top.candidate-factor:2}") int candidateFactor) {
+        this.topRepository = topRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.candidateFactor = candidateFactor;
+
+        log.debug("TopUriTracker(enabled={}, capacity={}, candidateFactor={})", enabled, capacity, candidateFactor);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Учитывает пачку хитов. Внутри транзакции хиты попадают в сводки только после ее фиксации, чтобы
+     * откаченная пачка не завышала счетчики.
+     */
+    public void offer(List<Stat> stats) {
+        if (!enabled) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(stats);
+                }
+            });
+        } else {
+            add(stats);
+        }
+    }
+
+    private synchronized void add(List<Stat> stats) {
+        for (Stat stat : stats) {
+            appNames.putIfAbsent(stat.getApp().getId(), stat.getApp().getApp());
+            TopKey key = new TopKey(stat.getApp().getId(), RollupGranularity.HOUR.floor(stat.getRequested()));
+            pending.computeIfAbsent(key, ignore -> new SpaceSaving(capacity)).offer(stat.getUri().getId());
+        }
+    }
+
+    /**
+     * Сохраняет накопленные сводки. Пока идет запись, они остаются видимыми для чтения; если запись не удалась,
+     * сводки возвращаются в память до следующей попытки.
+     */
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${stats.top.checkpoint-interval-ms:60000}")
+    public void checkpoint() {
+        Map<TopKey, SpaceSaving> flushed;
+
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            flushed = pending;
+            flushing = flushed;
+            pending = new HashMap<>();
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> topRepository.merge(flushed));
+            log.debug("Сохранено сводок самых частых uri: {}", flushed.size());
+        } catch (RuntimeException e) {
+            log.warn("Не удалось сохранить сводки самых частых uri: {}", e.getMessage());
+            restore(flushed);
+        } finally {
+            synchronized (this) {
+                flushing = Map.of();
+            }
+        }
+    }
+
+    private synchronized void restore(Map<TopKey, SpaceSaving> flushed) {
+        flushed.forEach((key, summary) -> pending.merge(key, summary, (current, previous) -> {
+            current.merge(previous);
+            return current;
+        }));
+    }
+
+    /**
+     * Кандидаты в самые частые uri часов, пересекающихся с [start, end]. Кандидатов берется с запасом
+     * ({@code limit * candidateFactor}): сводки округляют интервал до часов и завышают счетчики на погрешность,
+     * поэтому окончательный порядок определяется точным подсчетом по кандидатам.
+     *
+     * @param app фильтр по приложению, null - без фильтра
+     */
+    public List<String> findCandidates(LocalDateTime start, LocalDateTime end, String app, int limit) {
+        LocalDateTime from = RollupGranularity.HOUR.floor(start);
+        LocalDateTime to = RollupGranularity.HOUR.floor(end).plusHours(1);
+        SpaceSaving total = new SpaceSaving(capacity);
+
+        topRepository.forEachSummary(from, to, app, total::merge);
+
+        synchronized (this) {
+            for (Map<TopKey, SpaceSaving> summaries : List.of(flushing, pending)) {
+                summaries.forEach((key, summary) -> {
+                    if (!key.getBucket().isBefore(from) && key.getBucket().isBefore(to)
+                            && (app == null || app.equals(appNames.get(key.getAppId())))) {
+                        total.merge(summary);
+                    }
+                });
+            }
+        }
+
+        List<Integer> uriIds = total.top(limit * candidateFactor).stream()
+                .map(counter -> (int) counter.getItem())
+                .collect(Collectors.toList());
+        Map<Integer, String> uris = topRepository.findUris(uriIds);
+
+        return uriIds.stream()
+                .map(uris::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,172 @@
+package ru.practicum.views;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Уникальные просмотры uri за всю историю: множество увиденных пар (uri, ip) <i>stat_uri_ip</i> и счетчик
+ * уникальных ip каждого uri <i>stat_uri_unique</i>, который увеличивается только на впервые увиденные пары.
+ * <p>Как и предагрегаты, счетчик не обновляется при приеме хитов: первые просмотры популярного uri ждали бы
+ * блокировку его строки до конца транзакции. Прием пишет число новых пар строками-дельтами
+ * в <i>stat_uri_unique_delta</i>, {@link #fold} в фоне прибавляет их к счетчикам, а {@link #findViews}
+ * складывает счетчик с необъединенными дельтами. {@link #fold} и {@link #rebuild} исключают друг друга
+ * транзакционной advisory-блокировкой.</p>
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class StatUniqueViewsRepository {
+    private static final int PAIRS_PER_QUERY = 1000;
+    private static final long LOCK_KEY = "stat_uri_unique_delta".hashCode();
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Добавляет пары (uri, ip) в множество увиденных и дельты счетчиков на число новых пар - одним запросом
+     * на порцию. Пары должны быть отсортированы: параллельные транзакции вставляют одинаковые пары в одном порядке
+     * и не блокируют друг друга намертво.
+     *
+     * @param pairs пары, упакованные {@link #pair(int, int)}
+     */
+    public void insertPairs(List<Long> pairs) {
+        log.debug("StatUniqueViewsRepository - repository.insertPairs(size={})", pairs.size());
+
+        for (int from = 0; from < pairs.size(); from += PAIRS_PER_QUERY) {
+            List<Object[]> tuples = pairs.subList(from, Math.min(pairs.size(), from + PAIRS_PER_QUERY)).stream()
+                    .map(pair -> new Object[]{uriId(pair), ipId(pair)})
+                    .collect(Collectors.toList());
+
+            jdbcTemplate.update("with inserted as (insert into stat_uri_ip (uri_id, ip_id) values :pairs " +
+                            "on conflict (uri_id, ip_id) do nothing returning uri_id) " +
+                            "insert into stat_uri_unique_delta (uri_id, hits) " +
+                            "select uri_id, count(*) from inserted group by uri_id",
+                    new MapSqlParameterSource("pairs", tuples));
+        }
+    }
+
+    /**
+     * Прибавляет до limit самых старых дельт к счетчикам uri и удаляет их. Счетчики обновляются в порядке uri_id.
+     *
+     * @return число объединенных дельт
+     */
+    public int fold(int limit) {
+        lock();
+
+        Map<Integer, Long> counters = new TreeMap<>();
+        List<Long> ids = new ArrayList<>();
+
+        jdbcTemplate.query("select id, uri_id, hits from stat_uri_unique_delta order by id limit :limit",
+                new MapSqlParameterSource("limit", limit),
+                rs -> {
+                    counters.merge(rs.getInt("uri_id"), rs.getLong("hits"), Long::sum);
+                    ids.add(rs.getLong("id"));
+                });
+
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        log.debug("StatUniqueViewsRepository - repository.fold(deltas={}, uris={})", ids.size(), counters.size());
+
+        jdbcTemplate.batchUpdate("insert into stat_uri_unique (uri_id, hits) values (:uriId, :hits) " +
+                        "on conflict (uri_id) do update set hits = stat_uri_unique.hits + excluded.hits",
+                counters.entrySet().stream()
+                        .map(entry -> new MapSqlParameterSource()
+                                .addValue("uriId", entry.getKey())
+                                .addValue("hits", entry.getValue()))
+                        .toArray(MapSqlParameterSource[]::new));
+
+        for (int from = 0; from < ids.size(); from += PAIRS_PER_QUERY) {
+            jdbcTemplate.update("delete from stat_uri_unique_delta where id in (:ids)",
+                    new MapSqlParameterSource("ids", ids.subList(from, Math.min(ids.size(), from + PAIRS_PER_QUERY))));
+        }
+
+        return ids.size();
+    }
+
+    /**
+     * Добавляет пары сырых хитов полуинтервала [from, to) и пересчитывает счетчики затронутых uri
+     * по множеству увиденных пар - для строк, записанных в <i>stat</i> в обход сервиса. Дельты этих uri удаляются
+     * тем же запросом, что и пересчитывает счетчики: пара, видимая в его снимке, уже учтена пересчетом.
+     */
+    public void rebuild(LocalDateTime from, LocalDateTime to) {
+        log.debug("StatUniqueViewsRepository - repository.rebuild({}, {})", from, to);
+
+        lock();
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+
+        jdbcTemplate.update("insert into stat_uri_ip (uri_id, ip_id) " +
+                "select distinct uri_id, ip_id from stat where requested >= :from and requested < :to " +
+                "order by uri_id, ip_id " +
+                "on conflict (uri_id, ip_id) do nothing", parameters);
+        jdbcTemplate.update("with uris as (select distinct uri_id from stat " +
+                "where requested >= :from and requested < :to), " +
+                "deltas as (delete from stat_uri_unique_delta where uri_id in (select uri_id from uris)) " +
+                "insert into stat_uri_unique (uri_id, hits) " +
+                "select uri_id, count(*) from stat_uri_ip " +
+                "where uri_id in (select uri_id from uris) " +
+                "group by uri_id order by uri_id " +
+                "on conflict (uri_id) do update set hits = excluded.hits", parameters);
+    }
+
+    /**
+     * Уникальные просмотры каждого uri из списка. Uri без просмотров в результат не попадают.
+     */
+    public Map<String, Long> findViews(Collection<String> uris) {
+        log.debug("StatUniqueViewsRepository - repository.findViews(size={})", uris.size());
+
+        Map<String, Long> views = new HashMap<>();
+
+        if (uris.isEmpty()) {
+            return views;
+        }
+
+        jdbcTemplate.query("select u.uri, sum(c.hits) as hits " +
+                        "from (select uri_id, hits from stat_uri_unique " +
+                        "union all select uri_id, hits from stat_uri_unique_delta) as c " +
+                        "join uri as u on c.uri_id = u.id " +
+                        "where u.uri in (:uris) " +
+                        "group by u.uri",
+                new MapSqlParameterSource("uris", uris),
+                rs -> {
+                    views.put(rs.getString("uri"), rs.getLong("hits"));
+                });
+
+        return views;
+    }
+
+    /**
+     * Блокировка до конца транзакции, которая исключает параллельные {@link #fold} и {@link #rebuild}.
+     */
+    private void lock() {
+        jdbcTemplate.query("select pg_advisory_xact_lock(:key)", new MapSqlParameterSource("key", LOCK_KEY),
+                rs -> {
+                });
+    }
+
+    /**
+     * Пара (uri, ip) в одном long: порядок long совпадает с порядком (uri_id, ip_id).
+     */
+    public static long pair(int uriId, int ipId) {
+        return ((long) uriId << Integer.SIZE) | (ipId & 0xFFFFFFFFL);
+    }
+
+    static int uriId(long pair) {
+        return (int) (pair >>> Integer.SIZE);
+    }
+
+    static int ipId(long pair) {
+        return (int) pair;
+    }
+}
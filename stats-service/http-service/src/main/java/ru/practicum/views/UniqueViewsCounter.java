@@ -0,0 +1,103 @@
+package ru.practicum.views;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.model.stat.Stat;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Счетчик уникальных просмотров uri, который пополняется при приеме хитов, - /stats/{eventId} читает одну
+ * строку вместо <i>count(distinct)</i> или объединения дневных битовых карт за всю историю.
+ * <p>Перед множеством увиденных пар в БД стоит ограниченное множество пар, уже сохраненных зафиксированными
+ * транзакциями: повторные просмотры того же посетителя не доходят до БД. Вставка с <i>on conflict</i> сама
+ * проверяет, видели ли пару раньше, поэтому фильтр Блума, который может подтвердить только новизну пары,
+ * здесь запросов бы не сократил.</p>
+ */
+@Slf4j
+@Component
+public class UniqueViewsCounter {
+    private final StatUniqueViewsRepository uniqueViewsRepository;
+    private final boolean enabled;
+    private final Cache<Long, Boolean> seenPairs;
+
+    @Autowired
+    public UniqueViewsCounter(StatUniqueViewsRepository uniqueViewsRepository,
+                              @Value("${stats.unique-views.enabled:true}") boolean enabled,
+                              @Value("${stats.unique-views.seen-cache-size:200000}") long seenCacheSize) {
+        this.uniqueViewsRepository = uniqueViewsRepository;
+        this.enabled = enabled;
+        this.seenPairs = Caffeine.newBuilder()
+                .maximumSize(seenCacheSize)
+                .recordStats()
+                .build();
+
+        log.debug("UniqueViewsCounter(enabled={}, seenCacheSize={})", enabled, seenCacheSize);
+    }
+
+    @Autowired(required = false)
+    public void registerMetrics(MeterRegistry meterRegistry) {
+        CaffeineCacheMetrics.monitor(meterRegistry, seenPairs, "stats.unique-views.seen");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Учитывает пачку хитов. Пары попадают в множество в памяти только после фиксации транзакции: пара
+     * из откаченной пачки в БД не сохранена и должна быть вставлена снова.
+     */
+    public void offer(List<Stat> stats) {
+        if (!enabled) {
+            return;
+        }
+
+        List<Long> pairs = stats.stream()
+                .map(stat -> StatUniqueViewsRepository.pair(stat.getUri().getId(), stat.getIp().getId()))
+                .filter(pair -> seenPairs.getIfPresent(pair) == null)
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+
+        if (pairs.isEmpty()) {
+            return;
+        }
+
+        uniqueViewsRepository.insertPairs(pairs);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remember(pairs);
+                }
+            });
+        } else {
+            remember(pairs);
+        }
+    }
+
+    private void remember(List<Long> pairs) {
+        pairs.forEach(pair -> seenPairs.put(pair, Boolean.TRUE));
+    }
+
+    /**
+     * Уникальные просмотры каждого uri из списка; uri без просмотров возвращаются с нулем.
+     */
+    public Map<String, Long> getViews(Collection<String> uris) {
+        Map<String, Long> views = new HashMap<>();
+        uris.forEach(uri -> views.put(uri, 0L));
+        views.putAll(uniqueViewsRepository.findViews(uris));
+        return views;
+    }
+}
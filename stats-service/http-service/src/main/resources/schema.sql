@@ -1,12 +1,78 @@
 -- ==============================================================================
 DROP TABLE IF EXISTS app CASCADE;
 DROP TABLE IF EXISTS stat CASCADE;
+DROP TABLE IF EXISTS stat_rollup_minute CASCADE;
+DROP TABLE IF EXISTS stat_rollup_hour CASCADE;
+DROP TABLE IF EXISTS stat_rollup_delta CASCADE;
+DROP TABLE IF EXISTS stat_sketch_hour CASCADE;
+DROP TABLE IF EXISTS stat_sketch_hour_delta CASCADE;
+DROP TABLE IF EXISTS stat_sketch_uri CASCADE;
+DROP TABLE IF EXISTS stat_bitmap_day CASCADE;
+DROP TABLE IF EXISTS stat_bitmap_day_delta CASCADE;
+DROP TABLE IF EXISTS stat_top_hour CASCADE;
+DROP TABLE IF EXISTS stat_compaction CASCADE;
+DROP TABLE IF EXISTS stat_uri_ip CASCADE;
+DROP TABLE IF EXISTS stat_uri_unique CASCADE;
+DROP TABLE IF EXISTS stat_uri_unique_delta CASCADE;
+DROP TABLE IF EXISTS stat_hit_key CASCADE;
+DROP TABLE IF EXISTS uri CASCADE;
+DROP TABLE IF EXISTS ip CASCADE;
 -- ==============================================================================
 CREATE TABLE IF NOT EXISTS app (id bigint GENERATED ALWAYS AS IDENTITY PRIMARY KEY, app varchar(128) NOT NULL UNIQUE CHECK(LENGTH(app) >= 3));
-CREATE TABLE IF NOT EXISTS stat ( id bigint GENERATED ALWAYS AS IDENTITY PRIMARY KEY, app_id bigint REFERENCES app(id) ON DELETE CASCADE NOT NULL, uri varchar(256) NOT NULL CHECK(LENGTH(uri) >= 1), ip varchar(45) NOT NULL CHECK(LENGTH(ip) >= 7), requested timestamp WITHOUT TIME ZONE NOT NULL);
+CREATE TABLE IF NOT EXISTS uri (id integer GENERATED ALWAYS AS IDENTITY PRIMARY KEY, uri varchar(256) NOT NULL UNIQUE CHECK(LENGTH(uri) >= 1));
+CREATE TABLE IF NOT EXISTS ip (id integer GENERATED ALWAYS AS IDENTITY PRIMARY KEY, ip bytea NOT NULL UNIQUE CHECK(LENGTH(ip) IN (4, 16)));
+CREATE TABLE IF NOT EXISTS stat ( id bigint GENERATED ALWAYS AS IDENTITY, app_id bigint REFERENCES app(id) ON DELETE CASCADE NOT NULL, uri_id integer REFERENCES uri(id) NOT NULL, ip_id integer REFERENCES ip(id) NOT NULL, requested timestamp WITHOUT TIME ZONE NOT NULL, PRIMARY KEY (id, requested)) PARTITION BY RANGE (requested);
+CREATE TABLE IF NOT EXISTS stat_default PARTITION OF stat DEFAULT;
+CREATE TABLE IF NOT EXISTS stat_rollup_minute (app_id bigint REFERENCES app(id) ON DELETE CASCADE NOT NULL, uri_id integer REFERENCES uri(id) NOT NULL, bucket timestamp WITHOUT TIME ZONE NOT NULL, hits bigint NOT NULL, PRIMARY KEY (bucket, uri_id, app_id));
+CREATE TABLE IF NOT EXISTS stat_rollup_hour (app_id bigint REFERENCES app(id) ON DELETE CASCADE NOT NULL, uri_id integer REFERENCES uri(id) NOT NULL, bucket timestamp WITHOUT TIME ZONE NOT NULL, hits bigint NOT NULL, PRIMARY KEY (bucket, uri_id, app_id));
+CREATE TABLE IF NOT EXISTS stat_rollup_delta (id bigint GENERATED ALWAYS AS IDENTITY PRIMARY KEY, app_id bigint REFERENCES app(id) ON DELETE CASCADE NOT NULL, uri_id integer REFERENCES uri(id) NOT NULL, bucket timestamp WITHOUT TIME ZONE NOT NULL, hits bigint NOT NULL);
+CREATE TABLE IF NOT EXISTS stat_sketch_hour (app_id bigint REFERENCES app(id) ON DELETE CASCADE NOT NULL, uri_id integer REFERENCES uri(id) NOT NULL, bucket timestamp WITHOUT TIME ZONE NOT NULL, sketch bytea NOT NULL, PRIMARY KEY (bucket, uri_id, app_id));
+CREATE TABLE IF NOT EXISTS stat_sketch_hour_delta (id bigint GENERATED ALWAYS AS IDENTITY PRIMARY KEY, app_id bigint REFERENCES app(id) ON DELETE CASCADE NOT NULL, uri_id integer REFERENCES uri(id) NOT NULL, bucket timestamp WITHOUT TIME ZONE NOT NULL, sketch bytea NOT NULL);
+CREATE TABLE IF NOT EXISTS stat_sketch_uri (uri_id integer PRIMARY KEY REFERENCES uri(id), sketch bytea NOT NULL);
+CREATE TABLE IF NOT EXISTS stat_bitmap_day (app_id bigint REFERENCES app(id) ON DELETE CASCADE NOT NULL, uri_id integer REFERENCES uri(id) NOT NULL, bucket timestamp WITHOUT TIME ZONE NOT NULL, bitmap bytea NOT NULL, PRIMARY KEY (bucket, uri_id, app_id));
+CREATE TABLE IF NOT EXISTS stat_bitmap_day_delta (id bigint GENERATED ALWAYS AS IDENTITY PRIMARY KEY, app_id bigint REFERENCES app(id) ON DELETE CASCADE NOT NULL, uri_id integer REFERENCES uri(id) NOT NULL, bucket timestamp WITHOUT TIME ZONE NOT NULL, bitmap bytea NOT NULL);
+CREATE TABLE IF NOT EXISTS stat_top_hour (app_id bigint REFERENCES app(id) ON DELETE CASCADE NOT NULL, bucket timestamp WITHOUT TIME ZONE NOT NULL, summary bytea NOT NULL, PRIMARY KEY (bucket, app_id));
+CREATE TABLE IF NOT EXISTS stat_compaction (id integer PRIMARY KEY CHECK(id = 1), watermark timestamp WITHOUT TIME ZONE NOT NULL);
+CREATE TABLE IF NOT EXISTS stat_uri_ip (uri_id integer REFERENCES uri(id) NOT NULL, ip_id integer REFERENCES ip(id) NOT NULL, PRIMARY KEY (uri_id, ip_id));
+CREATE TABLE IF NOT EXISTS stat_uri_unique (uri_id integer PRIMARY KEY REFERENCES uri(id), hits bigint NOT NULL);
+CREATE TABLE IF NOT EXISTS stat_uri_unique_delta (id bigint GENERATED ALWAYS AS IDENTITY PRIMARY KEY, uri_id integer REFERENCES uri(id) NOT NULL, hits bigint NOT NULL);
+CREATE TABLE IF NOT EXISTS stat_hit_key (hit_id varchar(64) PRIMARY KEY, received timestamp WITHOUT TIME ZONE NOT NULL);
+-- Выборки сырых хитов по интервалу requested с группировкой по (app, uri): index-only scan с ip_id в листьях
+CREATE INDEX IF NOT EXISTS stat_requested_uri_app_idx ON stat (requested, uri_id, app_id) INCLUDE (ip_id);
+-- Уникальные просмотры событий: count(distinct ip_id) по uri_id без обращения к таблице
+CREATE INDEX IF NOT EXISTS stat_uri_ip_idx ON stat (uri_id, ip_id);
+-- Дельты счетчиков предагрегатов за интервал до их объединения с минутами и часами
+CREATE INDEX IF NOT EXISTS stat_rollup_delta_bucket_idx ON stat_rollup_delta (bucket, uri_id);
+-- Дельты скетчей за интервал до их объединения со скетчами часа
+CREATE INDEX IF NOT EXISTS stat_sketch_hour_delta_bucket_idx ON stat_sketch_hour_delta (bucket, uri_id);
+-- Дельты битовых карт за интервал до их объединения с картами дня
+CREATE INDEX IF NOT EXISTS stat_bitmap_day_delta_bucket_idx ON stat_bitmap_day_delta (bucket, uri_id);
+-- Дельты уникальных просмотров uri до их объединения со счетчиком
+CREATE INDEX IF NOT EXISTS stat_uri_unique_delta_uri_idx ON stat_uri_unique_delta (uri_id);
+-- Удаление идентификаторов хитов старше срока хранения
+CREATE INDEX IF NOT EXISTS stat_hit_key_received_idx ON stat_hit_key (received);
 -- ==============================================================================
 DELETE FROM app;
 DELETE FROM stat;
+DELETE FROM stat_rollup_minute;
+DELETE FROM stat_rollup_hour;
+DELETE FROM stat_rollup_delta;
+DELETE FROM stat_sketch_hour;
+DELETE FROM stat_sketch_hour_delta;
+DELETE FROM stat_sketch_uri;
+DELETE FROM stat_bitmap_day;
+DELETE FROM stat_bitmap_day_delta;
+DELETE FROM stat_top_hour;
+DELETE FROM stat_compaction;
+DELETE FROM stat_uri_ip;
+DELETE FROM stat_uri_unique;
+DELETE FROM stat_uri_unique_delta;
+DELETE FROM stat_hit_key;
+DELETE FROM uri;
+DELETE FROM ip;
 ALTER TABLE stat ALTER id RESTART;
 ALTER TABLE app ALTER id RESTART;
+ALTER TABLE uri ALTER id RESTART;
+ALTER TABLE ip ALTER id RESTART;
+INSERT INTO stat_compaction (id, watermark) VALUES (1, '1970-01-01 00:00:00');
 -- ==============================================================================
\ No newline at end of file
@@ -0,0 +1,111 @@
+package ru.practicum;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+import ru.practicum.model.app.App;
+import ru.practicum.model.ip.Ip;
+import ru.practicum.model.ip.IpCodec;
+import ru.practicum.model.stat.Stat;
+import ru.practicum.model.uri.Uri;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * PostgreSQL для тестов SQL, который H2 не исполняет: секционирование, COPY, <i>on conflict</i>, <i>for update</i>.
+ * <p>Если доступен Docker, база поднимается в контейнере Testcontainers {@code postgres:14-alpine}, иначе -
+ * встроенным PostgreSQL 14 (zonky embedded-postgres). Одна база на все тесты; {@link #resetSchema} пересоздает
+ * схему из <i>schema.sql</i>.</p>
+ */
+public final class PostgresTestDatabase {
+    private static DataSource dataSource;
+
+    private PostgresTestDatabase() {
+    }
+
+    public static synchronized DataSource dataSource() {
+        if (dataSource == null) {
+            dataSource = DockerClientFactory.instance().isDockerAvailable() ? startContainer() : startEmbedded();
+        }
+
+        return dataSource;
+    }
+
+    /**
+     * Удаляет отсоединенные секции <i>stat</i>, которые не удаляются вместе с таблицей, и выполняет <i>schema.sql</i>.
+     */
+    public static void resetSchema(DataSource dataSource) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.queryForList("select tablename from pg_tables " +
+                        "where schemaname = current_schema() and tablename like 'stat\\_p%'", String.class)
+                .forEach(table -> jdbcTemplate.execute("drop table " + table));
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+    }
+
+    /**
+     * Хит с идентификаторами app, uri и ip; недостающие строки справочников создаются.
+     */
+    public static Stat stat(JdbcTemplate jdbcTemplate, String app, String uri, String ip, LocalDateTime requested) {
+        byte[] ipBytes = IpCodec.encode(ip);
+        Long appId = jdbcTemplate.queryForObject("insert into app (app) values (?) " +
+                "on conflict (app) do update set app = excluded.app returning id", Long.class, app);
+        Integer uriId = jdbcTemplate.queryForObject("insert into uri (uri) values (?) " +
+                "on conflict (uri) do update set uri = excluded.uri returning id", Integer.class, uri);
+        Integer ipId = jdbcTemplate.queryForObject("insert into ip (ip) values (?) " +
+                "on conflict (ip) do update set ip = excluded.ip returning id", Integer.class, (Object) ipBytes);
+
+        return Stat.builder()
+                .app(App.builder().id(appId).app(app).build())
+                .uri(Uri.builder().id(uriId).uri(uri).build())
+                .ip(Ip.builder().id(ipId).ip(ipBytes).build())
+                .requested(requested)
+                .build();
+    }
+
+    /**
+     * Вставляет сырую строку хита в <i>stat</i>.
+     *
+     * @return id строки
+     */
+    public static long insert(JdbcTemplate jdbcTemplate, Stat stat) {
+        return jdbcTemplate.queryForObject("insert into stat (app_id, uri_id, ip_id, requested) " +
+                        "values (?, ?, ?, ?) returning id", Long.class, stat.getApp().getId(), stat.getUri().getId(),
+                stat.getIp().getId(), Timestamp.valueOf(stat.getRequested()));
+    }
+
+    private static DataSource startContainer() {
+        PostgreSQLContainer<?> container = new PostgreSQLContainer<>(DockerImageName.parse("postgres:14-alpine"));
+        container.start();
+
+        PGSimpleDataSource source = new PGSimpleDataSource();
+        source.setUrl(container.getJdbcUrl());
+        source.setUser(container.getUsername());
+        source.setPassword(container.getPassword());
+        return source;
+    }
+
+    private static DataSource startEmbedded() {
+        try {
+            EmbeddedPostgres postgres = EmbeddedPostgres.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    postgres.close();
+                } catch (IOException ignored) {
+                    // база во временном каталоге, процесс завершается
+                }
+            }));
+            return postgres.getPostgresDatabase();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
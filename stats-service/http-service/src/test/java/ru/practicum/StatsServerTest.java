@@ -1,6 +1,8 @@
 package ru.practicum;
 
 import org.junit.jupiter.api.Test;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 
@@ -8,6 +10,23 @@ class StatsServerTest {
     @Test
     void test_T0010_PS01_startStatsServer() {
         assertDoesNotThrow(StatsServer::new);
-        assertDoesNotThrow(() -> StatsServer.main(new String[]{}));
+        assertDoesNotThrow(() -> StatsServer.main(serverDatabase()));
     }
-}
\ No newline at end of file
+
+    /**
+     * Профиль test работает с PostgreSQL: сервер получает отдельную базу на сервере {@link PostgresTestDatabase},
+     * чтобы его schema.sql и фоновые задачи не мешали остальным тестам.
+     */
+    private String[] serverDatabase() {
+        PGSimpleDataSource dataSource = (PGSimpleDataSource) PostgresTestDatabase.dataSource();
+        new JdbcTemplate(dataSource).execute("drop database if exists ewm_stats_server");
+        new JdbcTemplate(dataSource).execute("create database ewm_stats_server");
+
+        return new String[]{
+                "--spring.datasource.url=jdbc:postgresql://" + dataSource.getServerNames()[0] + ":"
+                        + dataSource.getPortNumbers()[0] + "/ewm_stats_server",
+                "--spring.datasource.username=" + dataSource.getUser(),
+                "--spring.datasource.password=" + (dataSource.getPassword() == null ? "" : dataSource.getPassword())
+        };
+    }
+}
@@ -0,0 +1,113 @@
+package ru.practicum.bitmap;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.PostgresTestDatabase;
+import ru.practicum.model.stat.Stat;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatBitmapRepositoryTest {
+    private static final LocalDateTime DAY = LocalDateTime.of(2022, 9, 6, 0, 0);
+
+    private static DataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+    private static TransactionTemplate transactionTemplate;
+    private static StatBitmapRepository bitmapRepository;
+
+    @BeforeAll
+    public static void startDatabase() {
+        dataSource = PostgresTestDatabase.dataSource();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        bitmapRepository = new StatBitmapRepository(new NamedParameterJdbcTemplate(dataSource), true);
+    }
+
+    @BeforeEach
+    public void preTestInitialization() {
+        PostgresTestDatabase.resetSchema(dataSource);
+    }
+
+    @Test
+    public void test_T0010_PS01_merge_deltasVisibleToReaders() {
+        bitmapRepository.merge(List.of(stat("10.0.0.1", 11), stat("10.0.0.2", 12)));
+        bitmapRepository.merge(List.of(stat("10.0.0.2", 13), stat("10.0.0.3", 14)));
+
+        assertEquals(2, count("stat_bitmap_day_delta"));
+        assertEquals(0, count("stat_bitmap_day"));
+        assertEquals(3, dayCardinality());
+        assertEquals(3, bitmapRepository.findUriBitmap("/events/1").getLongCardinality());
+    }
+
+    @Test
+    public void test_T0020_PS01_fold_mergesDeltasIntoDayBitmap() {
+        bitmapRepository.merge(List.of(stat("10.0.0.1", 11), stat("10.0.0.2", 12)));
+        bitmapRepository.merge(List.of(stat("10.0.0.2", 13)));
+
+        assertEquals(2, fold(10));
+        assertEquals(0, count("stat_bitmap_day_delta"));
+        assertEquals(1, count("stat_bitmap_day"));
+
+        bitmapRepository.merge(List.of(stat("10.0.0.3", 14)));
+
+        assertEquals(1, fold(10));
+        assertEquals(1, count("stat_bitmap_day"));
+        assertEquals(3, dayCardinality());
+        assertEquals(3, bitmapRepository.findUriBitmaps(List.of("/events/1")).get("/events/1").getLongCardinality());
+    }
+
+    @Test
+    public void test_T0020_PS02_fold_boundedByLimit() {
+        bitmapRepository.merge(List.of(stat("10.0.0.1", 11)));
+        bitmapRepository.merge(List.of(stat("10.0.0.2", 12)));
+        bitmapRepository.merge(List.of(stat("10.0.0.3", 13)));
+
+        assertEquals(2, fold(2));
+        assertEquals(1, count("stat_bitmap_day_delta"));
+        assertEquals(3, dayCardinality());
+    }
+
+    @Test
+    public void test_T0030_PS01_rebuild_replacesDayBitmapFromRawRows() {
+        bitmapRepository.merge(List.of(stat("10.0.0.9", 11)));
+        fold(10);
+        PostgresTestDatabase.insert(jdbcTemplate, stat("10.0.0.1", 11));
+        PostgresTestDatabase.insert(jdbcTemplate, stat("10.0.0.2", 12));
+
+        int rebuilt = transactionTemplate.execute(status -> bitmapRepository.rebuild(DAY, DAY.plusDays(1)));
+
+        assertEquals(1, rebuilt);
+        assertEquals(2, dayCardinality());
+    }
+
+    private Stat stat(String ip, int hour) {
+        return PostgresTestDatabase.stat(jdbcTemplate, "ewm-main-service", "/events/1", ip, DAY.plusHours(hour));
+    }
+
+    private int fold(int limit) {
+        return transactionTemplate.execute(status -> bitmapRepository.fold(limit));
+    }
+
+    private long dayCardinality() {
+        Map<List<String>, RoaringBitmap> bitmaps = new HashMap<>();
+        bitmapRepository.forEachBitmap(DAY, DAY.plusDays(1), null, (key, bitmap) ->
+                bitmaps.merge(key, bitmap, (left, right) -> RoaringBitmap.or(left, right)));
+        return bitmaps.get(List.of("ewm-main-service", "/events/1")).getLongCardinality();
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("select count(*) from " + table, Long.class);
+    }
+}
@@ -3,7 +3,9 @@ package ru.practicum.common.handler;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import ru.practicum.common.error.ErrorResponse;
+import ru.practicum.common.exception.IngestBufferOverflowException;
 import ru.practicum.common.exception.InvalidDurationException;
+import ru.practicum.common.exception.InvalidIpAddressException;
 import ru.practicum.common.exception.MethodNotImplemented;
 
 import java.time.format.DateTimeParseException;
@@ -43,4 +45,18 @@ class CommonControllerAdviceTest {
         assertEquals("Ошибка конвертации строки в LocalDateTime", response.getError());
         assertTrue(response.getDescription().startsWith("Некорректные значение строки"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test_T0010_PS01_handleIngestBufferOverflowException() {
+        ErrorResponse response = commonControllerAdvice.handleIngestBufferOverflowException(new IngestBufferOverflowException(""));
+        assertEquals("Сервис перегружен", response.getError());
+        assertTrue(response.getDescription().startsWith("Буфер приема хитов заполнен"));
+    }
+
+    @Test
+    public void test_T0010_PS01_handleInvalidIpAddressException() {
+        ErrorResponse response = commonControllerAdvice.handleInvalidIpAddressException(new InvalidIpAddressException(""));
+        assertEquals("Ошибка параметров запроса", response.getError());
+        assertTrue(response.getDescription().startsWith("Некорректный ip-адрес"));
+    }
+}
@@ -0,0 +1,104 @@
+package ru.practicum.compaction;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.bitmap.StatBitmapRepository;
+import ru.practicum.rollup.StatRollupRepository;
+import ru.practicum.sketch.StatSketchRepository;
+import ru.practicum.views.StatUniqueViewsRepository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+
+@ExtendWith(MockitoExtension.class)
+class StatCompactionJobTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2022, 9, 10, 15, 30);
+    private static final LocalDateTime DAY = LocalDateTime.of(2022, 9, 7, 0, 0);
+    private static final LocalDateTime NEXT_DAY = DAY.plusDays(1);
+
+    @Mock
+    private StatCompactionRepository compactionRepository;
+    @Mock
+    private StatRollupRepository rollupRepository;
+    @Mock
+    private StatSketchRepository sketchRepository;
+    @Mock
+    private StatBitmapRepository bitmapRepository;
+    @Mock
+    private StatUniqueViewsRepository uniqueViewsRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private StatCompactionJob compactionJob;
+
+    @BeforeEach
+    public void preTestInitialization() {
+        Mockito.when(bitmapRepository.isEnabled()).thenReturn(true);
+        compactionJob = new StatCompactionJob(compactionRepository, rollupRepository, sketchRepository,
+                bitmapRepository, uniqueViewsRepository, new TransactionTemplate(transactionManager), 2, 100, 0);
+    }
+
+    @Test
+    public void test_T0010_PS01_compact_consistentDayDeletedInChunks() {
+        Mockito.when(compactionRepository.findOldestRawHit(NEXT_DAY)).thenReturn(Optional.of(DAY.plusHours(5)));
+        Mockito.when(compactionRepository.getWatermark()).thenReturn(DAY, DAY, NEXT_DAY);
+        Mockito.when(compactionRepository.countRawHits(DAY, NEXT_DAY)).thenReturn(250L);
+        Mockito.when(compactionRepository.countRollupHits(DAY, NEXT_DAY)).thenReturn(250L);
+        Mockito.when(compactionRepository.deleteRawHits(DAY, NEXT_DAY, 100)).thenReturn(100, 100, 50);
+
+        compactionJob.compact(NOW);
+
+        Mockito.verify(compactionRepository).setWatermark(NEXT_DAY);
+        Mockito.verify(compactionRepository, Mockito.times(3)).deleteRawHits(DAY, NEXT_DAY, 100);
+        Mockito.verifyNoInteractions(rollupRepository, sketchRepository, uniqueViewsRepository);
+        Mockito.verify(bitmapRepository, Mockito.never()).rebuild(any(), any());
+    }
+
+    @Test
+    public void test_T0010_PS02_compact_driftRebuildsAggregates() {
+        Mockito.when(compactionRepository.findOldestRawHit(NEXT_DAY)).thenReturn(Optional.of(DAY));
+        Mockito.when(compactionRepository.getWatermark()).thenReturn(DAY, DAY, NEXT_DAY);
+        Mockito.when(compactionRepository.countRawHits(DAY, NEXT_DAY)).thenReturn(250L);
+        Mockito.when(compactionRepository.countRollupHits(DAY, NEXT_DAY)).thenReturn(200L);
+        Mockito.when(compactionRepository.deleteRawHits(DAY, NEXT_DAY, 100)).thenReturn(0);
+
+        compactionJob.compact(NOW);
+
+        Mockito.verify(rollupRepository).rebuild(DAY, NEXT_DAY);
+        Mockito.verify(sketchRepository).rebuild(DAY, NEXT_DAY);
+        Mockito.verify(bitmapRepository).rebuild(DAY, NEXT_DAY);
+        Mockito.verify(uniqueViewsRepository).rebuild(DAY, NEXT_DAY);
+        Mockito.verify(compactionRepository).setWatermark(NEXT_DAY);
+    }
+
+    @Test
+    public void test_T0010_PS03_compact_lateHitsOfCompactedDayNotChecked() {
+        Mockito.when(compactionRepository.findOldestRawHit(NEXT_DAY)).thenReturn(Optional.of(DAY.plusHours(1)));
+        Mockito.when(compactionRepository.getWatermark()).thenReturn(NEXT_DAY);
+        Mockito.when(compactionRepository.deleteRawHits(DAY, NEXT_DAY, 100)).thenReturn(3);
+
+        compactionJob.compact(NOW);
+
+        Mockito.verify(compactionRepository, Mockito.never()).countRawHits(any(), any());
+        Mockito.verify(compactionRepository, Mockito.never()).setWatermark(any());
+        Mockito.verifyNoInteractions(rollupRepository, sketchRepository);
+    }
+
+    @Test
+    public void test_T0020_NS01_constructor_requiresBitmaps() {
+        Mockito.when(bitmapRepository.isEnabled()).thenReturn(false);
+
+        assertThrows(IllegalStateException.class, () -> new StatCompactionJob(compactionRepository, rollupRepository,
+                sketchRepository, bitmapRepository, uniqueViewsRepository, new TransactionTemplate(transactionManager),
+                2, 100, 0));
+    }
+}
@@ -0,0 +1,63 @@
+package ru.practicum.compaction;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.bitmap.StatBitmapRepository;
+import ru.practicum.rollup.StatRollupRepository;
+import ru.practicum.sketch.StatSketchRepository;
+import ru.practicum.views.StatUniqueViewsRepository;
+
+@ExtendWith(MockitoExtension.class)
+class StatDeltaFoldJobTest {
+    @Mock
+    private StatRollupRepository rollupRepository;
+    @Mock
+    private StatBitmapRepository bitmapRepository;
+    @Mock
+    private StatSketchRepository sketchRepository;
+    @Mock
+    private StatUniqueViewsRepository uniqueViewsRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private StatDeltaFoldJob foldJob;
+
+    @BeforeEach
+    public void preTestInitialization() {
+        foldJob = new StatDeltaFoldJob(rollupRepository, bitmapRepository, sketchRepository,
+                uniqueViewsRepository, new TransactionTemplate(transactionManager), 100);
+    }
+
+    @Test
+    public void test_T0010_PS01_fold_untilPartialBatch() {
+        Mockito.when(rollupRepository.fold(100)).thenReturn(100, 5);
+        Mockito.when(bitmapRepository.fold(100)).thenReturn(100, 100, 40);
+        Mockito.when(sketchRepository.fold(100)).thenReturn(0);
+        Mockito.when(uniqueViewsRepository.fold(100)).thenReturn(3);
+
+        foldJob.fold();
+
+        Mockito.verify(rollupRepository, Mockito.times(2)).fold(100);
+        Mockito.verify(bitmapRepository, Mockito.times(3)).fold(100);
+        Mockito.verify(sketchRepository).fold(100);
+        Mockito.verify(uniqueViewsRepository).fold(100);
+        Mockito.verify(transactionManager, Mockito.times(7)).commit(Mockito.any());
+    }
+
+    @Test
+    public void test_T0010_NS01_fold_failureStopsRun() {
+        Mockito.when(bitmapRepository.fold(100)).thenReturn(100).thenThrow(new IllegalStateException("БД недоступна"));
+
+        foldJob.fold();
+
+        Mockito.verify(bitmapRepository, Mockito.times(2)).fold(100);
+        Mockito.verify(transactionManager).rollback(Mockito.any());
+        Mockito.verifyNoInteractions(sketchRepository, uniqueViewsRepository);
+    }
+}
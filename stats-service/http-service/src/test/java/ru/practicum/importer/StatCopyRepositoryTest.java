@@ -0,0 +1,66 @@
+package ru.practicum.importer;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.PostgresTestDatabase;
+import ru.practicum.model.stat.Stat;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatCopyRepositoryTest {
+    private static final LocalDateTime REQUESTED = LocalDateTime.of(2022, 9, 6, 11, 0, 23);
+
+    private static DataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+    private static TransactionTemplate transactionTemplate;
+    private static StatCopyRepository copyRepository;
+
+    @BeforeAll
+    public static void startDatabase() {
+        dataSource = PostgresTestDatabase.dataSource();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        copyRepository = new StatCopyRepository(dataSource);
+    }
+
+    @BeforeEach
+    public void preTestInitialization() {
+        PostgresTestDatabase.resetSchema(dataSource);
+    }
+
+    @Test
+    public void test_T0010_PS01_copyIn_loadsRows() {
+        Stat first = PostgresTestDatabase.stat(jdbcTemplate, "ewm-main-service", "/events/1", "10.0.0.1", REQUESTED);
+        Stat second = PostgresTestDatabase.stat(jdbcTemplate, "ewm-main-service", "/events?a=1,2", "::1",
+                REQUESTED.plusNanos(500_000_000));
+
+        Long copied = transactionTemplate.execute(status -> copyRepository.copyIn(List.of(first, second)));
+
+        assertEquals(2, copied);
+        assertEquals(List.of(
+                        List.of(first.getUri().getId(), first.getIp().getId(), first.getRequested()),
+                        List.of(second.getUri().getId(), second.getIp().getId(), second.getRequested())),
+                jdbcTemplate.query("select uri_id, ip_id, requested from stat order by requested", (rs, rowNum) ->
+                        List.of(rs.getInt("uri_id"), rs.getInt("ip_id"), rs.getTimestamp("requested").toLocalDateTime())));
+    }
+
+    @Test
+    public void test_T0010_NS01_copyIn_rolledBackWithTransaction() {
+        Stat stat = PostgresTestDatabase.stat(jdbcTemplate, "ewm-main-service", "/events/1", "10.0.0.1", REQUESTED);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            copyRepository.copyIn(List.of(stat));
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from stat", Long.class));
+    }
+}
@@ -0,0 +1,191 @@
+package ru.practicum.importer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.app.AppRegistry;
+import ru.practicum.bitmap.StatBitmapRepository;
+import ru.practicum.common.exception.StatImportException;
+import ru.practicum.compaction.StatCompactionRepository;
+import ru.practicum.dictionary.IpDictionary;
+import ru.practicum.dictionary.UriDictionary;
+import ru.practicum.ingest.HitDeduplicator;
+import ru.practicum.model.app.App;
+import ru.practicum.model.stat.Stat;
+import ru.practicum.rollup.StatRollupRepository;
+import ru.practicum.sketch.StatSketchRepository;
+import ru.practicum.stat.StatsResultCache;
+import ru.practicum.top.TopUriTracker;
+import ru.practicum.views.UniqueViewsCounter;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+
+@ExtendWith(MockitoExtension.class)
+class StatImporterTest {
+    private static final LocalDateTime DAY = LocalDateTime.of(2022, 9, 6, 0, 0);
+
+    @Mock
+    private AppRegistry appRegistry;
+    @Mock
+    private UriDictionary uriDictionary;
+    @Mock
+    private IpDictionary ipDictionary;
+    @Mock
+    private StatCopyRepository copyRepository;
+    @Mock
+    private StatRollupRepository rollupRepository;
+    @Mock
+    private StatSketchRepository sketchRepository;
+    @Mock
+    private StatBitmapRepository bitmapRepository;
+    @Mock
+    private StatCompactionRepository compactionRepository;
+    @Mock
+    private TopUriTracker topTracker;
+    @Mock
+    private UniqueViewsCounter uniqueViewsCounter;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Captor
+    private ArgumentCaptor<List<Stat>> statsCaptor;
+
+    private StatImporter importer;
+
+    @BeforeEach
+    public void preTestInitialization() {
+        importer = new StatImporter(appRegistry, uriDictionary, ipDictionary, copyRepository, rollupRepository,
+                sketchRepository, bitmapRepository, compactionRepository, topTracker, uniqueViewsCounter,
+                new StatsResultCache(false, 1, 0, 0), new HitDeduplicator(null, false, 1, 1, 1, 1),
+                new TransactionTemplate(transactionManager), new ObjectMapper().registerModule(new JavaTimeModule()),
+                2);
+
+        Mockito.lenient().when(compactionRepository.getWatermark()).thenReturn(LocalDateTime.of(1970, 1, 1, 0, 0));
+        Mockito.lenient().when(uriDictionary.resolve(anyCollection()))
+                .thenAnswer(invocation -> enumerate(invocation.getArgument(0)));
+        Mockito.lenient().when(ipDictionary.resolve(anyCollection()))
+                .thenAnswer(invocation -> enumerate(invocation.getArgument(0)));
+        Mockito.lenient().when(copyRepository.copyIn(anyList()))
+                .thenAnswer(invocation -> (long) invocation.<List<Stat>>getArgument(0).size());
+    }
+
+    @Test
+    public void test_T0010_PS01_importHits_csvInChunks() {
+        App app = App.builder().id(1).app("ewm-main-service").build();
+        Mockito.when(appRegistry.resolve(anyCollection())).thenReturn(Map.of("ewm-main-service", app));
+
+        StatImportResult result = importer.importHits(body("ewm-main-service,/events/1,10.0.0.1,2022-09-06 11:00:23\n" +
+                "ewm-main-service,\"/events?a=1,2\",10.0.0.2,2022-09-06 11:00:24\n" +
+                "ewm-main-service,/events/2,10.0.0.256,2022-09-06 11:00:25\n" +
+                "\n" +
+                "ewm-main-service,/events/2,10.0.0.3,2022-09-06 11:00:26\n"), ImportFormat.CSV, 0);
+
+        assertEquals(5, result.getOffset());
+        assertEquals(3, result.getImported());
+        assertEquals(1, result.getRejected());
+        Mockito.verify(copyRepository, Mockito.times(2)).copyIn(statsCaptor.capture());
+        Mockito.verify(rollupRepository).rebuild(DAY, DAY.plusDays(1));
+        Mockito.verify(sketchRepository).rebuild(DAY, DAY.plusDays(1));
+        Mockito.verify(bitmapRepository).rebuild(DAY, DAY.plusDays(1));
+        Mockito.verify(rollupRepository, Mockito.never()).increment(anyList());
+        Mockito.verify(uniqueViewsCounter, Mockito.times(2)).offer(anyList());
+
+        Stat stat = statsCaptor.getAllValues().get(0).get(1);
+        assertEquals(app, stat.getApp());
+        assertEquals("/events?a=1,2", stat.getUri().getUri());
+        assertEquals(LocalDateTime.of(2022, 9, 6, 11, 0, 24), stat.getRequested());
+    }
+
+    @Test
+    public void test_T0010_PS02_importHits_ndjsonFromOffset() {
+        Mockito.when(appRegistry.resolve(anyCollection()))
+                .thenReturn(Map.of("ewm-main-service", App.builder().id(1).app("ewm-main-service").build()));
+
+        StatImportResult result = importer.importHits(body(
+                "{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"ip\":\"10.0.0.1\",\"timestamp\":\"2022-09-06 11:00:23\"}\n" +
+                "{\"app\":\"ewm-main-service\",\"uri\":\"/events/2\",\"ip\":\"10.0.0.2\",\"timestamp\":\"2022-09-06 11:00:24\"}\n" +
+                "{\"app\":\"ewm-main-service\",\"uri\":\"/events/3\",\"ip\":\"10.0.0.3\"\n"), ImportFormat.NDJSON, 1);
+
+        assertEquals(3, result.getOffset());
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getRejected());
+        Mockito.verify(copyRepository).copyIn(statsCaptor.capture());
+        assertEquals("/events/2", statsCaptor.getValue().get(0).getUri().getUri());
+    }
+
+    @Test
+    public void test_T0020_NS01_importHits_failureReportsCommittedOffset() {
+        Mockito.when(appRegistry.resolve(anyCollection()))
+                .thenReturn(Map.of("ewm-main-service", App.builder().id(1).app("ewm-main-service").build()));
+        Mockito.when(copyRepository.copyIn(anyList())).thenReturn(2L).thenThrow(new IllegalStateException("copy"));
+
+        StatImportException exception = assertThrows(StatImportException.class, () -> importer.importHits(body(
+                "ewm-main-service,/events/1,10.0.0.1,2022-09-06 11:00:23\n" +
+                "ewm-main-service,/events/2,10.0.0.2,2022-09-06 11:00:24\n" +
+                "ewm-main-service,/events/3,10.0.0.3,2022-09-06 11:00:25\n"), ImportFormat.CSV, 0));
+
+        assertEquals(2, exception.getResult().getOffset());
+        assertEquals(2, exception.getResult().getImported());
+        Mockito.verify(rollupRepository).rebuild(DAY, DAY.plusDays(1));
+    }
+
+    @Test
+    public void test_T0020_PS01_importHits_compactedDaysMergedWithoutRawRows() {
+        Mockito.when(compactionRepository.getWatermark()).thenReturn(DAY.plusDays(1));
+        Mockito.when(appRegistry.resolve(anyCollection()))
+                .thenReturn(Map.of("ewm-main-service", App.builder().id(1).app("ewm-main-service").build()));
+
+        StatImportResult result = importer.importHits(body("ewm-main-service,/events/1,10.0.0.1,2022-09-06 11:00:23\n" +
+                "ewm-main-service,/events/2,10.0.0.2,2022-09-07 11:00:24\n"), ImportFormat.CSV, 0);
+
+        assertEquals(2, result.getImported());
+        Mockito.verify(rollupRepository).increment(statsCaptor.capture());
+        assertEquals(List.of(LocalDateTime.of(2022, 9, 6, 11, 0, 23)), statsCaptor.getValue().stream()
+                .map(Stat::getRequested)
+                .collect(Collectors.toList()));
+        Mockito.verify(sketchRepository).merge(anyList());
+        Mockito.verify(bitmapRepository).merge(anyList());
+        Mockito.verify(copyRepository).copyIn(statsCaptor.capture());
+        assertEquals(List.of(LocalDateTime.of(2022, 9, 7, 11, 0, 24)), statsCaptor.getValue().stream()
+                .map(Stat::getRequested)
+                .collect(Collectors.toList()));
+        Mockito.verify(rollupRepository).rebuild(DAY.plusDays(1), DAY.plusDays(2));
+        Mockito.verify(rollupRepository, Mockito.never()).rebuild(DAY, DAY.plusDays(1));
+    }
+
+    @Test
+    public void test_T0030_PS01_parseCsv_quotedFields() {
+        assertEquals(List.of("app", "a,\"b\"", ""), StatImporter.parseCsv("app,\"a,\"\"b\"\"\","));
+    }
+
+    private InputStream body(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private <T> Map<T, Integer> enumerate(Collection<T> values) {
+        Map<T, Integer> ids = new HashMap<>();
+        values.forEach(value -> ids.put(value, ids.size() + 1));
+        return ids;
+    }
+}
@@ -0,0 +1,72 @@
+package ru.practicum.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.model.stat.dto.StatRequestDto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+@ExtendWith(MockitoExtension.class)
+class HitDeduplicatorTest {
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2022, 9, 6, 11, 0, 23);
+
+    @Mock
+    private StatHitKeyRepository hitKeyRepository;
+
+    @Test
+    public void test_T0010_PS01_filterNew_dropsStoredAndRepeatedKeys() {
+        HitDeduplicator deduplicator = new HitDeduplicator(hitKeyRepository, true, 100, 60000, 1, 100);
+        StatRequestDto first = hit("hit-b");
+        StatRequestDto anonymous = hit(null);
+        StatRequestDto stored = hit("hit-a");
+        Mockito.when(hitKeyRepository.insertKeys(eq(List.of("hit-a", "hit-b")), any())).thenReturn(Set.of("hit-b"));
+
+        List<StatRequestDto> result = deduplicator.filterNew(List.of(first, anonymous, stored, hit("hit-b")));
+
+        assertEquals(List.of(first, anonymous), result);
+    }
+
+    @Test
+    public void test_T0010_PS02_filterNew_recentKeySkipsDatabase() {
+        HitDeduplicator deduplicator = new HitDeduplicator(hitKeyRepository, true, 100, 60000, 1, 100);
+        Mockito.when(hitKeyRepository.insertKeys(eq(List.of("hit-a")), any())).thenReturn(Set.of("hit-a"));
+
+        assertEquals(1, deduplicator.filterNew(List.of(hit("hit-a"))).size());
+        assertEquals(0, deduplicator.filterNew(List.of(hit("hit-a"))).size());
+
+        Mockito.verify(hitKeyRepository, Mockito.times(1)).insertKeys(any(), any());
+    }
+
+    @Test
+    public void test_T0010_PS03_filterNew_disabled() {
+        HitDeduplicator deduplicator = new HitDeduplicator(hitKeyRepository, false, 100, 60000, 1, 100);
+        List<StatRequestDto> requestDtos = List.of(hit("hit-a"), hit("hit-a"));
+
+        assertEquals(requestDtos, deduplicator.filterNew(requestDtos));
+
+        Mockito.verifyNoInteractions(hitKeyRepository);
+    }
+
+    @Test
+    public void test_T0020_PS01_purge_deletesInChunks() {
+        HitDeduplicator deduplicator = new HitDeduplicator(hitKeyRepository, true, 100, 60000, 1, 100);
+        Mockito.when(hitKeyRepository.deleteKeys(any(), eq(100))).thenReturn(100, 100, 7);
+
+        deduplicator.purge();
+
+        Mockito.verify(hitKeyRepository, Mockito.times(3)).deleteKeys(any(), eq(100));
+    }
+
+    private StatRequestDto hit(String hitId) {
+        return StatRequestDto.of("ewm-main-service", "/events/1", "192.168.0.1", TIMESTAMP, hitId);
+    }
+}
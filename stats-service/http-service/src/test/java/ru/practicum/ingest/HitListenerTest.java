@@ -0,0 +1,172 @@
+package ru.practicum.ingest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.common.exception.IngestBufferOverflowException;
+import ru.practicum.model.stat.dto.HitFrameCodec;
+import ru.practicum.model.stat.dto.StatRequestDto;
+import ru.practicum.stat.StatsService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+
+@ExtendWith(MockitoExtension.class)
+class HitListenerTest {
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2022, 9, 6, 11, 0, 23);
+
+    @Mock
+    private StatsService statsService;
+    @Captor
+    private ArgumentCaptor<List<StatRequestDto>> batchCaptor;
+    private HitListener listener;
+
+    @BeforeEach
+    public void preTestInitialization() throws IOException {
+        listener = new HitListener(statsService, "async", "127.0.0.1", 0, 0, 65536, 2, 2, 10);
+        listener.start();
+    }
+
+    @AfterEach
+    public void postTestCleanup() throws Exception {
+        listener.stop();
+    }
+
+    @Test
+    public void test_T0010_PS01_udp_framesOfOneDatagram() throws IOException {
+        byte[] first = HitFrameCodec.encode(hit("/events/1"));
+        byte[] second = HitFrameCodec.encode(hit("/events/2"));
+        byte[] payload = ByteBuffer.allocate(first.length + second.length).put(first).put(second).array();
+
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.send(new DatagramPacket(payload, payload.length, InetAddress.getLoopbackAddress(),
+                    listener.getUdpPort()));
+        }
+
+        Mockito.verify(statsService, Mockito.timeout(5000)).toHitBatch(batchCaptor.capture());
+        assertEquals(List.of(hit("/events/1"), hit("/events/2")), batchCaptor.getValue());
+        Mockito.verify(statsService, Mockito.never()).toHit(any());
+    }
+
+    @Test
+    public void test_T0010_PS02_udp_batchesBoundedBySize() throws IOException {
+        byte[] first = HitFrameCodec.encode(hit("/events/1"));
+        byte[] second = HitFrameCodec.encode(hit("/events/2"));
+        byte[] third = HitFrameCodec.encode(hit("/events/3"));
+        byte[] payload = ByteBuffer.allocate(first.length + second.length + third.length)
+                .put(first).put(second).put(third).array();
+
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.send(new DatagramPacket(payload, payload.length, InetAddress.getLoopbackAddress(),
+                    listener.getUdpPort()));
+        }
+
+        Mockito.verify(statsService, Mockito.timeout(5000).times(2)).toHitBatch(batchCaptor.capture());
+        assertEquals(List.of(List.of(hit("/events/1"), hit("/events/2")), List.of(hit("/events/3"))),
+                batchCaptor.getAllValues());
+    }
+
+    @Test
+    public void test_T0020_PS01_tcp_frameSplitAcrossWrites() throws Exception {
+        byte[] first = HitFrameCodec.encode(hit("/events/1"));
+        byte[] second = HitFrameCodec.encode(hit("/events/2"));
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), listener.getTcpPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(first);
+            out.write(second, 0, 5);
+            out.flush();
+            Thread.sleep(200);
+            out.write(second, 5, second.length - 5);
+            out.flush();
+
+            Mockito.verify(statsService, Mockito.timeout(5000).times(2)).toHitBatch(batchCaptor.capture());
+        }
+
+        assertEquals(List.of(List.of(hit("/events/1")), List.of(hit("/events/2"))), batchCaptor.getAllValues());
+    }
+
+    @Test
+    public void test_T0020_NS01_tcp_invalidFrameIsSkipped() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), listener.getTcpPort())) {
+            OutputStream out = socket.getOutputStream();
+            byte[] invalid = HitFrameCodec.encode(hit("/events/1"));
+            invalid[2] = HitFrameCodec.VERSION + 1;
+            out.write(invalid);
+            out.write(HitFrameCodec.encode(hit("/events/2")));
+            out.flush();
+
+            Mockito.verify(statsService, Mockito.timeout(5000)).toHitBatch(batchCaptor.capture());
+        }
+
+        assertEquals(List.of(hit("/events/2")), batchCaptor.getValue());
+    }
+
+    @Test
+    public void test_T0030_PS01_fullBufferRetriesBatch() throws Exception {
+        Mockito.doThrow(new IngestBufferOverflowException("Буфер приема хитов заполнен"))
+                .doNothing()
+                .when(statsService).toHitBatch(anyList());
+        byte[] first = HitFrameCodec.encode(hit("/events/1"));
+        byte[] second = HitFrameCodec.encode(hit("/events/2"));
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), listener.getTcpPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(ByteBuffer.allocate(first.length + second.length).put(first).put(second).array());
+            out.flush();
+
+            Mockito.verify(statsService, Mockito.timeout(5000).times(2)).toHitBatch(batchCaptor.capture());
+        }
+
+        List<StatRequestDto> batch = List.of(hit("/events/1"), hit("/events/2"));
+        assertEquals(List.of(batch, batch), batchCaptor.getAllValues());
+    }
+
+    @Test
+    public void test_T0030_NS01_failedBatchDropped() throws Exception {
+        Mockito.doThrow(new IllegalStateException("БД недоступна"))
+                .doNothing()
+                .when(statsService).toHitBatch(anyList());
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), listener.getTcpPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(HitFrameCodec.encode(hit("/events/1")));
+            out.flush();
+            Mockito.verify(statsService, Mockito.timeout(5000)).toHitBatch(anyList());
+            out.write(HitFrameCodec.encode(hit("/events/2")));
+            out.flush();
+
+            Mockito.verify(statsService, Mockito.timeout(5000).times(2)).toHitBatch(batchCaptor.capture());
+        }
+
+        assertEquals(List.of(List.of(hit("/events/1")), List.of(hit("/events/2"))), batchCaptor.getAllValues());
+    }
+
+    @Test
+    public void test_T0040_NS01_constructor_requiresAsyncIngest() {
+        assertThrows(IllegalStateException.class,
+                () -> new HitListener(statsService, "sync", "127.0.0.1", 0, 0, 65536, 2, 2, 10));
+    }
+
+    private StatRequestDto hit(String uri) {
+        return StatRequestDto.of("ewm-main-service", uri, "192.168.0.1", TIMESTAMP, "hit" + uri);
+    }
+}
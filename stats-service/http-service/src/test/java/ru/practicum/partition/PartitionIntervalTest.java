@@ -0,0 +1,38 @@
+package ru.practicum.partition;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PartitionIntervalTest {
+
+    @Test
+    public void test_T0010_PS01_day() {
+        LocalDateTime from = PartitionInterval.DAY.floor(LocalDateTime.of(2024, 1, 31, 23, 59, 59));
+
+        assertEquals(LocalDateTime.of(2024, 1, 31, 0, 0), from);
+        assertEquals(LocalDateTime.of(2024, 2, 1, 0, 0), PartitionInterval.DAY.next(from));
+        assertEquals("stat_p20240131", PartitionInterval.DAY.tableName(from));
+        assertEquals(Optional.of(from), PartitionInterval.DAY.parseTableName("stat_p20240131"));
+    }
+
+    @Test
+    public void test_T0010_PS02_month() {
+        LocalDateTime from = PartitionInterval.MONTH.floor(LocalDateTime.of(2024, 2, 29, 12, 0));
+
+        assertEquals(LocalDateTime.of(2024, 2, 1, 0, 0), from);
+        assertEquals(LocalDateTime.of(2024, 3, 1, 0, 0), PartitionInterval.MONTH.next(from));
+        assertEquals("stat_p202402", PartitionInterval.MONTH.tableName(from));
+        assertEquals(Optional.of(from), PartitionInterval.MONTH.parseTableName("stat_p202402"));
+    }
+
+    @Test
+    public void test_T0010_NS01_parseForeignTable() {
+        assertEquals(Optional.empty(), PartitionInterval.DAY.parseTableName("stat_default"));
+        assertEquals(Optional.empty(), PartitionInterval.DAY.parseTableName("stat_p202402"));
+        assertEquals(Optional.empty(), PartitionInterval.MONTH.parseTableName("stat_p20240131"));
+    }
+}
@@ -0,0 +1,187 @@
+package ru.practicum.partition;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.PostgresTestDatabase;
+import ru.practicum.bitmap.StatBitmapRepository;
+import ru.practicum.compaction.StatCompactionRepository;
+import ru.practicum.model.stat.Stat;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatPartitionManagerTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2022, 9, 10, 15, 30);
+    private static final LocalDateTime OLD = LocalDateTime.of(2022, 9, 1, 10, 0);
+
+    private static DataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+    private static TransactionTemplate transactionTemplate;
+    private static StatCompactionRepository compactionRepository;
+
+    @BeforeAll
+    public static void startDatabase() {
+        dataSource = PostgresTestDatabase.dataSource();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        compactionRepository = new StatCompactionRepository(new NamedParameterJdbcTemplate(dataSource));
+    }
+
+    @BeforeEach
+    public void preTestInitialization() {
+        PostgresTestDatabase.resetSchema(dataSource);
+    }
+
+    @Test
+    public void test_T0010_PS01_maintain_createsPremadePartitions() {
+        manager(0, RetentionPolicy.DROP).maintain(NOW);
+        insert(NOW);
+
+        assertEquals(List.of("stat_p20220910", "stat_p20220911", "stat_p20220912"), partitions());
+        assertEquals("stat_p20220910", jdbcTemplate.queryForObject("select tableoid::regclass::text from stat",
+                String.class));
+        assertEquals(List.of("requested"), jdbcTemplate.queryForList("select column_name from " +
+                "information_schema.columns where table_name = 'stat_p20220910' and is_nullable = 'NO' " +
+                "and column_name = 'requested'", String.class));
+    }
+
+    @Test
+    public void test_T0020_PS01_maintain_movesHitsFromDefault() {
+        long id = insert(OLD);
+        assertEquals("stat_default", jdbcTemplate.queryForObject("select tableoid::regclass::text from stat",
+                String.class));
+
+        manager(0, RetentionPolicy.DROP).maintain(NOW);
+
+        assertEquals(List.of("stat_p20220901", "stat_p20220910", "stat_p20220911", "stat_p20220912"), partitions());
+        assertEquals(0, count("stat_default"));
+        assertEquals(id, jdbcTemplate.queryForObject("select id from stat_p20220901", Long.class));
+    }
+
+    @Test
+    public void test_T0020_PS02_maintain_waitsForConcurrentInsertIntoDefault() throws Exception {
+        insert(OLD);
+        Stat late = PostgresTestDatabase.stat(jdbcTemplate, "ewm-main-service", "/events/2", "10.0.0.2",
+                OLD.plusHours(1));
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "insert into stat (app_id, uri_id, ip_id, requested) values (?, ?, ?, ?)")) {
+                statement.setLong(1, late.getApp().getId());
+                statement.setInt(2, late.getUri().getId());
+                statement.setInt(3, late.getIp().getId());
+                statement.setTimestamp(4, Timestamp.valueOf(late.getRequested()));
+                statement.executeUpdate();
+            }
+
+            CompletableFuture<Void> maintenance = CompletableFuture.runAsync(() ->
+                    manager(0, RetentionPolicy.DROP).maintain(NOW));
+            Thread.sleep(300);
+            assertFalse(maintenance.isDone());
+
+            connection.commit();
+            maintenance.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(0, count("stat_default"));
+        assertEquals(2, count("stat_p20220901"));
+    }
+
+    @Test
+    public void test_T0030_PS01_maintain_dropsExpiredPartitions() {
+        insert(OLD);
+        manager(0, RetentionPolicy.DROP).maintain(NOW);
+
+        manager(5, RetentionPolicy.DROP).maintain(NOW);
+
+        assertEquals(List.of("stat_p20220910", "stat_p20220911", "stat_p20220912"), partitions());
+        assertNull(jdbcTemplate.queryForObject("select to_regclass('stat_p20220901')::text", String.class));
+        assertEquals(0, count("stat"));
+        assertEquals(OLD.toLocalDate().plusDays(1).atStartOfDay(), compactionRepository.getWatermark());
+    }
+
+    @Test
+    public void test_T0030_PS02_maintain_detachesExpiredPartitions() {
+        insert(OLD);
+        manager(0, RetentionPolicy.DROP).maintain(NOW);
+
+        manager(5, RetentionPolicy.DETACH).maintain(NOW);
+
+        assertEquals(List.of("stat_p20220910", "stat_p20220911", "stat_p20220912"), partitions());
+        assertEquals(0, count("stat"));
+        assertEquals(1, count("stat_p20220901"));
+        assertEquals(OLD.toLocalDate().plusDays(1).atStartOfDay(), compactionRepository.getWatermark());
+    }
+
+    @Test
+    public void test_T0030_PS03_maintain_lateHitForDetachedPartitionMovedIntoIt() {
+        insert(OLD);
+        manager(0, RetentionPolicy.DROP).maintain(NOW);
+        manager(5, RetentionPolicy.DETACH).maintain(NOW);
+        insert(OLD.plusHours(2));
+        assertEquals(1, count("stat_default"));
+
+        manager(5, RetentionPolicy.DETACH).maintain(NOW.plusDays(1));
+
+        assertEquals(List.of("stat_p20220910", "stat_p20220911", "stat_p20220912", "stat_p20220913"), partitions());
+        assertEquals(0, count("stat_default"));
+        assertEquals(2, count("stat_p20220901"));
+    }
+
+    @Test
+    public void test_T0040_NS01_maintain_failedPartitionDoesNotStopOthers() {
+        jdbcTemplate.execute("create view stat_p20220911 as select 1");
+
+        manager(0, RetentionPolicy.DROP).maintain(NOW);
+        List<String> partitions = partitions();
+        jdbcTemplate.execute("drop view stat_p20220911");
+
+        assertEquals(List.of("stat_p20220910", "stat_p20220912"), partitions);
+    }
+
+    @Test
+    public void test_T0040_NS02_constructor_retentionRequiresBitmaps() {
+        StatBitmapRepository bitmapRepository = new StatBitmapRepository(new NamedParameterJdbcTemplate(dataSource),
+                false);
+
+        assertThrows(IllegalStateException.class, () -> new StatPartitionManager(jdbcTemplate, transactionTemplate,
+                compactionRepository, bitmapRepository, PartitionInterval.DAY, 2, 5, RetentionPolicy.DROP));
+    }
+
+    private StatPartitionManager manager(int retentionDays, RetentionPolicy retentionPolicy) {
+        return new StatPartitionManager(jdbcTemplate, transactionTemplate, compactionRepository,
+                new StatBitmapRepository(new NamedParameterJdbcTemplate(dataSource), true), PartitionInterval.DAY, 2,
+                retentionDays, retentionPolicy);
+    }
+
+    private long insert(LocalDateTime requested) {
+        return PostgresTestDatabase.insert(jdbcTemplate,
+                PostgresTestDatabase.stat(jdbcTemplate, "ewm-main-service", "/events/1", "10.0.0.1", requested));
+    }
+
+    private List<String> partitions() {
+        return jdbcTemplate.queryForList("select c.relname from pg_inherits as i " +
+                "join pg_class as c on i.inhrelid = c.oid " +
+                "where i.inhparent = 'stat'::regclass and c.relname <> 'stat_default' " +
+                "order by c.relname", String.class);
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("select count(*) from " + table, Long.class);
+    }
+}
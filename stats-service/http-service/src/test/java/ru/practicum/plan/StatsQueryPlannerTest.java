@@ -0,0 +1,61 @@
+package ru.practicum.plan;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.rollup.RollupGranularity;
+import ru.practicum.rollup.RollupRange;
+import ru.practicum.rollup.RollupSegment;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatsQueryPlannerTest {
+    private static final LocalDateTime NO_WATERMARK = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final StatsQueryPlanner planner = new StatsQueryPlanner(100, 20, 200, 500);
+
+    @Test
+    public void test_T0010_PS01_plan_longRangeUsesRollups() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15, 30);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 1, 13, 40, 10);
+
+        StatsQueryPlan plan = planner.plan(start, end, NO_WATERMARK);
+
+        assertEquals(StatsQueryPlan.Strategy.ROLLUP, plan.getStrategy());
+        assertEquals(RollupRange.split(start, end), plan.getSegments());
+    }
+
+    @Test
+    public void test_T0010_PS02_plan_shortRangeIsSingleRawQuery() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15, 30);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 1, 10, 20, 10);
+
+        StatsQueryPlan plan = planner.plan(start, end, NO_WATERMARK);
+
+        assertEquals(List.of(RollupSegment.of(RollupGranularity.RAW, start, end)), plan.getSegments());
+        assertEquals(500 + (280 * 100 + 59) / 60, plan.getCost());
+    }
+
+    @Test
+    public void test_T0010_PS03_plan_shortHourReadFromMinutesWithEdges() {
+        StatsQueryPlanner planner = new StatsQueryPlanner(100, 1, 200, 500);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 30);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 1, 12, 30);
+
+        StatsQueryPlan plan = planner.plan(start, end, NO_WATERMARK);
+
+        assertEquals(List.of(RollupSegment.of(RollupGranularity.MINUTE, start, end)), plan.getSegments());
+    }
+
+    @Test
+    public void test_T0020_PS01_plan_compactedRangeNeverReadsRaw() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15, 30);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 1, 10, 20, 10);
+
+        StatsQueryPlan plan = planner.plan(start, end, LocalDateTime.of(2024, 1, 2, 0, 0));
+
+        assertEquals(List.of(RollupSegment.of(RollupGranularity.MINUTE, LocalDateTime.of(2024, 1, 1, 10, 15),
+                LocalDateTime.of(2024, 1, 1, 10, 21))), plan.getSegments());
+    }
+}
@@ -0,0 +1,75 @@
+package ru.practicum.rollup;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RollupRangeTest {
+
+    @Test
+    public void test_T0010_PS01_split_hoursMinutesAndRawEdges() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15, 30);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 1, 13, 40, 10);
+
+        List<RollupSegment> segments = RollupRange.split(start, end);
+
+        assertEquals(List.of(
+                RollupSegment.of(RollupGranularity.RAW, start, LocalDateTime.of(2024, 1, 1, 10, 16)),
+                RollupSegment.of(RollupGranularity.MINUTE, LocalDateTime.of(2024, 1, 1, 10, 16), LocalDateTime.of(2024, 1, 1, 11, 0)),
+                RollupSegment.of(RollupGranularity.HOUR, LocalDateTime.of(2024, 1, 1, 11, 0), LocalDateTime.of(2024, 1, 1, 13, 0)),
+                RollupSegment.of(RollupGranularity.MINUTE, LocalDateTime.of(2024, 1, 1, 13, 0), LocalDateTime.of(2024, 1, 1, 13, 40)),
+                RollupSegment.of(RollupGranularity.RAW, LocalDateTime.of(2024, 1, 1, 13, 40), end)), segments);
+    }
+
+    @Test
+    public void test_T0010_PS02_split_alignedRangeHasNoRawSegments() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 2, 10, 0);
+
+        assertEquals(List.of(RollupSegment.of(RollupGranularity.HOUR, start, end)), RollupRange.split(start, end));
+    }
+
+    @Test
+    public void test_T0010_PS03_split_withinOneMinuteIsRawOnly() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15, 10);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 1, 10, 15, 50);
+
+        assertEquals(List.of(RollupSegment.of(RollupGranularity.RAW, start, end)), RollupRange.split(start, end));
+    }
+
+    @Test
+    public void test_T0010_PS04_split_noFullHourUsesMinutes() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 1, 11, 5);
+
+        assertEquals(List.of(RollupSegment.of(RollupGranularity.MINUTE, start, end)), RollupRange.split(start, end));
+    }
+
+    @Test
+    public void test_T0020_PS01_split_rawEdgesBeforeWatermarkReadWholeMinutes() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15, 30);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 2, 10, 40, 10);
+        LocalDateTime watermark = LocalDateTime.of(2024, 1, 2, 0, 0);
+
+        List<RollupSegment> segments = RollupRange.split(start, end, watermark);
+
+        assertEquals(RollupSegment.of(RollupGranularity.MINUTE, LocalDateTime.of(2024, 1, 1, 10, 15),
+                LocalDateTime.of(2024, 1, 1, 10, 16)), segments.get(0));
+        assertEquals(RollupSegment.of(RollupGranularity.RAW, LocalDateTime.of(2024, 1, 2, 10, 40), end),
+                segments.get(segments.size() - 1));
+    }
+
+    @Test
+    public void test_T0020_PS02_split_rawSegmentCrossingWatermarkSplitAtIt() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 23, 59, 50);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 2, 0, 0, 10);
+        LocalDateTime watermark = LocalDateTime.of(2024, 1, 2, 0, 0);
+
+        assertEquals(List.of(
+                RollupSegment.of(RollupGranularity.MINUTE, LocalDateTime.of(2024, 1, 1, 23, 59), watermark),
+                RollupSegment.of(RollupGranularity.RAW, watermark, end)), RollupRange.split(start, end, watermark));
+    }
+}
@@ -0,0 +1,181 @@
+package ru.practicum.rollup;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.PostgresTestDatabase;
+import ru.practicum.model.stat.Stat;
+import ru.practicum.model.stat.dto.StatResponseDto;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class StatRollupRepositoryTest {
+    private static final LocalDateTime HOUR = LocalDateTime.of(2022, 9, 6, 11, 0);
+
+    private static DataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+    private static TransactionTemplate transactionTemplate;
+    private static StatRollupRepository rollupRepository;
+
+    @BeforeAll
+    public static void startDatabase() {
+        dataSource = PostgresTestDatabase.dataSource();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        rollupRepository = new StatRollupRepository(new NamedParameterJdbcTemplate(dataSource));
+    }
+
+    @BeforeEach
+    public void preTestInitialization() {
+        PostgresTestDatabase.resetSchema(dataSource);
+    }
+
+    @Test
+    public void test_T0010_PS01_increment_deltasVisibleToReaders() {
+        rollupRepository.increment(List.of(stat("10.0.0.1", HOUR.plusSeconds(23)), stat("10.0.0.2", HOUR.plusSeconds(50))));
+        rollupRepository.increment(List.of(stat("10.0.0.1", HOUR.plusMinutes(59))));
+
+        assertEquals(2, count("stat_rollup_delta"));
+        assertEquals(Map.of(), buckets("stat_rollup_minute"));
+        assertEquals(Map.of(), buckets("stat_rollup_hour"));
+        assertEquals(List.of(StatResponseDto.of("ewm-main-service", "/events/1", 3L)),
+                rollupRepository.findHits(RollupGranularity.HOUR, HOUR, HOUR.plusHours(1), new String[]{"/events/1"}));
+        assertEquals(List.of(StatResponseDto.of("ewm-main-service", "/events/1", 2L)),
+                rollupRepository.findHits(RollupGranularity.MINUTE, HOUR, HOUR.plusMinutes(1), null));
+    }
+
+    @Test
+    public void test_T0020_PS01_fold_addsDeltasToMinuteAndHourBuckets() {
+        rollupRepository.increment(List.of(stat("10.0.0.1", HOUR.plusSeconds(23)), stat("10.0.0.2", HOUR.plusSeconds(50))));
+        rollupRepository.increment(List.of(stat("10.0.0.1", HOUR.plusMinutes(59))));
+
+        assertEquals(2, fold(10));
+        assertEquals(0, count("stat_rollup_delta"));
+        assertEquals(Map.of(HOUR, 2L, HOUR.plusMinutes(59), 1L), buckets("stat_rollup_minute"));
+        assertEquals(Map.of(HOUR, 3L), buckets("stat_rollup_hour"));
+
+        rollupRepository.increment(List.of(stat("10.0.0.3", HOUR.plusMinutes(59))));
+
+        assertEquals(1, fold(10));
+        assertEquals(Map.of(HOUR, 2L, HOUR.plusMinutes(59), 2L), buckets("stat_rollup_minute"));
+        assertEquals(Map.of(HOUR, 4L), buckets("stat_rollup_hour"));
+        assertEquals(List.of(StatResponseDto.of("ewm-main-service", "/events/1", 4L)),
+                rollupRepository.findHits(RollupGranularity.HOUR, HOUR, HOUR.plusHours(1), null));
+    }
+
+    @Test
+    public void test_T0020_PS02_fold_boundedByLimit() {
+        rollupRepository.increment(List.of(stat("10.0.0.1", HOUR.plusMinutes(1))));
+        rollupRepository.increment(List.of(stat("10.0.0.1", HOUR.plusMinutes(2))));
+        rollupRepository.increment(List.of(stat("10.0.0.1", HOUR.plusMinutes(3))));
+
+        assertEquals(2, fold(2));
+        assertEquals(1, count("stat_rollup_delta"));
+        assertEquals(Map.of(HOUR, 2L), buckets("stat_rollup_hour"));
+        assertEquals(List.of(StatResponseDto.of("ewm-main-service", "/events/1", 3L)),
+                rollupRepository.findHits(RollupGranularity.HOUR, HOUR, HOUR.plusHours(1), null));
+    }
+
+    @Test
+    public void test_T0030_PS01_rebuild_replacesBucketsAndDeltasFromRawRows() {
+        rollupRepository.increment(List.of(stat("10.0.0.1", HOUR.plusMinutes(5))));
+        fold(10);
+        rollupRepository.increment(List.of(stat("10.0.0.1", HOUR.plusMinutes(6))));
+        rollupRepository.increment(List.of(stat("10.0.0.1", HOUR.plusHours(1))));
+        PostgresTestDatabase.insert(jdbcTemplate, stat("10.0.0.1", HOUR.plusMinutes(1)));
+        PostgresTestDatabase.insert(jdbcTemplate, stat("10.0.0.2", HOUR.plusMinutes(1).plusSeconds(59)));
+        PostgresTestDatabase.insert(jdbcTemplate, stat("10.0.0.3", HOUR.plusMinutes(30)));
+
+        rollupRepository.rebuild(HOUR, HOUR.plusHours(1));
+
+        assertEquals(Map.of(HOUR.plusMinutes(1), 2L, HOUR.plusMinutes(30), 1L), buckets("stat_rollup_minute"));
+        assertEquals(Map.of(HOUR, 3L), buckets("stat_rollup_hour"));
+        assertEquals(1, count("stat_rollup_delta"));
+    }
+
+    @Test
+    public void test_T0030_PS02_rebuild_waitsForConcurrentFold() throws Exception {
+        PostgresTestDatabase.insert(jdbcTemplate, stat("10.0.0.1", HOUR.plusMinutes(1)));
+        PostgresTestDatabase.insert(jdbcTemplate, stat("10.0.0.2", HOUR.plusMinutes(2)));
+        rollupRepository.increment(List.of(stat("10.0.0.2", HOUR.plusMinutes(2))));
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            StatRollupRepository folding = new StatRollupRepository(
+                    new NamedParameterJdbcTemplate(new SingleConnectionDataSource(connection, true)));
+            assertEquals(1, folding.fold(10));
+
+            CompletableFuture<Void> rebuild = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(
+                    status -> rollupRepository.rebuild(HOUR, HOUR.plusHours(1))));
+            Thread.sleep(300);
+            assertFalse(rebuild.isDone());
+
+            connection.commit();
+            rebuild.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(Map.of(HOUR, 2L), buckets("stat_rollup_hour"));
+        assertEquals(0, count("stat_rollup_delta"));
+    }
+
+    @Test
+    public void test_T0030_PS03_rebuild_liveHitCommittedAfterSnapshotCountedOnce() throws Exception {
+        PostgresTestDatabase.insert(jdbcTemplate, stat("10.0.0.1", HOUR.plusMinutes(1)));
+        Stat live = stat("10.0.0.2", HOUR.plusMinutes(2));
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            SingleConnectionDataSource liveDataSource = new SingleConnectionDataSource(connection, true);
+            PostgresTestDatabase.insert(new JdbcTemplate(liveDataSource), live);
+            new StatRollupRepository(new NamedParameterJdbcTemplate(liveDataSource)).increment(List.of(live));
+
+            transactionTemplate.executeWithoutResult(status -> rollupRepository.rebuild(HOUR, HOUR.plusHours(1)));
+            connection.commit();
+        }
+
+        assertEquals(Map.of(HOUR, 1L), buckets("stat_rollup_hour"));
+        assertEquals(1, fold(10));
+        assertEquals(Map.of(HOUR, 2L), buckets("stat_rollup_hour"));
+        assertEquals(List.of(StatResponseDto.of("ewm-main-service", "/events/1", 2L)),
+                rollupRepository.findHits(RollupGranularity.HOUR, HOUR, HOUR.plusHours(1), null));
+    }
+
+    private int fold(int limit) {
+        return transactionTemplate.execute(status -> rollupRepository.fold(limit));
+    }
+
+    private Stat stat(String ip, LocalDateTime requested) {
+        return PostgresTestDatabase.stat(jdbcTemplate, "ewm-main-service", "/events/1", ip, requested);
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("select count(*) from " + table, Long.class);
+    }
+
+    private Map<LocalDateTime, Long> buckets(String table) {
+        return jdbcTemplate.query("select bucket, hits from " + table, rs -> {
+            Map<LocalDateTime, Long> buckets = new HashMap<>();
+
+            while (rs.next()) {
+                buckets.put(rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits"));
+            }
+
+            return buckets;
+        });
+    }
+}
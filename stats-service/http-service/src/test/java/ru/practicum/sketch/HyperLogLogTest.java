@@ -0,0 +1,101 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HyperLogLogTest {
+
+    @Test
+    public void test_T0010_PS01_precisionFor() {
+        assertEquals(12, HyperLogLog.precisionFor(0.02));
+        assertEquals(14, HyperLogLog.precisionFor(0.01));
+        assertEquals(HyperLogLog.MAX_PRECISION, HyperLogLog.precisionFor(0.0001));
+        assertEquals(HyperLogLog.MIN_PRECISION, HyperLogLog.precisionFor(0.9));
+    }
+
+    @Test
+    public void test_T0020_PS01_estimate_withinErrorBound() {
+        HyperLogLog sketch = new HyperLogLog(12);
+
+        for (int i = 0; i < 100_000; i++) {
+            sketch.add(ip(i));
+            sketch.add(ip(i));
+        }
+
+        assertEquals(100_000, sketch.estimate(), 100_000 * 0.02 * 3);
+    }
+
+    @Test
+    public void test_T0020_PS02_estimate_smallCardinalityIsNearlyExact() {
+        HyperLogLog sketch = new HyperLogLog(12);
+
+        for (int i = 0; i < 50; i++) {
+            sketch.add(ip(i));
+        }
+
+        assertEquals(50, sketch.estimate(), 1);
+        assertEquals(0, new HyperLogLog(12).estimate());
+    }
+
+    @Test
+    public void test_T0030_PS01_merge_equalsUnion() {
+        HyperLogLog first = new HyperLogLog(12);
+        HyperLogLog second = new HyperLogLog(12);
+        HyperLogLog union = new HyperLogLog(12);
+
+        for (int i = 0; i < 30_000; i++) {
+            first.add(ip(i));
+            union.add(ip(i));
+        }
+
+        for (int i = 20_000; i < 50_000; i++) {
+            second.add(ip(i));
+            union.add(ip(i));
+        }
+
+        assertEquals(union.estimate(), first.merge(second).estimate());
+    }
+
+    @Test
+    public void test_T0030_PS02_union_foldsHigherPrecision() {
+        HyperLogLog coarse = new HyperLogLog(10);
+        HyperLogLog fine = new HyperLogLog(14);
+        HyperLogLog expected = new HyperLogLog(10);
+
+        for (int i = 0; i < 20_000; i++) {
+            fine.add(ip(i));
+            expected.add(ip(i));
+        }
+
+        HyperLogLog union = HyperLogLog.union(fine, coarse);
+        assertEquals(10, union.getPrecision());
+        assertEquals(expected.estimate(), union.estimate());
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(14).merge(new HyperLogLog(10)));
+    }
+
+    @Test
+    public void test_T0040_PS01_serialization_sparseAndDense() {
+        HyperLogLog sparse = new HyperLogLog(12);
+        sparse.add("10.0.0.1");
+        sparse.add("10.0.0.2");
+
+        byte[] sparseBytes = sparse.toBytes();
+        assertTrue(sparseBytes.length < 20);
+        assertEquals(sparse.estimate(), HyperLogLog.fromBytes(sparseBytes).estimate());
+
+        HyperLogLog dense = new HyperLogLog(12);
+
+        for (int i = 0; i < 100_000; i++) {
+            dense.add(ip(i));
+        }
+
+        byte[] denseBytes = dense.toBytes();
+        assertEquals(2 + 4096, denseBytes.length);
+        assertEquals(dense.estimate(), HyperLogLog.fromBytes(denseBytes).estimate());
+    }
+
+    private static String ip(int i) {
+        return "10." + (i >>> 16 & 0xff) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff);
+    }
+}
@@ -0,0 +1,104 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.PostgresTestDatabase;
+import ru.practicum.model.stat.Stat;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatSketchRepositoryTest {
+    private static final LocalDateTime HOUR = LocalDateTime.of(2022, 9, 6, 11, 0);
+
+    private static DataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+    private static TransactionTemplate transactionTemplate;
+    private static StatSketchRepository sketchRepository;
+
+    @BeforeAll
+    public static void startDatabase() {
+        dataSource = PostgresTestDatabase.dataSource();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        sketchRepository = new StatSketchRepository(new NamedParameterJdbcTemplate(dataSource), 0.02);
+    }
+
+    @BeforeEach
+    public void preTestInitialization() {
+        PostgresTestDatabase.resetSchema(dataSource);
+    }
+
+    @Test
+    public void test_T0010_PS01_merge_deltasVisibleToReaders() {
+        sketchRepository.merge(List.of(stat("10.0.0.1", 1), stat("10.0.0.2", 2)));
+        sketchRepository.merge(List.of(stat("10.0.0.2", 3), stat("10.0.0.3", 4)));
+
+        assertEquals(2, count("stat_sketch_hour_delta"));
+        assertEquals(0, count("stat_sketch_hour"));
+        assertEquals(3, hourEstimate());
+        assertEquals(3, sketchRepository.findUriSketch("/events/1").estimate());
+    }
+
+    @Test
+    public void test_T0020_PS01_fold_mergesDeltasIntoHourAndUriSketches() {
+        sketchRepository.merge(List.of(stat("10.0.0.1", 1), stat("10.0.0.2", 2)));
+        sketchRepository.merge(List.of(stat("10.0.0.2", 3)));
+        sketchRepository.merge(List.of(stat("10.0.0.3", 65)));
+
+        assertEquals(3, fold(10));
+        assertEquals(0, count("stat_sketch_hour_delta"));
+        assertEquals(2, count("stat_sketch_hour"));
+        assertEquals(1, count("stat_sketch_uri"));
+        assertEquals(2, hourEstimate());
+        assertEquals(3, sketchRepository.findUriSketch("/events/1").estimate());
+
+        sketchRepository.merge(List.of(stat("10.0.0.4", 5)));
+
+        assertEquals(1, fold(10));
+        assertEquals(3, hourEstimate());
+        assertEquals(4, sketchRepository.findUriSketch("/events/1").estimate());
+    }
+
+    @Test
+    public void test_T0030_PS01_rebuild_replacesHourSketchFromRawRows() {
+        sketchRepository.merge(List.of(stat("10.0.0.9", 1)));
+        fold(10);
+        PostgresTestDatabase.insert(jdbcTemplate, stat("10.0.0.1", 1));
+        PostgresTestDatabase.insert(jdbcTemplate, stat("10.0.0.2", 2));
+
+        transactionTemplate.executeWithoutResult(status -> sketchRepository.rebuild(HOUR, HOUR.plusHours(1)));
+
+        assertEquals(2, hourEstimate());
+        assertEquals(3, sketchRepository.findUriSketch("/events/1").estimate());
+    }
+
+    private Stat stat(String ip, int minute) {
+        return PostgresTestDatabase.stat(jdbcTemplate, "ewm-main-service", "/events/1", ip, HOUR.plusMinutes(minute));
+    }
+
+    private int fold(int limit) {
+        return transactionTemplate.execute(status -> sketchRepository.fold(limit));
+    }
+
+    private long hourEstimate() {
+        Map<List<String>, HyperLogLog> sketches = new HashMap<>();
+        sketchRepository.forEachSketch(HOUR, HOUR.plusHours(1), null, (key, sketch) ->
+                sketches.merge(key, sketch, HyperLogLog::union));
+        return sketches.get(List.of("ewm-main-service", "/events/1")).estimate();
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("select count(*) from " + table, Long.class);
+    }
+}
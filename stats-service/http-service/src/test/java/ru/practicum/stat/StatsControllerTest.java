@@ -15,20 +15,31 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import ru.practicum.common.exception.InvalidDurationException;
 import ru.practicum.model.stat.dto.StatRequestDto;
 import ru.practicum.model.stat.dto.StatResponseDto;
+import ru.practicum.model.stat.dto.StatTimeSeriesDto;
+import ru.practicum.plan.StatsQueryPlan;
+import ru.practicum.timeseries.TimeSeriesBucket;
 
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 import static org.mockito.ArgumentMatchers.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -117,6 +128,46 @@ class StatsControllerTest {
 //                arguments("{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"ip\":\"192.168.0.0901\",\"timestamp\":\"2022-09-06 11:00:23\"}", "Validation failed for argument"));
     }
 
+    @Test
+    public void test_T0015_PS01_toHitBatch() throws Exception {
+        List<StatRequestDto> requestDtos = List.of(statRequestDto, statRequestDto.toBuilder().uri("/events/2").build());
+        Mockito.doNothing()
+                .when(statsService).toHitBatch(requestDtos);
+
+        mvc.perform(post("/hit/batch")
+                        .content(mapper.writeValueAsString(requestDtos))
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated());
+
+        Mockito.verify(statsService, Mockito.only()).toHitBatch(requestDtos);
+        Mockito.verifyNoMoreInteractions(statsService);
+    }
+
+    @ParameterizedTest
+    @MethodSource("giveArgsFor_T0015_NS01")
+    public void test_T0015_NS01_toHitBatch_invalidContent(String content) throws Exception {
+        mvc.perform(post("/hit/batch")
+                        .content(content)
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        Mockito.verifyNoInteractions(statsService);
+    }
+
+    private static Stream<Arguments> giveArgsFor_T0015_NS01() {
+        return Stream.of(arguments(""),
+                arguments("[]"),
+                arguments("[{}]"),
+                arguments("[{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"ip\":\"192.168.0.1\",\"timestamp\":\"2022-09-06 11:00:23\"},{\"uri\":\"/events/1\"}]"),
+                // Ограничения таблиц app и uri
+                arguments("[{\"app\":\"ab\",\"uri\":\"/events/1\",\"ip\":\"192.168.0.1\",\"timestamp\":\"2022-09-06 11:00:23\"}]"),
+                arguments("[{\"app\":\"ewm-main-service\",\"uri\":\"/" + "e".repeat(256) + "\",\"ip\":\"192.168.0.1\",\"timestamp\":\"2022-09-06 11:00:23\"}]"));
+    }
+
     @Test
     public void test_T0020_PS01_getStats() throws Exception {
         Mockito.when(statsService.getStats(anyString(), anyString(), any(String[].class), anyBoolean()))
@@ -138,6 +189,203 @@ class StatsControllerTest {
         Mockito.verifyNoMoreInteractions(statsService);
     }
 
+    @Test
+    public void test_T0020_PS02_getStats_approximateUnique() throws Exception {
+        Mockito.when(statsService.getApproximateStats(anyString(), anyString(), isNull()))
+                .thenReturn(List.of(statResponseDto1));
+
+        mvc.perform(get("/stats")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .param("start", start)
+                        .param("end", end)
+                        .param("unique", String.valueOf(true))
+                        .param("approximate", String.valueOf(true)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1));
+
+        Mockito.verify(statsService, Mockito.only()).getApproximateStats(anyString(), anyString(), isNull());
+        Mockito.verifyNoMoreInteractions(statsService);
+    }
+
+    @Test
+    public void test_T0020_PS04_getStats_explainHeader() throws Exception {
+        Mockito.when(statsService.explainStats(anyString(), anyString(), isNull(), anyBoolean(), anyBoolean()))
+                .thenReturn(StatsResult.of(List.of(statResponseDto1), StatsQueryPlan.of(StatsQueryPlan.Strategy.BITMAP)));
+
+        mvc.perform(get("/stats")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .param("start", start)
+                        .param("end", end)
+                        .param("unique", String.valueOf(true))
+                        .param("explain", String.valueOf(true)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(StatsController.STATS_PLAN_HEADER, "BITMAP"))
+                .andExpect(jsonPath("$.length()").value(1));
+
+        Mockito.verify(statsService, Mockito.only()).explainStats(anyString(), anyString(), isNull(), eq(true), eq(false));
+    }
+
+    @Test
+    public void test_T0030_PS01_getUniqueEventViews_approximate() throws Exception {
+        Mockito.when(statsService.getApproximateUniqueEventViews(1)).thenReturn(42L);
+
+        mvc.perform(get("/stats/1")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .param("approximate", String.valueOf(true)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").value(42));
+
+        Mockito.verify(statsService, Mockito.only()).getApproximateUniqueEventViews(1);
+    }
+
+    @Test
+    public void test_T0050_PS01_getUniqueEventViews_bulk() throws Exception {
+        Mockito.when(statsService.getUniqueEventViews(List.of(1L, 2L))).thenReturn(Map.of(1L, 5L, 2L, 0L));
+
+        mvc.perform(post("/stats/views")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("[1, 2]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.1").value(5))
+                .andExpect(jsonPath("$.2").value(0));
+
+        Mockito.verify(statsService, Mockito.only()).getUniqueEventViews(List.of(1L, 2L));
+    }
+
+    @Test
+    public void test_T0050_NS01_getUniqueEventViews_bulkTooLarge() throws Exception {
+        String content = LongStream.rangeClosed(1, StatsController.MAX_VIEWS_EVENT_IDS + 1)
+                .mapToObj(Long::toString)
+                .collect(Collectors.joining(",", "[", "]"));
+
+        mvc.perform(post("/stats/views")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(content))
+                .andExpect(status().isBadRequest());
+
+        Mockito.verifyNoInteractions(statsService);
+    }
+
+    @Test
+    public void test_T0020_PS03_getStats_ndjson() throws Exception {
+        Mockito.doAnswer(invocation -> {
+            Consumer<StatResponseDto> consumer = invocation.getArgument(4);
+            consumer.accept(statResponseDto1);
+            consumer.accept(statResponseDto2);
+            return null;
+        }).when(statsService).streamStats(anyString(), anyString(), isNull(), anyBoolean(), any());
+
+        String body = mvc.perform(get("/stats")
+                        .accept(StatsController.APPLICATION_NDJSON_VALUE)
+                        .param("start", start)
+                        .param("end", end))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(StatsController.APPLICATION_NDJSON_VALUE))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(statResponseDto1, mapper.readValue(lines[0], StatResponseDto.class));
+        assertEquals(statResponseDto2, mapper.readValue(lines[1], StatResponseDto.class));
+        Mockito.verify(statsService, Mockito.only()).streamStats(anyString(), anyString(), isNull(), anyBoolean(), any());
+    }
+
+    @Test
+    public void test_T0020_NS03_getStats_ndjsonInvalidDuration() throws Exception {
+        Mockito.doThrow(new InvalidDurationException("end"))
+                .when(statsService).streamStats(anyString(), anyString(), isNull(), anyBoolean(), any());
+
+        mvc.perform(get("/stats")
+                        .accept(StatsController.APPLICATION_NDJSON_VALUE)
+                        .param("start", start)
+                        .param("end", end))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void test_T0060_PS01_getTopStats() throws Exception {
+        Mockito.when(statsService.getTopStats(anyString(), anyString(), eq("ewm-main-service"), eq(20)))
+                .thenReturn(List.of(statResponseDto1));
+
+        mvc.perform(get("/stats/top")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .param("start", start)
+                        .param("end", end)
+                        .param("app", "ewm-main-service"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].uri").value(statResponseDto1.getUri()));
+
+        Mockito.verify(statsService, Mockito.only()).getTopStats(anyString(), anyString(), eq("ewm-main-service"), eq(20));
+    }
+
+    @Test
+    public void test_T0060_NS01_getTopStats_invalidLimit() throws Exception {
+        mvc.perform(get("/stats/top")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .param("start", start)
+                        .param("end", end)
+                        .param("limit", "0"))
+                .andExpect(status().isBadRequest());
+
+        Mockito.verifyNoInteractions(statsService);
+    }
+
+    @Test
+    public void test_T0070_PS01_getTimeSeries() throws Exception {
+        Mockito.when(statsService.getTimeSeries(anyString(), anyString(), any(), eq(TimeSeriesBucket.DAY), eq(true)))
+                .thenReturn(List.of(StatTimeSeriesDto.of("ewm-main-service", "/events/1",
+                        LocalDateTime.of(2022, 9, 6, 0, 0), 4L)));
+
+        mvc.perform(get("/stats/timeseries")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .param("uri", "/events/1", "/events/2")
+                        .param("start", start)
+                        .param("end", end)
+                        .param("bucket", "day")
+                        .param("unique", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].bucket").value("2022-09-06 00:00:00"))
+                .andExpect(jsonPath("$[0].hits").value(4));
+
+        Mockito.verify(statsService, Mockito.only()).getTimeSeries(anyString(), anyString(),
+                eq(new String[]{"/events/1", "/events/2"}), eq(TimeSeriesBucket.DAY), eq(true));
+    }
+
+    @Test
+    public void test_T0070_NS01_getTimeSeries_invalidBucket() throws Exception {
+        mvc.perform(get("/stats/timeseries")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .param("uri", "/events/1")
+                        .param("start", start)
+                        .param("end", end)
+                        .param("bucket", "week"))
+                .andExpect(status().isBadRequest());
+
+        Mockito.verifyNoInteractions(statsService);
+    }
+
+    @Test
+    public void test_T0040_PS01_rebuildBitmaps() throws Exception {
+        Mockito.when(statsService.rebuildBitmaps(anyString(), anyString())).thenReturn(3);
+
+        mvc.perform(post("/stats/bitmaps/rebuild")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .param("start", start)
+                        .param("end", end))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").value(3));
+
+        Mockito.verify(statsService, Mockito.only()).rebuildBitmaps(anyString(), anyString());
+    }
+
     @Test
     public void test_T0020_PS01_getStats_defaultParams() throws Exception {
         Mockito.when(statsService.getStats(anyString(), anyString(), isNull(), anyBoolean()))
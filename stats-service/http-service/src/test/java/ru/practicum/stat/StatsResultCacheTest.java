@@ -0,0 +1,107 @@
+package ru.practicum.stat;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.model.stat.Stat;
+import ru.practicum.model.stat.dto.StatResponseDto;
+import ru.practicum.plan.StatsQueryPlan;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatsResultCacheTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2022, 9, 10, 12, 0, 0);
+
+    private final Clock clock = Clock.fixed(NOW.toInstant(ZoneOffset.UTC), ZoneId.of("UTC"));
+    private final StatsResultCache resultCache = new StatsResultCache(clock, true, 100, 600_000, 0);
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Supplier<StatsResult> loader = () -> {
+        loads.incrementAndGet();
+        return StatsResult.of(List.of(StatResponseDto.of("ewm-main-service", "/events/1", 1L)),
+                StatsQueryPlan.of(StatsQueryPlan.Strategy.ROLLUP, List.of(), loads.get()));
+    };
+
+    @Test
+    public void test_T0010_PS01_get_closedWindowLoadedOnce() {
+        StatsResultCache.StatsQuery query = StatsResultCache.StatsQuery.of(NOW.minusDays(2), NOW.minusDays(1),
+                new String[]{"/events/2", "/events/1"}, false);
+
+        resultCache.get(query, loader);
+        resultCache.get(StatsResultCache.StatsQuery.of(NOW.minusDays(2), NOW.minusDays(1),
+                new String[]{"/events/1", "/events/2"}, false), loader);
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void test_T0010_PS03_get_cachedResultKeepsLoadPlan() {
+        StatsResultCache.StatsQuery query = StatsResultCache.StatsQuery.of(NOW.minusDays(2), NOW.minusDays(1),
+                null, false);
+
+        StatsResult loaded = resultCache.get(query, loader);
+        StatsResult cached = resultCache.get(query, () -> StatsResult.of(List.of(),
+                StatsQueryPlan.of(StatsQueryPlan.Strategy.RAW_DISTINCT)));
+
+        assertEquals(loaded.getPlan(), cached.getPlan());
+        assertEquals(loaded.getStats(), cached.getStats());
+    }
+
+    @Test
+    public void test_T0010_PS02_get_liveWindowExpires() {
+        StatsResultCache.StatsQuery query = StatsResultCache.StatsQuery.of(NOW.minusDays(1), NOW, null, false);
+
+        resultCache.get(query, loader);
+        resultCache.get(query, loader);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void test_T0020_PS01_onHits_lateHitInvalidatesCoveringWindows() {
+        StatsResultCache.StatsQuery covering = StatsResultCache.StatsQuery.of(NOW.minusDays(2), NOW.minusDays(1),
+                null, false);
+        StatsResultCache.StatsQuery other = StatsResultCache.StatsQuery.of(NOW.minusDays(4), NOW.minusDays(3),
+                null, false);
+        resultCache.get(covering, loader);
+        resultCache.get(other, loader);
+
+        resultCache.onHits(List.of(Stat.builder().requested(NOW.minusDays(1).minusHours(1)).build()));
+        resultCache.get(covering, loader);
+        resultCache.get(other, loader);
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void test_T0020_PS02_onHits_recentHitKeepsClosedWindows() {
+        StatsResultCache.StatsQuery query = StatsResultCache.StatsQuery.of(NOW.minusDays(2), NOW.minusDays(1),
+                null, false);
+        resultCache.get(query, loader);
+
+        resultCache.onHits(List.of(Stat.builder().requested(NOW.minusMinutes(1)).build()));
+        resultCache.get(query, loader);
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void test_T0020_NS01_onHits_invalidationDuringLoadNotCached() {
+        StatsResultCache.StatsQuery query = StatsResultCache.StatsQuery.of(NOW.minusDays(2), NOW.minusDays(1),
+                null, false);
+
+        resultCache.get(query, () -> {
+            resultCache.onHits(List.of(Stat.builder().requested(NOW.minusDays(1).minusHours(1)).build()));
+            return loader.get();
+        });
+        resultCache.get(query, loader);
+
+        assertEquals(2, loads.get());
+    }
+}
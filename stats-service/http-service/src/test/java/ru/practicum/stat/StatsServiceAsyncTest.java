@@ -0,0 +1,180 @@
+package ru.practicum.stat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import ru.practicum.common.exception.IngestBufferOverflowException;
+import ru.practicum.ingest.OverflowPolicy;
+import ru.practicum.model.stat.dto.StatRequestDto;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.anyList;
+
+@ExtendWith(MockitoExtension.class)
+class StatsServiceAsyncTest {
+    @Mock
+    private StatsService statsService;
+    private StatsServiceAsyncImpl asyncService;
+    private StatRequestDto statRequestDto;
+
+    @BeforeEach
+    public void preTestInitialization() {
+        statRequestDto = StatRequestDto.of("ewm-main-service", "/events/1", "192.168.0.1",
+                LocalDateTime.of(2022, 9, 6, 11, 0, 23));
+    }
+
+    @AfterEach
+    public void shutdown() throws InterruptedException {
+        asyncService.stop();
+    }
+
+    @Test
+    public void test_T0010_PS01_toHit_flushedInOneBatch() throws InterruptedException {
+        asyncService = new StatsServiceAsyncImpl(statsService, 16, 50, 100, OverflowPolicy.REJECT, 0, 3, 10, 20);
+        asyncService.toHitBatch(List.of(statRequestDto, statRequestDto, statRequestDto));
+        asyncService.start();
+        asyncService.stop();
+
+        Mockito.verify(statsService, Mockito.times(1)).toHitBatch(anyList());
+        Mockito.verifyNoMoreInteractions(statsService);
+    }
+
+    @Test
+    public void test_T0010_NS01_toHit_rejectWhenFull() {
+        asyncService = new StatsServiceAsyncImpl(statsService, 1, 50, 100, OverflowPolicy.REJECT, 0, 3, 10, 20);
+        asyncService.toHit(statRequestDto);
+
+        assertThrows(IngestBufferOverflowException.class, () -> asyncService.toHit(statRequestDto));
+        assertEquals(1, asyncService.getDroppedHits());
+    }
+
+    @Test
+    public void test_T0010_NS04_toHitBatch_rejectedWhole() throws InterruptedException {
+        List<StatRequestDto> flushed = new ArrayList<>();
+        Mockito.doAnswer(invocation -> flushed.addAll(invocation.getArgument(0)))
+                .when(statsService).toHitBatch(anyList());
+        asyncService = new StatsServiceAsyncImpl(statsService, 3, 50, 100, OverflowPolicy.REJECT, 0, 3, 10, 20);
+        asyncService.toHit(statRequestDto);
+
+        assertThrows(IngestBufferOverflowException.class,
+                () -> asyncService.toHitBatch(List.of(statRequestDto, statRequestDto, statRequestDto)));
+        assertEquals(3, asyncService.getDroppedHits());
+
+        asyncService.start();
+        asyncService.stop();
+
+        assertEquals(List.of(statRequestDto), flushed);
+    }
+
+    @Test
+    public void test_T0020_PS01_flush_retriesFailedBatch() throws InterruptedException {
+        List<List<StatRequestDto>> attempts = new ArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            attempts.add(new ArrayList<>(invocation.getArgument(0)));
+
+            if (attempts.size() == 1) {
+                throw new IllegalStateException("БД недоступна");
+            }
+
+            return null;
+        }).when(statsService).toHitBatch(anyList());
+        asyncService = new StatsServiceAsyncImpl(statsService, 16, 50, 100, OverflowPolicy.REJECT, 0, 3, 10, 20);
+        asyncService.toHit(statRequestDto);
+        asyncService.start();
+        asyncService.stop();
+
+        assertEquals(List.of(List.of(statRequestDto), List.of(statRequestDto)), attempts);
+        assertEquals(0, asyncService.getDroppedHits());
+    }
+
+    @Test
+    public void test_T0020_NS01_flush_batchLostAfterAttempts() throws InterruptedException {
+        Mockito.doThrow(new IllegalStateException("БД недоступна")).when(statsService).toHitBatch(anyList());
+        asyncService = new StatsServiceAsyncImpl(statsService, 1, 50, 100, OverflowPolicy.REJECT, 0, 3, 10, 20);
+        asyncService.toHit(statRequestDto);
+        asyncService.start();
+        asyncService.stop();
+
+        Mockito.verify(statsService, Mockito.times(3)).toHitBatch(anyList());
+        assertEquals(1, asyncService.getFailedHits());
+        assertEquals(1, asyncService.getDroppedHits());
+        asyncService.toHit(statRequestDto);
+    }
+
+    @Test
+    public void test_T0020_PS02_flush_rejectedHitSplitFromBatch() throws InterruptedException {
+        StatRequestDto rejected = StatRequestDto.of("ewm-main-service", "/events/2", "192.168.0.1",
+                LocalDateTime.of(2022, 9, 6, 11, 0, 23));
+        List<StatRequestDto> saved = new ArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            List<StatRequestDto> hits = invocation.getArgument(0);
+
+            if (hits.contains(rejected)) {
+                throw new DataIntegrityViolationException("value too long");
+            }
+
+            return saved.addAll(hits);
+        }).when(statsService).toHitBatch(anyList());
+        asyncService = new StatsServiceAsyncImpl(statsService, 16, 50, 100, OverflowPolicy.REJECT, 0, 3, 10, 20);
+        asyncService.toHitBatch(List.of(statRequestDto, rejected, statRequestDto, statRequestDto));
+        asyncService.start();
+        asyncService.stop();
+
+        assertEquals(List.of(statRequestDto, statRequestDto, statRequestDto), saved);
+        assertEquals(1, asyncService.getFailedHits());
+    }
+
+    @Test
+    public void test_T0030_PS01_writerInterrupted_drainsBuffer() throws InterruptedException {
+        List<StatRequestDto> flushed = new CopyOnWriteArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            if (flushed.isEmpty()) {
+                Thread.currentThread().interrupt();
+            }
+
+            return flushed.addAll(invocation.getArgument(0));
+        }).when(statsService).toHitBatch(anyList());
+        asyncService = new StatsServiceAsyncImpl(statsService, 16, 50, 1, OverflowPolicy.REJECT, 0, 3, 10, 20);
+        asyncService.toHitBatch(List.of(statRequestDto, statRequestDto, statRequestDto));
+        asyncService.start();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            while (flushed.size() < 3) {
+                Thread.sleep(10);
+            }
+        });
+        asyncService.stop();
+
+        Mockito.verify(statsService, Mockito.times(3)).toHitBatch(anyList());
+    }
+
+    @Test
+    public void test_T0010_NS02_toHit_dropWhenFull() {
+        asyncService = new StatsServiceAsyncImpl(statsService, 1, 50, 100, OverflowPolicy.DROP, 0, 3, 10, 20);
+        asyncService.toHit(statRequestDto);
+        asyncService.toHit(statRequestDto);
+
+        assertEquals(1, asyncService.getDroppedHits());
+    }
+
+    @Test
+    public void test_T0010_NS03_toHit_blockTimesOut() {
+        asyncService = new StatsServiceAsyncImpl(statsService, 1, 50, 100, OverflowPolicy.BLOCK, 10, 3, 10, 20);
+        asyncService.toHit(statRequestDto);
+
+        assertThrows(IngestBufferOverflowException.class, () -> asyncService.toHit(statRequestDto));
+    }
+}
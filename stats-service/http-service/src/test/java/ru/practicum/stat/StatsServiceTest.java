@@ -3,25 +3,418 @@ package ru.practicum.stat;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
-import org.mockito.Mock;
+import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
-import ru.practicum.app.AppRepository;
+import org.roaringbitmap.RoaringBitmap;
+import ru.practicum.app.AppRegistry;
+import ru.practicum.bitmap.StatBitmapRepository;
+import ru.practicum.common.exception.InvalidDurationException;
+import ru.practicum.compaction.StatCompactionRepository;
+import ru.practicum.common.exception.InvalidIpAddressException;
+import ru.practicum.dictionary.IpDictionary;
+import ru.practicum.dictionary.UriDictionary;
+import ru.practicum.ingest.HitDeduplicator;
+import ru.practicum.model.app.App;
+import ru.practicum.model.stat.Stat;
+import ru.practicum.model.stat.dto.StatRequestDto;
+import ru.practicum.model.stat.dto.StatResponseDto;
+import ru.practicum.model.stat.dto.StatTimeSeriesDto;
+import ru.practicum.plan.StatsQueryPlan;
+import ru.practicum.plan.StatsQueryPlanner;
+import ru.practicum.rollup.RollupGranularity;
+import ru.practicum.rollup.RollupRange;
+import ru.practicum.rollup.StatRollupRepository;
+import ru.practicum.sketch.HyperLogLog;
+import ru.practicum.sketch.StatSketchRepository;
+import ru.practicum.timeseries.StatTimeSeriesRepository;
+import ru.practicum.timeseries.TimeSeriesBucket;
+import ru.practicum.top.TopUriTracker;
+import ru.practicum.views.UniqueViewsCounter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.*;
 
 @ExtendWith(MockitoExtension.class)
 class StatsServiceTest {
     @InjectMocks
     private StatsServiceImpl statsService;
     @Mock
-    private AppRepository appRepository;
+    private AppRegistry appRegistry;
     @Mock
     private StatRepository statRepository;
+    @Mock
+    private StatRollupRepository rollupRepository;
+    @Mock
+    private StatSketchRepository sketchRepository;
+    @Mock
+    private StatBitmapRepository bitmapRepository;
+    @Mock
+    private StatStreamRepository streamRepository;
+    @Mock
+    private UriDictionary uriDictionary;
+    @Mock
+    private IpDictionary ipDictionary;
+    @Mock
+    private StatTimeSeriesRepository timeSeriesRepository;
+    @Mock
+    private StatCompactionRepository compactionRepository;
+    @Mock
+    private TopUriTracker topTracker;
+    @Mock
+    private UniqueViewsCounter uniqueViewsCounter;
+    @Spy
+    private StatsResultCache resultCache = new StatsResultCache(false, 1, 0, 0);
+    @Spy
+    private HitDeduplicator hitDeduplicator = new HitDeduplicator(null, false, 1, 1, 1, 1);
+    @Spy
+    private StatsQueryPlanner queryPlanner = new StatsQueryPlanner(100, 20, 200, 500);
+    @Captor
+    private ArgumentCaptor<List<Stat>> statsCaptor;
 
     @BeforeEach
     public void preTestInitialization() {
+        Mockito.lenient().when(compactionRepository.getWatermark()).thenReturn(LocalDateTime.of(1970, 1, 1, 0, 0));
     }
 
     @Test
     public void test_T0010_PS01_toHit() {
     }
+
+    @Test
+    public void test_T0020_PS01_toHitBatch_resolvesAppsFromRegistry() {
+        LocalDateTime timestamp = LocalDateTime.of(2022, 9, 6, 11, 0, 23);
+        App knownApp = App.builder().id(1).app("ewm-main-service").build();
+        App newApp = App.builder().id(2).app("ewm-admin-service").build();
+        List<StatRequestDto> requestDtos = List.of(
+                StatRequestDto.of("ewm-main-service", "/events/1", "192.168.0.1", timestamp),
+                StatRequestDto.of("ewm-main-service", "/events/2", "192.168.0.2", timestamp),
+                StatRequestDto.of("ewm-admin-service", "/events/1", "192.168.0.3", timestamp));
+
+        Mockito.when(appRegistry.resolve(Set.of("ewm-main-service", "ewm-admin-service")))
+                .thenReturn(Map.of("ewm-main-service", knownApp, "ewm-admin-service", newApp));
+        Mockito.when(uriDictionary.resolve(anyCollection())).thenAnswer(invocation -> enumerate(invocation.getArgument(0)));
+        Mockito.when(ipDictionary.resolve(anyCollection())).thenAnswer(invocation -> enumerate(invocation.getArgument(0)));
+
+        statsService.toHitBatch(requestDtos);
+
+        Mockito.verify(appRegistry, Mockito.times(1)).resolve(anyCollection());
+        Mockito.verify(statRepository, Mockito.times(1)).insertAll(statsCaptor.capture());
+        Mockito.verify(statRepository, Mockito.never()).save(any());
+        Mockito.verify(rollupRepository, Mockito.times(1)).increment(anyList());
+        Mockito.verify(sketchRepository, Mockito.times(1)).merge(anyList());
+        Mockito.verify(bitmapRepository, Mockito.times(1)).merge(anyList());
+        Mockito.verify(topTracker, Mockito.times(1)).offer(anyList());
+        Mockito.verify(uniqueViewsCounter, Mockito.times(1)).offer(anyList());
+        Mockito.verify(resultCache, Mockito.times(1)).onHits(anyList());
+
+        List<Stat> stats = statsCaptor.getValue();
+        assertEquals(3, stats.size());
+        assertEquals(knownApp, stats.get(0).getApp());
+        assertEquals(knownApp, stats.get(1).getApp());
+        assertEquals(newApp, stats.get(2).getApp());
+        assertEquals(stats.get(0).getUri().getId(), stats.get(2).getUri().getId());
+        Mockito.verify(uriDictionary, Mockito.times(1)).resolve(anyCollection());
+        Mockito.verify(ipDictionary, Mockito.times(1)).resolve(anyCollection());
+    }
+
+    @Test
+    public void test_T0020_NS01_toHitBatch_invalidIp() {
+        LocalDateTime timestamp = LocalDateTime.of(2022, 9, 6, 11, 0, 23);
+        List<StatRequestDto> requestDtos = List.of(
+                StatRequestDto.of("ewm-main-service", "/events/1", "192.168.0.1", timestamp),
+                StatRequestDto.of("ewm-main-service", "/events/2", "192.168.0.256", timestamp));
+
+        assertThrows(InvalidIpAddressException.class, () -> statsService.toHitBatch(requestDtos));
+
+        Mockito.verifyNoInteractions(appRegistry, uriDictionary, ipDictionary, statRepository);
+    }
+
+    @Test
+    public void test_T0020_PS02_toHitBatch_duplicatesOnlyWritesNothing() {
+        LocalDateTime timestamp = LocalDateTime.of(2022, 9, 6, 11, 0, 23);
+        List<StatRequestDto> requestDtos = List.of(
+                StatRequestDto.of("ewm-main-service", "/events/1", "192.168.0.1", timestamp, "hit-1"));
+
+        Mockito.doReturn(List.of()).when(hitDeduplicator).filterNew(requestDtos);
+
+        statsService.toHitBatch(requestDtos);
+
+        Mockito.verifyNoInteractions(appRegistry, uriDictionary, ipDictionary, statRepository, rollupRepository,
+                uniqueViewsCounter);
+    }
+
+    @Test
+    public void test_T0030_PS01_getStats_uniqueFromBitmaps() {
+        Mockito.when(bitmapRepository.isEnabled()).thenReturn(true);
+        Mockito.doAnswer(invocation -> {
+            BiConsumer<List<String>, RoaringBitmap> consumer = invocation.getArgument(3);
+            consumer.accept(List.of("ewm-main-service", "/events/1"), RoaringBitmap.bitmapOf(1, 2, 3));
+            consumer.accept(List.of("ewm-main-service", "/events/1"), RoaringBitmap.bitmapOf(2, 3, 4));
+            return null;
+        }).when(bitmapRepository).forEachBitmap(any(), any(), isNull(), any());
+        Mockito.doAnswer(invocation -> {
+            BiConsumer<List<String>, Integer> consumer = invocation.getArgument(3);
+            consumer.accept(List.of("ewm-main-service", "/events/1"), 5);
+            consumer.accept(List.of("ewm-main-service", "/events/2"), 1);
+            return null;
+        }).when(bitmapRepository).forEachRawIpId(eq(LocalDateTime.of(2022, 9, 6, 11, 0, 23)), any(), isNull(), any());
+
+        List<StatResponseDto> result = statsService.getStats("2022-09-06 11:00:23", "2022-09-08 10:00:00", null, true);
+
+        assertEquals(List.of(StatResponseDto.of("ewm-main-service", "/events/1", 5L),
+                StatResponseDto.of("ewm-main-service", "/events/2", 1L)), result);
+        Mockito.verify(bitmapRepository).forEachBitmap(eq(LocalDateTime.of(2022, 9, 7, 0, 0)),
+                eq(LocalDateTime.of(2022, 9, 8, 0, 0)), isNull(), any());
+        Mockito.verifyNoInteractions(statRepository);
+    }
+
+    @Test
+    public void test_T0030_PS02_getStats_uniqueCompactedEdgeFromDayBitmap() {
+        Mockito.when(compactionRepository.getWatermark()).thenReturn(LocalDateTime.of(2022, 9, 8, 0, 0));
+        Mockito.when(bitmapRepository.isEnabled()).thenReturn(true);
+        Mockito.doAnswer(invocation -> {
+            BiConsumer<List<String>, RoaringBitmap> consumer = invocation.getArgument(3);
+            consumer.accept(List.of("ewm-main-service", "/events/1"), RoaringBitmap.bitmapOf(1, 2));
+            return null;
+        }).when(bitmapRepository).forEachBitmap(any(), any(), isNull(), any());
+
+        List<StatResponseDto> result = statsService.getStats("2022-09-06 11:00:23", "2022-09-08 10:00:00", null, true);
+
+        assertEquals(List.of(StatResponseDto.of("ewm-main-service", "/events/1", 2L)), result);
+        Mockito.verify(bitmapRepository).forEachBitmap(eq(LocalDateTime.of(2022, 9, 6, 0, 0)),
+                eq(LocalDateTime.of(2022, 9, 7, 0, 0)), isNull(), any());
+        Mockito.verify(bitmapRepository).forEachRawIpId(eq(LocalDateTime.of(2022, 9, 8, 0, 0)),
+                eq(LocalDateTime.of(2022, 9, 8, 10, 0, 1)), isNull(), any());
+        Mockito.verify(bitmapRepository, Mockito.never()).forEachRawIpId(eq(LocalDateTime.of(2022, 9, 6, 11, 0, 23)),
+                any(), any(), any());
+    }
+
+    @Test
+    public void test_T0030_PS03_getStats_compactedEdgeMinutesFromRollups() {
+        Mockito.when(compactionRepository.getWatermark()).thenReturn(LocalDateTime.of(2022, 9, 7, 0, 0));
+
+        statsService.getStats("2022-09-06 11:00:23", "2022-09-06 11:59:59", null, false);
+
+        Mockito.verify(rollupRepository).findHits(RollupGranularity.MINUTE, LocalDateTime.of(2022, 9, 6, 11, 0),
+                LocalDateTime.of(2022, 9, 6, 12, 0), null);
+        Mockito.verifyNoInteractions(statRepository);
+    }
+
+    @Test
+    public void test_T0030_PS04_getStats_shortRangeSingleRawQuery() {
+        LocalDateTime start = LocalDateTime.of(2022, 9, 6, 11, 0, 23);
+        LocalDateTime end = LocalDateTime.of(2022, 9, 6, 11, 3, 10);
+        Mockito.when(statRepository.countHitsByRequestedRange(start, end.plusSeconds(1))).thenReturn(List.of());
+
+        statsService.getStats("2022-09-06 11:00:23", "2022-09-06 11:03:10", null, false);
+
+        Mockito.verify(statRepository, Mockito.only()).countHitsByRequestedRange(start, end.plusSeconds(1));
+        Mockito.verifyNoInteractions(rollupRepository);
+    }
+
+    @Test
+    public void test_T0030_PS06_getStats_uniqueWithUrisCountsDistinctIps() {
+        String[] uris = {"/events/1", "/events/2"};
+        Mockito.when(statRepository.findAllUniqueByRequestedBetweenAndUriIn(any(), any(), eq(uris)))
+                .thenReturn(List.of());
+
+        statsService.getStats("2022-09-06 11:00:23", "2022-09-08 10:00:00", uris, true);
+
+        Mockito.verify(statRepository, Mockito.only()).findAllUniqueByRequestedBetweenAndUriIn(
+                LocalDateTime.of(2022, 9, 6, 11, 0, 23), LocalDateTime.of(2022, 9, 8, 10, 0), uris);
+        Mockito.verifyNoInteractions(rollupRepository);
+    }
+
+    @Test
+    public void test_T0030_PS05_explainStats_returnsPlanOfResult() {
+        Mockito.when(rollupRepository.findHits(eq(RollupGranularity.HOUR), any(), any(), isNull())).thenReturn(List.of(
+                StatResponseDto.of("ewm-main-service", "/events/1", 3L)));
+
+        StatsResult result = statsService.explainStats("2022-09-06 11:00:00", "2022-09-06 12:59:59", null,
+                false, false);
+
+        assertEquals(StatsQueryPlan.Strategy.ROLLUP, result.getPlan().getStrategy());
+        assertEquals("ROLLUP cost=900: HOUR[2022-09-06T11:00, 2022-09-06T13:00)", result.getPlan().describe());
+        assertEquals(List.of(StatResponseDto.of("ewm-main-service", "/events/1", 3L)), result.getStats());
+        Mockito.verify(rollupRepository, Mockito.only()).findHits(RollupGranularity.HOUR,
+                LocalDateTime.of(2022, 9, 6, 11, 0), LocalDateTime.of(2022, 9, 6, 13, 0), null);
+        Mockito.verifyNoInteractions(statRepository);
+    }
+
+    @Test
+    public void test_T0030_PS07_explainStats_uniqueWithoutBitmaps() {
+        Mockito.when(statRepository.findAllUniqueByRequestedBetween(any(), any())).thenReturn(List.of());
+
+        StatsResult result = statsService.explainStats("2022-09-06 11:00:00", "2022-09-06 12:59:59", null,
+                true, false);
+
+        assertEquals(StatsQueryPlan.of(StatsQueryPlan.Strategy.RAW_DISTINCT), result.getPlan());
+        assertEquals(List.of(), result.getStats());
+    }
+
+    @Test
+    public void test_T0040_PS01_getUniqueEventViews_bulkSingleQuery() {
+        Mockito.when(bitmapRepository.isEnabled()).thenReturn(true);
+        Mockito.when(bitmapRepository.findUriBitmaps(anyCollection()))
+                .thenReturn(Map.of("/events/1", RoaringBitmap.bitmapOf(1, 2, 3)));
+
+        Map<Long, Long> views = statsService.getUniqueEventViews(List.of(1L, 2L));
+
+        assertEquals(Map.of(1L, 3L, 2L, 0L), views);
+        Mockito.verify(bitmapRepository, Mockito.times(1)).findUriBitmaps(Set.of("/events/1", "/events/2"));
+        Mockito.verifyNoInteractions(statRepository);
+    }
+
+    @Test
+    public void test_T0040_PS02_getUniqueEventViews_fromCounter() {
+        Mockito.when(uniqueViewsCounter.isEnabled()).thenReturn(true);
+        Mockito.when(uniqueViewsCounter.getViews(List.of("/events/1"))).thenReturn(Map.of("/events/1", 42L));
+
+        assertEquals(42L, statsService.getUniqueEventViews(1L));
+
+        Mockito.verifyNoInteractions(statRepository, bitmapRepository);
+    }
+
+    @Test
+    public void test_T0050_PS01_streamStats_singleQueryOverRollups() {
+        List<StatResponseDto> result = new ArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            Consumer<StatResponseDto> consumer = invocation.getArgument(2);
+            consumer.accept(StatResponseDto.of("ewm-main-service", "/events/1", 7L));
+            return null;
+        }).when(streamRepository).streamHits(anyList(), isNull(), any());
+
+        statsService.streamStats("2022-09-06 11:00:23", "2022-09-06 13:00:00", null, false, result::add);
+
+        assertEquals(List.of(StatResponseDto.of("ewm-main-service", "/events/1", 7L)), result);
+        Mockito.verify(streamRepository).streamHits(eq(RollupRange.split(LocalDateTime.of(2022, 9, 6, 11, 0, 23),
+                LocalDateTime.of(2022, 9, 6, 13, 0, 1))), isNull(), any());
+        Mockito.verifyNoInteractions(statRepository, rollupRepository);
+    }
+
+    @Test
+    public void test_T0050_NS01_streamStats_invalidDuration() {
+        assertThrows(InvalidDurationException.class, () -> statsService.streamStats("2022-09-06 13:00:00",
+                "2022-09-06 11:00:00", null, true, dto -> {
+                }));
+
+        Mockito.verifyNoInteractions(streamRepository);
+    }
+
+    @Test
+    public void test_T0060_PS01_getTopStats_exactHitsOfCandidates() {
+        LocalDateTime start = LocalDateTime.of(2022, 9, 6, 11, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2022, 9, 6, 12, 59, 59);
+        Mockito.when(topTracker.isEnabled()).thenReturn(true);
+        Mockito.when(topTracker.findCandidates(start, end, "ewm-main-service", 1))
+                .thenReturn(List.of("/events/1", "/events/2"));
+        Mockito.when(rollupRepository.findHits(eq(RollupGranularity.HOUR), any(), any(), any())).thenReturn(List.of(
+                StatResponseDto.of("ewm-admin-service", "/events/2", 5L),
+                StatResponseDto.of("ewm-main-service", "/events/2", 4L),
+                StatResponseDto.of("ewm-main-service", "/events/1", 3L)));
+
+        List<StatResponseDto> result = statsService.getTopStats("2022-09-06 11:00:00", "2022-09-06 12:59:59",
+                "ewm-main-service", 1);
+
+        assertEquals(List.of(StatResponseDto.of("ewm-main-service", "/events/2", 4L)), result);
+        Mockito.verify(rollupRepository).findHits(RollupGranularity.HOUR, start, end.plusSeconds(1),
+                new String[]{"/events/1", "/events/2"});
+        Mockito.verifyNoInteractions(statRepository);
+    }
+
+    @Test
+    public void test_T0060_PS02_getTopStats_noCandidates() {
+        Mockito.when(topTracker.isEnabled()).thenReturn(true);
+        Mockito.when(topTracker.findCandidates(any(), any(), isNull(), anyInt())).thenReturn(List.of());
+
+        assertEquals(List.of(), statsService.getTopStats("2022-09-06 11:00:00", "2022-09-06 12:59:59", null, 20));
+
+        Mockito.verifyNoInteractions(statRepository, rollupRepository);
+    }
+
+    @Test
+    public void test_T0070_PS01_getTimeSeries_singleQueryOverRollups() {
+        LocalDateTime start = LocalDateTime.of(2022, 9, 6, 11, 0, 23);
+        LocalDateTime end = LocalDateTime.of(2022, 9, 6, 13, 0, 0);
+        String[] uris = {"/events/1"};
+        List<StatTimeSeriesDto> series = List.of(
+                StatTimeSeriesDto.of("ewm-main-service", "/events/1", LocalDateTime.of(2022, 9, 6, 11, 0), 3L),
+                StatTimeSeriesDto.of("ewm-main-service", "/events/1", LocalDateTime.of(2022, 9, 6, 12, 0), 5L));
+        Mockito.when(timeSeriesRepository.findHits(anyList(), eq(TimeSeriesBucket.HOUR), eq(uris))).thenReturn(series);
+
+        assertEquals(series, statsService.getTimeSeries("2022-09-06 11:00:23", "2022-09-06 13:00:00", uris,
+                TimeSeriesBucket.HOUR, false));
+
+        Mockito.verify(timeSeriesRepository, Mockito.only()).findHits(RollupRange.split(start, end.plusSeconds(1)),
+                TimeSeriesBucket.HOUR, uris);
+        Mockito.verifyNoInteractions(statRepository, rollupRepository);
+    }
+
+    @Test
+    public void test_T0070_PS02_getTimeSeries_unique() {
+        String[] uris = {"/events/1", "/events/2"};
+
+        statsService.getTimeSeries("2022-09-06 11:00:23", "2022-09-07 13:00:00", uris, TimeSeriesBucket.DAY, true);
+
+        Mockito.verify(timeSeriesRepository, Mockito.only()).findUniqueHits(LocalDateTime.of(2022, 9, 6, 11, 0, 23),
+                LocalDateTime.of(2022, 9, 7, 13, 0, 0), TimeSeriesBucket.DAY, uris);
+    }
+
+    @Test
+    public void test_T0070_NS01_getTimeSeries_tooManyBuckets() {
+        assertThrows(InvalidDurationException.class, () -> statsService.getTimeSeries("2020-01-01 00:00:00",
+                "2022-09-06 00:00:00", new String[]{"/events/1"}, TimeSeriesBucket.MINUTE, false));
+
+        Mockito.verifyNoInteractions(timeSeriesRepository);
+    }
+
+    @Test
+    public void test_T0070_NS02_getTimeSeries_uniqueBeforeWatermark() {
+        Mockito.when(compactionRepository.getWatermark()).thenReturn(LocalDateTime.of(2022, 9, 7, 0, 0));
+
+        assertThrows(InvalidDurationException.class, () -> statsService.getTimeSeries("2022-09-06 00:00:00",
+                "2022-09-08 00:00:00", new String[]{"/events/1"}, TimeSeriesBucket.DAY, true));
+
+        Mockito.verifyNoInteractions(timeSeriesRepository);
+    }
+
+    @Test
+    public void test_T0080_PS01_getApproximateStats_compactedEdgeFromHourSketch() {
+        Mockito.when(compactionRepository.getWatermark()).thenReturn(LocalDateTime.of(2022, 9, 7, 0, 0));
+        Mockito.doAnswer(invocation -> {
+            HyperLogLog sketch = new HyperLogLog(12);
+            sketch.add("192.168.0.1");
+            BiConsumer<List<String>, HyperLogLog> consumer = invocation.getArgument(3);
+            consumer.accept(List.of("ewm-main-service", "/events/1"), sketch);
+            return null;
+        }).when(sketchRepository).forEachSketch(any(), any(), isNull(), any());
+
+        List<StatResponseDto> result = statsService.getApproximateStats("2022-09-06 11:00:23",
+                "2022-09-07 00:30:00", null);
+
+        assertEquals(List.of(StatResponseDto.of("ewm-main-service", "/events/1", 1L)), result);
+        Mockito.verify(sketchRepository).forEachSketch(eq(LocalDateTime.of(2022, 9, 6, 11, 0)),
+                eq(LocalDateTime.of(2022, 9, 6, 12, 0)), isNull(), any());
+        Mockito.verify(sketchRepository).forEachRawIp(eq(LocalDateTime.of(2022, 9, 7, 0, 0)),
+                eq(LocalDateTime.of(2022, 9, 7, 0, 30, 1)), isNull(), any());
+        Mockito.verify(sketchRepository, Mockito.never()).forEachRawIp(eq(LocalDateTime.of(2022, 9, 6, 11, 0, 23)),
+                any(), any(), any());
+    }
+
+    private static <K> Map<K, Integer> enumerate(Collection<K> values) {
+        Map<K, Integer> ids = new HashMap<>();
+        values.forEach(value -> ids.put(value, ids.size() + 1));
+        return ids;
+    }
 }
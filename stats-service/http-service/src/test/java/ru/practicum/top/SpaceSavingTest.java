@@ -0,0 +1,90 @@
+package ru.practicum.top;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpaceSavingTest {
+
+    @Test
+    public void test_T0010_PS01_offer_exactBelowCapacity() {
+        SpaceSaving summary = new SpaceSaving(10);
+
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j <= i; j++) {
+                summary.offer(i);
+            }
+        }
+
+        List<SpaceSaving.Counter> top = summary.top(3);
+        assertEquals(List.of(4L, 3L, 2L), items(top));
+        assertEquals(5, top.get(0).getCount());
+        assertEquals(0, top.get(0).getError());
+        assertEquals(0, summary.minCount());
+    }
+
+    @Test
+    public void test_T0010_PS02_offer_heavyHittersSurviveEviction() {
+        SpaceSaving summary = new SpaceSaving(50);
+        Random random = new Random(7);
+
+        for (int i = 0; i < 100_000; i++) {
+            summary.offer(i % 10 == 0 ? random.nextInt(3) : 1000 + random.nextInt(10_000));
+        }
+
+        assertEquals(50, summary.size());
+        assertTrue(items(summary.top(3)).containsAll(List.of(0L, 1L, 2L)));
+
+        for (SpaceSaving.Counter counter : summary.top(3)) {
+            assertTrue(counter.getCount() - counter.getError() <= 100_000 / 30 + 500);
+            assertTrue(counter.getCount() >= 100_000 / 30 - 500);
+        }
+    }
+
+    @Test
+    public void test_T0020_PS01_merge() {
+        SpaceSaving first = new SpaceSaving(2);
+        SpaceSaving second = new SpaceSaving(2);
+        first.offer(1, 10);
+        first.offer(2, 3);
+        second.offer(1, 5);
+        second.offer(3, 4);
+
+        first.merge(second);
+
+        List<SpaceSaving.Counter> top = first.top(2);
+        assertEquals(List.of(1L, 3L), items(top));
+        assertEquals(15, top.get(0).getCount());
+        assertEquals(0, top.get(0).getError());
+        assertEquals(7, top.get(1).getCount());
+        assertEquals(3, top.get(1).getError());
+    }
+
+    @Test
+    public void test_T0030_PS01_toBytes_roundTrip() {
+        SpaceSaving summary = new SpaceSaving(3);
+        summary.offer(1, 2);
+        summary.offer(2, 5);
+        summary.offer(3, 1);
+        summary.offer(4, 1);
+
+        SpaceSaving restored = SpaceSaving.fromBytes(summary.toBytes());
+
+        assertEquals(3, restored.getCapacity());
+        assertEquals(items(summary.top(3)), items(restored.top(3)));
+        assertEquals(summary.minCount(), restored.minCount());
+    }
+
+    @Test
+    public void test_T0040_NS01_capacity_notPositive() {
+        assertThrows(IllegalArgumentException.class, () -> new SpaceSaving(0));
+    }
+
+    private static List<Long> items(List<SpaceSaving.Counter> counters) {
+        return counters.stream().map(SpaceSaving.Counter::getItem).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,94 @@
+package ru.practicum.views;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.PostgresTestDatabase;
+import ru.practicum.model.stat.Stat;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatUniqueViewsRepositoryTest {
+    private static final LocalDateTime DAY = LocalDateTime.of(2022, 9, 6, 0, 0);
+
+    private static DataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+    private static TransactionTemplate transactionTemplate;
+    private static StatUniqueViewsRepository uniqueViewsRepository;
+
+    @BeforeAll
+    public static void startDatabase() {
+        dataSource = PostgresTestDatabase.dataSource();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        uniqueViewsRepository = new StatUniqueViewsRepository(new NamedParameterJdbcTemplate(dataSource));
+    }
+
+    @BeforeEach
+    public void preTestInitialization() {
+        PostgresTestDatabase.resetSchema(dataSource);
+    }
+
+    @Test
+    public void test_T0010_PS01_insertPairs_deltasVisibleToReaders() {
+        uniqueViewsRepository.insertPairs(List.of(pair(stat("/events/1", "10.0.0.1")), pair(stat("/events/1", "10.0.0.2"))));
+        uniqueViewsRepository.insertPairs(List.of(pair(stat("/events/1", "10.0.0.2")), pair(stat("/events/2", "10.0.0.2"))));
+
+        assertEquals(0, count("stat_uri_unique"));
+        assertEquals(Map.of("/events/1", 2L, "/events/2", 1L),
+                uniqueViewsRepository.findViews(List.of("/events/1", "/events/2", "/events/3")));
+    }
+
+    @Test
+    public void test_T0020_PS01_fold_addsDeltasToCounters() {
+        uniqueViewsRepository.insertPairs(List.of(pair(stat("/events/1", "10.0.0.1")), pair(stat("/events/1", "10.0.0.2"))));
+        uniqueViewsRepository.insertPairs(List.of(pair(stat("/events/1", "10.0.0.3"))));
+
+        assertEquals(2, fold(10));
+        assertEquals(0, count("stat_uri_unique_delta"));
+        assertEquals(3L, jdbcTemplate.queryForObject("select hits from stat_uri_unique", Long.class));
+
+        uniqueViewsRepository.insertPairs(List.of(pair(stat("/events/1", "10.0.0.4"))));
+
+        assertEquals(1, fold(10));
+        assertEquals(Map.of("/events/1", 4L), uniqueViewsRepository.findViews(List.of("/events/1")));
+    }
+
+    @Test
+    public void test_T0030_PS01_rebuild_recountsUrisAndDropsTheirDeltas() {
+        uniqueViewsRepository.insertPairs(List.of(pair(stat("/events/1", "10.0.0.1")), pair(stat("/events/2", "10.0.0.1"))));
+        PostgresTestDatabase.insert(jdbcTemplate, stat("/events/1", "10.0.0.1"));
+        PostgresTestDatabase.insert(jdbcTemplate, stat("/events/1", "10.0.0.2"));
+
+        transactionTemplate.executeWithoutResult(status -> uniqueViewsRepository.rebuild(DAY, DAY.plusDays(1)));
+
+        assertEquals(1, count("stat_uri_unique_delta"));
+        assertEquals(Map.of("/events/1", 2L, "/events/2", 1L),
+                uniqueViewsRepository.findViews(List.of("/events/1", "/events/2")));
+    }
+
+    private int fold(int limit) {
+        return transactionTemplate.execute(status -> uniqueViewsRepository.fold(limit));
+    }
+
+    private Stat stat(String uri, String ip) {
+        return PostgresTestDatabase.stat(jdbcTemplate, "ewm-main-service", uri, ip, DAY.plusHours(10));
+    }
+
+    private long pair(Stat stat) {
+        return StatUniqueViewsRepository.pair(stat.getUri().getId(), stat.getIp().getId());
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("select count(*) from " + table, Long.class);
+    }
+}
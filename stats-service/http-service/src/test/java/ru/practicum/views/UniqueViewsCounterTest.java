@@ -0,0 +1,78 @@
+package ru.practicum.views;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.model.ip.Ip;
+import ru.practicum.model.stat.Stat;
+import ru.practicum.model.uri.Uri;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(MockitoExtension.class)
+class UniqueViewsCounterTest {
+    @Mock
+    private StatUniqueViewsRepository uniqueViewsRepository;
+
+    @Test
+    public void test_T0010_PS01_offer_sortedDistinctPairs() {
+        UniqueViewsCounter counter = new UniqueViewsCounter(uniqueViewsRepository, true, 100);
+
+        counter.offer(List.of(stat(2, 7), stat(1, 9), stat(2, 7), stat(1, 3)));
+
+        Mockito.verify(uniqueViewsRepository).insertPairs(List.of(StatUniqueViewsRepository.pair(1, 3),
+                StatUniqueViewsRepository.pair(1, 9), StatUniqueViewsRepository.pair(2, 7)));
+    }
+
+    @Test
+    public void test_T0010_PS02_offer_repeatedVisitorSkipsDatabase() {
+        UniqueViewsCounter counter = new UniqueViewsCounter(uniqueViewsRepository, true, 100);
+
+        counter.offer(List.of(stat(1, 3)));
+        counter.offer(List.of(stat(1, 3)));
+        counter.offer(List.of(stat(1, 3), stat(1, 4)));
+
+        Mockito.verify(uniqueViewsRepository).insertPairs(List.of(StatUniqueViewsRepository.pair(1, 3)));
+        Mockito.verify(uniqueViewsRepository).insertPairs(List.of(StatUniqueViewsRepository.pair(1, 4)));
+        Mockito.verifyNoMoreInteractions(uniqueViewsRepository);
+    }
+
+    @Test
+    public void test_T0010_PS03_offer_disabled() {
+        UniqueViewsCounter counter = new UniqueViewsCounter(uniqueViewsRepository, false, 100);
+
+        counter.offer(List.of(stat(1, 3)));
+
+        Mockito.verifyNoInteractions(uniqueViewsRepository);
+    }
+
+    @Test
+    public void test_T0020_PS01_getViews_missingUriIsZero() {
+        UniqueViewsCounter counter = new UniqueViewsCounter(uniqueViewsRepository, true, 100);
+        Mockito.when(uniqueViewsRepository.findViews(List.of("/events/1", "/events/2")))
+                .thenReturn(Map.of("/events/1", 5L));
+
+        assertEquals(Map.of("/events/1", 5L, "/events/2", 0L), counter.getViews(List.of("/events/1", "/events/2")));
+    }
+
+    @Test
+    public void test_T0030_PS01_pair_ordersByUriThenIp() {
+        long pair = StatUniqueViewsRepository.pair(5, Integer.MAX_VALUE);
+
+        assertEquals(5, StatUniqueViewsRepository.uriId(pair));
+        assertEquals(Integer.MAX_VALUE, StatUniqueViewsRepository.ipId(pair));
+        assertEquals(-1, Long.compare(pair, StatUniqueViewsRepository.pair(6, 1)));
+    }
+
+    private Stat stat(int uriId, int ipId) {
+        return Stat.builder()
+                .uri(Uri.builder().id(uriId).uri("/events/" + uriId).build())
+                .ip(Ip.builder().id(ipId).build())
+                .build();
+    }
+}
@@ -0,0 +1,87 @@
+package ru.practicum.model;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.model.stat.dto.HitFrameCodec;
+import ru.practicum.model.stat.dto.StatRequestDto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HitFrameCodecTest {
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2022, 9, 6, 11, 0, 23);
+
+    @Test
+    public void test_T0010_PS01_roundTrip() {
+        StatRequestDto ipv4 = StatRequestDto.of("ewm-main-service", "/events/1", "192.168.0.1", TIMESTAMP);
+        StatRequestDto ipv6 = StatRequestDto.of("ewm-main-service", "/events/2", "2001:db8:0:0:0:0:0:1", TIMESTAMP,
+                "hit-1");
+        ByteBuffer buffer = ByteBuffer.allocate(256).put(HitFrameCodec.encode(ipv4)).put(HitFrameCodec.encode(ipv6));
+        buffer.flip();
+
+        assertEquals(ipv4, HitFrameCodec.decode(buffer));
+        assertEquals(ipv6, HitFrameCodec.decode(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void test_T0010_PS02_partialFrameKeepsPosition() {
+        byte[] frame = HitFrameCodec.encode(StatRequestDto.of("ewm-main-service", "/events/1", "192.168.0.1", TIMESTAMP));
+        ByteBuffer buffer = ByteBuffer.wrap(frame, 0, frame.length - 1);
+
+        assertNull(HitFrameCodec.decode(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void test_T0010_NS01_invalidFieldSkipsFrame() {
+        byte[] frame = shortAppFrame();
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+
+        assertThrows(IllegalArgumentException.class, () -> HitFrameCodec.decode(buffer));
+        assertEquals(frame.length, buffer.position());
+    }
+
+    @Test
+    public void test_T0010_NS02_oversizedLength() {
+        ByteBuffer buffer = ByteBuffer.allocate(4).putShort((short) 0xffff).put((byte) 1).put((byte) 0);
+        buffer.flip();
+
+        assertThrows(IllegalArgumentException.class, () -> HitFrameCodec.decode(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void test_T0020_NS01_encode_rejectsFieldsDecodeRejects() {
+        assertThrows(IllegalArgumentException.class, () -> HitFrameCodec.encode(
+                StatRequestDto.of("ab", "/events/1", "192.168.0.1", TIMESTAMP)));
+        assertThrows(IllegalArgumentException.class, () -> HitFrameCodec.encode(
+                StatRequestDto.of("e".repeat(129), "/events/1", "192.168.0.1", TIMESTAMP)));
+        assertThrows(IllegalArgumentException.class, () -> HitFrameCodec.encode(
+                StatRequestDto.of("ewm-main-service", "", "192.168.0.1", TIMESTAMP)));
+        assertThrows(IllegalArgumentException.class, () -> HitFrameCodec.encode(
+                StatRequestDto.of("ewm-main-service", "/" + "e".repeat(256), "192.168.0.1", TIMESTAMP)));
+        assertThrows(IllegalArgumentException.class, () -> HitFrameCodec.encode(
+                StatRequestDto.of("ewm-main-service", "/events/1", "192.168.0.1", TIMESTAMP, "h".repeat(65))));
+    }
+
+    /**
+     * Кадр с app из двух символов - такой кадр {@link HitFrameCodec#encode} не создает.
+     */
+    private static byte[] shortAppFrame() {
+        byte[] uri = "/events/1".getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 1 + 2 + 2 + uri.length + 1 + 4 + Long.BYTES + 1;
+
+        return ByteBuffer.allocate(2 + length)
+                .putShort((short) length)
+                .put((byte) HitFrameCodec.VERSION)
+                .put((byte) 2).put("ab".getBytes(StandardCharsets.UTF_8))
+                .putShort((short) uri.length).put(uri)
+                .put((byte) 4).put(new byte[]{(byte) 192, (byte) 168, 0, 1})
+                .putLong(0)
+                .put((byte) 0)
+                .array();
+    }
+}
@@ -0,0 +1,34 @@
+package ru.practicum.model;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.model.ip.IpCodec;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IpCodecTest {
+    @Test
+    public void test_T0010_PS01_ipv4() {
+        byte[] address = IpCodec.encode("192.168.0.255");
+
+        assertArrayEquals(new byte[]{(byte) 192, (byte) 168, 0, (byte) 255}, address);
+        assertEquals("192.168.0.255", IpCodec.decode(address));
+    }
+
+    @Test
+    public void test_T0010_PS02_ipv6() {
+        byte[] address = IpCodec.encode("2001:db8::1");
+
+        assertEquals(16, address.length);
+        assertEquals("2001:db8:0:0:0:0:0:1", IpCodec.decode(address));
+    }
+
+    @Test
+    public void test_T0010_NS01_invalid() {
+        assertThrows(IllegalArgumentException.class, () -> IpCodec.encode("192.168.0.256"));
+        assertThrows(IllegalArgumentException.class, () -> IpCodec.encode("192.168.0"));
+        assertThrows(IllegalArgumentException.class, () -> IpCodec.encode("1..2.3"));
+        assertThrows(IllegalArgumentException.class, () -> IpCodec.encode("localhost"));
+        assertThrows(IllegalArgumentException.class, () -> IpCodec.encode("example.com:80"));
+        assertThrows(IllegalArgumentException.class, () -> IpCodec.encode(""));
+    }
+}
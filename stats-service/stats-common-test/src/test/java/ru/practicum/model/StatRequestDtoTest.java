@@ -34,6 +34,17 @@ class StatRequestDtoTest {
         assertThat(result).isStrictlyEqualToJson("{\"app\":\"app-app\",\"uri\":\"some/uri/1\",\"ip\":\"10.10.10.10\",\"timestamp\":\"2020-10-12 15:45:30\"}");
     }
 
+    @Test
+    public void test_T0010_PS02_hitId() throws IOException {
+        LocalDateTime ldt = LocalDateTime.of(2020, 10, 12, 15, 45, 30);
+        StatRequestDto statRequestDto = StatRequestDto.of("app-app", "some/uri/1", "10.10.10.10", ldt, "hit-1");
+
+        JsonContent<StatRequestDto> result = json.write(statRequestDto);
+
+        assertThat(result).isStrictlyEqualToJson("{\"app\":\"app-app\",\"uri\":\"some/uri/1\",\"ip\":\"10.10.10.10\"," +
+                "\"timestamp\":\"2020-10-12 15:45:30\",\"hitId\":\"hit-1\"}");
+    }
+
     @Test
     public void test_T0010_NS01_emptyField() throws IOException {
         StatRequestDto statRequestDto = StatRequestDto.of();
@@ -0,0 +1,24 @@
+package ru.practicum.model.ip;
+
+import lombok.*;
+
+import javax.persistence.*;
+
+/**
+ * Словарь ip-адресов. Адрес хранится в двоичном виде: 4 байта для IPv4 и 16 байт для IPv6.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "ip")
+@Builder(toBuilder = true)
+public class Ip {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private int id;
+    @Column(name = "ip", nullable = false, unique = true)
+    private byte[] ip;
+}
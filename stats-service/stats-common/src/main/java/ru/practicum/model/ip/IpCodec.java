@@ -0,0 +1,83 @@
+package ru.practicum.model.ip;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Перевод текстового ip-адреса в двоичную форму и обратно без обращения к DNS.
+ */
+public class IpCodec {
+    private IpCodec() {
+    }
+
+    /**
+     * @return 4 байта для IPv4 и 16 байт для IPv6
+     * @throws IllegalArgumentException если строка не является литералом IPv4 или IPv6
+     */
+    public static byte[] encode(String ip) {
+        if (ip == null || ip.isEmpty()) {
+            throw new IllegalArgumentException("Пустой ip-адрес");
+        }
+
+        if (ip.indexOf(':') < 0) {
+            return encodeIpv4(ip);
+        }
+
+        // Строка с ':', начинающаяся с шестнадцатеричной цифры или ':', разбирается InetAddress как литерал IPv6
+        // без DNS-запроса. IPv4-mapped адрес (::ffff:a.b.c.d) возвращается в виде 4 байт IPv4.
+        if (Character.digit(ip.charAt(0), 16) < 0 && ip.charAt(0) != ':') {
+            throw new IllegalArgumentException("Некорректный ip-адрес: " + ip);
+        }
+
+        try {
+            return InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Некорректный ip-адрес: " + ip, e);
+        }
+    }
+
+    public static String decode(byte[] address) {
+        if (address.length == 4) {
+            return (address[0] & 0xff) + "." + (address[1] & 0xff) + "." + (address[2] & 0xff) + "." + (address[3] & 0xff);
+        }
+
+        try {
+            return InetAddress.getByAddress(address).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Некорректная длина ip-адреса: " + address.length, e);
+        }
+    }
+
+    private static byte[] encodeIpv4(String ip) {
+        byte[] address = new byte[4];
+        int octet = 0;
+        int value = -1;
+
+        for (int i = 0; i <= ip.length(); i++) {
+            char c = i < ip.length() ? ip.charAt(i) : '.';
+
+            if (c == '.') {
+                if (value < 0 || octet > 3) {
+                    throw new IllegalArgumentException("Некорректный ip-адрес: " + ip);
+                }
+
+                address[octet++] = (byte) value;
+                value = -1;
+            } else if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+
+                if (value > 255) {
+                    throw new IllegalArgumentException("Некорректный ip-адрес: " + ip);
+                }
+            } else {
+                throw new IllegalArgumentException("Некорректный ip-адрес: " + ip);
+            }
+        }
+
+        if (octet != 4) {
+            throw new IllegalArgumentException("Некорректный ip-адрес: " + ip);
+        }
+
+        return address;
+    }
+}
@@ -2,6 +2,8 @@ package ru.practicum.model.stat;
 
 import lombok.*;
 import ru.practicum.model.app.App;
+import ru.practicum.model.ip.Ip;
+import ru.practicum.model.uri.Uri;
 
 import javax.persistence.*;
 import java.time.LocalDateTime;
@@ -24,11 +26,13 @@ public class Stat {
     @OneToOne(fetch = FetchType.EAGER, targetEntity = App.class)
     private App app;
 
-    @Column(name = "uri", nullable = false)
-    private String uri;
+    @JoinColumn(name = "uri_id", nullable = false)
+    @ManyToOne(fetch = FetchType.EAGER, targetEntity = Uri.class)
+    private Uri uri;
 
-    @Column(name = "ip", nullable = false)
-    private String ip;
+    @JoinColumn(name = "ip_id", nullable = false)
+    @ManyToOne(fetch = FetchType.EAGER, targetEntity = Ip.class)
+    private Ip ip;
 
     @Column(name = "requested", nullable = false)
     private LocalDateTime requested;
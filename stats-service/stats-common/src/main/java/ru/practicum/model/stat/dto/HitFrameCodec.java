@@ -0,0 +1,154 @@
+package ru.practicum.model.stat.dto;
+
+import ru.practicum.model.ip.IpCodec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Двоичный кадр хита для приема по UDP/TCP без HTTP и JSON. Числа записываются в сетевом порядке байт:
+ * <pre>
+ * u16  длина кадра без этого поля
+ * u8   версия формата (1)
+ * u8   длина app в байтах UTF-8, app
+ * u16  длина uri в байтах UTF-8, uri
+ * u8   длина ip (4 или 16), ip
+ * i64  время хита в миллисекундах эпохи
+ * u8   длина hitId в байтах UTF-8 (0 - без идентификатора), hitId
+ * </pre>
+ * Время переводится в {@link LocalDateTime} часового пояса сервера с точностью до секунды, как у JSON-хита.
+ * В одной UDP-датаграмме и в TCP-потоке кадры идут подряд.
+ */
+public class HitFrameCodec {
+    public static final int VERSION = 1;
+    public static final int MAX_FRAME_SIZE = 2048;
+
+    private static final int MAX_APP_LENGTH = 128;
+    private static final int MAX_URI_LENGTH = 256;
+    private static final int MAX_HIT_ID_LENGTH = 64;
+
+    private HitFrameCodec() {
+    }
+
+    /**
+     * Поля проверяются по тем же ограничениям, что и при {@link #decode}, поэтому закодированный кадр всегда
+     * читается обратно.
+     *
+     * @throws IllegalArgumentException если ip не является литералом IPv4 или IPv6, поля нарушают ограничения
+     *                                  или не помещаются в кадр
+     */
+    public static byte[] encode(StatRequestDto requestDto) {
+        byte[] ip = validate(requestDto);
+        byte[] app = requestDto.getApp().getBytes(StandardCharsets.UTF_8);
+        byte[] uri = requestDto.getUri().getBytes(StandardCharsets.UTF_8);
+        byte[] hitId = requestDto.getHitId() == null
+                ? new byte[0]
+                : requestDto.getHitId().getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 1 + app.length + 2 + uri.length + 1 + ip.length + Long.BYTES + 1 + hitId.length;
+
+        if (app.length > 0xff || hitId.length > 0xff || 2 + length > MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Хит не помещается в кадр: " + requestDto);
+        }
+
+        long epochMilli = requestDto.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        return ByteBuffer.allocate(2 + length)
+                .putShort((short) length)
+                .put((byte) VERSION)
+                .put((byte) app.length).put(app)
+                .putShort((short) uri.length).put(uri)
+                .put((byte) ip.length).put(ip)
+                .putLong(epochMilli)
+                .put((byte) hitId.length).put(hitId)
+                .array();
+    }
+
+    /**
+     * Проверяет хит по ограничениям кадра, которые совпадают с ограничениями столбцов <i>stat</i>: app 3-128
+     * символов, uri 1-256 символов, ip - литерал IPv4 или IPv6, hitId не длиннее 64 символов.
+     *
+     * @return ip хита в байтах
+     * @throws IllegalArgumentException если хит нарушает ограничения
+     */
+    public static byte[] validate(StatRequestDto requestDto) {
+        if (requestDto.getApp() == null || requestDto.getUri() == null || requestDto.getIp() == null
+                || requestDto.getTimestamp() == null) {
+            throw new IllegalArgumentException("Некорректные поля хита: " + requestDto);
+        }
+
+        byte[] ip = IpCodec.encode(requestDto.getIp());
+        checkFields(requestDto.getApp(), requestDto.getUri(), ip, requestDto.getHitId());
+        return ip;
+    }
+
+    /**
+     * Читает очередной кадр. Если кадр еще не получен целиком, позиция буфера не меняется.
+     *
+     * @return хит или null, если в буфере нет целого кадра
+     * @throws IllegalArgumentException если кадр поврежден; позиция буфера остается за ним
+     */
+    public static StatRequestDto decode(ByteBuffer source) {
+        if (source.remaining() < 2) {
+            return null;
+        }
+
+        int length = Short.toUnsignedInt(source.getShort(source.position()));
+
+        if (2 + length > MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Длина кадра хита " + length + " больше " + MAX_FRAME_SIZE);
+        }
+
+        if (source.remaining() < 2 + length) {
+            return null;
+        }
+
+        ByteBuffer frame = source.slice();
+        frame.position(2).limit(2 + length);
+        source.position(source.position() + 2 + length);
+
+        try {
+            int version = Byte.toUnsignedInt(frame.get());
+
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Неизвестная версия кадра хита: " + version);
+            }
+
+            String app = readString(frame, Byte.toUnsignedInt(frame.get()));
+            String uri = readString(frame, Short.toUnsignedInt(frame.getShort()));
+            byte[] ip = new byte[Byte.toUnsignedInt(frame.get())];
+            frame.get(ip);
+            LocalDateTime timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(frame.getLong()),
+                    ZoneId.systemDefault()).truncatedTo(ChronoUnit.SECONDS);
+            int hitIdLength = Byte.toUnsignedInt(frame.get());
+            String hitId = hitIdLength == 0 ? null : readString(frame, hitIdLength);
+
+            if (frame.hasRemaining()) {
+                throw new IllegalArgumentException("Лишние байты в кадре хита: " + frame.remaining());
+            }
+
+            checkFields(app, uri, ip, hitId);
+            return StatRequestDto.of(app, uri, IpCodec.decode(ip), timestamp, hitId);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Кадр хита короче своих полей", e);
+        }
+    }
+
+    private static void checkFields(String app, String uri, byte[] ip, String hitId) {
+        if (app.length() < 3 || app.length() > MAX_APP_LENGTH || uri.isEmpty() || uri.length() > MAX_URI_LENGTH
+                || (ip.length != 4 && ip.length != 16) || (hitId != null && hitId.length() > MAX_HIT_ID_LENGTH)) {
+            throw new IllegalArgumentException("Некорректные поля кадра хита: app=" + app + ", uri=" + uri
+                    + ", ip=" + ip.length + " байт");
+        }
+    }
+
+    private static String readString(ByteBuffer frame, int length) {
+        byte[] bytes = new byte[length];
+        frame.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
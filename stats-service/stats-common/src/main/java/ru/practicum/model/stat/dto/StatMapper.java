@@ -1,6 +1,9 @@
 package ru.practicum.model.stat.dto;
 
+import ru.practicum.model.ip.Ip;
+import ru.practicum.model.ip.IpCodec;
 import ru.practicum.model.stat.Stat;
+import ru.practicum.model.uri.Uri;
 
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -11,15 +14,15 @@ public class StatMapper {
 
     public static Stat mapToStat(StatRequestDto statHitRequestDto) {
         return Stat.builder()
-                .uri(statHitRequestDto.getUri())
-                .ip(statHitRequestDto.getIp())
+                .uri(Uri.builder().uri(statHitRequestDto.getUri()).build())
+                .ip(Ip.builder().ip(IpCodec.encode(statHitRequestDto.getIp())).build())
                 .requested(statHitRequestDto.getTimestamp())
                 .build();
     }
 
     public static StatResponseDto mapToStatResponseDto(Stat stat) {
         return StatResponseDto.builder()
-                .uri(stat.getUri())
+                .uri(stat.getUri().getUri())
                 .build();
     }
 
@@ -1,6 +1,7 @@
 package ru.practicum.model.stat.dto;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -17,8 +18,10 @@ import java.time.LocalDateTime;
 @Builder(toBuilder = true)
 public class StatRequestDto {
     @NotEmpty
+    @Size(min = 3, max = 128, message = "Stat.app - Минимальная длина имени сервиса - {min}, а максимальная {max} символов")
     private String app;
     @NotEmpty
+    @Size(max = 256, message = "Stat.uri - Максимальная длина uri - {max} символов")
     private String uri;
     @NotEmpty
     @Size(min = 7, max = 45, message = "Stat.ip - Минимальная длина ip-адреса - {min}, а максимальная {max} символов")
@@ -26,4 +29,15 @@ public class StatRequestDto {
     @NotNull
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime timestamp;
+    /**
+     * Необязательный идентификатор хита, который формирует клиент: повторная отправка хита с тем же
+     * идентификатором не учитывается, поэтому хиты можно безопасно отправлять повторно.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Size(max = 64, message = "Stat.hitId - Максимальная длина идентификатора хита - {max} символов")
+    private String hitId;
+
+    public static StatRequestDto of(String app, String uri, String ip, LocalDateTime timestamp) {
+        return of(app, uri, ip, timestamp, null);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package ru.practicum.model.stat.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Точка временного ряда: хиты (app, uri) в интервале, который начинается с bucket.
+ */
+@Data
+@NoArgsConstructor(staticName = "of")
+@AllArgsConstructor(staticName = "of")
+@Builder(toBuilder = true)
+public class StatTimeSeriesDto {
+    private String app;
+    private String uri;
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime bucket;
+    private long hits;
+}
@@ -0,0 +1,21 @@
+package ru.practicum.model.uri;
+
+import lombok.*;
+
+import javax.persistence.*;
+
+@Entity
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "uri")
+@Builder(toBuilder = true)
+public class Uri {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private int id;
+    @Column(name = "uri", nullable = false, unique = true)
+    private String uri;
+}